@@ -21,6 +21,22 @@ public interface RdmaCommunicator {
      */
     boolean postNetOperationToNIC(WorkRequestProxy proxy);
 
+    /**
+     * Posts several networking operations to the network card. Implementations can post
+     * them as a chain of Work Requests with one call to the network card, which costs
+     * much less than posting each operation separately.
+     * @param proxies the objects describing the network operations, in posting order.
+     * @param count how many proxies of the array to post, starting from index 0.
+     * @return true if all operations were posted successfully, false otherwise.
+     */
+    default boolean postNetOperationsToNIC(WorkRequestProxy[] proxies, int count){
+        boolean success = true;
+        for(int i=0; i < count; i++){
+            success &= postNetOperationToNIC(proxies[i]);
+        }
+        return success;
+    }
+
     /**
      * Returns the {@link WorkRequestProxyProvider} that the
      * endpoint uses.
@@ -7,9 +7,14 @@ import com.ibm.disni.verbs.IbvWC;
 import com.ibm.disni.verbs.RdmaCmId;
 import jarg.jrcm.networking.communicators.RdmaCommunicator;
 import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.FlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
 import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
 import jarg.jrcm.networking.dependencies.netrequests.*;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.SVCSetupMetrics;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -51,6 +56,10 @@ public class ActiveRdmaCommunicator extends RdmaActiveEndpoint implements RdmaCo
     private AbstractSVCManager svcManager;
     private WorkRequestProxyProvider proxyProvider;
     private AbstractWorkCompletionHandler workCompletionHandler;
+    private FlowController flowController;              // optional
+    private RegisteredMemoryArena memoryArena;          // optional, shared by many communicators
+    private MemoryAllocator memoryAllocator;            // optional
+    private int[] completedUnsignaledIds;               // WR ids reclaimed with a signaled completion
 
     public ActiveRdmaCommunicator(RdmaActiveEndpointGroup<? extends ActiveRdmaCommunicator> group,
                                   RdmaCmId idPriv, boolean serverSide,
@@ -64,42 +73,152 @@ public class ActiveRdmaCommunicator extends RdmaActiveEndpoint implements RdmaCo
         svcManager  = dependencies.getSvcManager();
         proxyProvider = dependencies.getProxyProvider();
         workCompletionHandler = dependencies.getWorkCompletionHandler();
+        flowController = dependencies.getFlowController();
+        memoryArena = dependencies.getMemoryArena();
+        memoryAllocator = dependencies.getMemoryAllocator();
+        completedUnsignaledIds = new int[dependencies.getMaxWorkRequests()];
     }
 
     @Override
     public void init() throws IOException{
+        SVCSetupMetrics setupMetrics = svcManager.getSetupMetrics();
         // allocate communication buffers and register their memory region to the NIC
-        bufferManager.allocateCommunicationBuffers();
-        ByteBuffer registeredBuffer = bufferManager.getBufferToRegister();
-        registeredMemoryRegion = registerMemory(registeredBuffer).execute().free().getMr();
+        long start = System.nanoTime();
+        if(memoryArena != null){
+            allocateFromArena();
+        }else if(memoryAllocator != null){
+            allocateWithAllocator();
+        }else{
+            bufferManager.allocateCommunicationBuffers();
+        }
+        long allocated = System.nanoTime();
+        if(memoryArena == null){
+            ByteBuffer registeredBuffer = bufferManager.getBufferToRegister();
+            registeredMemoryRegion = registerMemory(registeredBuffer).execute().free().getMr();
+        }else{
+            registeredMemoryRegion = memoryArena.register(this);
+        }
+        long registered = System.nanoTime();
+        setupMetrics.setBufferAllocationNanos(allocated - start);
+        setupMetrics.setMemoryRegistrationNanos(registered - allocated);
         // pass SVC manager dependencies and initialize SVCs
         svcManager.setRdmaEndpoint(this);
         svcManager.setBufferManager(bufferManager);
         svcManager.setRegisteredMemoryRegion(registeredMemoryRegion);
         svcManager.initializeSVCs();
+        setupMetrics.setSvcInitializationNanos(System.nanoTime() - registered);
         // pass proxy provider dependencies
         proxyProvider.setBufferManager(bufferManager);
         proxyProvider.setCommunicator(this);
         // pass proxy provider to work completion handler
         workCompletionHandler.setProxyProvider(proxyProvider);
+        // pass flow controller dependencies, if flow control is used
+        if(flowController != null){
+            flowController.initialize(this, bufferManager, svcManager);
+            svcManager.setReceivesPostedListener(flowController::onReceivesPosted);
+        }
+    }
+
+    /**
+     * Allocates the communication buffers in a range of the shared memory arena.
+     * @throws IOException if the buffer manager cannot allocate its buffers in given memory or the
+     * arena doesn't admit this communicator.
+     */
+    private void allocateFromArena() throws IOException {
+        int requiredMemory = bufferManager.getRequiredMemory();
+        if(requiredMemory < 0){
+            throw new IOException("The buffer manager cannot allocate its buffers in the memory arena.");
+        }
+        ByteBuffer memory = memoryArena.reserve(this, requiredMemory);
+        if(memory == null){
+            throw new IOException("The memory arena cannot admit a communicator with " + requiredMemory
+                    + " bytes of buffers. Available memory: " + memoryArena.getAvailableMemory() + " bytes.");
+        }
+        bufferManager.allocateCommunicationBuffers(memory);
+    }
+
+    /**
+     * Allocates the communication buffers in memory from the memory allocator.
+     * @throws IOException if the buffer manager cannot allocate its buffers in given memory or the
+     * allocator fails.
+     */
+    private void allocateWithAllocator() throws IOException {
+        int requiredMemory = bufferManager.getRequiredMemory();
+        if(requiredMemory < 0){
+            throw new IOException("The buffer manager cannot allocate its buffers in given memory.");
+        }
+        ByteBuffer memory = memoryAllocator.allocate(requiredMemory, MemoryAllocator.CACHE_LINE_SIZE);
+        bufferManager.allocateCommunicationBuffers(memory);
     }
 
     /**
      * When a Work Completion event is ready, call the {@link WorkCompletionHandler} strategy
-     * to handle the event.
+     * to handle the event. If a {@link FlowController} is used, it sees the event first and
+     * events that only concern flow control are not passed to the WorkCompletionHandler.
      * @param wc the Work Completion event dispatched to this Endpoint.
      * @throws IOException
      */
     @Override
     public void dispatchCqEvent(IbvWC wc) throws IOException {
         int status = wc.getStatus();
+        // the unsignaled WRs that a signaled one covers get no completions of their own, even if it fails
+        reclaimUnsignaled(wc);
         if(status != 0){    // an error occurred
             workCompletionHandler.handleCqEventError(wc);
         }else{
-            workCompletionHandler.handleCqEvent(wc);
+            // RECVs complete with IBV_WC_RECV or IBV_WC_RECV_RDMA_WITH_IMM
+            if(wc.getOpcode() >= IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode()){
+                svcManager.onReceiveCompleted(wc);
+            }
+            if((flowController == null) || !flowController.onWorkCompletion(wc)){
+                workCompletionHandler.handleCqEvent(wc);
+            }
+        }
+    }
+
+    /**
+     * The completion of a signaled postSend Work Request means that the unsignaled ones posted
+     * before it have completed too. Their WR ids are given back to the proxy provider, since
+     * there will be no completion events for them.
+     * @param wc the Work Completion event of the signaled Work Request.
+     */
+    private void reclaimUnsignaled(IbvWC wc){
+        // only postSend Work Requests can be unsignaled
+        if(wc.getOpcode() >= IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode()){
+            return;
+        }
+        int completed = svcManager.takeCompletedUnsignaled((int) wc.getWr_id(), completedUnsignaledIds);
+        if(completed > 0){
+            proxyProvider.reclaimWorkRequests(completedUnsignaledIds, completed);
         }
     }
 
+    /**
+     * Posts a signaled WRITE of zero bytes if unsignaled Work Requests were posted after the last
+     * signaled one, so that their WR ids are reclaimed when it completes. Applications that stop
+     * posting after unsignaled Work Requests call it to get their proxies back. The WRITE doesn't
+     * access remote memory and its completion is passed to the {@link WorkCompletionHandler} like any
+     * other, which releases its proxy.
+     * @return true if nothing had to be flushed or the WRITE was posted, false if no proxy was available
+     * or posting failed.
+     */
+    public boolean flushUnsignaled(){
+        if(!svcManager.getSelectiveSignaler().hasUncovered()){
+            return true;
+        }
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(WorkRequestType.ONE_SIDED_WRITE_SIGNALED);
+        if(proxy == null){
+            return false;
+        }
+        proxy.getBuffer().clear().limit(0);
+        proxy.setRemoteLocation(0, 0);
+        if(!postNetOperationToNIC(proxy)){
+            proxy.releaseWorkRequest();
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Clean up resources when closing this Endpoint.
      * @throws IOException
@@ -108,6 +227,10 @@ public class ActiveRdmaCommunicator extends RdmaActiveEndpoint implements RdmaCo
     @Override
     public void close() throws IOException, InterruptedException {
         super.close();
+        svcManager.close();
+        if(memoryArena != null){
+            memoryArena.release(this);
+        }
     }
 
     @Override
@@ -115,9 +238,28 @@ public class ActiveRdmaCommunicator extends RdmaActiveEndpoint implements RdmaCo
         if(isShutDown()){
             return false;
         }
+        if(flowController == null){
+            return svcManager.executeSVC(workRequestProxy);
+        }
+        // Work Requests that consume remote RECVs must wait for the remote side to be able to receive them
+        if(workRequestProxy.getWorkRequestType().consumesRemoteReceive()){
+            return flowController.postSend(workRequestProxy);
+        }
         return svcManager.executeSVC(workRequestProxy);
     }
 
+    @Override
+    public boolean postNetOperationsToNIC(WorkRequestProxy[] proxies, int count) {
+        if(isShutDown()){
+            return false;
+        }
+        if(flowController == null){
+            return svcManager.executeSVCs(proxies, count);
+        }
+        // flow control takes the credits of the whole batch and posts it with one call
+        return flowController.postSends(proxies, count);
+    }
+
     @Override
     public WorkRequestProxyProvider getWorkRequestProxyProvider() {
         return proxyProvider;
@@ -132,4 +274,22 @@ public class ActiveRdmaCommunicator extends RdmaActiveEndpoint implements RdmaCo
     public RdmaCommunicatorDependencies getDependencies() {
         return dependencies;
     }
+
+    /**
+     * Get the memory region of this communicator's buffers, e.g. to give its remote key to the remote side
+     * for one-sided operations.
+     * @return the memory region or null if the communicator is not initialized yet.
+     */
+    public IbvMr getRegisteredMemoryRegion() {
+        return registeredMemoryRegion;
+    }
+
+    /**
+     * Get how long the preparations of this communicator took and how its SVCs were created
+     * (see {@link AbstractSVCManager#setSVCCreation(AbstractSVCManager.SVCCreation)}).
+     * @return the setup metrics.
+     */
+    public SVCSetupMetrics getSetupMetrics() {
+        return svcManager.getSetupMetrics();
+    }
 }
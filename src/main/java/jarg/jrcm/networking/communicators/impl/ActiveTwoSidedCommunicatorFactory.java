@@ -19,15 +19,34 @@ import java.util.function.Supplier;
 public class ActiveTwoSidedCommunicatorFactory implements RdmaEndpointFactory<ActiveRdmaCommunicator> {
 
     private RdmaActiveEndpointGroup<ActiveRdmaCommunicator> endpointGroup;
-    private TwoSidedDependenciesFactory dependenciesFactory;
+    private Supplier<RdmaCommunicatorDependencies> dependenciesFactory;
 
     public ActiveTwoSidedCommunicatorFactory(RdmaActiveEndpointGroup<ActiveRdmaCommunicator> endpointGroup,
                                              int maxWorkRequests, int maxBufferSize,
                                              Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
                                              Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(endpointGroup, maxWorkRequests, maxBufferSize, proxyProviderSupplier,
+                workCompletionHandlerSupplier, false);
+    }
+
+    public ActiveTwoSidedCommunicatorFactory(RdmaActiveEndpointGroup<ActiveRdmaCommunicator> endpointGroup,
+                                             int maxWorkRequests, int maxBufferSize,
+                                             Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
+                                             Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                             boolean creditFlowControl) {
         this.endpointGroup = endpointGroup;
         dependenciesFactory = new TwoSidedDependenciesFactory(maxWorkRequests, maxBufferSize, proxyProviderSupplier,
-                workCompletionHandlerSupplier);
+                workCompletionHandlerSupplier, creditFlowControl);
+    }
+
+    /**
+     * Creates communicators with the dependencies of another two-sided dependencies factory, e.g. a
+     * {@link SharedReceiveDependenciesFactory}.
+     */
+    public ActiveTwoSidedCommunicatorFactory(RdmaActiveEndpointGroup<ActiveRdmaCommunicator> endpointGroup,
+                                             Supplier<RdmaCommunicatorDependencies> dependenciesFactory) {
+        this.endpointGroup = endpointGroup;
+        this.dependenciesFactory = dependenciesFactory;
     }
 
     @Override
@@ -0,0 +1,192 @@
+package jarg.jrcm.networking.communicators.impl;
+
+import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.CompositeBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.OneSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
+import jarg.jrcm.networking.dependencies.netrequests.impl.PriorityProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.CompositeSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedAtomicSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedReadSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedWriteSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.TwoSidedSVCManager;
+
+import java.util.function.Supplier;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+
+/**
+ * <p>
+ * A Supplier that provides {@link RdmaCommunicatorDependencies} for an {@link ActiveRdmaCommunicator}
+ * that uses both <i>two-sided</i> and <i>one-sided</i> RDMA operations on the same connection. E.g. control
+ * messages can be sent with SEND/RECV and bulk data with WRITE/READ, without a second connection per peer.
+ * </p>
+ *
+ * <p>
+ * Each kind of operation has its own range of WR ids and its own buffers. The two-sided operations come first,
+ * then the WRITEs, the READs and the atomics. A {@link PriorityProxyProvider} with one traffic class per kind
+ * hands out the WR ids of each range to the Work Request types of that kind, so bulk operations cannot use up
+ * the WR ids of control messages. WRITEs with immediate data belong to the WRITEs, but they also consume
+ * a RECV of the remote side. Optionally, the two-sided operations can use a {@link CreditFlowController}.
+ * Both sides of a connection must use the same configuration.
+ * </p>
+ */
+public class CompositeDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
+
+    private static final WorkRequestType[] twoSidedTypes = {TWO_SIDED_SEND_SIGNALED, TWO_SIDED_SEND_UNSIGNALED,
+            TWO_SIDED_SEND_WITH_IMM, TWO_SIDED_RECV};
+    private static final WorkRequestType[] writeTypes = {ONE_SIDED_WRITE_SIGNALED, ONE_SIDED_WRITE_UNSIGNALED,
+            ONE_SIDED_WRITE_WITH_IMM};
+    private static final WorkRequestType[] readTypes = {ONE_SIDED_READ_SIGNALED};
+    private static final WorkRequestType[] atomicTypes = {ONE_SIDED_ATOMIC_CMP_AND_SWP,
+            ONE_SIDED_ATOMIC_FETCH_AND_ADD};
+
+    private int twoSidedWorkRequests;
+    private int twoSidedBufferSize;
+    private int writeWorkRequests;
+    private int readWorkRequests;
+    private int oneSidedBufferSize;
+    private int atomicWorkRequests;
+    private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private boolean creditFlowControl;
+    private AbstractSVCManager.SVCCreation svcCreation = AbstractSVCManager.SVCCreation.EAGER;
+    private RegisteredMemoryArena memoryArena;          // optional, shared by the communicators
+    private MemoryAllocator memoryAllocator;            // optional
+
+    public CompositeDependenciesFactory(int twoSidedWorkRequests, int twoSidedBufferSize,
+                                        int oneSidedWorkRequests, int oneSidedBufferSize,
+                                        Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(twoSidedWorkRequests, twoSidedBufferSize, oneSidedWorkRequests, oneSidedWorkRequests,
+                oneSidedBufferSize, 0, workCompletionHandlerSupplier, false);
+    }
+
+    public CompositeDependenciesFactory(int twoSidedWorkRequests, int twoSidedBufferSize,
+                                        int writeWorkRequests, int readWorkRequests, int oneSidedBufferSize,
+                                        int atomicWorkRequests,
+                                        Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                        boolean creditFlowControl) {
+        if(twoSidedWorkRequests < 1){
+            throw new IllegalArgumentException("At least one two-sided Work Request is required.");
+        }
+        this.twoSidedWorkRequests = twoSidedWorkRequests;
+        this.twoSidedBufferSize = twoSidedBufferSize;
+        this.writeWorkRequests = writeWorkRequests;
+        this.readWorkRequests = readWorkRequests;
+        this.oneSidedBufferSize = oneSidedBufferSize;
+        this.atomicWorkRequests = atomicWorkRequests;
+        this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+        this.creditFlowControl = creditFlowControl;
+    }
+
+    /**
+     * Sets when the SVCs of the communicators are created. Lazy or background creation makes
+     * communicator setup faster for many Work Requests.
+     * @param svcCreation the creation mode.
+     * @return this factory.
+     */
+    public CompositeDependenciesFactory setSVCCreation(AbstractSVCManager.SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+        return this;
+    }
+
+    /**
+     * Sets an arena from which all communicators reserve the memory of their buffers, instead of each
+     * registering its own memory region. The one-sided buffers can then only be the remote side of
+     * one-sided operations if the arena allows remote access, which exposes the buffers of all the
+     * communicators in the arena to every peer (see {@link RegisteredMemoryArena#setRemoteAccess(boolean)}).
+     * @param memoryArena the arena.
+     * @return this factory.
+     */
+    public CompositeDependenciesFactory setMemoryArena(RegisteredMemoryArena memoryArena) {
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    /**
+     * Sets the allocator of the communicators' memory, e.g. a mapped allocator for huge pages.
+     * @param memoryAllocator the allocator.
+     * @return this factory.
+     */
+    public CompositeDependenciesFactory setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
+    }
+
+    @Override
+    public RdmaCommunicatorDependencies get() {
+        RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        int maxWorkRequests = twoSidedWorkRequests + writeWorkRequests + readWorkRequests + atomicWorkRequests;
+        int maxBufferSize = Math.max(twoSidedBufferSize, oneSidedBufferSize);
+        int headroom = 0;
+        if(creditFlowControl){
+            CreditFlowController flowController = new CreditFlowController(twoSidedWorkRequests);
+            headroom = flowController.getHeaderSize();
+            dependencies.setFlowController(flowController);
+        }
+        CompositeBufferManager bufferManager = new CompositeBufferManager();
+        CompositeSVCManager svcManager = new CompositeSVCManager(maxBufferSize, maxWorkRequests);
+        svcManager.setSVCCreation(svcCreation);
+        PriorityProxyProvider proxyProvider = new PriorityProxyProvider(maxWorkRequests, twoSidedWorkRequests,
+                writeWorkRequests, readWorkRequests, atomicWorkRequests);
+        // two-sided operations
+        int firstWorkRequestId = 0;
+        bufferManager.addBufferManager(new TwoSidedBufferManager(twoSidedBufferSize, twoSidedWorkRequests,
+                headroom), firstWorkRequestId, twoSidedTypes);
+        svcManager.addSVCManager(new TwoSidedSVCManager(twoSidedBufferSize, maxWorkRequests), firstWorkRequestId,
+                twoSidedWorkRequests, twoSidedTypes);
+        setTrafficClass(proxyProvider, 0, twoSidedTypes);
+        // WRITEs
+        firstWorkRequestId += twoSidedWorkRequests;
+        if(writeWorkRequests > 0){
+            bufferManager.addBufferManager(new OneSidedBufferManager(oneSidedBufferSize, writeWorkRequests),
+                    firstWorkRequestId, writeTypes);
+            svcManager.addSVCManager(new OneSidedWriteSVCManager(oneSidedBufferSize, maxWorkRequests),
+                    firstWorkRequestId, writeWorkRequests, writeTypes);
+            setTrafficClass(proxyProvider, 1, writeTypes);
+        }
+        // READs
+        firstWorkRequestId += writeWorkRequests;
+        if(readWorkRequests > 0){
+            bufferManager.addBufferManager(new OneSidedBufferManager(oneSidedBufferSize, readWorkRequests),
+                    firstWorkRequestId, readTypes);
+            svcManager.addSVCManager(new OneSidedReadSVCManager(oneSidedBufferSize, maxWorkRequests),
+                    firstWorkRequestId, readWorkRequests, readTypes);
+            setTrafficClass(proxyProvider, 2, readTypes);
+        }
+        // atomics only need their 8-byte result buffers
+        firstWorkRequestId += readWorkRequests;
+        if(atomicWorkRequests > 0){
+            bufferManager.addBufferManager(new OneSidedBufferManager(0, atomicWorkRequests),
+                    firstWorkRequestId, atomicTypes);
+            svcManager.addSVCManager(new OneSidedAtomicSVCManager(0, maxWorkRequests),
+                    firstWorkRequestId, atomicWorkRequests, atomicTypes);
+            setTrafficClass(proxyProvider, 3, atomicTypes);
+        }
+
+        dependencies.setMaxWorkRequests(maxWorkRequests)
+                .setMaxBufferSize(maxBufferSize)
+                .setBufferManager(bufferManager)
+                .setSvcManager(svcManager)
+                .setProxyProvider(proxyProvider)
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get())
+                .setMemoryArena(memoryArena)
+                .setMemoryAllocator(memoryAllocator);
+
+        return dependencies;
+    }
+
+    private void setTrafficClass(PriorityProxyProvider proxyProvider, int trafficClass,
+                                 WorkRequestType[] requestTypes){
+        for(WorkRequestType requestType : requestTypes){
+            if(requestType != TWO_SIDED_RECV){
+                proxyProvider.setTrafficClass(requestType, trafficClass);
+            }
+        }
+    }
+}
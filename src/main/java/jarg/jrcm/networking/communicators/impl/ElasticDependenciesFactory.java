@@ -0,0 +1,149 @@
+package jarg.jrcm.networking.communicators.impl;
+
+import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.ElasticBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
+import jarg.jrcm.networking.dependencies.netrequests.impl.ElasticProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.TwoSidedSVCManager;
+
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * A Supplier that provides {@link RdmaCommunicatorDependencies} for an {@link ActiveRdmaCommunicator}
+ * that uses <i>two-sided</i> RDMA operations with a pool of postSend Work Requests that grows and shrinks with
+ * the load (see {@link ElasticProxyProvider}). The communicators start with <i>initialWorkRequests</i> postSend
+ * Work Requests and can grow up to <i>maxWorkRequests</i>, which is also the depth of their queue pairs and the
+ * number of their postRecv Work Requests. Optionally, the dependencies can include a
+ * {@link CreditFlowController}. Both sides of a connection must agree on whether flow control is used.
+ * </p>
+ *
+ * <p>
+ * SVCs are created lazily by default, so that the SVCs of Work Requests that are never used are never created.
+ * </p>
+ */
+public class ElasticDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
+
+    private int maxWorkRequests;
+    private int maxBufferSize;
+    private int initialWorkRequests;
+    private int chunkWorkRequests;
+    private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private boolean creditFlowControl;
+    private AbstractSVCManager.SVCCreation svcCreation = AbstractSVCManager.SVCCreation.LAZY;
+    private int growThreshold = 4;
+    private long idleNanos = 1_000_000_000L;
+    private RegisteredMemoryArena memoryArena;          // optional, shared by the communicators
+    private MemoryAllocator memoryAllocator;            // optional
+
+    /**
+     * @param maxWorkRequests the maximum number of postSend Work Requests and the number of postRecv
+     *                        Work Requests.
+     * @param maxBufferSize the size of the Work Request buffers.
+     * @param initialWorkRequests the postSend Work Requests that are always available.
+     * @param chunkWorkRequests by how many postSend Work Requests the pool grows and shrinks at a time.
+     * @param workCompletionHandlerSupplier provides the handler of the Work Completions.
+     */
+    public ElasticDependenciesFactory(int maxWorkRequests, int maxBufferSize, int initialWorkRequests,
+                                      int chunkWorkRequests,
+                                      Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(maxWorkRequests, maxBufferSize, initialWorkRequests, chunkWorkRequests,
+                workCompletionHandlerSupplier, false);
+    }
+
+    public ElasticDependenciesFactory(int maxWorkRequests, int maxBufferSize, int initialWorkRequests,
+                                      int chunkWorkRequests,
+                                      Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                      boolean creditFlowControl) {
+        this.maxWorkRequests = maxWorkRequests;
+        this.maxBufferSize = maxBufferSize;
+        this.initialWorkRequests = initialWorkRequests;
+        this.chunkWorkRequests = chunkWorkRequests;
+        this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+        this.creditFlowControl = creditFlowControl;
+    }
+
+    /**
+     * Sets when the SVCs of the communicators are created.
+     * @param svcCreation the creation mode, lazy by default.
+     * @return this factory.
+     */
+    public ElasticDependenciesFactory setSVCCreation(AbstractSVCManager.SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+        return this;
+    }
+
+    /**
+     * Sets after how many waits for a Work Request the pool grows (see
+     * {@link ElasticProxyProvider#setGrowThreshold(int)}).
+     * @param growThreshold the number of waits.
+     * @return this factory.
+     */
+    public ElasticDependenciesFactory setGrowThreshold(int growThreshold) {
+        this.growThreshold = growThreshold;
+        return this;
+    }
+
+    /**
+     * Sets after how long without waits for a Work Request the pool shrinks (see
+     * {@link ElasticProxyProvider#setIdleNanos(long)}).
+     * @param idleNanos the idle period in nanoseconds.
+     * @return this factory.
+     */
+    public ElasticDependenciesFactory setIdleNanos(long idleNanos) {
+        this.idleNanos = idleNanos;
+        return this;
+    }
+
+    /**
+     * Sets an arena from which all communicators reserve the memory of their initial buffers, instead of
+     * each registering its own memory region. The chunks are always registered separately.
+     * @param memoryArena the arena.
+     * @return this factory.
+     */
+    public ElasticDependenciesFactory setMemoryArena(RegisteredMemoryArena memoryArena) {
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    /**
+     * Sets the allocator of the communicators' memory, e.g. a mapped allocator for huge pages.
+     * @param memoryAllocator the allocator.
+     * @return this factory.
+     */
+    public ElasticDependenciesFactory setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
+    }
+
+    @Override
+    public RdmaCommunicatorDependencies get() {
+        RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        int headroom = 0;
+        if(creditFlowControl){
+            CreditFlowController flowController = new CreditFlowController(maxWorkRequests);
+            headroom = flowController.getHeaderSize();
+            dependencies.setFlowController(flowController);
+        }
+        TwoSidedSVCManager svcManager = new TwoSidedSVCManager(maxBufferSize, maxWorkRequests);
+        svcManager.setSVCCreation(svcCreation);
+        ElasticProxyProvider proxyProvider = new ElasticProxyProvider(maxWorkRequests, svcManager)
+                .setGrowThreshold(growThreshold)
+                .setIdleNanos(idleNanos);
+        dependencies.setMaxWorkRequests(maxWorkRequests)
+                .setMaxBufferSize(maxBufferSize)
+                .setBufferManager(new ElasticBufferManager(maxBufferSize, maxWorkRequests, initialWorkRequests,
+                        chunkWorkRequests, headroom))
+                .setSvcManager(svcManager)
+                .setProxyProvider(proxyProvider)
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get())
+                .setMemoryArena(memoryArena)
+                .setMemoryAllocator(memoryAllocator);
+
+        return dependencies;
+    }
+}
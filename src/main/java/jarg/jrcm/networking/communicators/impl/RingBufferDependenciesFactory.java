@@ -0,0 +1,107 @@
+package jarg.jrcm.networking.communicators.impl;
+
+import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RingBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
+import jarg.jrcm.networking.dependencies.netrequests.impl.QueuedProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedWriteSVCManager;
+
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * A Supplier that provides {@link RdmaCommunicatorDependencies} for an {@link ActiveRdmaCommunicator}
+ * that sends messages with <i>one-sided</i> RDMA WRITEs into a ring buffer of the remote side, instead of
+ * SEND/RECV (see <i>jarg.jrcm.networking.ringbuffer</i>). The communicators post no RECVs, so messages don't
+ * need the remote CPU to post receives and don't produce Work Completions on the remote side.
+ * </p>
+ *
+ * <p>
+ * The registered memory of each communicator is laid out by a {@link RingBufferManager}. After connecting,
+ * the receiving side gives the remote key and address of its ring to the sending side, and the sending side
+ * gives those of its head slot to the receiving side (see
+ * {@link ActiveRdmaCommunicator#getRegisteredMemoryRegion()}). A side that only sends can use a factory
+ * with a ring capacity of 0.
+ * </p>
+ */
+public class RingBufferDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
+
+    private int maxWorkRequests;
+    private int maxBufferSize;
+    private int ringCapacity;
+    private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private AbstractSVCManager.SVCCreation svcCreation = AbstractSVCManager.SVCCreation.EAGER;
+    private RegisteredMemoryArena memoryArena;          // optional, shared by the communicators
+    private MemoryAllocator memoryAllocator;            // optional
+
+    /**
+     * @param maxWorkRequests the number of WRITE Work Requests.
+     * @param maxBufferSize the size of the WRITE buffers, which limits the size of a message with its framing.
+     * @param ringCapacity the size of the ring that the remote side WRITEs to, a multiple of 8.
+     * @param workCompletionHandlerSupplier provides the handler of the WRITE completions.
+     */
+    public RingBufferDependenciesFactory(int maxWorkRequests, int maxBufferSize, int ringCapacity,
+                                         Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this.maxWorkRequests = maxWorkRequests;
+        this.maxBufferSize = maxBufferSize;
+        this.ringCapacity = ringCapacity;
+        this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+    }
+
+    /**
+     * Sets when the SVCs of the communicators are created. Lazy or background creation makes
+     * communicator setup faster for many Work Requests.
+     * @param svcCreation the creation mode.
+     * @return this factory.
+     */
+    public RingBufferDependenciesFactory setSVCCreation(AbstractSVCManager.SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+        return this;
+    }
+
+    /**
+     * Sets an arena from which all communicators reserve the memory of their buffers and rings, instead of
+     * each registering its own memory region. The remote side WRITEs to the rings and head slots, so the
+     * arena must allow remote access, which lets every peer of the arena access them all
+     * (see {@link RegisteredMemoryArena#setRemoteAccess(boolean)}).
+     * @param memoryArena the arena.
+     * @return this factory.
+     */
+    public RingBufferDependenciesFactory setMemoryArena(RegisteredMemoryArena memoryArena) {
+        if((memoryArena != null) && !memoryArena.isRemoteAccess()){
+            throw new IllegalArgumentException("The rings need a memory arena with remote access.");
+        }
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    /**
+     * Sets the allocator of the communicators' memory, e.g. a mapped allocator for huge pages.
+     * @param memoryAllocator the allocator.
+     * @return this factory.
+     */
+    public RingBufferDependenciesFactory setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
+    }
+
+    @Override
+    public RdmaCommunicatorDependencies get() {
+        RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        OneSidedWriteSVCManager svcManager = new OneSidedWriteSVCManager(maxBufferSize, maxWorkRequests);
+        svcManager.setSVCCreation(svcCreation);
+        dependencies.setMaxWorkRequests(maxWorkRequests)
+                .setMaxBufferSize(maxBufferSize)
+                .setBufferManager(new RingBufferManager(maxBufferSize, maxWorkRequests, ringCapacity))
+                .setSvcManager(svcManager)
+                .setProxyProvider(new QueuedProxyProvider(maxWorkRequests))
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get())
+                .setMemoryArena(memoryArena)
+                .setMemoryAllocator(memoryAllocator);
+
+        return dependencies;
+    }
+}
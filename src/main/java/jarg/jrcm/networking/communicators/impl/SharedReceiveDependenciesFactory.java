@@ -0,0 +1,91 @@
+package jarg.jrcm.networking.communicators.impl;
+
+import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceiveBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceivePool;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.impl.SharedReceiveSVCManager;
+
+import java.util.function.Supplier;
+
+/**
+ * A Supplier that provides {@link RdmaCommunicatorDependencies} for {@link ActiveRdmaCommunicator
+ * ActiveRdmaCommunicators} that use <i>two-sided</i> RDMA operations and receive into the buffers of
+ * one {@link SharedReceivePool}. Each communicator keeps only <i>receivesPerConnection</i> RECVs posted,
+ * so the memory for receiving depends on the pool's size and not on the number of connections.
+ * Completions still arrive at the communicator whose connection received the message.
+ * <p>
+ * The remote side must not send more messages than the RECVs that it was promised, or it would overrun
+ * them. Therefore, the dependencies include a {@link CreditFlowController} by default, which gives the remote
+ * side <i>receivesPerConnection</i> initial credits instead of <i>maxWorkRequests</i>. The pool must reserve
+ * room for the flow control header in front of its buffers. Without flow control, every connection must post
+ * <i>maxWorkRequests</i> RECVs. Both sides of a connection must agree on whether flow control is used.
+ * </p>
+ */
+public class SharedReceiveDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
+
+    private int maxWorkRequests;
+    private int maxBufferSize;
+    private SharedReceivePool receivePool;
+    private int receivesPerConnection;
+    private Supplier<WorkRequestProxyProvider> proxyProviderSupplier;
+    private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private boolean creditFlowControl;
+
+    public SharedReceiveDependenciesFactory(int maxWorkRequests, int maxBufferSize,
+                                            SharedReceivePool receivePool, int receivesPerConnection,
+                                            Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
+                                            Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(maxWorkRequests, maxBufferSize, receivePool, receivesPerConnection, proxyProviderSupplier,
+                workCompletionHandlerSupplier, true);
+    }
+
+    public SharedReceiveDependenciesFactory(int maxWorkRequests, int maxBufferSize,
+                                            SharedReceivePool receivePool, int receivesPerConnection,
+                                            Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
+                                            Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                            boolean creditFlowControl) {
+        if(creditFlowControl && (receivePool.getHeadroom() < CreditFlowController.HEADER_SIZE)){
+            throw new IllegalArgumentException("The receive pool must reserve " + CreditFlowController.HEADER_SIZE
+                    + " bytes in front of its buffers for flow control.");
+        }
+        // prevent errors
+        if(!creditFlowControl && (receivesPerConnection < maxWorkRequests)){
+            throw new IllegalArgumentException("Without flow control, every connection needs " + maxWorkRequests
+                    + " RECVs, since the remote side can send that many messages.");
+        }
+        // a credit update must return more credits than it consumes, or the updates would never stop
+        if(creditFlowControl && (Math.min(receivesPerConnection, maxWorkRequests) < 3)){
+            throw new IllegalArgumentException("Credit-based flow control requires at least 3 RECVs per connection.");
+        }
+        this.maxWorkRequests = maxWorkRequests;
+        this.maxBufferSize = maxBufferSize;
+        this.receivePool = receivePool;
+        this.receivesPerConnection = receivesPerConnection;
+        this.proxyProviderSupplier = proxyProviderSupplier;
+        this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+        this.creditFlowControl = creditFlowControl;
+    }
+
+    @Override
+    public RdmaCommunicatorDependencies get() {
+        RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        SharedReceiveSVCManager svcManager = new SharedReceiveSVCManager(maxBufferSize, maxWorkRequests,
+                receivePool, receivesPerConnection);
+        if(creditFlowControl){
+            int initialCredits = svcManager.getReceivesPerConnection();
+            dependencies.setFlowController(new CreditFlowController(maxWorkRequests, initialCredits,
+                    Math.max(2, initialCredits / 4)));
+        }
+        dependencies.setMaxWorkRequests(maxWorkRequests)
+                .setMaxBufferSize(maxBufferSize)
+                .setBufferManager(new SharedReceiveBufferManager(maxBufferSize, maxWorkRequests, receivePool))
+                .setSvcManager(svcManager)
+                .setProxyProvider(proxyProviderSupplier.get())
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get());
+
+        return dependencies;
+    }
+}
@@ -0,0 +1,135 @@
+package jarg.jrcm.networking.communicators.impl;
+
+import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
+import jarg.jrcm.networking.dependencies.netrequests.impl.SizeClassProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.CompositeSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedReadSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.OneSidedWriteSVCManager;
+import jarg.jrcm.networking.dependencies.svc.impl.TwoSidedSVCManager;
+
+import java.util.function.Supplier;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+
+/**
+ * <p>
+ * A Supplier that provides {@link RdmaCommunicatorDependencies} for an {@link ActiveRdmaCommunicator}
+ * with buffers of several size classes (see {@link SizeClassedBufferManager}). Applications get proxies
+ * with buffers that fit their messages from the {@link SizeClassProxyProvider}
+ * (e.g. <i>getSizedPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED, length)</i>).
+ * </p>
+ *
+ * <p>
+ * Any postSend WR id can be used for SENDs, WRITEs and READs, so every WR id could need an SVC for each kind
+ * of operation. To avoid creating SVCs that are never used, SVCs are created lazily by default
+ * (see {@link AbstractSVCManager.SVCCreation}). Optionally, SENDs can use a {@link CreditFlowController}.
+ * Both sides of a connection must use the same configuration.
+ * </p>
+ */
+public class SizeClassedDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
+
+    private int[] classBufferSizes;
+    private int[] classWorkRequests;
+    private int receiveBufferSize;
+    private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private boolean creditFlowControl;
+    private AbstractSVCManager.SVCCreation svcCreation = AbstractSVCManager.SVCCreation.LAZY;
+    private RegisteredMemoryArena memoryArena;          // optional, shared by the communicators
+    private MemoryAllocator memoryAllocator;            // optional
+
+    public SizeClassedDependenciesFactory(int[] classBufferSizes, int[] classWorkRequests, int receiveBufferSize,
+                                          Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(classBufferSizes, classWorkRequests, receiveBufferSize, workCompletionHandlerSupplier, false);
+    }
+
+    public SizeClassedDependenciesFactory(int[] classBufferSizes, int[] classWorkRequests, int receiveBufferSize,
+                                          Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                          boolean creditFlowControl) {
+        if(receiveBufferSize <= 0){
+            throw new IllegalArgumentException("SENDs need RECV buffers of a positive size.");
+        }
+        this.classBufferSizes = classBufferSizes;
+        this.classWorkRequests = classWorkRequests;
+        this.receiveBufferSize = receiveBufferSize;
+        this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+        this.creditFlowControl = creditFlowControl;
+    }
+
+    /**
+     * Sets when the SVCs of the communicators are created.
+     * @param svcCreation the creation mode.
+     * @return this factory.
+     */
+    public SizeClassedDependenciesFactory setSVCCreation(AbstractSVCManager.SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+        return this;
+    }
+
+    /**
+     * Sets an arena from which all communicators reserve the memory of their buffers, instead of each
+     * registering its own memory region. The one-sided buffers can then only be the remote side of
+     * one-sided operations if the arena allows remote access, which exposes the buffers of all the
+     * communicators in the arena to every peer (see {@link RegisteredMemoryArena#setRemoteAccess(boolean)}).
+     * @param memoryArena the arena.
+     * @return this factory.
+     */
+    public SizeClassedDependenciesFactory setMemoryArena(RegisteredMemoryArena memoryArena) {
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    /**
+     * Sets the allocator of the communicators' memory, e.g. a mapped allocator for huge pages.
+     * @param memoryAllocator the allocator.
+     * @return this factory.
+     */
+    public SizeClassedDependenciesFactory setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
+    }
+
+    @Override
+    public RdmaCommunicatorDependencies get() {
+        RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        int maxWorkRequests = 0;
+        for(int workRequests : classWorkRequests){
+            maxWorkRequests += workRequests;
+        }
+        int headroom = 0;
+        if(creditFlowControl){
+            CreditFlowController flowController = new CreditFlowController(maxWorkRequests);
+            headroom = flowController.getHeaderSize();
+            dependencies.setFlowController(flowController);
+        }
+        SizeClassedBufferManager bufferManager = new SizeClassedBufferManager(classBufferSizes, classWorkRequests,
+                receiveBufferSize, headroom);
+        int maxBufferSize = bufferManager.getMaxBufferSize();
+        // all managers serve all WR ids, since any WR id can be used for any operation
+        CompositeSVCManager svcManager = new CompositeSVCManager(maxBufferSize, maxWorkRequests);
+        svcManager.setSVCCreation(svcCreation);
+        svcManager.addSVCManager(new TwoSidedSVCManager(maxBufferSize, maxWorkRequests), 0, maxWorkRequests,
+                        TWO_SIDED_SEND_SIGNALED, TWO_SIDED_SEND_UNSIGNALED, TWO_SIDED_SEND_WITH_IMM,
+                        ONE_SIDED_WRITE_WITH_IMM, TWO_SIDED_RECV)
+                .addSVCManager(new OneSidedWriteSVCManager(maxBufferSize, maxWorkRequests), 0, maxWorkRequests,
+                        ONE_SIDED_WRITE_SIGNALED, ONE_SIDED_WRITE_UNSIGNALED)
+                .addSVCManager(new OneSidedReadSVCManager(maxBufferSize, maxWorkRequests), 0, maxWorkRequests,
+                        ONE_SIDED_READ_SIGNALED);
+
+        dependencies.setMaxWorkRequests(maxWorkRequests)
+                .setMaxBufferSize(maxBufferSize)
+                .setBufferManager(bufferManager)
+                .setSvcManager(svcManager)
+                .setProxyProvider(new SizeClassProxyProvider(classWorkRequests))
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get())
+                .setMemoryArena(memoryArena)
+                .setMemoryAllocator(memoryAllocator);
+
+        return dependencies;
+    }
+}
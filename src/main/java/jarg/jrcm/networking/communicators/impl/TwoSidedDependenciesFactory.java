@@ -1,16 +1,21 @@
 package jarg.jrcm.networking.communicators.impl;
 
 import jarg.jrcm.networking.dependencies.RdmaCommunicatorDependencies;
+import jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
 import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
 import jarg.jrcm.networking.dependencies.svc.impl.TwoSidedSVCManager;
 
 import java.util.function.Supplier;
 
 /**
  * A Supplier that provides {@link RdmaCommunicatorDependencies} for an {@link ActiveRdmaCommunicator}
- * that wants to use only <i>two-sided</i> RDMA operations.
+ * that wants to use only <i>two-sided</i> RDMA operations. Optionally, the dependencies can include a
+ * {@link CreditFlowController}. Both sides of a connection must agree on whether flow control is used.
  */
 public class TwoSidedDependenciesFactory implements Supplier<RdmaCommunicatorDependencies> {
 
@@ -18,25 +23,105 @@ public class TwoSidedDependenciesFactory implements Supplier<RdmaCommunicatorDep
     private int maxBufferSize;
     private Supplier<WorkRequestProxyProvider> proxyProviderSupplier;
     private Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier;
+    private boolean creditFlowControl;
+    private AbstractSVCManager.SVCCreation svcCreation = AbstractSVCManager.SVCCreation.EAGER;
+    private int inlineThreshold;                        // 0 disables inline SENDs
+    private int maxDetached;                            // 0 disables detaching inline SENDs
+    private RegisteredMemoryArena memoryArena;          // optional, shared by the communicators
+    private MemoryAllocator memoryAllocator;            // optional
 
     public TwoSidedDependenciesFactory(int maxWorkRequests, int maxBufferSize,
                                        Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
                                        Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier) {
+        this(maxWorkRequests, maxBufferSize, proxyProviderSupplier, workCompletionHandlerSupplier, false);
+    }
+
+    public TwoSidedDependenciesFactory(int maxWorkRequests, int maxBufferSize,
+                                       Supplier<WorkRequestProxyProvider> proxyProviderSupplier,
+                                       Supplier<AbstractWorkCompletionHandler> workCompletionHandlerSupplier,
+                                       boolean creditFlowControl) {
         this.maxWorkRequests = maxWorkRequests;
         this.maxBufferSize = maxBufferSize;
         this.proxyProviderSupplier = proxyProviderSupplier;
         this.workCompletionHandlerSupplier = workCompletionHandlerSupplier;
+        this.creditFlowControl = creditFlowControl;
+    }
+
+    /**
+     * Sets when the SVCs of the communicators are created. Lazy or background creation makes
+     * communicator setup faster for many Work Requests.
+     * @param svcCreation the creation mode.
+     * @return this factory.
+     */
+    public TwoSidedDependenciesFactory setSVCCreation(AbstractSVCManager.SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of SENDs that are posted inline, including any headroom
+     * (see {@link TwoSidedSVCManager}). The queue pairs must support inline data of this size.
+     * @param inlineThreshold the maximum number of bytes, 0 by default, which disables inline SENDs.
+     * @return this factory.
+     */
+    public TwoSidedDependenciesFactory setInlineThreshold(int inlineThreshold) {
+        this.inlineThreshold = inlineThreshold;
+        return this;
+    }
+
+    /**
+     * Sets how many unsignaled inline SENDs can release their WR ids right after posting (see
+     * {@link jarg.jrcm.networking.dependencies.svc.SelectiveSignaler#setMaxDetached(int)}). The send queues
+     * must have room for this many Work Requests besides the maximum Work Requests.
+     * @param maxDetached the budget of detached SENDs, 0 by default.
+     * @return this factory.
+     */
+    public TwoSidedDependenciesFactory setMaxDetached(int maxDetached) {
+        this.maxDetached = maxDetached;
+        return this;
+    }
+
+    /**
+     * Sets an arena from which all communicators reserve the memory of their buffers, instead of each
+     * registering its own memory region.
+     * @param memoryArena the arena.
+     * @return this factory.
+     */
+    public TwoSidedDependenciesFactory setMemoryArena(RegisteredMemoryArena memoryArena) {
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    /**
+     * Sets the allocator of the communicators' memory, e.g. a mapped allocator for huge pages.
+     * @param memoryAllocator the allocator.
+     * @return this factory.
+     */
+    public TwoSidedDependenciesFactory setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
     }
 
     @Override
     public RdmaCommunicatorDependencies get() {
         RdmaCommunicatorDependencies dependencies = new RdmaCommunicatorDependencies();
+        int headroom = 0;
+        if(creditFlowControl){
+            CreditFlowController flowController = new CreditFlowController(maxWorkRequests);
+            headroom = flowController.getHeaderSize();
+            dependencies.setFlowController(flowController);
+        }
+        TwoSidedSVCManager svcManager = new TwoSidedSVCManager(maxBufferSize, maxWorkRequests, inlineThreshold);
+        svcManager.setSVCCreation(svcCreation);
+        svcManager.getSelectiveSignaler().setMaxDetached(maxDetached);
         dependencies.setMaxWorkRequests(maxWorkRequests)
                 .setMaxBufferSize(maxBufferSize)
-                .setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests))
-                .setSvcManager(new TwoSidedSVCManager(maxBufferSize, maxWorkRequests))
+                .setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests, headroom))
+                .setSvcManager(svcManager)
                 .setProxyProvider(proxyProviderSupplier.get())
-                .setWorkCompletionHandler(workCompletionHandlerSupplier.get());
+                .setWorkCompletionHandler(workCompletionHandlerSupplier.get())
+                .setMemoryArena(memoryArena)
+                .setMemoryAllocator(memoryAllocator);
 
         return dependencies;
     }
@@ -1,7 +1,10 @@
 package jarg.jrcm.networking.dependencies;
 
 import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.flowcontrol.FlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
 import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegisteredMemoryArena;
 import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkCompletionHandler;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
 import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
@@ -16,6 +19,9 @@ public class RdmaCommunicatorDependencies {
     private AbstractSVCManager svcManager;
     private WorkRequestProxyProvider proxyProvider;
     private AbstractWorkCompletionHandler workCompletionHandler;
+    private FlowController flowController;              // optional, can be null
+    private RegisteredMemoryArena memoryArena;          // optional, can be null
+    private MemoryAllocator memoryAllocator;            // optional, can be null
     private int maxWorkRequests;
     private int maxBufferSize;
 
@@ -57,6 +63,48 @@ public class RdmaCommunicatorDependencies {
         return this;
     }
 
+    public FlowController getFlowController() {
+        return flowController;
+    }
+
+    public RdmaCommunicatorDependencies setFlowController(FlowController flowController) {
+        this.flowController = flowController;
+        return this;
+    }
+
+    public RegisteredMemoryArena getMemoryArena() {
+        return memoryArena;
+    }
+
+    /**
+     * Sets an arena that is shared by many communicators. The communicator then reserves the memory of
+     * its buffers from the arena instead of registering its own memory region, and it fails to initialize
+     * if the arena doesn't admit it. The buffer manager must support allocating its buffers in given memory.
+     * @param memoryArena the arena.
+     * @return these dependencies.
+     */
+    public RdmaCommunicatorDependencies setMemoryArena(RegisteredMemoryArena memoryArena) {
+        this.memoryArena = memoryArena;
+        return this;
+    }
+
+    public MemoryAllocator getMemoryAllocator() {
+        return memoryAllocator;
+    }
+
+    /**
+     * Sets the allocator of the memory that the communicator registers for its buffers, e.g. a
+     * {@link jarg.jrcm.networking.dependencies.netbuffers.impl.MappedMemoryAllocator} for huge pages.
+     * If it isn't set, the buffer manager allocates direct memory. It isn't used with a memory arena,
+     * which has its own allocator. The buffer manager must support allocating its buffers in given memory.
+     * @param memoryAllocator the allocator.
+     * @return these dependencies.
+     */
+    public RdmaCommunicatorDependencies setMemoryAllocator(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        return this;
+    }
+
     public int getMaxWorkRequests() {
         return maxWorkRequests;
     }
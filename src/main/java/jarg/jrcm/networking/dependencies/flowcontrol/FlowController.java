@@ -0,0 +1,88 @@
+package jarg.jrcm.networking.dependencies.flowcontrol;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.svc.SVCManager;
+
+/**
+ * <p>
+ * Controls the rate at which two-sided SEND Work Requests are posted to the NIC, so that a sender
+ * never sends more messages than the receiver can accept. With two-sided SEND/RECV, a message that
+ * arrives when the receiver has no posted RECV Work Request causes <i>Receiver Not Ready (RNR)</i>
+ * retries, which can stall the connection. A FlowController prevents this by keeping track of the
+ * RECVs that the remote side has posted and by informing the remote side of the RECVs posted
+ * locally.
+ * </p>
+ *
+ * <p>
+ * A FlowController is an optional dependency of an {@link RdmaCommunicator}. The communicator
+ * passes it every SEND it is asked to post, as well as every WRITE with immediate, which also consumes
+ * a remote RECV, and every Work Completion Event it receives. It also
+ * learns from the {@link SVCManager} about every RECV that is re-posted.
+ * </p>
+ */
+public interface FlowController {
+
+    /**
+     * Get the number of bytes that the FlowController needs in front of every two-sided
+     * Work Request buffer for its own header (see {@link NetworkBufferManager#getHeadroom()}).
+     * @return the number of bytes.
+     */
+    int getHeaderSize();
+
+    /**
+     * Passes the FlowController the dependencies it needs. Called by the communicator
+     * after its other dependencies have been initialized.
+     * @param communicator the communicator that uses this FlowController.
+     * @param bufferManager the communicator's {@link NetworkBufferManager}.
+     * @param svcManager the communicator's {@link SVCManager}.
+     */
+    void initialize(RdmaCommunicator communicator, NetworkBufferManager bufferManager, SVCManager svcManager);
+
+    /**
+     * Posts a two-sided SEND, or another Work Request that consumes a remote RECV, to the NIC
+     * if the remote side can accept it, otherwise queues it to be posted later.
+     * @param workRequestProxy represents the SEND Work Request.
+     * @return true if the SEND was posted or queued, false on error.
+     */
+    boolean postSend(WorkRequestProxy workRequestProxy);
+
+    /**
+     * Batch version of {@link FlowController#postSend(WorkRequestProxy)}, which takes the credits of all
+     * the Work Requests at once. The batch can also contain Work Requests that don't consume a remote RECV,
+     * which are posted without credits. Implementations should post the batch with one
+     * {@link SVCManager#executeSVCs(WorkRequestProxy[], int)} call. The default implementation posts them
+     * one at a time, the ones that don't consume a remote RECV through their communicator.
+     * @param workRequestProxies represent the Work Requests, in posting order.
+     * @param count how many proxies of the array to post, starting from index 0.
+     * @return true if all Work Requests were posted or queued, false on error.
+     */
+    default boolean postSends(WorkRequestProxy[] workRequestProxies, int count){
+        boolean success = true;
+        for(int i=0; i < count; i++){
+            WorkRequestProxy workRequestProxy = workRequestProxies[i];
+            if(workRequestProxy.getWorkRequestType().consumesRemoteReceive()){
+                success &= postSend(workRequestProxy);
+            }else{
+                success &= workRequestProxy.getRdmaCommunicator().postNetOperationToNIC(workRequestProxy);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Called after RECV Work Requests have been re-posted to the NIC.
+     * @param count how many RECV Work Requests were re-posted.
+     */
+    void onReceivesPosted(int count);
+
+    /**
+     * Called by the communicator when a Work Completion Event arrives successfully.
+     * @param workCompletionEvent the Work Completion Event.
+     * @return true if the event concerned the FlowController only and was consumed by it,
+     * false if it must be passed on to the application.
+     */
+    boolean onWorkCompletion(IbvWC workCompletionEvent);
+}
@@ -0,0 +1,330 @@
+package jarg.jrcm.networking.dependencies.flowcontrol.impl;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.flowcontrol.FlowController;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.SVCManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+
+/**
+ * <p>
+ * A {@link FlowController} that uses receiver credits. Each credit allows the sender to send one
+ * message, because it stands for one RECV Work Request posted by the receiver. Both sides start with
+ * as many credits as the RECVs that the other side pre-posts (<i>maxWorkRequests</i>). A sender
+ * consumes a credit per SEND. A receiver gains a credit to return every time it re-posts a RECV, which
+ * happens when the application releases a received message.
+ * </p>
+ *
+ * <p>
+ * Credits are returned to the remote side in a 4-byte header, which is placed in the headroom in front
+ * of every two-sided buffer (see {@link NetworkBufferManager#getHeadroom()}). Normally, the credits are
+ * piggybacked on outgoing messages. When traffic is one-way and enough credits have accumulated, a small
+ * explicit <i>credit update</i> message is sent instead. Credit updates are handled internally and never
+ * reach the application.
+ * </p>
+ *
+ * <p>
+ * A SEND that finds no credits is queued and posted, in order, as soon as credits arrive. A queued SEND that
+ * fails to be posted then is released to the proxy provider, since the application doesn't know about the
+ * failure. The last credit is reserved for messages that return credits, so that both sides can never run
+ * out of credits at the same time while they owe each other credits.
+ * </p>
+ */
+public class CreditFlowController implements FlowController {
+    private static final Logger logger = LoggerFactory.getLogger(CreditFlowController.class);
+
+    public static final int HEADER_SIZE = Integer.BYTES;
+    private static final int CREDIT_UPDATE_FLAG = 0x80000000;   // marks credit update messages
+    private static final int CREDITS_MASK = 0x7FFFFFFF;
+
+    private final int creditUpdateThreshold;                // credits to return that trigger a credit update
+    private final ArrayDeque<WorkRequestProxy> queuedSends; // SENDs waiting for credits
+    private final AtomicIntegerArray creditUpdateSends;     // 1 for SEND WR ids used for credit updates
+    private final WorkRequestProxy[] batchedSends;          // the Work Requests of a batch that have credits
+    private int sendCredits;                                // RECVs posted by the remote side
+    private int creditsToReturn;                            // RECVs re-posted locally, not yet announced
+    // dependencies ----------------------------------
+    private WorkRequestProxyProvider proxyProvider;
+    private NetworkBufferManager bufferManager;
+    private SVCManager svcManager;
+
+    public CreditFlowController(int maxWorkRequests){
+        this(maxWorkRequests, Math.max(2, maxWorkRequests / 4));
+    }
+
+    public CreditFlowController(int maxWorkRequests, int creditUpdateThreshold){
+        this(maxWorkRequests, maxWorkRequests, creditUpdateThreshold);
+    }
+
+    /**
+     * @param maxWorkRequests the maximum number of postSend and of postRecv Work Requests.
+     * @param initialCredits the RECVs that the remote side pre-posts, if they are fewer than
+     *                       <i>maxWorkRequests</i>, e.g. with shared receive buffers.
+     * @param creditUpdateThreshold the credits to return that trigger a credit update.
+     */
+    public CreditFlowController(int maxWorkRequests, int initialCredits, int creditUpdateThreshold){
+        if((maxWorkRequests < 2) || (initialCredits < 2) || (initialCredits > maxWorkRequests)){
+            throw new IllegalArgumentException("Credit-based flow control requires at least 2 Work Requests.");
+        }
+        if(creditUpdateThreshold < 1){
+            throw new IllegalArgumentException("The credit update threshold must be positive.");
+        }
+        this.creditUpdateThreshold = creditUpdateThreshold;
+        this.sendCredits = initialCredits;
+        this.creditsToReturn = 0;
+        queuedSends = new ArrayDeque<>();
+        creditUpdateSends = new AtomicIntegerArray(maxWorkRequests);
+        batchedSends = new WorkRequestProxy[maxWorkRequests];
+    }
+
+    @Override
+    public int getHeaderSize() {
+        return HEADER_SIZE;
+    }
+
+    @Override
+    public void initialize(RdmaCommunicator communicator, NetworkBufferManager bufferManager,
+                           SVCManager svcManager) {
+        this.proxyProvider = communicator.getWorkRequestProxyProvider();
+        this.bufferManager = bufferManager;
+        this.svcManager = svcManager;
+    }
+
+    @Override
+    public synchronized boolean postSend(WorkRequestProxy workRequestProxy) {
+        // keep the order of messages, queued ones go first
+        if(!queuedSends.isEmpty() || !hasCreditForData()){
+            queuedSends.add(workRequestProxy);
+            return true;
+        }
+        return postWithCredit(workRequestProxy, 0);
+    }
+
+    /**
+     * Takes the credits of a whole batch and posts the Work Requests that have credits, or don't need any,
+     * with one {@link SVCManager#executeSVCs(WorkRequestProxy[], int)} call. If that call fails, it cannot
+     * tell which Work Requests were posted, so the credits of the batch are not given back.
+     */
+    @Override
+    public synchronized boolean postSends(WorkRequestProxy[] workRequestProxies, int count) {
+        boolean success = true;
+        int batched = 0;
+        for(int i=0; i < count; i++){
+            WorkRequestProxy workRequestProxy = workRequestProxies[i];
+            if(workRequestProxy.getWorkRequestType().consumesRemoteReceive()){
+                // keep the order of messages, queued ones go first
+                if(!queuedSends.isEmpty() || !hasCreditForData()){
+                    queuedSends.add(workRequestProxy);
+                    continue;
+                }
+                takeCredit(workRequestProxy, 0);
+            }
+            batchedSends[batched] = workRequestProxy;
+            batched ++;
+            if(batched == batchedSends.length){
+                success &= executeBatch(batched);
+                batched = 0;
+            }
+        }
+        if(batched > 0){
+            success &= executeBatch(batched);
+        }
+        return success;
+    }
+
+    @Override
+    public void onReceivesPosted(int count) {
+        WorkRequestProxy failedSend;
+        boolean creditUpdate;
+        synchronized (this){
+            creditsToReturn += count;
+            // a queued SEND may use the last credit now that it has credits to return
+            failedSend = postQueuedSends();
+            creditUpdate = needsCreditUpdate();
+        }
+        releaseFailedSend(failedSend);
+        if(creditUpdate){
+            sendCreditUpdate();
+        }
+    }
+
+    @Override
+    public boolean onWorkCompletion(IbvWC workCompletionEvent) {
+        int workRequestId = (int) workCompletionEvent.getWr_id();
+        int operationCode = workCompletionEvent.getOpcode();
+
+        if(operationCode == IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode()){
+            ByteBuffer header = bufferManager.getWorkRequestHeadroom(TWO_SIDED_RECV, workRequestId);
+            int headerValue = header.getInt(0);
+            WorkRequestProxy failedSend;
+            synchronized (this){
+                sendCredits += headerValue & CREDITS_MASK;
+                failedSend = postQueuedSends();
+            }
+            releaseFailedSend(failedSend);
+            if((headerValue & CREDIT_UPDATE_FLAG) != 0){
+                // nothing for the application, re-post the RECV immediately
+                proxyProvider.releaseWorkRequest(proxyProvider.getWorkRequestProxyForWc(workCompletionEvent));
+                return true;
+            }
+        }else if(operationCode == IbvWC.IbvWcOpcode.IBV_WC_SEND.getOpcode()){
+            if(creditUpdateSends.compareAndSet(workRequestId, 1, 0)){
+                proxyProvider.releaseWorkRequest(proxyProvider.getWorkRequestProxyForWc(workCompletionEvent));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends an explicit credit update message, if a SEND WR id is available and credits still need
+     * to be returned.
+     */
+    private void sendCreditUpdate(){
+        // get the proxy before locking, the provider has its own synchronization
+        WorkRequestProxy workRequestProxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        if(workRequestProxy == null){
+            // will retry on the next re-posted RECV
+            return;
+        }
+        boolean sent = false;
+        synchronized (this){
+            if(needsCreditUpdate()){
+                workRequestProxy.getBuffer().limit(0);
+                creditUpdateSends.set(workRequestProxy.getId(), 1);
+                sent = postWithCredit(workRequestProxy, CREDIT_UPDATE_FLAG);
+                if(!sent){
+                    creditUpdateSends.set(workRequestProxy.getId(), 0);
+                }
+            }
+        }
+        if(!sent){
+            proxyProvider.releaseWorkRequest(workRequestProxy);
+        }
+    }
+
+    /**
+     * Posts queued SENDs for which there are credits. It stops at the first SEND that fails to be posted and
+     * leaves the rest queued for the next credits. Must be called while holding this object's lock.
+     * @return the SEND that failed to be posted, which must be released with
+     * {@link #releaseFailedSend(WorkRequestProxy)}, or null if none failed.
+     */
+    private WorkRequestProxy postQueuedSends(){
+        while(!queuedSends.isEmpty() && hasCreditForData()){
+            WorkRequestProxy workRequestProxy = queuedSends.poll();
+            if(!postWithCredit(workRequestProxy, 0)){
+                return workRequestProxy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives the WR id of a queued SEND that failed to be posted back to the proxy provider. It is called
+     * without this object's lock, since releasing can complete the application's asynchronous requests.
+     * @param failedSend the SEND or null.
+     */
+    private void releaseFailedSend(WorkRequestProxy failedSend){
+        if(failedSend != null){
+            proxyProvider.releaseWorkRequest(failedSend);
+        }
+    }
+
+    /**
+     * Checks if a data message can be sent. The last credit can only be used by a message that returns
+     * credits. Must be called while holding this object's lock.
+     */
+    private boolean hasCreditForData(){
+        return (sendCredits > 1) || ((sendCredits == 1) && (creditsToReturn > 0));
+    }
+
+    /**
+     * Checks if an explicit credit update must be sent. That's only needed when there are no outgoing
+     * messages to piggyback the credits on. Must be called while holding this object's lock.
+     */
+    private boolean needsCreditUpdate(){
+        return (creditsToReturn >= creditUpdateThreshold) && (sendCredits > 0) && queuedSends.isEmpty();
+    }
+
+    /**
+     * Consumes a credit, writes the credits to return in the message's header and posts the
+     * message. Must be called while holding this object's lock.
+     * @param workRequestProxy represents the SEND Work Request.
+     * @param flags flags to add to the header.
+     * @return true on success, false otherwise, in which case the credits are given back.
+     */
+    private boolean postWithCredit(WorkRequestProxy workRequestProxy, int flags){
+        int previousSendCredits = sendCredits;
+        int previousCreditsToReturn = creditsToReturn;
+        takeCredit(workRequestProxy, flags);
+        if(!svcManager.executeSVC(workRequestProxy)){
+            logger.error("Failed to post SEND with id " + workRequestProxy.getId());
+            sendCredits = previousSendCredits;
+            creditsToReturn = previousCreditsToReturn;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a credit for a message and writes the credits to return in its header. A WRITE with
+     * immediate also consumes a remote RECV, but it has no header, so the credits to return are kept
+     * for a later message. Must be called while holding this object's lock.
+     * @param workRequestProxy represents the SEND Work Request.
+     * @param flags flags to add to the header.
+     */
+    private void takeCredit(WorkRequestProxy workRequestProxy, int flags){
+        if(workRequestProxy.getWorkRequestType().isTwoSidedSend()){
+            ByteBuffer header = bufferManager.getWorkRequestHeadroom(TWO_SIDED_SEND_SIGNALED,
+                    workRequestProxy.getId());
+            header.putInt(0, creditsToReturn | flags);
+            creditsToReturn = 0;
+        }
+        sendCredits --;
+    }
+
+    /**
+     * Posts the first Work Requests of the batch array with one call. Must be called while holding this
+     * object's lock.
+     * @param count how many Work Requests to post.
+     * @return true on success, false otherwise.
+     */
+    private boolean executeBatch(int count){
+        boolean success = svcManager.executeSVCs(batchedSends, count);
+        if(!success){
+            logger.error("Failed to post a batch of " + count + " Work Requests.");
+        }
+        // don't keep the proxies reachable after the batch
+        for(int i=0; i < count; i++){
+            batchedSends[i] = null;
+        }
+        return success;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public synchronized int getSendCredits() {
+        return sendCredits;
+    }
+
+    public synchronized int getCreditsToReturn() {
+        return creditsToReturn;
+    }
+
+    public synchronized int getQueuedSends(){
+        return queuedSends.size();
+    }
+}
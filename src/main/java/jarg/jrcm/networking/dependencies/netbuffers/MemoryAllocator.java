@@ -0,0 +1,56 @@
+package jarg.jrcm.networking.dependencies.netbuffers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates the memory that is registered to the NIC for communications. The memory is given to a
+ * {@link NetworkBufferManager} with {@link NetworkBufferManager#allocateCommunicationBuffers(ByteBuffer)}.
+ * By default, memory is allocated with {@link ByteBuffer#allocateDirect(int)}, but it can also come from
+ * other sources, like memory-mapped files on huge pages.
+ */
+@FunctionalInterface
+public interface MemoryAllocator {
+
+    int CACHE_LINE_SIZE = 64;
+
+    /**
+     * Allocates memory with {@link ByteBuffer#allocateDirect(int)}.
+     */
+    MemoryAllocator DIRECT = MemoryAllocator::allocateAlignedDirect;
+
+    /**
+     * Allocates memory for communications.
+     * @param size the number of bytes.
+     * @param alignment the alignment of the memory's address. Must be a power of 2.
+     * @return a direct ByteBuffer with the given size, which starts at an aligned address.
+     * @throws IOException if the memory cannot be allocated.
+     */
+    ByteBuffer allocate(int size, int alignment) throws IOException;
+
+    /**
+     * Allocates memory with {@link ByteBuffer#allocateDirect(int)}, starting at an aligned address.
+     * @param size the number of bytes.
+     * @param alignment the alignment of the memory's address. Must be a power of 2.
+     * @return the memory.
+     */
+    static ByteBuffer allocateAlignedDirect(int size, int alignment){
+        ByteBuffer memory = ByteBuffer.allocateDirect(size + alignment - 1);
+        return alignedSlice(memory, size, alignment);
+    }
+
+    /**
+     * Creates a view of a direct buffer that starts at an aligned address.
+     * @param memory the buffer, with at least <i>size + alignment - 1</i> bytes.
+     * @param size the size of the view.
+     * @param alignment the alignment of the view's address. Must be a power of 2.
+     * @return the view.
+     */
+    static ByteBuffer alignedSlice(ByteBuffer memory, int size, int alignment){
+        long address = ((sun.nio.ch.DirectBuffer) memory).address();
+        int padding = (int) (-address & (alignment - 1));
+        memory.limit(padding + size);
+        memory.position(padding);
+        return memory.slice();
+    }
+}
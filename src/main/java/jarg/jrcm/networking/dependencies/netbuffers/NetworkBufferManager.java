@@ -17,6 +17,23 @@ public interface NetworkBufferManager {
      */
     void allocateCommunicationBuffers();
 
+    /**
+     * Get the number of bytes that {@link NetworkBufferManager#allocateCommunicationBuffers(ByteBuffer)}
+     * needs.
+     * @return the number of bytes or -1 if the manager cannot allocate its buffers in given memory,
+     * e.g. because they don't fit in a ByteBuffer.
+     */
+    int getRequiredMemory();
+
+    /**
+     * Allocates the network buffers as views of the given memory instead of allocating new memory.
+     * This allows several managers to share one memory region registered to the NIC
+     * (see {@link NetworkBufferManager#getBufferToRegister()}).
+     * @param memory a direct ByteBuffer with at least {@link NetworkBufferManager#getRequiredMemory()} bytes
+     *               after its position.
+     */
+    void allocateCommunicationBuffers(ByteBuffer memory);
+
     /**
      * <p>
      * Get the buffer that will be used for communications and will be registered to the RDMA NIC.
@@ -59,6 +76,20 @@ public interface NetworkBufferManager {
      */
     ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId);
 
+    /**
+     * Batch version of {@link NetworkBufferManager#getWorkRequestBuffer(WorkRequestType, int)}.
+     * Get the ByteBuffers associated with Work Requests of the same type.
+     * @param requestType the type of the Work Requests.
+     * @param workRequestIds the ids of the Work Requests.
+     * @param buffers where to store the ByteBuffers. A ByteBuffer will be null if it doesn't exist.
+     * @param count how many ids of the array to look up, starting from index 0.
+     */
+    default void getWorkRequestBuffers(WorkRequestType requestType, int[] workRequestIds,
+                                       ByteBuffer[] buffers, int count){
+        for(int i=0; i < count; i++){
+            buffers[i] = getWorkRequestBuffer(requestType, workRequestIds[i]);
+        }
+    }
 
     /**
      * Get the address of the ByteBuffer that is associated with a Work Request that has
@@ -69,4 +100,42 @@ public interface NetworkBufferManager {
      * doesn't exist.
      */
     long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId);
+
+    /**
+     * Get the local key of the memory region that contains the buffer of a Work Request, if the buffer
+     * is not in the memory of {@link NetworkBufferManager#getBufferToRegister()}, e.g. because it was
+     * allocated and registered later.
+     * @param requestType the type of the Work Request.
+     * @param workRequestId the id of the Work Request.
+     * @return the local key or -1 if the buffer is in the registered memory of the communicator.
+     */
+    default int getWorkRequestLocalKey(WorkRequestType requestType, int workRequestId){
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Get the number of bytes that are reserved in front of every Work Request buffer for
+     * jRCM's own message headers (e.g. flow control information). These bytes are transmitted
+     * together with the buffer, but they are not part of the ByteBuffer that the application uses,
+     * so the application never sees them. The address returned by
+     * {@link NetworkBufferManager#getWorkRequestBufferAddress(WorkRequestType, int)} is the address
+     * of the reserved bytes, since the Work Request's memory starts there.
+     * </p>
+     * @return the number of reserved bytes, 0 by default.
+     */
+    default int getHeadroom(){
+        return 0;
+    }
+
+    /**
+     * Get a ByteBuffer view of the bytes reserved in front of the buffer of a Work Request
+     * (see {@link NetworkBufferManager#getHeadroom()}).
+     * @param requestType the type of the Work Request.
+     * @param workRequestId the id of the Work Request.
+     * @return the reserved bytes or null if no bytes are reserved or the Work Request doesn't exist.
+     */
+    default ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId){
+        return null;
+    }
 }
@@ -0,0 +1,158 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+
+/**
+ * <p>
+ * A {@link NetworkBufferManager} that combines other managers, so that one queue pair can use several
+ * kinds of RDMA operations, each with its own buffers. E.g. a {@link TwoSidedBufferManager} for control
+ * messages and {@link OneSidedBufferManager OneSidedBufferManagers} for bulk WRITEs and READs. Each manager
+ * serves some Work Request types and a range of the postSend WR ids, starting from a first WR id. It sees
+ * the WR ids of its range as starting from 0. RECV WR ids have their own space, so they are passed to
+ * the manager of RECVs as they are.
+ * </p>
+ *
+ * <p>
+ * The buffers of all managers are views of one large buffer, so that only one memory region is registered
+ * to the NIC. Thus, the combined managers must support allocating their buffers in given memory
+ * (see {@link NetworkBufferManager#allocateCommunicationBuffers(ByteBuffer)}).
+ * </p>
+ */
+public class CompositeBufferManager implements NetworkBufferManager {
+
+    private final List<NetworkBufferManager> bufferManagers;
+    private final NetworkBufferManager[] typeBufferManagers;    // the manager of each Work Request type
+    private final int[] typeFirstWorkRequestIds;                // the first WR id of each type's manager
+    private ByteBuffer registeredMemoryBuffer;                  // large memory block for all managers
+
+    public CompositeBufferManager(){
+        bufferManagers = new ArrayList<>();
+        typeBufferManagers = new NetworkBufferManager[WorkRequestType.values().length];
+        typeFirstWorkRequestIds = new int[WorkRequestType.values().length];
+    }
+
+    /**
+     * Adds a manager for some Work Request types. Must be called before allocating the buffers.
+     * @param bufferManager the manager.
+     * @param firstWorkRequestId the first postSend WR id of the manager's range.
+     * @param requestTypes the Work Request types that the manager serves.
+     * @return this manager.
+     */
+    public CompositeBufferManager addBufferManager(NetworkBufferManager bufferManager, int firstWorkRequestId,
+                                                   WorkRequestType... requestTypes){
+        if(bufferManager.getRequiredMemory() < 0){
+            throw new IllegalArgumentException("The buffer manager cannot allocate its buffers in given memory.");
+        }
+        for(WorkRequestType requestType : requestTypes){
+            if(typeBufferManagers[requestType.ordinal()] != null){
+                throw new IllegalArgumentException("Work Request type " + requestType + " has a buffer manager.");
+            }
+            typeBufferManagers[requestType.ordinal()] = bufferManager;
+            typeFirstWorkRequestIds[requestType.ordinal()] = (requestType == TWO_SIDED_RECV) ? 0 : firstWorkRequestId;
+        }
+        bufferManagers.add(bufferManager);
+        return this;
+    }
+
+    @Override
+    public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        int requiredMemory = 0;
+        for(NetworkBufferManager bufferManager : bufferManagers){
+            requiredMemory += bufferManager.getRequiredMemory();
+        }
+        return requiredMemory;
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
+        int offset = 0;
+        for(NetworkBufferManager bufferManager : bufferManagers){
+            registeredMemoryBuffer.clear().position(offset);
+            bufferManager.allocateCommunicationBuffers(registeredMemoryBuffer.slice());
+            offset += bufferManager.getRequiredMemory();
+        }
+        registeredMemoryBuffer.clear();
+    }
+
+    @Override
+    public ByteBuffer getBufferToRegister() {
+        return registeredMemoryBuffer;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId) {
+        NetworkBufferManager bufferManager = getBufferManager(requestType);
+        if(bufferManager == null){
+            return null;
+        }
+        return bufferManager.getWorkRequestBuffer(requestType,
+                workRequestId - typeFirstWorkRequestIds[requestType.ordinal()]);
+    }
+
+    @Override
+    public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
+        NetworkBufferManager bufferManager = getBufferManager(requestType);
+        if(bufferManager == null){
+            return -1;
+        }
+        return bufferManager.getWorkRequestBufferAddress(requestType,
+                workRequestId - typeFirstWorkRequestIds[requestType.ordinal()]);
+    }
+
+    @Override
+    public int getWorkRequestLocalKey(WorkRequestType requestType, int workRequestId) {
+        NetworkBufferManager bufferManager = getBufferManager(requestType);
+        if(bufferManager == null){
+            return -1;
+        }
+        return bufferManager.getWorkRequestLocalKey(requestType,
+                workRequestId - typeFirstWorkRequestIds[requestType.ordinal()]);
+    }
+
+    /**
+     * Get the headroom of the manager of RECVs, since it determines the layout of received messages.
+     * @return the headroom or 0 if there is no manager for RECVs.
+     */
+    @Override
+    public int getHeadroom() {
+        NetworkBufferManager bufferManager = getBufferManager(TWO_SIDED_RECV);
+        return (bufferManager == null) ? 0 : bufferManager.getHeadroom();
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId) {
+        NetworkBufferManager bufferManager = getBufferManager(requestType);
+        if(bufferManager == null){
+            return null;
+        }
+        return bufferManager.getWorkRequestHeadroom(requestType,
+                workRequestId - typeFirstWorkRequestIds[requestType.ordinal()]);
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    /**
+     * Get the manager of a Work Request type.
+     * @param requestType the Work Request type.
+     * @return the manager or null if no manager serves this type.
+     */
+    public NetworkBufferManager getBufferManager(WorkRequestType requestType){
+        return (requestType == null) ? null : typeBufferManagers[requestType.ordinal()];
+    }
+}
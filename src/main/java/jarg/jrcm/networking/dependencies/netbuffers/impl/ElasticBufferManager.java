@@ -0,0 +1,296 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache.MemoryRegistrar;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Manages the network data buffers for <i>two-sided</i> RDMA operations, like {@link TwoSidedBufferManager},
+ * but only the send buffers of the first <i>initialWorkRequests</i> WR ids are allocated with the
+ * communicator's registered memory. The send buffers of the other WR ids, up to the maximum, are
+ * allocated in <b>chunks</b> of <i>chunkWorkRequests</i> WR ids when they are needed and freed when they
+ * are no longer needed (see {@link jarg.jrcm.networking.dependencies.netrequests.impl.ElasticProxyProvider}).
+ * Each chunk is registered as its own memory region, so its buffers have their own local key
+ * (see {@link #getWorkRequestLocalKey(WorkRequestType, int)}).
+ * </p>
+ *
+ * <p>
+ * RECV buffers are allocated for all the WR ids with the registered memory. The RECVs are posted before
+ * communications start and a posted RECV cannot be taken back, so the receive side cannot shrink.
+ * </p>
+ */
+public class ElasticBufferManager implements NetworkBufferManager {
+    private final Logger logger = LoggerFactory.getLogger(ElasticBufferManager.class);
+
+    private final int maxBufferSize;                    // the maximum size of communication buffers
+    private final int maxWorkRequests;                  // the maximum number of work requests for
+                                                            // either postSend or postRecv (same number)
+    private final int initialWorkRequests;              // postSend WR ids with buffers in registered memory
+    private final int chunkWorkRequests;                // postSend WR ids per chunk
+    private final int headroom;                         // bytes reserved in front of each buffer
+    private final ByteBuffer[] sendBuffers;             // null for WR ids of unallocated chunks
+    private final ByteBuffer[] receiveBuffers;
+    private final long[] sendBufferAddresses;
+    private final long[] receiveBufferAddresses;
+    private final ByteBuffer[] sendHeadrooms;
+    private final ByteBuffer[] receiveHeadrooms;
+    private final int[] sendLocalKeys;                  // -1 for buffers in registered memory
+    private final ByteBuffer[] chunkMemory;             // null for unallocated chunks
+    private final IbvMr[] chunkMemoryRegions;
+    private ByteBuffer registeredMemoryBuffer;          // large memory block for communications
+
+
+    /**
+     * @param maxBufferSize the maximum size of communication buffers.
+     * @param maxWorkRequests the maximum number of postSend and of postRecv Work Requests, which must not
+     *                        exceed the depths of the queue pair.
+     * @param initialWorkRequests the postSend WR ids whose buffers are always allocated.
+     * @param chunkWorkRequests the postSend WR ids that are allocated together.
+     * @param headroom bytes reserved in front of each buffer.
+     */
+    public ElasticBufferManager(int maxBufferSize, int maxWorkRequests, int initialWorkRequests,
+                                int chunkWorkRequests, int headroom) {
+        if((initialWorkRequests < 1) || (initialWorkRequests > maxWorkRequests) || (chunkWorkRequests < 1)){
+            throw new IllegalArgumentException("At least one initial Work Request and one Work Request per chunk "
+                    + "are required, with at most " + maxWorkRequests + " initial Work Requests.");
+        }
+        this.maxBufferSize = maxBufferSize;
+        this.maxWorkRequests = maxWorkRequests;
+        this.initialWorkRequests = initialWorkRequests;
+        this.chunkWorkRequests = chunkWorkRequests;
+        this.headroom = headroom;
+        sendBuffers = new ByteBuffer[maxWorkRequests];
+        receiveBuffers = new ByteBuffer[maxWorkRequests];
+        sendBufferAddresses = new long[maxWorkRequests];
+        receiveBufferAddresses = new long[maxWorkRequests];
+        sendHeadrooms = new ByteBuffer[maxWorkRequests];
+        receiveHeadrooms = new ByteBuffer[maxWorkRequests];
+        sendLocalKeys = new int[maxWorkRequests];
+        chunkMemory = new ByteBuffer[getChunkCount()];
+        chunkMemoryRegions = new IbvMr[getChunkCount()];
+    }
+
+    @Override
+    public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        return (headroom + maxBufferSize) * (initialWorkRequests + maxWorkRequests);
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
+        int slotStart = 0;
+        for(int i=0; i < initialWorkRequests; i++){
+            setSendBuffer(i, registeredMemoryBuffer, slotStart, -1);
+            slotStart += headroom + maxBufferSize;
+        }
+        for(int i=0; i < maxWorkRequests; i++){
+            receiveHeadrooms[i] = slice(registeredMemoryBuffer, slotStart, headroom);
+            receiveBuffers[i] = slice(registeredMemoryBuffer, slotStart + headroom, maxBufferSize);
+            // keep the memory address of the buffer for communications, starting from the headroom
+            receiveBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) receiveBuffers[i]).address() - headroom;
+            slotStart += headroom + maxBufferSize;
+        }
+    }
+
+    /**
+     * Sets the send buffer of a WR id to a slot of some memory.
+     */
+    private void setSendBuffer(int workRequestId, ByteBuffer memory, int slotStart, int localKey){
+        sendHeadrooms[workRequestId] = slice(memory, slotStart, headroom);
+        sendBuffers[workRequestId] = slice(memory, slotStart + headroom, maxBufferSize);
+        // keep the memory address of the buffer for communications, starting from the headroom
+        sendBufferAddresses[workRequestId] = ((sun.nio.ch.DirectBuffer) sendBuffers[workRequestId]).address()
+                - headroom;
+        sendLocalKeys[workRequestId] = localKey;
+    }
+
+    /**
+     * Creates a view of a part of some memory.
+     */
+    private ByteBuffer slice(ByteBuffer memory, int offset, int length){
+        ByteBuffer view = memory.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Allocates and registers the send buffers of a chunk. The WR ids of the chunk must not be used
+     * before this method returns.
+     * @param chunk the chunk, from 0 to the number of chunks.
+     * @param registrar registers the memory of the chunk.
+     * @return true if the chunk's buffers are allocated, false if registration failed.
+     */
+    public boolean allocateChunk(int chunk, MemoryRegistrar registrar){
+        // prevent errors
+        if((chunk < 0) || (chunk >= chunkMemory.length) || (registrar == null)){
+            logger.error("Cannot allocate chunk " + chunk + " of the Work Requests.");
+            return false;
+        }
+        if(chunkMemory[chunk] != null){
+            return true;
+        }
+        int slotSize = headroom + maxBufferSize;
+        ByteBuffer memory = ByteBuffer.allocateDirect(slotSize * getChunkWorkRequests(chunk));
+        IbvMr memoryRegion;
+        try {
+            memoryRegion = registrar.register(memory);
+        } catch (IOException e) {
+            logger.error("Failed to register chunk " + chunk + " of the Work Requests.", e);
+            return false;
+        }
+        int firstWorkRequestId = getChunkFirstWorkRequestId(chunk);
+        for(int i=0; i < getChunkWorkRequests(chunk); i++){
+            setSendBuffer(firstWorkRequestId + i, memory, i * slotSize, memoryRegion.getLkey());
+        }
+        chunkMemory[chunk] = memory;
+        chunkMemoryRegions[chunk] = memoryRegion;
+        return true;
+    }
+
+    /**
+     * Deregisters and frees the send buffers of a chunk. The WR ids of the chunk must not be in use.
+     * @param chunk the chunk, from 0 to the number of chunks.
+     * @param registrar deregisters the memory of the chunk.
+     */
+    public void freeChunk(int chunk, MemoryRegistrar registrar){
+        // prevent errors
+        if((chunk < 0) || (chunk >= chunkMemory.length) || (chunkMemory[chunk] == null)){
+            return;
+        }
+        int firstWorkRequestId = getChunkFirstWorkRequestId(chunk);
+        for(int i = firstWorkRequestId; i < firstWorkRequestId + getChunkWorkRequests(chunk); i++){
+            sendBuffers[i] = null;
+            sendHeadrooms[i] = null;
+            sendBufferAddresses[i] = 0;
+            sendLocalKeys[i] = -1;
+        }
+        try {
+            registrar.deregister(chunkMemoryRegions[chunk]);
+        } catch (IOException e) {
+            logger.error("Failed to deregister chunk " + chunk + " of the Work Requests.", e);
+        }
+        chunkMemory[chunk] = null;
+        chunkMemoryRegions[chunk] = null;
+    }
+
+    private boolean isSend(WorkRequestType requestType){
+        switch (requestType) {
+            case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
+            case ONE_SIDED_WRITE_WITH_IMM:
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ByteBuffer getBufferToRegister(){
+        return registeredMemoryBuffer;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId) {
+        if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return null;
+        }
+        if(isSend(requestType)){
+            return sendBuffers[workRequestId];
+        }
+        return (requestType == WorkRequestType.TWO_SIDED_RECV) ? receiveBuffers[workRequestId] : null;
+    }
+
+    @Override
+    public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
+        if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return -1;
+        }
+        if(isSend(requestType)){
+            return (sendBuffers[workRequestId] == null) ? -1 : sendBufferAddresses[workRequestId];
+        }
+        return (requestType == WorkRequestType.TWO_SIDED_RECV) ? receiveBufferAddresses[workRequestId] : -1;
+    }
+
+    @Override
+    public int getWorkRequestLocalKey(WorkRequestType requestType, int workRequestId) {
+        if((workRequestId < 0) || (workRequestId >= maxWorkRequests) || !isSend(requestType)){
+            return -1;
+        }
+        return sendLocalKeys[workRequestId];
+    }
+
+    @Override
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId) {
+        if((headroom == 0) || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return null;
+        }
+        if(isSend(requestType)){
+            return sendHeadrooms[workRequestId];
+        }
+        return (requestType == WorkRequestType.TWO_SIDED_RECV) ? receiveHeadrooms[workRequestId] : null;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public int getMaxWorkRequests() {
+        return maxWorkRequests;
+    }
+
+    public int getInitialWorkRequests() {
+        return initialWorkRequests;
+    }
+
+    /**
+     * Get the number of chunks, the last of which may have fewer WR ids than the others.
+     * @return the number of chunks.
+     */
+    public int getChunkCount() {
+        return (maxWorkRequests - initialWorkRequests + chunkWorkRequests - 1) / chunkWorkRequests;
+    }
+
+    public int getChunkFirstWorkRequestId(int chunk) {
+        return initialWorkRequests + chunk * chunkWorkRequests;
+    }
+
+    public int getChunkWorkRequests(int chunk) {
+        return Math.min(chunkWorkRequests, maxWorkRequests - getChunkFirstWorkRequestId(chunk));
+    }
+
+    /**
+     * Get the memory of the registered memory region and of the allocated chunks.
+     * @return the number of bytes.
+     */
+    public long getAllocatedMemory() {
+        long allocatedMemory = (registeredMemoryBuffer == null) ? 0 : registeredMemoryBuffer.capacity();
+        for(ByteBuffer memory : chunkMemory){
+            if(memory != null){
+                allocatedMemory += memory.capacity();
+            }
+        }
+        return allocatedMemory;
+    }
+}
@@ -0,0 +1,129 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * <p>
+ * A {@link MemoryAllocator} that backs communication memory with memory-mapped files. If the files are on
+ * a <i>hugetlbfs</i> mount (e.g. /dev/hugepages), the memory is backed by huge pages, so the NIC needs
+ * far fewer address translation entries for it. A <i>tmpfs</i> mount (e.g. /dev/shm) works on any Linux
+ * system and can also use transparent huge pages if it is mounted with <i>huge=always</i>. Mapped memory
+ * doesn't count towards the JVM's <i>-XX:MaxDirectMemorySize</i>.
+ * </p>
+ *
+ * <p>
+ * Every allocation maps a new file, which is deleted right after mapping, so the memory is freed when
+ * the mapping is garbage collected. The size of each mapping is rounded up to the page size and the memory
+ * starts at a page boundary. The memory can be pre-faulted, so that the pages are present before the
+ * memory is registered to the NIC and not on first use.
+ * </p>
+ */
+public class MappedMemoryAllocator implements MemoryAllocator {
+
+    public static final String HUGEPAGES_DIRECTORY = "/dev/hugepages";
+    public static final String SHARED_MEMORY_DIRECTORY = "/dev/shm";
+    public static final int HUGEPAGE_SIZE = 2 * 1024 * 1024;
+    private static final int BASE_PAGE_SIZE = 4096;
+
+    private final Path directory;                       // where to create the mapped files
+    private final int pageSize;                         // the alignment and size granularity of mappings
+    private final boolean prefault;                     // touch every page after mapping
+
+
+    public MappedMemoryAllocator(Path directory) {
+        this(directory, HUGEPAGE_SIZE, true);
+    }
+
+    /**
+     * @param directory where to create the mapped files, e.g. a hugetlbfs or tmpfs mount.
+     * @param pageSize the alignment of the memory and the granularity of mapping sizes. It must be a power
+     *                 of 2 and, for hugetlbfs, a multiple of the mount's huge page size.
+     * @param prefault whether to touch every page after mapping it.
+     */
+    public MappedMemoryAllocator(Path directory, int pageSize, boolean prefault) {
+        if((pageSize <= 0) || (Integer.bitCount(pageSize) != 1)){
+            throw new IllegalArgumentException("The page size must be a power of 2.");
+        }
+        this.directory = directory;
+        this.pageSize = pageSize;
+        this.prefault = prefault;
+    }
+
+    /**
+     * Creates an allocator for huge pages, if a hugetlbfs is mounted at {@link #HUGEPAGES_DIRECTORY},
+     * or else for the shared memory of {@link #SHARED_MEMORY_DIRECTORY}.
+     * @return the allocator.
+     */
+    public static MappedMemoryAllocator forHugepages(){
+        Path hugepages = Paths.get(HUGEPAGES_DIRECTORY);
+        if(Files.isDirectory(hugepages) && Files.isWritable(hugepages)){
+            return new MappedMemoryAllocator(hugepages);
+        }
+        return new MappedMemoryAllocator(Paths.get(SHARED_MEMORY_DIRECTORY));
+    }
+
+    @Override
+    public ByteBuffer allocate(int size, int alignment) throws IOException {
+        if((alignment <= 0) || (Integer.bitCount(alignment) != 1)){
+            throw new IllegalArgumentException("The alignment must be a power of 2.");
+        }
+        // mappings start at page boundaries, larger alignments need extra pages
+        int extraBytes = Math.max(alignment, pageSize) - pageSize;
+        long mappingSize = roundToPages((long) size + extraBytes);
+        if(mappingSize > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Cannot map more than 2 GB at once.");
+        }
+        Path file = Files.createTempFile(directory, "jrcm-", ".mem");
+        MappedByteBuffer mapping;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(mappingSize);
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize);
+        } finally {
+            // the mapping remains valid without the file
+            Files.deleteIfExists(file);
+        }
+        if(prefault){
+            prefault(mapping);
+        }
+        return MemoryAllocator.alignedSlice(mapping, size, Math.max(alignment, pageSize));
+    }
+
+    /**
+     * Writes to every page of a mapping, so that the OS allocates the pages now.
+     */
+    private static void prefault(ByteBuffer mapping){
+        for(int offset = 0; offset < mapping.capacity(); offset += BASE_PAGE_SIZE){
+            mapping.put(offset, (byte) 0);
+        }
+    }
+
+    private long roundToPages(long size){
+        return (Math.max(size, 1) + pageSize - 1) & -pageSize;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isPrefault() {
+        return prefault;
+    }
+}
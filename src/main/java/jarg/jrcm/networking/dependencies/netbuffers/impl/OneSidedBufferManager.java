@@ -4,16 +4,22 @@ import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Manages the network data buffers for <i>one-sided</i> RDMA operations.
+ * Atomic operations get their own 8-byte result buffers, which are aligned to 8 bytes as the NIC
+ * requires. They are placed after the data buffers, in the same registered memory.
  */
 public class OneSidedBufferManager implements NetworkBufferManager {
+    public static final int ATOMIC_BUFFER_SIZE = Long.BYTES;    // atomics operate on 8 bytes
 
     private ByteBuffer[] networkBuffers;                // contain data to be written/read over the network
                                                             // since both one-sided WRITE and READ are
                                                             // postSend-type operations, they share these buffers
     private long[] networkBufferAddresses;              // memory addresses of data buffers
+    private ByteBuffer[] atomicBuffers;                 // receive the old values of atomic operations
+    private long[] atomicBufferAddresses;
     private ByteBuffer registeredMemoryBuffer;          // large memory block for communications
     private int maxBufferSize;                          // the maximum size of communication buffers
     private int maxWorkRequests;                        // the maximum number of work requests for
@@ -25,12 +31,26 @@ public class OneSidedBufferManager implements NetworkBufferManager {
         this.maxWorkRequests = maxWorkRequests;
         networkBuffers = new ByteBuffer[maxWorkRequests];
         networkBufferAddresses = new long[maxWorkRequests];
+        atomicBuffers = new ByteBuffer[maxWorkRequests];
+        atomicBufferAddresses = new long[maxWorkRequests];
     }
 
     @Override
     public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        // extra bytes for aligning the atomic buffers
+        return maxBufferSize * maxWorkRequests + ATOMIC_BUFFER_SIZE * maxWorkRequests + ATOMIC_BUFFER_SIZE - 1;
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
         int bufferArrayBytes = maxBufferSize * maxWorkRequests;
-        registeredMemoryBuffer = ByteBuffer.allocateDirect(bufferArrayBytes);
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
         int currentLimit = maxBufferSize;
         for(int i=0; i < maxWorkRequests; i++){
             registeredMemoryBuffer.limit(currentLimit);
@@ -42,6 +62,22 @@ public class OneSidedBufferManager implements NetworkBufferManager {
                     .address();
             networkBufferAddresses[i] = address;
         }
+        allocateAtomicBuffers(bufferArrayBytes);
+        registeredMemoryBuffer.clear();
+    }
+
+    private void allocateAtomicBuffers(int offset){
+        long startAddress = ((sun.nio.ch.DirectBuffer) registeredMemoryBuffer).address() + offset;
+        int alignment = (int) ((ATOMIC_BUFFER_SIZE - (startAddress % ATOMIC_BUFFER_SIZE)) % ATOMIC_BUFFER_SIZE);
+        int bufferStart = offset + alignment;
+        for(int i=0; i < maxWorkRequests; i++){
+            registeredMemoryBuffer.limit(bufferStart + ATOMIC_BUFFER_SIZE);
+            registeredMemoryBuffer.position(bufferStart);
+            // the NIC writes the old value as the remote side stores it
+            atomicBuffers[i] = registeredMemoryBuffer.slice().order(ByteOrder.nativeOrder());
+            atomicBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) atomicBuffers[i]).address();
+            bufferStart += ATOMIC_BUFFER_SIZE;
+        }
     }
 
     @Override
@@ -54,14 +90,34 @@ public class OneSidedBufferManager implements NetworkBufferManager {
         if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
             return null;
         }
+        if(requestType.isAtomic()){
+            return atomicBuffers[workRequestId];
+        }
         return networkBuffers[workRequestId];
     }
 
+    @Override
+    public void getWorkRequestBuffers(WorkRequestType requestType, int[] workRequestIds,
+                                      ByteBuffer[] buffers, int count) {
+        ByteBuffer[] typeBuffers = requestType.isAtomic() ? atomicBuffers : networkBuffers;
+        for(int i=0; i < count; i++){
+            int workRequestId = workRequestIds[i];
+            if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+                buffers[i] = null;
+            }else{
+                buffers[i] = typeBuffers[workRequestId];
+            }
+        }
+    }
+
     @Override
     public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
         if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
             return -1;
         }
+        if(requestType.isAtomic()){
+            return atomicBufferAddresses[workRequestId];
+        }
         return networkBufferAddresses[workRequestId];
     }
 }
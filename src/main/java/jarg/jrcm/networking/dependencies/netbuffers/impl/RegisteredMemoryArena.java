@@ -0,0 +1,297 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import com.ibm.disni.RdmaEndpoint;
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * A large block of memory that is registered to the NIC once and shared by many communicators. Each
+ * communicator reserves a range of the arena for the buffers of its {@link NetworkBufferManager}
+ * (see {@link NetworkBufferManager#allocateCommunicationBuffers(ByteBuffer)}), instead of registering
+ * its own memory region. Thus, the NIC caches the translation and protection entries of one memory region
+ * with one local key, no matter how many connections there are.
+ * </p>
+ *
+ * <p>
+ * The size of the arena is also a cap on the memory of all communicators. A communicator is only admitted
+ * if the arena has a free range for its buffers and its buffers don't exceed the limit per communicator,
+ * if there is one. The memory that each communicator uses is accounted, and a closed communicator gives
+ * its ranges back to the arena.
+ * </p>
+ *
+ * <p>
+ * The memory region can be used by all the endpoints that share the protection domain of the endpoint
+ * that registered it, which is the case for the endpoints of the same DiSNI endpoint group on the same
+ * device. So there should be one arena per protection domain.
+ * </p>
+ *
+ * <p>
+ * All communicators of an arena share its remote key, so a peer that may access the arena remotely may
+ * access the buffers of every communicator in it, not only the ones of its own connection. Therefore, the
+ * arena is registered for local access only by default, which is enough for SENDs, RECVs and the local side
+ * of one-sided operations. Buffers that peers must READ, WRITE or use for atomics, like rings, need an arena
+ * with remote access (see {@link #setRemoteAccess(boolean)}), which should only be shared by communicators
+ * whose peers trust each other.
+ * </p>
+ *
+ * <p>
+ * The memory of the arena comes from a {@link MemoryAllocator}, e.g. a {@link MappedMemoryAllocator}
+ * for an arena on huge pages.
+ * </p>
+ */
+public class RegisteredMemoryArena {
+    private final Logger logger = LoggerFactory.getLogger(RegisteredMemoryArena.class);
+
+    public static final int ALIGNMENT = MemoryAllocator.CACHE_LINE_SIZE;    // ranges start at cache line boundaries
+
+    private final int capacity;                         // the size of the arena, i.e. the memory cap
+    private final int maxCommunicatorMemory;            // the memory limit per communicator
+    private final MemoryAllocator memoryAllocator;      // allocates the memory of the arena
+    private ByteBuffer registeredMemoryBuffer;          // allocated on the first reservation or registration
+    private IbvMr memoryRegion;                         // set on the first registration
+    private boolean remoteAccess;                       // whether peers can access the arena
+    private final TreeMap<Integer, Integer> freeRanges; // offset -> length of the free ranges
+    private final Map<Object, List<int[]>> ownerRanges; // the {offset, length} ranges of each owner
+    private final Map<Object, Integer> ownerMemory;     // the reserved bytes of each owner
+    private int usedMemory;
+    private int rejectedReservations;
+
+
+    public RegisteredMemoryArena(int capacity) {
+        this(capacity, capacity);
+    }
+
+    /**
+     * @param capacity the size of the arena, which is allocated and registered as a whole.
+     * @param maxCommunicatorMemory the maximum bytes that one communicator can reserve.
+     */
+    public RegisteredMemoryArena(int capacity, int maxCommunicatorMemory) {
+        this(capacity, maxCommunicatorMemory, MemoryAllocator.DIRECT);
+    }
+
+    /**
+     * @param capacity the size of the arena, which is allocated and registered as a whole.
+     * @param maxCommunicatorMemory the maximum bytes that one communicator can reserve.
+     * @param memoryAllocator allocates the memory of the arena.
+     */
+    public RegisteredMemoryArena(int capacity, int maxCommunicatorMemory, MemoryAllocator memoryAllocator) {
+        if((capacity <= 0) || (maxCommunicatorMemory <= 0)){
+            throw new IllegalArgumentException("The arena needs a positive capacity and memory limit.");
+        }
+        this.capacity = capacity;
+        this.maxCommunicatorMemory = maxCommunicatorMemory;
+        this.memoryAllocator = memoryAllocator;
+        freeRanges = new TreeMap<>();
+        freeRanges.put(0, capacity);
+        ownerRanges = new HashMap<>();
+        ownerMemory = new HashMap<>();
+    }
+
+    /**
+     * Sets whether the arena is registered for remote READs, WRITEs and atomics besides local access.
+     * It has no effect after the arena is registered.
+     * @param remoteAccess true to allow remote access to the buffers of all the communicators in the arena,
+     *                     false by default.
+     * @return this arena.
+     */
+    public synchronized RegisteredMemoryArena setRemoteAccess(boolean remoteAccess) {
+        if(memoryRegion != null){
+            logger.warn("The access of the arena cannot change after it is registered.");
+            return this;
+        }
+        this.remoteAccess = remoteAccess;
+        return this;
+    }
+
+    /**
+     * Allocates the memory of the arena, if it isn't allocated yet.
+     * @throws IOException if the allocator fails.
+     */
+    public synchronized void allocate() throws IOException {
+        if(registeredMemoryBuffer == null){
+            // align the start of the arena, so that the offsets of ranges are aligned too
+            registeredMemoryBuffer = memoryAllocator.allocate(capacity, ALIGNMENT);
+        }
+    }
+
+    /**
+     * Allocates and registers the arena to the NIC, if that hasn't happened yet. It is registered for
+     * local access only, unless remote access is enabled.
+     * @param endpoint the endpoint to use for the registration.
+     * @return the registered memory region.
+     * @throws IOException if the registration fails.
+     */
+    public synchronized IbvMr register(RdmaEndpoint endpoint) throws IOException {
+        if(memoryRegion == null){
+            allocate();
+            int access = IbvMr.IBV_ACCESS_LOCAL_WRITE;
+            if(remoteAccess){
+                access |= IbvMr.IBV_ACCESS_REMOTE_WRITE | IbvMr.IBV_ACCESS_REMOTE_READ
+                        | IbvMr.IBV_ACCESS_REMOTE_ATOMIC;
+            }
+            memoryRegion = endpoint.getPd().regMr(registeredMemoryBuffer, access).execute().free().getMr();
+        }
+        return memoryRegion;
+    }
+
+    /**
+     * Reserves a range of the arena for an owner, e.g. a communicator. The first free range that fits is used.
+     * @param owner the owner of the range.
+     * @param length the number of bytes to reserve.
+     * @return a view of the reserved range or null if the owner isn't admitted, because the arena has
+     * no free range that fits, the owner would exceed the memory limit per communicator or the memory of
+     * the arena cannot be allocated.
+     */
+    public synchronized ByteBuffer reserve(Object owner, int length){
+        if((length < 0) || (ownerMemory.getOrDefault(owner, 0) + (long) length > maxCommunicatorMemory)){
+            rejectedReservations ++;
+            return null;
+        }
+        try {
+            allocate();
+        } catch (IOException e) {
+            logger.error("Cannot allocate the memory of the arena.", e);
+            rejectedReservations ++;
+            return null;
+        }
+        int alignedLength = align(Math.max(length, 1));
+        for(Map.Entry<Integer, Integer> freeRange : freeRanges.entrySet()){
+            if(freeRange.getValue() < alignedLength){
+                continue;
+            }
+            int offset = freeRange.getKey();
+            int remaining = freeRange.getValue() - alignedLength;
+            freeRanges.remove(offset);
+            if(remaining > 0){
+                freeRanges.put(offset + alignedLength, remaining);
+            }
+            ownerRanges.computeIfAbsent(owner, key -> new ArrayList<>()).add(new int[]{offset, alignedLength});
+            ownerMemory.merge(owner, alignedLength, Integer::sum);
+            usedMemory += alignedLength;
+            ByteBuffer range = registeredMemoryBuffer.duplicate();
+            range.limit(offset + length).position(offset);
+            return range.slice();
+        }
+        rejectedReservations ++;
+        return null;
+    }
+
+    /**
+     * Gives all the ranges of an owner back to the arena, e.g. when a communicator closes.
+     * @param owner the owner of the ranges.
+     * @return the number of released bytes.
+     */
+    public synchronized int release(Object owner){
+        List<int[]> ranges = ownerRanges.remove(owner);
+        ownerMemory.remove(owner);
+        if(ranges == null){
+            return 0;
+        }
+        int released = 0;
+        for(int[] range : ranges){
+            freeRange(range[0], range[1]);
+            released += range[1];
+        }
+        usedMemory -= released;
+        return released;
+    }
+
+    /**
+     * Adds a range to the free ranges, merging it with adjacent free ranges.
+     */
+    private void freeRange(int offset, int length){
+        Map.Entry<Integer, Integer> previous = freeRanges.floorEntry(offset);
+        if((previous != null) && (previous.getKey() + previous.getValue() == offset)){
+            offset = previous.getKey();
+            length += previous.getValue();
+            freeRanges.remove(offset);
+        }
+        Integer nextLength = freeRanges.remove(offset + length);
+        if(nextLength != null){
+            length += nextLength;
+        }
+        freeRanges.put(offset, length);
+    }
+
+    private static int align(int length){
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxCommunicatorMemory() {
+        return maxCommunicatorMemory;
+    }
+
+    public MemoryAllocator getMemoryAllocator() {
+        return memoryAllocator;
+    }
+
+    public synchronized int getUsedMemory() {
+        return usedMemory;
+    }
+
+    public synchronized int getAvailableMemory() {
+        return capacity - usedMemory;
+    }
+
+    /**
+     * Get the largest range that can be reserved now, which can be smaller than the available memory
+     * if the free memory is fragmented.
+     * @return the length of the largest free range.
+     */
+    public synchronized int getLargestFreeRange() {
+        int largest = 0;
+        for(int length : freeRanges.values()){
+            largest = Math.max(largest, length);
+        }
+        return largest;
+    }
+
+    /**
+     * Get the memory that an owner has reserved, including the bytes for aligning its ranges.
+     * @param owner the owner, e.g. a communicator.
+     * @return the reserved bytes.
+     */
+    public synchronized int getMemoryUsage(Object owner) {
+        return ownerMemory.getOrDefault(owner, 0);
+    }
+
+    public synchronized int getOwners() {
+        return ownerRanges.size();
+    }
+
+    /**
+     * Get how many reservations were rejected, i.e. how many communicators were not admitted.
+     * @return the number of rejected reservations.
+     */
+    public synchronized int getRejectedReservations() {
+        return rejectedReservations;
+    }
+
+    public synchronized boolean isRemoteAccess() {
+        return remoteAccess;
+    }
+
+    public synchronized IbvMr getMemoryRegion() {
+        return memoryRegion;
+    }
+}
@@ -0,0 +1,334 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import com.ibm.disni.RdmaEndpoint;
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Registers application buffers to the NIC on demand, so that Work Requests can send from them directly
+ * (see {@link WorkRequestProxy#addSegment(ByteBuffer, Registration)}), instead of copying their data to
+ * the communication buffers. Registering memory is expensive, so registrations are cached by their address
+ * range and reused for any buffer within a registered range.
+ * </p>
+ *
+ * <p>
+ * Registrations are reference counted. A proxy holds a reference to the registrations of its segments until
+ * it is released, i.e. until its Work Request completes, so the memory of in-flight Work Requests is never
+ * deregistered. Registrations without references stay cached and are deregistered in least recently used
+ * order, when a new registration would exceed the budget of pinned memory. If the budget cannot be met, the
+ * buffer isn't registered and the application can copy its data instead.
+ * </p>
+ *
+ * <p>
+ * A buffer is registered as a whole, from its start address to its capacity. A registration keeps a reference
+ * to the buffer that owns the registered memory, so the garbage collector cannot free the memory and reuse its
+ * addresses while it is registered. Memory that is freed explicitly, e.g. by unmapping it, must not be freed
+ * while it is registered. Heap buffers cannot be registered. Registrations can be used by all the endpoints of
+ * the protection domain of the registering endpoint, so there should be one cache per protection domain.
+ * </p>
+ */
+public class RegistrationCache {
+    private final Logger logger = LoggerFactory.getLogger(RegistrationCache.class);
+
+    /**
+     * Registers and deregisters memory to the NIC.
+     */
+    public interface MemoryRegistrar {
+
+        IbvMr register(ByteBuffer buffer) throws IOException;
+
+        void deregister(IbvMr memoryRegion) throws IOException;
+
+        /**
+         * @param endpoint an endpoint of the protection domain in which to register memory.
+         * @return a registrar that uses the endpoint.
+         */
+        static MemoryRegistrar forEndpoint(RdmaEndpoint endpoint){
+            return new MemoryRegistrar() {
+                @Override
+                public IbvMr register(ByteBuffer buffer) throws IOException {
+                    return endpoint.registerMemory(buffer).execute().free().getMr();
+                }
+
+                @Override
+                public void deregister(IbvMr memoryRegion) throws IOException {
+                    endpoint.deregisterMemory(memoryRegion);
+                }
+            };
+        }
+    }
+
+    private final MemoryRegistrar registrar;
+    private final long pinnedMemoryBudget;              // the maximum registered bytes
+    private final TreeMap<Long, Registration> registrations;        // start address -> cached registration
+    private final LinkedHashSet<Registration> idleRegistrations;    // without references, least recent first
+    private long pinnedMemory;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejectedRegistrations;
+
+
+    /**
+     * @param registrar registers the memory.
+     * @param pinnedMemoryBudget the maximum number of bytes that can be registered at the same time.
+     */
+    public RegistrationCache(MemoryRegistrar registrar, long pinnedMemoryBudget) {
+        if(pinnedMemoryBudget <= 0){
+            throw new IllegalArgumentException("The pinned memory budget must be positive.");
+        }
+        this.registrar = registrar;
+        this.pinnedMemoryBudget = pinnedMemoryBudget;
+        registrations = new TreeMap<>();
+        idleRegistrations = new LinkedHashSet<>();
+    }
+
+    /**
+     * Gets a registration for the remaining bytes of a direct buffer, registering the buffer if no cached
+     * registration covers them. The caller holds a reference to the registration, which must be released with
+     * {@link Registration#release()}.
+     * @param buffer a direct buffer.
+     * @return the registration or null if the buffer isn't direct, cannot be registered within the budget or
+     * registering fails.
+     */
+    public synchronized Registration acquire(ByteBuffer buffer){
+        // prevent errors
+        if((buffer == null) || !buffer.isDirect()){
+            rejectedRegistrations ++;
+            return null;
+        }
+        long bufferAddress = ((sun.nio.ch.DirectBuffer) buffer).address();
+        long address = bufferAddress + buffer.position();
+        Map.Entry<Long, Registration> entry = registrations.floorEntry(address);
+        if((entry != null) && entry.getValue().covers(address, buffer.remaining())){
+            hits ++;
+            Registration registration = entry.getValue();
+            retain(registration);
+            return registration;
+        }
+        misses ++;
+        int length = buffer.capacity();
+        if(!makeRoom(length)){
+            rejectedRegistrations ++;
+            return null;
+        }
+        IbvMr memoryRegion;
+        try {
+            ByteBuffer whole = buffer.duplicate();
+            whole.clear();
+            memoryRegion = registrar.register(whole);
+        } catch (IOException e) {
+            logger.error("Cannot register a buffer of " + length + " bytes.", e);
+            rejectedRegistrations ++;
+            return null;
+        }
+        Registration registration = new Registration(this, bufferAddress, length, memoryRegion,
+                getMemoryOwner(buffer));
+        Registration replaced = registrations.put(bufferAddress, registration);
+        if(replaced != null){
+            // a smaller registration at the same address is deregistered when it's no longer used
+            replaced.cached = false;
+            if(idleRegistrations.remove(replaced)){
+                deregister(replaced);
+            }
+        }
+        pinnedMemory += length;
+        registration.references = 1;
+        return registration;
+    }
+
+    /**
+     * Get the buffer that owns the memory of a buffer, which the buffer's slices and duplicates reference.
+     */
+    private static ByteBuffer getMemoryOwner(ByteBuffer buffer){
+        ByteBuffer owner = buffer;
+        Object attachment = ((sun.nio.ch.DirectBuffer) owner).attachment();
+        while(attachment instanceof ByteBuffer){
+            owner = (ByteBuffer) attachment;
+            attachment = ((sun.nio.ch.DirectBuffer) owner).attachment();
+        }
+        return owner;
+    }
+
+    /**
+     * Deregisters idle registrations in least recently used order, until there is room for a new one.
+     * @return true if there is room.
+     */
+    private boolean makeRoom(int length){
+        if(length > pinnedMemoryBudget){
+            return false;
+        }
+        Iterator<Registration> leastRecentlyUsed = idleRegistrations.iterator();
+        while((pinnedMemory + length > pinnedMemoryBudget) && leastRecentlyUsed.hasNext()){
+            Registration registration = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            registrations.remove(registration.address);
+            deregister(registration);
+            evictions ++;
+        }
+        return pinnedMemory + length <= pinnedMemoryBudget;
+    }
+
+    private void retain(Registration registration){
+        if(registration.references == 0){
+            idleRegistrations.remove(registration);
+        }
+        registration.references ++;
+    }
+
+    private synchronized void retainRegistration(Registration registration){
+        retain(registration);
+    }
+
+    private synchronized void releaseRegistration(Registration registration){
+        // prevent errors
+        if(registration.references == 0){
+            return;
+        }
+        registration.references --;
+        if(registration.references == 0){
+            if(registration.cached){
+                idleRegistrations.add(registration);
+            }else{
+                deregister(registration);
+            }
+        }
+    }
+
+    private void deregister(Registration registration){
+        pinnedMemory -= registration.length;
+        try {
+            registrar.deregister(registration.memoryRegion);
+        } catch (IOException e) {
+            logger.error("Cannot deregister a buffer of " + registration.length + " bytes.", e);
+        }
+    }
+
+    /**
+     * Deregisters all the registrations that have no references.
+     * @return the number of deregistered bytes.
+     */
+    public synchronized long evictIdle(){
+        long evicted = 0;
+        for(Registration registration : idleRegistrations){
+            registrations.remove(registration.address);
+            deregister(registration);
+            evicted += registration.length;
+            evictions ++;
+        }
+        idleRegistrations.clear();
+        return evicted;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public long getPinnedMemoryBudget() {
+        return pinnedMemoryBudget;
+    }
+
+    /**
+     * Get the number of registered bytes, including registrations that are in use but no longer cached.
+     * @return the pinned bytes.
+     */
+    public synchronized long getPinnedMemory() {
+        return pinnedMemory;
+    }
+
+    public synchronized int getCachedRegistrations() {
+        return registrations.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get how many buffers could not be registered, because of the budget or registration errors.
+     * @return the number of rejected registrations.
+     */
+    public synchronized long getRejectedRegistrations() {
+        return rejectedRegistrations;
+    }
+
+    /**
+     * A registered address range.
+     */
+    public static final class Registration {
+        private final RegistrationCache cache;
+        private final long address;
+        private final int length;
+        private final IbvMr memoryRegion;
+        private final ByteBuffer memoryOwner;           // keeps the memory from being freed while registered
+        private int references;                         // guarded by the cache
+        private boolean cached = true;                  // guarded by the cache
+
+        private Registration(RegistrationCache cache, long address, int length, IbvMr memoryRegion,
+                             ByteBuffer memoryOwner) {
+            this.cache = cache;
+            this.address = address;
+            this.length = length;
+            this.memoryRegion = memoryRegion;
+            this.memoryOwner = memoryOwner;
+        }
+
+        private boolean covers(long rangeAddress, int rangeLength){
+            return (rangeAddress >= address) && (rangeAddress + rangeLength <= address + length);
+        }
+
+        /**
+         * Adds a reference to this registration, so that it isn't deregistered until it's released.
+         */
+        public void retain(){
+            cache.retainRegistration(this);
+        }
+
+        /**
+         * Removes a reference to this registration. Without references, it can be deregistered.
+         */
+        public void release(){
+            cache.releaseRegistration(this);
+        }
+
+        public long getAddress() {
+            return address;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public IbvMr getMemoryRegion() {
+            return memoryRegion;
+        }
+
+        public int getLocalKey() {
+            return memoryRegion.getLkey();
+        }
+
+        public int getReferences() {
+            synchronized (cache){
+                return references;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.MemoryAllocator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Manages the network data buffers of a communicator that sends messages with <i>one-sided</i> RDMA WRITEs
+ * into a ring buffer in the remote side's memory (see <i>jarg.jrcm.networking.ringbuffer</i>). Besides the
+ * buffers of the WRITEs, which are managed by a {@link OneSidedBufferManager}, the registered memory contains:
+ * </p>
+ * <ul>
+ *     <li>a <b>head slot</b> of 8 bytes, into which the remote receiver WRITEs how far it has consumed this
+ *     side's messages.</li>
+ *     <li>a <b>ring</b>, into which the remote sender WRITEs its messages. A side that only sends can have
+ *     an empty ring.</li>
+ * </ul>
+ * <p>
+ * Both start at cache line boundaries, so that the NIC's writes to them don't share cache lines with the
+ * WRITE buffers that the CPU fills.
+ * </p>
+ */
+public class RingBufferManager implements NetworkBufferManager {
+    public static final int HEAD_SLOT_SIZE = Long.BYTES;
+    public static final int RING_ALIGNMENT = Long.BYTES;    // the ring capacity must be a multiple of this
+
+    private static final int ALIGNMENT = MemoryAllocator.CACHE_LINE_SIZE;
+
+    private final OneSidedBufferManager writeBufferManager;     // the buffers of the WRITEs
+    private final int ringCapacity;
+    private ByteBuffer registeredMemoryBuffer;          // large memory block for communications
+    private ByteBuffer headBuffer;                      // written by the remote receiver
+    private long headAddress;
+    private ByteBuffer ringBuffer;                      // written by the remote sender
+    private long ringAddress;
+
+
+    /**
+     * @param maxBufferSize the maximum size of the WRITE buffers, i.e. of the messages plus their framing.
+     * @param maxWorkRequests the number of WRITE Work Requests.
+     * @param ringCapacity the size of the ring that the remote side WRITEs to. A multiple of
+     *                     {@link #RING_ALIGNMENT}, or 0 if this side only sends.
+     */
+    public RingBufferManager(int maxBufferSize, int maxWorkRequests, int ringCapacity) {
+        if((ringCapacity < 0) || (ringCapacity % RING_ALIGNMENT != 0)){
+            throw new IllegalArgumentException("The ring capacity must be a non-negative multiple of "
+                    + RING_ALIGNMENT + ".");
+        }
+        this.ringCapacity = ringCapacity;
+        writeBufferManager = new OneSidedBufferManager(maxBufferSize, maxWorkRequests);
+    }
+
+    @Override
+    public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        // extra bytes for aligning the head slot
+        return ALIGNMENT - 1 + getLayoutSize();
+    }
+
+    /**
+     * Get the size of the memory after the alignment: the head slot gets a whole cache line and the
+     * ring is followed by the WRITE buffers.
+     */
+    private int getLayoutSize(){
+        return ALIGNMENT + ringCapacity + writeBufferManager.getRequiredMemory();
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
+        ByteBuffer layout = MemoryAllocator.alignedSlice(registeredMemoryBuffer.duplicate(), getLayoutSize(),
+                ALIGNMENT);
+        headBuffer = slice(layout, 0, HEAD_SLOT_SIZE);
+        headAddress = ((sun.nio.ch.DirectBuffer) headBuffer).address();
+        ringBuffer = slice(layout, ALIGNMENT, ringCapacity);
+        ringAddress = ((sun.nio.ch.DirectBuffer) ringBuffer).address();
+        layout.clear().position(ALIGNMENT + ringCapacity);
+        writeBufferManager.allocateCommunicationBuffers(layout);
+    }
+
+    private ByteBuffer slice(ByteBuffer memory, int offset, int length){
+        ByteBuffer view = memory.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    @Override
+    public ByteBuffer getBufferToRegister() {
+        return registeredMemoryBuffer;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId) {
+        return writeBufferManager.getWorkRequestBuffer(requestType, workRequestId);
+    }
+
+    @Override
+    public void getWorkRequestBuffers(WorkRequestType requestType, int[] workRequestIds,
+                                      ByteBuffer[] buffers, int count) {
+        writeBufferManager.getWorkRequestBuffers(requestType, workRequestIds, buffers, count);
+    }
+
+    @Override
+    public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
+        return writeBufferManager.getWorkRequestBufferAddress(requestType, workRequestId);
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    /**
+     * Get the slot into which the remote receiver WRITEs its head.
+     * @return the slot or null if the buffers are not allocated yet.
+     */
+    public ByteBuffer getHeadBuffer() {
+        return headBuffer;
+    }
+
+    public long getHeadAddress() {
+        return headAddress;
+    }
+
+    /**
+     * Get the ring into which the remote sender WRITEs its messages.
+     * @return the ring or null if the buffers are not allocated yet.
+     */
+    public ByteBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public long getRingAddress() {
+        return ringAddress;
+    }
+
+    public int getRingCapacity() {
+        return ringCapacity;
+    }
+}
@@ -0,0 +1,151 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>
+ * Manages the network data buffers for <i>two-sided</i> RDMA operations, when receive buffers
+ * come from a {@link SharedReceivePool}. Only the send buffers are allocated by this manager and
+ * registered by its communicator. A RECV WR id is bound to a slot of the pool while the RECV is posted
+ * or its message is used by the application, so the RECV's buffer changes from post to post.
+ * </p>
+ */
+public class SharedReceiveBufferManager implements NetworkBufferManager {
+
+    private final TwoSidedBufferManager sendBufferManager;  // allocates only the send buffers
+    private final SharedReceivePool receivePool;
+    private final AtomicIntegerArray receiveSlots;          // the slot bound to each RECV WR id, -1 if none
+    private final int maxWorkRequests;
+
+    public SharedReceiveBufferManager(int maxBufferSize, int maxWorkRequests, SharedReceivePool receivePool){
+        if(receivePool.getMaxBufferSize() != maxBufferSize){
+            throw new IllegalArgumentException("The buffers of the receive pool must have the maximum buffer size.");
+        }
+        this.maxWorkRequests = maxWorkRequests;
+        this.receivePool = receivePool;
+        sendBufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests, receivePool.getHeadroom(),
+                false);
+        receiveSlots = new AtomicIntegerArray(maxWorkRequests);
+        for(int i=0; i < maxWorkRequests; i++){
+            receiveSlots.set(i, -1);
+        }
+    }
+
+    @Override
+    public void allocateCommunicationBuffers() {
+        sendBufferManager.allocateCommunicationBuffers();
+        receivePool.allocate();
+    }
+
+    /**
+     * Only the send buffers are in the communicator's memory, the receive buffers are in the memory of the pool.
+     */
+    @Override
+    public int getRequiredMemory() {
+        return sendBufferManager.getRequiredMemory();
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
+        sendBufferManager.allocateCommunicationBuffers(memory);
+        receivePool.allocate();
+    }
+
+    /**
+     * Binds a RECV WR id to an available slot of the pool.
+     * @param workRequestId the RECV WR id.
+     * @return the slot or -1 if the pool has no available slots.
+     */
+    public int bindReceiveSlot(int workRequestId){
+        int slot = receivePool.takeSlot();
+        receiveSlots.set(workRequestId, slot);
+        return slot;
+    }
+
+    /**
+     * Gives the slot of a RECV WR id back to the pool.
+     * @param workRequestId the RECV WR id.
+     */
+    public void unbindReceiveSlot(int workRequestId){
+        unbindReceiveSlot(workRequestId, true);
+    }
+
+    /**
+     * Gives the slot of a RECV WR id back to the pool.
+     * @param workRequestId the RECV WR id.
+     * @param wakeWaiter whether the pool must run a waiter for the slot (see {@link SharedReceivePool}).
+     */
+    public void unbindReceiveSlot(int workRequestId, boolean wakeWaiter){
+        // only one caller can take the slot back, e.g. when the communicator closes during a release
+        int slot = receiveSlots.getAndSet(workRequestId, -1);
+        if(slot >= 0){
+            receivePool.returnSlot(slot, wakeWaiter);
+        }
+    }
+
+    /**
+     * Gives the slots of all RECV WR ids back to the pool, e.g. when the communicator closes.
+     */
+    public void unbindReceiveSlots(){
+        for(int i=0; i < maxWorkRequests; i++){
+            unbindReceiveSlot(i);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBufferToRegister() {
+        return sendBufferManager.getBufferToRegister();
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId) {
+        if(requestType != WorkRequestType.TWO_SIDED_RECV){
+            return sendBufferManager.getWorkRequestBuffer(requestType, workRequestId);
+        }
+        int slot = getReceiveSlot(workRequestId);
+        return (slot < 0) ? null : receivePool.getBuffer(slot);
+    }
+
+    @Override
+    public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
+        if(requestType != WorkRequestType.TWO_SIDED_RECV){
+            return sendBufferManager.getWorkRequestBufferAddress(requestType, workRequestId);
+        }
+        int slot = getReceiveSlot(workRequestId);
+        return (slot < 0) ? -1 : receivePool.getAddress(slot);
+    }
+
+    @Override
+    public int getHeadroom() {
+        return receivePool.getHeadroom();
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId) {
+        if(requestType != WorkRequestType.TWO_SIDED_RECV){
+            return sendBufferManager.getWorkRequestHeadroom(requestType, workRequestId);
+        }
+        int slot = getReceiveSlot(workRequestId);
+        return ((slot < 0) || (getHeadroom() == 0)) ? null : receivePool.getHeadroom(slot);
+    }
+
+    /**
+     * Get the slot of the pool that is bound to a RECV WR id.
+     * @param workRequestId the RECV WR id.
+     * @return the slot or -1 if the WR id has no slot.
+     */
+    public int getReceiveSlot(int workRequestId){
+        if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return -1;
+        }
+        return receiveSlots.get(workRequestId);
+    }
+
+    public SharedReceivePool getReceivePool() {
+        return receivePool;
+    }
+}
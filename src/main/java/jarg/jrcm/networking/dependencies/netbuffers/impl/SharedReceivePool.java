@@ -0,0 +1,184 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import com.ibm.disni.RdmaEndpoint;
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netrequests.impl.IntMpmcRingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ * A pool of receive buffers that is shared by many communicators, instead of each communicator
+ * having its own receive buffers. Communicators take a buffer <i>(slot)</i> from the pool every time
+ * they post a RECV and give it back when the application releases the received message. Thus, the
+ * memory for receiving grows with the messages actually in flight and not with the number of connections.
+ * </p>
+ *
+ * <p>
+ * All slots are views of one large buffer, which is registered to the NIC only once. The memory region
+ * can be used by all the endpoints that share the protection domain of the endpoint that registered it,
+ * which is the case for the endpoints of the same DiSNI endpoint group on the same device.
+ * </p>
+ *
+ * <p>
+ * A communicator that finds the pool empty can register a waiter, which runs when a slot is
+ * returned to the pool.
+ * </p>
+ */
+public class SharedReceivePool {
+
+    private final int slots;                            // the number of receive buffers
+    private final int maxBufferSize;                    // the maximum size of a receive buffer
+    private final int headroom;                         // bytes reserved in front of each buffer
+    private ByteBuffer[] buffers;
+    private ByteBuffer[] headrooms;
+    private long[] addresses;                           // addresses of the buffers, starting from the headroom
+    private ByteBuffer registeredMemoryBuffer;          // large memory block for all the buffers
+    private IbvMr memoryRegion;                         // set on the first registration
+    private final IntMpmcRingBuffer availableSlots;
+    private final ConcurrentLinkedQueue<Runnable> slotWaiters;
+
+    public SharedReceivePool(int slots, int maxBufferSize){
+        this(slots, maxBufferSize, 0);
+    }
+
+    public SharedReceivePool(int slots, int maxBufferSize, int headroom){
+        this.slots = slots;
+        this.maxBufferSize = maxBufferSize;
+        this.headroom = headroom;
+        availableSlots = new IntMpmcRingBuffer(slots);
+        slotWaiters = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Allocates the receive buffers, if they are not allocated yet.
+     */
+    public synchronized void allocate(){
+        if(registeredMemoryBuffer != null){
+            return;
+        }
+        int slotSize = headroom + maxBufferSize;
+        registeredMemoryBuffer = ByteBuffer.allocateDirect(slotSize * slots);
+        buffers = new ByteBuffer[slots];
+        headrooms = new ByteBuffer[slots];
+        addresses = new long[slots];
+        int slotStart = 0;
+        for(int i=0; i < slots; i++){
+            headrooms[i] = sliceRegisteredMemory(slotStart, headroom);
+            buffers[i] = sliceRegisteredMemory(slotStart + headroom, maxBufferSize);
+            addresses[i] = ((sun.nio.ch.DirectBuffer) buffers[i]).address() - headroom;
+            availableSlots.offer(i);
+            slotStart += slotSize;
+        }
+        registeredMemoryBuffer.clear();
+    }
+
+    private ByteBuffer sliceRegisteredMemory(int offset, int length){
+        registeredMemoryBuffer.limit(offset + length);
+        registeredMemoryBuffer.position(offset);
+        return registeredMemoryBuffer.slice();
+    }
+
+    /**
+     * Allocates and registers the receive buffers to the NIC, if that hasn't happened yet.
+     * @param endpoint the endpoint to use for the registration.
+     * @return the registered memory region.
+     * @throws IOException if the registration fails.
+     */
+    public synchronized IbvMr register(RdmaEndpoint endpoint) throws IOException {
+        if(memoryRegion == null){
+            allocate();
+            memoryRegion = endpoint.registerMemory(registeredMemoryBuffer).execute().free().getMr();
+        }
+        return memoryRegion;
+    }
+
+    /**
+     * Takes an available slot.
+     * @return the slot or -1 if none is available.
+     */
+    public int takeSlot(){
+        return availableSlots.poll();
+    }
+
+    /**
+     * Returns a slot to the pool and runs a waiting communicator's waiter, if there is one.
+     * @param slot the returned slot.
+     */
+    public void returnSlot(int slot){
+        returnSlot(slot, true);
+    }
+
+    /**
+     * Returns a slot to the pool.
+     * @param slot the returned slot.
+     * @param wakeWaiter whether to run a waiting communicator's waiter, if there is one.
+     */
+    public void returnSlot(int slot, boolean wakeWaiter){
+        buffers[slot].clear();
+        availableSlots.offer(slot);
+        Runnable waiter = wakeWaiter ? slotWaiters.poll() : null;
+        if(waiter != null){
+            waiter.run();
+        }
+    }
+
+    /**
+     * Registers a waiter to run once, when a slot is returned to the pool.
+     * @param waiter the waiter.
+     */
+    public void waitForSlot(Runnable waiter){
+        slotWaiters.add(waiter);
+        // a slot may have been returned before the waiter was added
+        if(!availableSlots.isEmpty() && slotWaiters.remove(waiter)){
+            waiter.run();
+        }
+    }
+
+    /**
+     * Checks if communicators wait for slots. Communicators that re-post a RECV can keep its slot
+     * if no one else needs it.
+     * @return true if there are waiters.
+     */
+    public boolean hasSlotWaiters(){
+        return !slotWaiters.isEmpty();
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public ByteBuffer getBuffer(int slot){
+        return buffers[slot];
+    }
+
+    public ByteBuffer getHeadroom(int slot){
+        return headrooms[slot];
+    }
+
+    public long getAddress(int slot){
+        return addresses[slot];
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public int getAvailableSlots(){
+        return availableSlots.size();
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    public IbvMr getMemoryRegion() {
+        return memoryRegion;
+    }
+}
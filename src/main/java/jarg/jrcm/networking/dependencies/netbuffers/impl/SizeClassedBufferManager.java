@@ -0,0 +1,265 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.impl.SizeClassProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Manages network buffers of several sizes, for applications whose messages are usually small, but can
+ * occasionally be large. Instead of giving every postSend WR id a buffer of the maximum size, the postSend
+ * WR ids are split into <i>size classes</i> (e.g. 256 B, 4 KB, 64 KB, 1 MB). Every class has a slab of
+ * buffers of its size and a range of WR ids, which follows the range of the previous class. All slabs are
+ * views of one memory region, which is registered to the NIC. A {@link SizeClassProxyProvider} hands out
+ * the WR ids of the smallest class that fits a message.
+ * </p>
+ *
+ * <p>
+ * The postSend buffers serve both two-sided SENDs and one-sided operations. RECV buffers cannot be chosen
+ * by the size of the incoming message, so every RECV WR id has a buffer of the same receive size, which
+ * must fit the largest message that the remote side SENDs. Larger data must be transferred with one-sided
+ * operations. If the receive size is 0, no RECV buffers are allocated.
+ * </p>
+ *
+ * <p>
+ * Thus, the memory of two-sided traffic is still the maximum Work Requests times the receive size, and the
+ * size classes only save memory for the buffers of one-sided operations. SENDs only get WR ids of the classes
+ * that fit the receive size (see {@link SizeClassProxyProvider}).
+ * </p>
+ */
+public class SizeClassedBufferManager implements NetworkBufferManager {
+
+    private final int[] classBufferSizes;               // the buffer size of each class, increasing
+    private final int[] classFirstWorkRequestIds;       // the first WR id of each class
+    private final int[] classWorkRequests;              // the number of WR ids of each class
+    private final int maxWorkRequests;                  // the WR ids of all classes
+    private final int receiveBufferSize;                // the size of every RECV buffer
+    private final int headroom;                         // bytes reserved in front of each buffer
+    private final int[] workRequestClasses;             // the class of each postSend WR id
+    private final ByteBuffer[] sendBuffers;
+    private final long[] sendBufferAddresses;
+    private final ByteBuffer[] sendHeadrooms;
+    private final ByteBuffer[] receiveBuffers;
+    private final long[] receiveBufferAddresses;
+    private final ByteBuffer[] receiveHeadrooms;
+    private ByteBuffer registeredMemoryBuffer;          // large memory block for all slabs
+
+
+    public SizeClassedBufferManager(int[] classBufferSizes, int[] classWorkRequests, int receiveBufferSize) {
+        this(classBufferSizes, classWorkRequests, receiveBufferSize, 0);
+    }
+
+    /**
+     * @param classBufferSizes the buffer size of each class, in increasing order.
+     * @param classWorkRequests the number of postSend WR ids of each class.
+     * @param receiveBufferSize the size of every RECV buffer. There is one RECV WR id for every
+     *                          postSend WR id.
+     * @param headroom the bytes reserved in front of each buffer.
+     */
+    public SizeClassedBufferManager(int[] classBufferSizes, int[] classWorkRequests, int receiveBufferSize,
+                                    int headroom) {
+        if((classBufferSizes.length == 0) || (classBufferSizes.length != classWorkRequests.length)){
+            throw new IllegalArgumentException("Every size class needs a buffer size and a number of Work Requests.");
+        }
+        int workRequests = 0;
+        for(int i=0; i < classBufferSizes.length; i++){
+            if((classBufferSizes[i] <= 0) || (classWorkRequests[i] < 0)
+                    || ((i > 0) && (classBufferSizes[i] <= classBufferSizes[i - 1]))){
+                throw new IllegalArgumentException("Size classes must have positive, increasing buffer sizes.");
+            }
+            workRequests += classWorkRequests[i];
+        }
+        this.classBufferSizes = classBufferSizes.clone();
+        this.classWorkRequests = classWorkRequests.clone();
+        this.classFirstWorkRequestIds = new int[classBufferSizes.length];
+        this.maxWorkRequests = workRequests;
+        this.receiveBufferSize = receiveBufferSize;
+        this.headroom = headroom;
+        workRequestClasses = new int[maxWorkRequests];
+        int workRequestId = 0;
+        for(int i=0; i < classBufferSizes.length; i++){
+            classFirstWorkRequestIds[i] = workRequestId;
+            for(int j=0; j < classWorkRequests[i]; j++){
+                workRequestClasses[workRequestId] = i;
+                workRequestId ++;
+            }
+        }
+        sendBuffers = new ByteBuffer[maxWorkRequests];
+        sendBufferAddresses = new long[maxWorkRequests];
+        sendHeadrooms = new ByteBuffer[maxWorkRequests];
+        receiveBuffers = new ByteBuffer[maxWorkRequests];
+        receiveBufferAddresses = new long[maxWorkRequests];
+        receiveHeadrooms = new ByteBuffer[maxWorkRequests];
+    }
+
+    @Override
+    public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        long requiredMemory = 0;
+        for(int i=0; i < classBufferSizes.length; i++){
+            requiredMemory += (long) (headroom + classBufferSizes[i]) * classWorkRequests[i];
+        }
+        if(receiveBufferSize > 0){
+            requiredMemory += (long) (headroom + receiveBufferSize) * maxWorkRequests;
+        }
+        if(requiredMemory > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("The size classes need more than 2 GB of memory.");
+        }
+        return (int) requiredMemory;
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
+        // the slabs follow each other in the order of the classes
+        int slotStart = 0;
+        for(int i=0; i < maxWorkRequests; i++){
+            int bufferSize = classBufferSizes[workRequestClasses[i]];
+            sendHeadrooms[i] = sliceRegisteredMemory(slotStart, headroom);
+            sendBuffers[i] = sliceRegisteredMemory(slotStart + headroom, bufferSize);
+            // keep the memory address of the buffer for communications, starting from the headroom
+            sendBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) sendBuffers[i]).address() - headroom;
+            slotStart += headroom + bufferSize;
+        }
+        for(int i=0; (receiveBufferSize > 0) && (i < maxWorkRequests); i++){
+            receiveHeadrooms[i] = sliceRegisteredMemory(slotStart, headroom);
+            receiveBuffers[i] = sliceRegisteredMemory(slotStart + headroom, receiveBufferSize);
+            receiveBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) receiveBuffers[i]).address() - headroom;
+            slotStart += headroom + receiveBufferSize;
+        }
+        registeredMemoryBuffer.clear();
+    }
+
+    /**
+     * Creates a view of a part of the registered memory.
+     * @param offset where the part starts.
+     * @param length the length of the part.
+     * @return the view.
+     */
+    private ByteBuffer sliceRegisteredMemory(int offset, int length){
+        registeredMemoryBuffer.limit(offset + length);
+        registeredMemoryBuffer.position(offset);
+        return registeredMemoryBuffer.slice();
+    }
+
+    @Override
+    public ByteBuffer getBufferToRegister() {
+        return registeredMemoryBuffer;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestBuffer(WorkRequestType requestType, int workRequestId) {
+        ByteBuffer[] buffers = getTypeArray(requestType, sendBuffers, receiveBuffers);
+        if((buffers == null) || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return null;
+        }
+        return buffers[workRequestId];
+    }
+
+    @Override
+    public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
+        if((requestType == null) || requestType.isAtomic()
+                || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return -1;
+        }
+        if(requestType == WorkRequestType.TWO_SIDED_RECV){
+            return (receiveBufferSize > 0) ? receiveBufferAddresses[workRequestId] : -1;
+        }
+        return sendBufferAddresses[workRequestId];
+    }
+
+    @Override
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId) {
+        ByteBuffer[] headrooms = getTypeArray(requestType, sendHeadrooms, receiveHeadrooms);
+        if((headroom == 0) || (headrooms == null) || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return null;
+        }
+        return headrooms[workRequestId];
+    }
+
+    /**
+     * Chooses the send or the receive version of an array for a Work Request type. Atomics
+     * need aligned 8-byte buffers, which are not managed here (see {@link OneSidedBufferManager}).
+     */
+    private static ByteBuffer[] getTypeArray(WorkRequestType requestType, ByteBuffer[] sendArray,
+                                             ByteBuffer[] receiveArray){
+        if((requestType == null) || requestType.isAtomic()){
+            return null;
+        }
+        return (requestType == WorkRequestType.TWO_SIDED_RECV) ? receiveArray : sendArray;
+    }
+
+    /**
+     * Finds the smallest size class whose buffers fit the given number of bytes.
+     * @param size the number of bytes.
+     * @return the class or -1 if no class fits them.
+     */
+    public int getSizeClass(int size){
+        for(int i=0; i < classBufferSizes.length; i++){
+            if(size <= classBufferSizes[i]){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getSizeClasses() {
+        return classBufferSizes.length;
+    }
+
+    public int getClassBufferSize(int sizeClass) {
+        return classBufferSizes[sizeClass];
+    }
+
+    public int getClassWorkRequests(int sizeClass) {
+        return classWorkRequests[sizeClass];
+    }
+
+    public int getClassFirstWorkRequestId(int sizeClass) {
+        return classFirstWorkRequestIds[sizeClass];
+    }
+
+    /**
+     * Get the size class of a postSend WR id.
+     * @param workRequestId the WR id.
+     * @return the class or -1 if the WR id doesn't exist.
+     */
+    public int getSizeClassOf(int workRequestId) {
+        if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return -1;
+        }
+        return workRequestClasses[workRequestId];
+    }
+
+    public int getMaxWorkRequests() {
+        return maxWorkRequests;
+    }
+
+    /**
+     * Get the size of the largest buffers, which is the maximum buffer size for SVC managers.
+     * @return the largest buffer size of both postSend and RECV buffers.
+     */
+    public int getMaxBufferSize() {
+        return Math.max(classBufferSizes[classBufferSizes.length - 1], receiveBufferSize);
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+}
@@ -14,53 +14,92 @@ public class TwoSidedBufferManager implements NetworkBufferManager {
     private ByteBuffer[] receiveBuffers;                // contain data to be received
     private long[] sendBufferAddresses;                 // memory addresses of send buffers
     private long[] receiveBufferAddresses;                 // memory addresses of recv buffers
+    private ByteBuffer[] sendHeadrooms;                 // bytes reserved in front of send buffers
+    private ByteBuffer[] receiveHeadrooms;              // bytes reserved in front of recv buffers
     private ByteBuffer registeredMemoryBuffer;          // large memory block for communications
     private int maxBufferSize;                          // the maximum size of communication buffers
     private int maxWorkRequests;                        // the maximum number of work requests for
                                                             // either postSend or postRecv (same number)
+    private int headroom;                               // bytes reserved in front of each buffer
+    private boolean allocateReceiveBuffers;             // false if receive buffers come from elsewhere
 
 
     public TwoSidedBufferManager(int maxBufferSize, int maxWorkRequests) {
+        this(maxBufferSize, maxWorkRequests, 0);
+    }
+
+    public TwoSidedBufferManager(int maxBufferSize, int maxWorkRequests, int headroom) {
+        this(maxBufferSize, maxWorkRequests, headroom, true);
+    }
+
+    /**
+     * @param allocateReceiveBuffers if false, only send buffers are allocated, e.g. because receive
+     *                               buffers come from a {@link SharedReceivePool}.
+     */
+    public TwoSidedBufferManager(int maxBufferSize, int maxWorkRequests, int headroom,
+                                 boolean allocateReceiveBuffers) {
+        this.allocateReceiveBuffers = allocateReceiveBuffers;
         this.maxBufferSize = maxBufferSize;
         this.maxWorkRequests = maxWorkRequests;
+        this.headroom = headroom;
         sendBuffers = new ByteBuffer[maxWorkRequests];
         sendBufferAddresses = new long[maxWorkRequests];
         receiveBuffers = new ByteBuffer[maxWorkRequests];
         receiveBufferAddresses = new long[maxWorkRequests];
+        sendHeadrooms = new ByteBuffer[maxWorkRequests];
+        receiveHeadrooms = new ByteBuffer[maxWorkRequests];
     }
 
     @Override
     public void allocateCommunicationBuffers() {
+        allocateCommunicationBuffers(ByteBuffer.allocateDirect(getRequiredMemory()));
+    }
+
+    @Override
+    public int getRequiredMemory() {
+        return (headroom + maxBufferSize) * maxWorkRequests * (allocateReceiveBuffers ? 2 : 1);
+    }
+
+    @Override
+    public void allocateCommunicationBuffers(ByteBuffer memory) {
          /* Both send and receive data buffers will be views of sub-parts of
          a large buffer. The reason is to register only one memory region (the large buffer) to
          the Network Card (NIC). This saves space in Memory Translation and Memory Protection
          tables maintained in the Network Card, which are cached by the NIC.
          So the fewer the entries of the aforementioned tables, the more data can the NIC's
          cache store, leading to more scalable performance. */
-        int bufferArrayBytes = maxBufferSize * maxWorkRequests * 2;
-        registeredMemoryBuffer = ByteBuffer.allocateDirect(bufferArrayBytes);
+        int slotSize = headroom + maxBufferSize;
+        memory.limit(memory.position() + getRequiredMemory());
+        registeredMemoryBuffer = memory.slice();
         // give equal space to send and receive buffers
-        int currentLimit = maxBufferSize;
+        int slotStart = 0;
         for(int i=0; i < maxWorkRequests; i++){
-            registeredMemoryBuffer.limit(currentLimit);
-            sendBuffers[i] = registeredMemoryBuffer.slice();
-            registeredMemoryBuffer.position(currentLimit);
-            currentLimit += maxBufferSize;
-            // keep the memory address of the buffer for communications
-            long address = ((sun.nio.ch.DirectBuffer) sendBuffers[i])
-                    .address();
-            sendBufferAddresses[i] = address;
+            sendHeadrooms[i] = sliceRegisteredMemory(slotStart, headroom);
+            sendBuffers[i] = sliceRegisteredMemory(slotStart + headroom, maxBufferSize);
+            // keep the memory address of the buffer for communications, starting from the headroom
+            sendBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) sendBuffers[i]).address() - headroom;
+            slotStart += slotSize;
         }
-        for(int i=0; i < maxWorkRequests; i++){
-            registeredMemoryBuffer.limit(currentLimit);
-            receiveBuffers[i] = registeredMemoryBuffer.slice();
-            registeredMemoryBuffer.position(currentLimit);
-            currentLimit += maxBufferSize;
-            // keep the memory address of the buffer for communications
-            long address = ((sun.nio.ch.DirectBuffer) receiveBuffers[i])
-                    .address();
-            receiveBufferAddresses[i] = address;
+        for(int i=0; allocateReceiveBuffers && (i < maxWorkRequests); i++){
+            receiveHeadrooms[i] = sliceRegisteredMemory(slotStart, headroom);
+            receiveBuffers[i] = sliceRegisteredMemory(slotStart + headroom, maxBufferSize);
+            // keep the memory address of the buffer for communications, starting from the headroom
+            receiveBufferAddresses[i] = ((sun.nio.ch.DirectBuffer) receiveBuffers[i]).address() - headroom;
+            slotStart += slotSize;
         }
+        registeredMemoryBuffer.clear();
+    }
+
+    /**
+     * Creates a view of a part of the registered memory.
+     * @param offset where the part starts.
+     * @param length the length of the part.
+     * @return the view.
+     */
+    private ByteBuffer sliceRegisteredMemory(int offset, int length){
+        registeredMemoryBuffer.limit(offset + length);
+        registeredMemoryBuffer.position(offset);
+        return registeredMemoryBuffer.slice();
     }
 
     @Override
@@ -75,6 +114,9 @@ public class TwoSidedBufferManager implements NetworkBufferManager {
         }
         switch (requestType) {
             case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
+            case ONE_SIDED_WRITE_WITH_IMM:
                 return sendBuffers[workRequestId];
             case TWO_SIDED_RECV:
                 return receiveBuffers[workRequestId];
@@ -82,6 +124,31 @@ public class TwoSidedBufferManager implements NetworkBufferManager {
         return null;
     }
 
+    @Override
+    public void getWorkRequestBuffers(WorkRequestType requestType, int[] workRequestIds,
+                                      ByteBuffer[] buffers, int count) {
+        ByteBuffer[] typeBuffers = null;
+        switch (requestType) {
+            case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
+            case ONE_SIDED_WRITE_WITH_IMM:
+                typeBuffers = sendBuffers;
+                break;
+            case TWO_SIDED_RECV:
+                typeBuffers = receiveBuffers;
+                break;
+        }
+        for(int i=0; i < count; i++){
+            int workRequestId = workRequestIds[i];
+            if((typeBuffers == null) || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+                buffers[i] = null;
+            }else{
+                buffers[i] = typeBuffers[workRequestId];
+            }
+        }
+    }
+
     @Override
     public long getWorkRequestBufferAddress(WorkRequestType requestType, int workRequestId) {
         if((workRequestId < 0) || (workRequestId >= maxWorkRequests)){
@@ -89,6 +156,9 @@ public class TwoSidedBufferManager implements NetworkBufferManager {
         }
         switch (requestType) {
             case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
+            case ONE_SIDED_WRITE_WITH_IMM:
                 return sendBufferAddresses[workRequestId];
             case TWO_SIDED_RECV:
                 return receiveBufferAddresses[workRequestId];
@@ -96,4 +166,25 @@ public class TwoSidedBufferManager implements NetworkBufferManager {
         return -1;
     }
 
+    @Override
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    @Override
+    public ByteBuffer getWorkRequestHeadroom(WorkRequestType requestType, int workRequestId) {
+        if((headroom == 0) || (workRequestId < 0) || (workRequestId >= maxWorkRequests)){
+            return null;
+        }
+        switch (requestType) {
+            case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
+            case ONE_SIDED_WRITE_WITH_IMM:
+                return sendHeadrooms[workRequestId];
+            case TWO_SIDED_RECV:
+                return receiveHeadrooms[workRequestId];
+        }
+        return null;
+    }
 }
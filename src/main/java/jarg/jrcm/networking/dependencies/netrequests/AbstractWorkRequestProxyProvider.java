@@ -0,0 +1,280 @@
+package jarg.jrcm.networking.dependencies.netrequests;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.RECEIVE;
+import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.SEND;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+
+/**
+ * Contains some fields and methods that can be useful for classes implementing
+ * {@link WorkRequestProxyProvider}. It pre-creates one {@link WorkRequestProxy} per
+ * postSend and per postRecv Work Request id and leaves to subclasses only the decision
+ * of how the available postSend WR ids are kept. Batches are handled in steps of at most
+ * {@link #MAX_BATCH_SIZE} WR ids, so that the arrays that each thread reuses for them stay small
+ * no matter how many Work Requests there are.
+ */
+public abstract class AbstractWorkRequestProxyProvider implements WorkRequestProxyProvider {
+
+    private static final int IBV_WC_WITH_IMM = 1 << 1;  // Work Completion flag of ibverbs (ibv_wc_flags)
+    public static final int MAX_BATCH_SIZE = 64;        // the most WR ids acquired or reclaimed in one step
+
+    private final int maxWorkRequests;
+    private final int batchSize;
+    private final WorkRequestProxy[] postSendWRProxies;  // pre-created, cached and reused WR proxies
+    private final WorkRequestProxy[] postRecvWRProxies;
+    // per thread arrays of the batch size, reused by every batch
+    private final ThreadLocal<WorkRequestProxy[]> localReclaimedProxies;
+    private final ThreadLocal<int[]> localWorkRequestIds;
+    private final ThreadLocal<ByteBuffer[]> localBuffers;
+    // dependencies ----------------------------------
+    private NetworkBufferManager bufferManager;         // the manager of network data buffers
+    private RdmaCommunicator rdmaCommunicator;          // the communicator associated with this provider
+
+    public AbstractWorkRequestProxyProvider(int maxWorkRequests) {
+        this.maxWorkRequests = maxWorkRequests;
+        postSendWRProxies = new WorkRequestProxy[maxWorkRequests];
+        postRecvWRProxies = new WorkRequestProxy[maxWorkRequests];
+        for(int i = 0; i < maxWorkRequests; i++){
+            postSendWRProxies[i] = new WorkRequestProxy();
+            postSendWRProxies[i].setId(i).setPostType(SEND);
+            postRecvWRProxies[i] = new WorkRequestProxy();
+            postRecvWRProxies[i].setId(i).setPostType(RECEIVE).setWorkRequestType(TWO_SIDED_RECV);
+        }
+        batchSize = Math.min(maxWorkRequests, MAX_BATCH_SIZE);
+        localReclaimedProxies = ThreadLocal.withInitial(() -> new WorkRequestProxy[batchSize]);
+        localWorkRequestIds = ThreadLocal.withInitial(() -> new int[batchSize]);
+        localBuffers = ThreadLocal.withInitial(() -> new ByteBuffer[batchSize]);
+    }
+
+    /**
+     * Checks whether a postSend-type request of the given type can be served at all.
+     * @param requestType the type of the requested Work Request.
+     * @return true if a proxy can be provided for this request type, false otherwise.
+     */
+    protected boolean canProvide(WorkRequestType requestType){
+        return (maxWorkRequests != 0) && (requestType != null)
+                && (bufferManager != null) && (requestType != TWO_SIDED_RECV);
+    }
+
+    /**
+     * Prepares the cached postSend proxy of a WR id that was just acquired, so that it can
+     * be handed to the application.
+     * @param requestType the type of the Work Request.
+     * @param workRequestId the acquired WR id.
+     * @return the prepared proxy.
+     */
+    protected WorkRequestProxy preparePostSendProxy(WorkRequestType requestType, int workRequestId){
+        ByteBuffer buffer = bufferManager.getWorkRequestBuffer(requestType, workRequestId);
+        WorkRequestProxy proxy = postSendWRProxies[workRequestId];
+        proxy.setWorkRequestType(requestType).setBuffer(buffer);
+        return proxy;
+    }
+
+    /**
+     * Batch version of {@link AbstractWorkRequestProxyProvider#preparePostSendProxy(WorkRequestType, int)}.
+     * @param requestType the type of the Work Requests.
+     * @param workRequestIds the acquired WR ids.
+     * @param proxies where to store the prepared proxies.
+     * @param count how many WR ids were acquired, at most the batch size.
+     */
+    protected void preparePostSendProxies(WorkRequestType requestType, int[] workRequestIds,
+                                          WorkRequestProxy[] proxies, int count){
+        ByteBuffer[] buffers = localBuffers.get();
+        bufferManager.getWorkRequestBuffers(requestType, workRequestIds, buffers, count);
+        for(int i=0; i < count; i++){
+            WorkRequestProxy proxy = postSendWRProxies[workRequestIds[i]];
+            proxy.setWorkRequestType(requestType).setBuffer(buffers[i]);
+            proxies[i] = proxy;
+            // don't keep the buffer reachable from this thread, its memory may be freed later
+            buffers[i] = null;
+        }
+    }
+
+    /**
+     * Hands an acquired WR id to an asynchronous request that was waiting for one.
+     * @param pendingRequest the waiting request.
+     * @param workRequestId the acquired WR id.
+     * @return true if the request took the WR id, false if the request had been cancelled
+     * in the meantime, in which case the WR id must be given to someone else.
+     */
+    protected boolean servePendingRequest(PendingProxyRequest pendingRequest, int workRequestId){
+        if(pendingRequest.future.isDone()){
+            return false;
+        }
+        WorkRequestProxy proxy = preparePostSendProxy(pendingRequest.requestType, workRequestId);
+        return pendingRequest.future.complete(proxy);
+    }
+
+    /**
+     * Clears the buffer of a proxy that is being released, along with the settings of its last post.
+     * @param workRequestProxy the released proxy.
+     */
+    protected void clearProxyBuffer(WorkRequestProxy workRequestProxy){
+        workRequestProxy.clearSegments();
+        workRequestProxy.clearRemoteLocation();
+        workRequestProxy.clearImmediateData();
+        workRequestProxy.clearAtomicOperands();
+        ByteBuffer buffer = workRequestProxy.getBuffer();
+        // must make this check to avoid errors with inconsistent WC opcodes
+        // during endpoint shutdown
+        if(buffer != null){
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Re-posts a released postRecv request, so that it can accept new data.
+     * @param workRequestProxy the released postRecv proxy.
+     */
+    protected void repostReceive(WorkRequestProxy workRequestProxy){
+        clearProxyBuffer(workRequestProxy);
+        // now that this WR id is free for reuse, we can repost
+        // that 'receive' request immediately to accept new data
+        rdmaCommunicator.postNetOperationToNIC(workRequestProxy);
+    }
+
+    @Override
+    public void reclaimWorkRequests(int[] workRequestIds, int count) {
+        // prevent errors
+        if(maxWorkRequests == 0){
+            return;
+        }
+        // reclaiming happens on every signaled completion, so the proxies are gathered in a reused array
+        WorkRequestProxy[] proxies = localReclaimedProxies.get();
+        for(int first=0; first < count; first += batchSize){
+            int batch = Math.min(batchSize, count - first);
+            for(int i=0; i < batch; i++){
+                proxies[i] = postSendWRProxies[workRequestIds[first + i]];
+            }
+            releaseWorkRequests(proxies, batch);
+        }
+    }
+
+    @Override
+    public WorkRequestProxy getWorkRequestProxyForWc(IbvWC workCompletionEvent){
+        if(workCompletionEvent == null){
+            return null;
+        }
+        // extract info from event
+        int workRequestId = (int) workCompletionEvent.getWr_id();
+        int operationCode = workCompletionEvent.getOpcode();
+        // identify request type
+        WorkRequestType workRequestType = getWorkRequestTypeForWcOperationCode(operationCode);
+        if(workRequestType == null){
+            return null;
+        }
+        // identify posted request type
+        if(workRequestType.equals(TWO_SIDED_RECV)){
+            // the buffer of a RECV can change between posts, e.g. with shared receive buffers
+            WorkRequestProxy proxy = postRecvWRProxies[workRequestId];
+            proxy.setBuffer(bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, workRequestId));
+            setReceivedData(proxy, workCompletionEvent);
+            return proxy;
+        }
+        return postSendWRProxies[workRequestId];
+    }
+
+    /**
+     * Passes the immediate data and the length of a received message from its Work Completion Event
+     * to its proxy.
+     * @param proxy the proxy of the RECV.
+     * @param workCompletionEvent the Work Completion Event of the RECV.
+     */
+    private void setReceivedData(WorkRequestProxy proxy, IbvWC workCompletionEvent){
+        int operationCode = workCompletionEvent.getOpcode();
+        if(operationCode == IbvWC.IbvWcOpcode.IBV_WC_RECV_RDMA_WITH_IMM.getOpcode()){
+            // the data was written to our memory, not to the RECV's buffer
+            proxy.setImmediateData(workCompletionEvent.getImm_data())
+                    .setByteLength(workCompletionEvent.getByte_len());
+            return;
+        }
+        if((workCompletionEvent.getWc_flags() & IBV_WC_WITH_IMM) != 0){
+            proxy.setImmediateData(workCompletionEvent.getImm_data());
+        }else{
+            proxy.clearImmediateData();
+        }
+        // the application doesn't see the headroom
+        proxy.setByteLength(Math.max(0, workCompletionEvent.getByte_len() - bufferManager.getHeadroom()));
+    }
+
+    /* ***************************************************************
+     *   Getters/Setters
+     * ***************************************************************/
+
+    public int getMaxWorkRequests() {
+        return maxWorkRequests;
+    }
+
+    /**
+     * Get an array for the WR ids of a batch, which belongs to the calling thread and is reused by its
+     * batches. Its length, at most {@link #MAX_BATCH_SIZE}, is the most WR ids that a batch can acquire.
+     * @return the array.
+     */
+    protected int[] getLocalWorkRequestIds(){
+        return localWorkRequestIds.get();
+    }
+
+    protected WorkRequestProxy getPostSendProxy(int workRequestId){
+        return postSendWRProxies[workRequestId];
+    }
+
+    protected WorkRequestProxy getPostRecvProxy(int workRequestId){
+        return postRecvWRProxies[workRequestId];
+    }
+
+    @Override
+    public NetworkBufferManager getBufferManager() {
+        return bufferManager;
+    }
+
+    @Override
+    public void setBufferManager(NetworkBufferManager bufferManager) {
+        this.bufferManager = bufferManager;
+        for(int i=0; i<maxWorkRequests; i++){
+            postRecvWRProxies[i].setBuffer(bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, i));
+        }
+    }
+
+    @Override
+    public RdmaCommunicator getCommunicator() {
+        return rdmaCommunicator;
+    }
+
+    @Override
+    public void setCommunicator(RdmaCommunicator communicator) {
+        this.rdmaCommunicator = communicator;
+        for(int i=0; i<maxWorkRequests; i++){
+            postSendWRProxies[i].setRdmaCommunicator(communicator);
+            postRecvWRProxies[i].setRdmaCommunicator(communicator);
+        }
+    }
+
+    /**
+     * An asynchronous request for a postSend {@link WorkRequestProxy}, that waits for
+     * a WR id to be released.
+     */
+    protected static class PendingProxyRequest {
+        private final WorkRequestType requestType;
+        private final CompletableFuture<WorkRequestProxy> future;
+
+        public PendingProxyRequest(WorkRequestType requestType) {
+            this.requestType = requestType;
+            this.future = new CompletableFuture<>();
+        }
+
+        public WorkRequestType getRequestType() {
+            return requestType;
+        }
+
+        public CompletableFuture<WorkRequestProxy> getFuture() {
+            return future;
+        }
+    }
+}
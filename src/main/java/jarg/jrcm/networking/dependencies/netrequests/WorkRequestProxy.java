@@ -1,7 +1,10 @@
 package jarg.jrcm.networking.dependencies.netrequests;
 
+import com.ibm.disni.verbs.IbvMr;
 import com.ibm.disni.verbs.IbvWC;
 import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache.Registration;
 import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 
@@ -39,13 +42,53 @@ import java.nio.ByteBuffer;
  * WorkRequestProxy object. That proxy object will contain the received
  * message in its internal ByteBuffer and the application can read data from it.
  * After finishing with the WorkRequestProxy, the application has to release it.
+ * </p>
+ *
+ * <p>
+ * Work Requests of types with immediate data send the proxy's immediate data together with the
+ * message. For received messages, the proxy has the immediate data, if the sender sent any, and the
+ * length of the received data. A one-sided WRITE with immediate also consumes a RECV of the remote side,
+ * but its data is written to the remote memory location set in the proxy, so the RECV's buffer stays
+ * empty.
+ * </p>
+ *
+ * <p>
+ * Atomic Work Requests take their operands from the proxy (see {@link #setCompareAndSwap(long, long)} and
+ * {@link #setFetchAndAdd(long)}) and operate on the 8 bytes at the remote location of the proxy. When they
+ * complete, {@link #getAtomicResult()} returns the value that the remote memory had before the operation.
+ * </p>
+ *
+ * <p>
+ * A two-sided SEND can gather its message from the proxy's buffer and up to {@link #MAX_SEGMENTS} more
+ * <i>segments</i> of registered memory (see {@link #addSegment(ByteBuffer, IbvMr)}), e.g. a header in the
+ * proxy's buffer and a large payload elsewhere, without copying the payload. The segments must stay unchanged
+ * until the SEND completes. They are cleared when the proxy is released.
+ * Application buffers that aren't in registered memory can be registered on demand with a
+ * {@link RegistrationCache} (see {@link #addSegment(ByteBuffer, Registration)}). The proxy keeps their
+ * registrations until it is released, so they aren't deregistered while the SEND is in flight.
+ * </p>
  */
 public class WorkRequestProxy {
+    public static final int MAX_SEGMENTS = 3;   // segments of registered memory after the proxy's buffer
+
     private int id;
     private PostedRequestType postType;
     private WorkRequestType workRequestType;
     private ByteBuffer buffer;
     private RdmaCommunicator rdmaCommunicator;
+    private int immediateData;                  // sent or received immediate data
+    private boolean withImmediateData;          // if a received message had immediate data
+    private int byteLength;                     // the length of received data
+    private long remoteAddress;                 // where one-sided operations access the remote memory
+    private int remoteKey;
+    private int remoteLength;                   // bytes to access, 0 for the limit of the buffer
+    private long atomicCompareAdd;              // the value to compare with or to add
+    private long atomicSwap;                    // the value to swap in
+    private int segmentCount;                   // gathered segments after the buffer
+    private long[] segmentAddresses;            // created on the first use of segments
+    private int[] segmentLengths;
+    private int[] segmentKeys;
+    private Registration[] segmentRegistrations;        // released with the segments, can contain nulls
 
     public WorkRequestProxy(){}
 
@@ -79,6 +122,71 @@ public class WorkRequestProxy {
         return workRequestType;
     }
 
+    public int getImmediateData() {
+        return immediateData;
+    }
+
+    /**
+     * @return true if the received message of this proxy had immediate data.
+     */
+    public boolean hasImmediateData() {
+        return withImmediateData;
+    }
+
+    /**
+     * @return the length of the received data. For a WRITE with immediate, it is the length of the
+     * data written to this side's memory.
+     */
+    public int getByteLength() {
+        return byteLength;
+    }
+
+    public long getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public int getRemoteKey() {
+        return remoteKey;
+    }
+
+    public int getRemoteLength() {
+        return remoteLength;
+    }
+
+    public long getAtomicCompareAdd() {
+        return atomicCompareAdd;
+    }
+
+    public long getAtomicSwap() {
+        return atomicSwap;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public long getSegmentAddress(int segment) {
+        return segmentAddresses[segment];
+    }
+
+    public int getSegmentLength(int segment) {
+        return segmentLengths[segment];
+    }
+
+    public int getSegmentKey(int segment) {
+        return segmentKeys[segment];
+    }
+
+    /**
+     * Get the result of a completed atomic operation. The NIC stores the old value of the remote
+     * 8 bytes in the proxy's buffer, which is read in the native byte order, as the remote side
+     * would store a long.
+     * @return the value of the remote memory before the atomic operation.
+     */
+    public long getAtomicResult() {
+        return buffer.getLong(0);
+    }
+
     public WorkRequestProxy setId(int id) {
         this.id = id;
         return this;
@@ -99,6 +207,156 @@ public class WorkRequestProxy {
         return this;
     }
 
+    public WorkRequestProxy setImmediateData(int immediateData) {
+        this.immediateData = immediateData;
+        this.withImmediateData = true;
+        return this;
+    }
+
+    public WorkRequestProxy clearImmediateData() {
+        this.immediateData = 0;
+        this.withImmediateData = false;
+        return this;
+    }
+
+    public WorkRequestProxy setByteLength(int byteLength) {
+        this.byteLength = byteLength;
+        return this;
+    }
+
+    /**
+     * Sets the remote memory location that a one-sided operation of this proxy will access.
+     * @param remoteAddress the address of the remote memory.
+     * @param remoteKey the remote key of the remote memory region.
+     * @return this proxy.
+     */
+    public WorkRequestProxy setRemoteLocation(long remoteAddress, int remoteKey) {
+        return setRemoteLocation(remoteAddress, remoteKey, 0);
+    }
+
+    /**
+     * Sets the remote memory location that a one-sided operation of this proxy will access.
+     * @param remoteAddress the address of the remote memory.
+     * @param remoteKey the remote key of the remote memory region.
+     * @param remoteLength how many bytes to access. If 0, the limit of the proxy's buffer is used.
+     * @return this proxy.
+     */
+    public WorkRequestProxy setRemoteLocation(long remoteAddress, int remoteKey, int remoteLength) {
+        this.remoteAddress = remoteAddress;
+        this.remoteKey = remoteKey;
+        this.remoteLength = remoteLength;
+        return this;
+    }
+
+    /**
+     * Removes the remote memory location of this proxy, so that a later post of its WR id doesn't access
+     * the memory of a previous post.
+     * @return this proxy.
+     */
+    public WorkRequestProxy clearRemoteLocation() {
+        return setRemoteLocation(0, 0, 0);
+    }
+
+    /**
+     * Sets the operands of a compare-and-swap. The remote value is replaced by <i>swap</i> only if
+     * it equals <i>compare</i>.
+     * @param compare the expected remote value.
+     * @param swap the new remote value.
+     * @return this proxy.
+     */
+    public WorkRequestProxy setCompareAndSwap(long compare, long swap) {
+        this.atomicCompareAdd = compare;
+        this.atomicSwap = swap;
+        return this;
+    }
+
+    /**
+     * Sets the operand of a fetch-and-add.
+     * @param add the value to add to the remote value.
+     * @return this proxy.
+     */
+    public WorkRequestProxy setFetchAndAdd(long add) {
+        this.atomicCompareAdd = add;
+        this.atomicSwap = 0;
+        return this;
+    }
+
+    /**
+     * Removes the operands of an atomic operation of this proxy.
+     * @return this proxy.
+     */
+    public WorkRequestProxy clearAtomicOperands() {
+        return setCompareAndSwap(0, 0);
+    }
+
+    /**
+     * Adds a segment of registered memory to gather after the proxy's buffer, when sending.
+     * @param address the memory address of the segment.
+     * @param length the length of the segment.
+     * @param localKey the local key of the memory region that contains the segment.
+     * @return this proxy.
+     */
+    public WorkRequestProxy addSegment(long address, int length, int localKey) {
+        if(segmentCount == MAX_SEGMENTS){
+            throw new IllegalStateException("A proxy cannot have more than " + MAX_SEGMENTS + " segments.");
+        }
+        if(segmentAddresses == null){
+            segmentAddresses = new long[MAX_SEGMENTS];
+            segmentLengths = new int[MAX_SEGMENTS];
+            segmentKeys = new int[MAX_SEGMENTS];
+            segmentRegistrations = new Registration[MAX_SEGMENTS];
+        }
+        segmentAddresses[segmentCount] = address;
+        segmentLengths[segmentCount] = length;
+        segmentKeys[segmentCount] = localKey;
+        segmentRegistrations[segmentCount] = null;
+        segmentCount ++;
+        return this;
+    }
+
+    /**
+     * Adds the remaining bytes of a direct buffer, between its position and its limit, as a
+     * segment to gather after the proxy's buffer, when sending.
+     * @param buffer a direct buffer in registered memory.
+     * @param memoryRegion the memory region that contains the buffer.
+     * @return this proxy.
+     */
+    public WorkRequestProxy addSegment(ByteBuffer buffer, IbvMr memoryRegion) {
+        long address = ((sun.nio.ch.DirectBuffer) buffer).address() + buffer.position();
+        return addSegment(address, buffer.remaining(), memoryRegion.getLkey());
+    }
+
+    /**
+     * Adds the remaining bytes of a direct buffer as a segment to gather after the proxy's buffer, when sending.
+     * The proxy holds a reference to the buffer's registration until the segments are cleared, which happens
+     * when the proxy is released.
+     * @param buffer a direct buffer that is covered by the registration.
+     * @param registration a registration from a {@link RegistrationCache}.
+     * @return this proxy.
+     */
+    public WorkRequestProxy addSegment(ByteBuffer buffer, Registration registration) {
+        long address = ((sun.nio.ch.DirectBuffer) buffer).address() + buffer.position();
+        addSegment(address, buffer.remaining(), registration.getLocalKey());
+        registration.retain();
+        segmentRegistrations[segmentCount - 1] = registration;
+        return this;
+    }
+
+    /**
+     * Removes the segments of this proxy and releases their registrations, if any.
+     * @return this proxy.
+     */
+    public WorkRequestProxy clearSegments() {
+        for(int i=0; i < segmentCount; i++){
+            if(segmentRegistrations[i] != null){
+                segmentRegistrations[i].release();
+                segmentRegistrations[i] = null;
+            }
+        }
+        this.segmentCount = 0;
+        return this;
+    }
+
     public WorkRequestProxy setRdmaCommunicator(RdmaCommunicator rdmaCommunicator) {
         this.rdmaCommunicator = rdmaCommunicator;
         return this;
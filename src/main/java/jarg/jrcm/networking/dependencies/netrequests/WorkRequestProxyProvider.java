@@ -7,6 +7,9 @@ import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
 
 /**
@@ -76,6 +79,206 @@ public interface WorkRequestProxyProvider {
      */
     WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType);
 
+    /**
+     * <p>
+     * This method is like {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType)},
+     * but it never blocks the calling thread. It returns a future that is completed with the
+     * {@link WorkRequestProxy} as soon as a WR id is available. If no WR id is available at the time
+     * of the call, the request waits in FIFO order with other asynchronous requests and is served
+     * directly by {@link WorkRequestProxyProvider#releaseWorkRequest(WorkRequestProxy)}. In that case,
+     * any dependent actions of the future run on the thread that released the WR id, which is
+     * usually the thread that handles Work Completion Events, so they must not block.
+     * </p>
+     *
+     * <p>
+     * Cancelling the returned future before it is completed withdraws the request.
+     * </p>
+     *
+     * <p>
+     * The default implementation has no queue of waiting requests. If no WR id is available, a thread of
+     * the common pool blocks on {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType)}
+     * and releases the proxy again if the future was cancelled in the meantime.
+     * </p>
+     *
+     * @param requestType specifies the type of request.
+     *
+     * @return a future that will be completed with the {@link WorkRequestProxy} object that
+     * contains information about the actual Work Request. The future is completed with null
+     * if the request cannot be served at all (e.g. invalid request type).
+     */
+    default CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType){
+        WorkRequestProxy proxy = getPostSendRequestNow(requestType);
+        if(proxy != null){
+            return CompletableFuture.completedFuture(proxy);
+        }
+        CompletableFuture<WorkRequestProxy> future = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            WorkRequestProxy acquiredProxy = getPostSendRequestBlocking(requestType);
+            // the request was withdrawn while waiting
+            if(!future.complete(acquiredProxy) && (acquiredProxy != null)){
+                releaseWorkRequest(acquiredProxy);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Callback alternative of {@link WorkRequestProxyProvider#getPostSendRequestAsync(WorkRequestType)}.
+     * @param requestType specifies the type of request.
+     * @param callback will be called with the {@link WorkRequestProxy} when a WR id is available.
+     */
+    default void getPostSendRequestAsync(WorkRequestType requestType, Consumer<WorkRequestProxy> callback){
+        getPostSendRequestAsync(requestType).thenAccept(callback);
+    }
+
+    /**
+     * <p>
+     * Batch version of {@link WorkRequestProxyProvider#getPostSendRequestNow(WorkRequestType)}.
+     * It gets up to <i>count</i> {@link WorkRequestProxy WorkRequestProxies} of the same type at once,
+     * without blocking. Implementations should pay any synchronization cost once per batch instead of
+     * once per proxy.
+     * </p>
+     *
+     * @param requestType specifies the type of the requests.
+     * @param proxies where to store the acquired proxies, starting from index 0.
+     * @param count the maximum number of proxies to acquire.
+     *
+     * @return the number of acquired proxies, which can be 0 if no Work Request id is available.
+     */
+    default int getPostSendRequestsNow(WorkRequestType requestType, WorkRequestProxy[] proxies, int count){
+        int acquired = 0;
+        while(acquired < count){
+            WorkRequestProxy proxy = getPostSendRequestNow(requestType);
+            if(proxy == null){
+                break;
+            }
+            proxies[acquired] = proxy;
+            acquired ++;
+        }
+        return acquired;
+    }
+
+    /**
+     * <p>
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestsNow(WorkRequestType, WorkRequestProxy[], int)},
+     * but if no Work Request id is available, it blocks until at least one is.
+     * </p>
+     *
+     * @param requestType specifies the type of the requests.
+     * @param proxies where to store the acquired proxies, starting from index 0.
+     * @param count the maximum number of proxies to acquire.
+     *
+     * @return the number of acquired proxies, which is at least 1 for valid arguments.
+     */
+    default int getPostSendRequestsBlocking(WorkRequestType requestType, WorkRequestProxy[] proxies, int count){
+        if(count <= 0){
+            return 0;
+        }
+        WorkRequestProxy proxy = getPostSendRequestBlocking(requestType);
+        if(proxy == null){
+            return 0;
+        }
+        proxies[0] = proxy;
+        int acquired = 1;
+        while(acquired < count){
+            proxy = getPostSendRequestNow(requestType);
+            if(proxy == null){
+                break;
+            }
+            proxies[acquired] = proxy;
+            acquired ++;
+        }
+        return acquired;
+    }
+
+    /**
+     * <p>
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType)}, but for a
+     * specific traffic class. Providers that support traffic classes can reserve WR ids for
+     * some classes, so that latency-critical messages (e.g. heartbeats) never wait behind bulk data.
+     * Providers without traffic classes ignore the class.
+     * </p>
+     *
+     * @param requestType specifies the type of request.
+     * @param trafficClass the traffic class of the request. Class 0 is the default class.
+     *
+     * @return the {@link WorkRequestProxy} object that
+     * contains information about the actual Work Request.
+     */
+    default WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType, int trafficClass){
+        return getPostSendRequestBlocking(requestType);
+    }
+
+    /**
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestNow(WorkRequestType)}, but for a specific
+     * traffic class (see {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType, int)}).
+     * @param requestType specifies the type of request.
+     * @param trafficClass the traffic class of the request. Class 0 is the default class.
+     * @return the {@link WorkRequestProxy} object that
+     * contains information about the actual Work Request or null if no
+     * Work Request id is available for this class.
+     */
+    default WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType, int trafficClass){
+        return getPostSendRequestNow(requestType);
+    }
+
+    /**
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestAsync(WorkRequestType)}, but for a specific
+     * traffic class (see {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType, int)}).
+     * @param requestType specifies the type of request.
+     * @param trafficClass the traffic class of the request. Class 0 is the default class.
+     * @return a future that will be completed with the {@link WorkRequestProxy}.
+     */
+    default CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType,
+                                                                        int trafficClass){
+        return getPostSendRequestAsync(requestType);
+    }
+
+    /**
+     * <p>
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestBlocking(WorkRequestType)}, but the buffer of
+     * the returned proxy must fit the given number of bytes. Providers for buffers of several sizes use the
+     * smallest buffer that fits
+     * (see {@link jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager}).
+     * Providers for buffers of one size ignore the size.
+     * </p>
+     *
+     * @param requestType specifies the type of request.
+     * @param size the number of bytes that the buffer must fit.
+     *
+     * @return the {@link WorkRequestProxy} object that
+     * contains information about the actual Work Request or null if no buffer fits the size.
+     */
+    default WorkRequestProxy getSizedPostSendRequestBlocking(WorkRequestType requestType, int size){
+        return getPostSendRequestBlocking(requestType);
+    }
+
+    /**
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestNow(WorkRequestType)}, but for a buffer that
+     * fits a number of bytes
+     * (see {@link WorkRequestProxyProvider#getSizedPostSendRequestBlocking(WorkRequestType, int)}).
+     * @param requestType specifies the type of request.
+     * @param size the number of bytes that the buffer must fit.
+     * @return the {@link WorkRequestProxy} object that
+     * contains information about the actual Work Request or null if no
+     * Work Request id is available.
+     */
+    default WorkRequestProxy getSizedPostSendRequestNow(WorkRequestType requestType, int size){
+        return getPostSendRequestNow(requestType);
+    }
+
+    /**
+     * Like {@link WorkRequestProxyProvider#getPostSendRequestAsync(WorkRequestType)}, but for a buffer that
+     * fits a number of bytes
+     * (see {@link WorkRequestProxyProvider#getSizedPostSendRequestBlocking(WorkRequestType, int)}).
+     * @param requestType specifies the type of request.
+     * @param size the number of bytes that the buffer must fit.
+     * @return a future that will be completed with the {@link WorkRequestProxy}.
+     */
+    default CompletableFuture<WorkRequestProxy> getSizedPostSendRequestAsync(WorkRequestType requestType, int size){
+        return getPostSendRequestAsync(requestType);
+    }
+
     /* Unlike postSend-type requests, which are requests to send data, postRecv-type requests
     * don't need to be posted by applications explicitly.
     * They can be all posted at the beginning of the application and re-posted after their use
@@ -89,6 +292,36 @@ public interface WorkRequestProxyProvider {
      */
     void releaseWorkRequest(WorkRequestProxy workRequestProxy);
 
+    /**
+     * Batch version of {@link WorkRequestProxyProvider#releaseWorkRequest(WorkRequestProxy)}.
+     * Implementations should pay any synchronization cost once per batch instead of
+     * once per proxy.
+     * @param workRequestProxies the objects containing information about the WRs.
+     * @param count how many proxies of the array to release, starting from index 0.
+     */
+    default void releaseWorkRequests(WorkRequestProxy[] workRequestProxies, int count){
+        for(int i=0; i < count; i++){
+            releaseWorkRequest(workRequestProxies[i]);
+        }
+    }
+
+    /**
+     * Makes the postSend Work Requests with the given ids available for reuse. It is used for
+     * unsignaled Work Requests, which don't produce Work Completion Events that the application
+     * could use to release them. They are reclaimed instead when the completion of a later
+     * signaled Work Request arrives. The default implementation releases a new postSend proxy with each
+     * id, so implementations whose releases need more than the id and the post type of a proxy must
+     * override it.
+     * @param workRequestIds the ids of the completed unsignaled Work Requests.
+     * @param count how many ids of the array to reclaim, starting from index 0.
+     */
+    default void reclaimWorkRequests(int[] workRequestIds, int count){
+        for(int i=0; i < count; i++){
+            releaseWorkRequest(new WorkRequestProxy(workRequestIds[i], PostedRequestType.SEND, null, null,
+                    getCommunicator()));
+        }
+    }
+
     /**
      * Retrieves a {@link WorkRequestProxy} representing the Work Request
      * of a {@link IbvWC Work Completion Event}.
@@ -109,13 +342,21 @@ public interface WorkRequestProxyProvider {
     default int getWcOperationCodeForWorkRequest(WorkRequestType type){
         switch (type){
             case TWO_SIDED_SEND_SIGNALED:
+            case TWO_SIDED_SEND_UNSIGNALED:
+            case TWO_SIDED_SEND_WITH_IMM:
                 return IbvWC.IbvWcOpcode.IBV_WC_SEND.getOpcode();
             case TWO_SIDED_RECV:
                 return IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode();
             case ONE_SIDED_WRITE_SIGNALED:
+            case ONE_SIDED_WRITE_UNSIGNALED:
+            case ONE_SIDED_WRITE_WITH_IMM:
                 return IbvWC.IbvWcOpcode.IBV_WC_RDMA_WRITE.getOpcode();
             case ONE_SIDED_READ_SIGNALED:
                 return IbvWC.IbvWcOpcode.IBV_WC_RDMA_READ.getOpcode();
+            case ONE_SIDED_ATOMIC_CMP_AND_SWP:
+                return IbvWC.IbvWcOpcode.IBV_WC_COMP_SWAP.getOpcode();
+            case ONE_SIDED_ATOMIC_FETCH_AND_ADD:
+                return IbvWC.IbvWcOpcode.IBV_WC_FETCH_ADD.getOpcode();
         }
         return -1;
     }
@@ -133,12 +374,22 @@ public interface WorkRequestProxyProvider {
         if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode()){
             return TWO_SIDED_RECV;
         }
+        // a WRITE with immediate from the remote side consumed one of our RECVs
+        if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_RECV_RDMA_WITH_IMM.getOpcode()){
+            return TWO_SIDED_RECV;
+        }
         if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_RDMA_WRITE.getOpcode()){
             return ONE_SIDED_WRITE_SIGNALED;
         }
         if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_RDMA_READ.getOpcode()){
             return ONE_SIDED_READ_SIGNALED;
         }
+        if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_COMP_SWAP.getOpcode()){
+            return ONE_SIDED_ATOMIC_CMP_AND_SWP;
+        }
+        if(wcOpcode == IbvWC.IbvWcOpcode.IBV_WC_FETCH_ADD.getOpcode()){
+            return ONE_SIDED_ATOMIC_FETCH_AND_ADD;
+        }
         return null;
     }
 }
@@ -0,0 +1,663 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import com.ibm.disni.RdmaEndpoint;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.ElasticBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache.MemoryRegistrar;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import jarg.jrcm.networking.dependencies.svc.SVCManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A {@link WorkRequestProxyProvider} whose pool of postSend WR ids grows and shrinks with the load. It starts
+ * with the WR ids whose buffers are in the communicator's registered memory and, when requests have had to
+ * wait for a WR id a number of times (see {@link #setGrowThreshold(int)}), it registers the buffers of the next
+ * chunk of WR ids of an {@link ElasticBufferManager} and makes them available. After no request has had to
+ * wait for a while (see {@link #setIdleNanos(long)}), the last chunk is deregistered again, once all of its
+ * WR ids have been released. The releases only check whether the pool is idle and the deregistration runs on
+ * the same executor as the background growth, so that the completion thread never waits for it.
+ * </p>
+ *
+ * <p>
+ * Registering memory is slow, so the pool only grows in the calling thread on the blocking paths. The
+ * non-blocking paths hand the growth to an executor (see {@link #setGrowExecutor(Executor)}) and don't wait
+ * for it. If a chunk cannot be allocated, the pool doesn't try to grow again until a WR id is released.
+ * </p>
+ *
+ * <p>
+ * The lowest free WR id is always provided first, so that under a light load the WR ids of the last chunks are
+ * not used and the chunk can be given back. The SVCs of a chunk's WR ids are freed through the
+ * {@link SVCManager} whenever the chunk's buffers change, so that they are created again for the new buffers.
+ * With a buffer manager that is not elastic, this provider behaves like a {@link QueuedProxyProvider} that
+ * provides the lowest free WR id first.
+ * </p>
+ *
+ * <p>
+ * The maximum number of Work Requests must not exceed the depth of the queue pair's send queue, which is
+ * created for the maximum before communications start. PostRecv requests are all pre-posted and reused,
+ * so they are not managed here.
+ * </p>
+ */
+public class ElasticProxyProvider extends AbstractWorkRequestProxyProvider {
+    private final Logger logger = LoggerFactory.getLogger(ElasticProxyProvider.class);
+
+    private final BitSet freePostSendWrIds;             // available Work Request ids for the postSend queue
+    private final ArrayDeque<PendingProxyRequest> pendingRequests;  // asynchronous requests waiting for a WR id
+                                                                        // guarded by the freePostSendWrIds monitor
+    private final SVCManager svcManager;                // optional, frees the SVCs of resized chunks
+    private ElasticBufferManager elasticBufferManager;  // null if the buffer manager isn't elastic
+    private MemoryRegistrar memoryRegistrar;
+    private int growThreshold = 4;
+    private long idleNanos = TimeUnit.SECONDS.toNanos(1);
+    private Executor growExecutor;                      // grows the pool for the non-blocking paths
+    // guarded by the freePostSendWrIds monitor -------
+    private int freeWorkRequests;
+    private int activeChunks;
+    private boolean resizing;                           // a chunk is being allocated or freed
+    private boolean growFailed;                         // the last grow failed and no WR id was released since
+    private int acquireWaits;                           // waits for a WR id since the last resize
+    private long lastWaitNanos;                         // the last time a request had to wait for a WR id
+    private int releasesSinceIdleCheck;
+    private boolean shrinkScheduled;                    // a shrink was handed to the grow executor
+    private long grows;
+    private long shrinks;
+    private long failedGrows;
+
+
+    // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
+    public ElasticProxyProvider(int maxWorkRequests){
+        this(maxWorkRequests, null);
+    }
+
+    /**
+     * @param maxWorkRequests the maximum number of postSend and of postRecv Work Requests.
+     * @param svcManager the SVC manager of the communicator, which frees the SVCs of resized chunks.
+     *                   It is only needed if the SVCs are created before the chunks are allocated.
+     */
+    public ElasticProxyProvider(int maxWorkRequests, SVCManager svcManager){
+        super(maxWorkRequests);
+        this.svcManager = svcManager;
+        freePostSendWrIds = new BitSet(maxWorkRequests);
+        pendingRequests = new ArrayDeque<>();
+        lastWaitNanos = System.nanoTime();
+    }
+
+    /**
+     * Sets after how many waits for a WR id the pool grows by a chunk.
+     * @param growThreshold the number of waits, 4 by default.
+     * @return this provider.
+     */
+    public ElasticProxyProvider setGrowThreshold(int growThreshold) {
+        this.growThreshold = Math.max(1, growThreshold);
+        return this;
+    }
+
+    /**
+     * Sets for how long no request must have waited for a WR id before the pool shrinks by a chunk.
+     * @param idleNanos the idle period in nanoseconds, one second by default.
+     * @return this provider.
+     */
+    public ElasticProxyProvider setIdleNanos(long idleNanos) {
+        this.idleNanos = idleNanos;
+        return this;
+    }
+
+    /**
+     * Sets how the memory of the chunks is registered. By default, it is registered with the communicator,
+     * if the communicator is an {@link RdmaEndpoint}.
+     * @param memoryRegistrar the registrar.
+     * @return this provider.
+     */
+    public ElasticProxyProvider setMemoryRegistrar(MemoryRegistrar memoryRegistrar) {
+        this.memoryRegistrar = memoryRegistrar;
+        return this;
+    }
+
+    /**
+     * Sets the executor that grows the pool when a non-blocking request triggers the growth, and that
+     * shrinks the pool when released WR ids trigger the idle check. By default, it is a daemon thread that
+     * terminates when it has nothing to do.
+     * @param growExecutor the executor.
+     * @return this provider.
+     */
+    public ElasticProxyProvider setGrowExecutor(Executor growExecutor) {
+        this.growExecutor = growExecutor;
+        return this;
+    }
+
+    @Override
+    public void setBufferManager(NetworkBufferManager bufferManager) {
+        super.setBufferManager(bufferManager);
+        int initialWorkRequests = getMaxWorkRequests();
+        if(bufferManager instanceof ElasticBufferManager){
+            elasticBufferManager = (ElasticBufferManager) bufferManager;
+            initialWorkRequests = elasticBufferManager.getInitialWorkRequests();
+        }else{
+            elasticBufferManager = null;
+        }
+        synchronized (freePostSendWrIds){
+            freePostSendWrIds.clear();
+            freePostSendWrIds.set(0, initialWorkRequests);
+            freeWorkRequests = initialWorkRequests;
+            activeChunks = 0;
+        }
+    }
+
+    @Override
+    public void setCommunicator(RdmaCommunicator communicator) {
+        super.setCommunicator(communicator);
+        if((memoryRegistrar == null) && (communicator instanceof RdmaEndpoint)){
+            memoryRegistrar = MemoryRegistrar.forEndpoint((RdmaEndpoint) communicator);
+        }
+    }
+
+    /**
+     * Takes the lowest free WR id. Must be called with the freePostSendWrIds monitor.
+     * @return the WR id or -1 if there is none.
+     */
+    private int takeFreeWrId(){
+        int workRequestId = freePostSendWrIds.nextSetBit(0);
+        if(workRequestId >= 0){
+            freePostSendWrIds.clear(workRequestId);
+            freeWorkRequests --;
+        }
+        return workRequestId;
+    }
+
+    /**
+     * Records that a request had to wait for a WR id. Must be called with the freePostSendWrIds monitor.
+     * @return the chunk that the caller must allocate with {@link #grow(int)}, or -1 if the pool
+     * mustn't grow now.
+     */
+    private int recordWait(){
+        lastWaitNanos = System.nanoTime();
+        acquireWaits ++;
+        if((acquireWaits < growThreshold) || resizing || growFailed || (elasticBufferManager == null)
+                || (activeChunks == elasticBufferManager.getChunkCount())){
+            return -1;
+        }
+        acquireWaits = 0;
+        resizing = true;
+        return activeChunks;
+    }
+
+    /**
+     * Allocates the buffers of a chunk and makes its WR ids available, first to the waiting asynchronous
+     * requests. It is called without the freePostSendWrIds monitor, since registering memory is slow.
+     * @param chunk the chunk returned by {@link #recordWait()}.
+     */
+    private void grow(int chunk){
+        boolean allocated = (memoryRegistrar != null) && elasticBufferManager.allocateChunk(chunk, memoryRegistrar);
+        int firstWorkRequestId = elasticBufferManager.getChunkFirstWorkRequestId(chunk);
+        int chunkWorkRequests = elasticBufferManager.getChunkWorkRequests(chunk);
+        if(allocated && (svcManager != null)){
+            // the SVCs may have been created before the buffers
+            svcManager.releaseSVCs(firstWorkRequestId, chunkWorkRequests);
+        }
+        int[] handedOffIds = new int[chunkWorkRequests];
+        PendingProxyRequest[] handedOffRequests = new PendingProxyRequest[chunkWorkRequests];
+        int handedOff = 0;
+
+        synchronized (freePostSendWrIds){
+            if(!allocated){
+                onGrowFailed(chunk);
+                return;
+            }
+            resizing = false;
+            activeChunks ++;
+            grows ++;
+            for(int i = firstWorkRequestId; i < firstWorkRequestId + chunkWorkRequests; i++){
+                PendingProxyRequest pendingRequest = pendingRequests.poll();
+                if(pendingRequest == null){
+                    freePostSendWrIds.set(i);
+                    freeWorkRequests ++;
+                }else{
+                    handedOffIds[handedOff] = i;
+                    handedOffRequests[handedOff] = pendingRequest;
+                    handedOff ++;
+                }
+            }
+            freePostSendWrIds.notifyAll();
+        }
+        // complete waiting requests outside the monitor
+        for(int i=0; i < handedOff; i++){
+            if(!servePendingRequest(handedOffRequests[i], handedOffIds[i])){
+                releasePostSendWrId(handedOffIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Grows the pool with the grow executor, so that a non-blocking request doesn't wait for the memory
+     * registration.
+     * @param chunk the chunk returned by {@link #recordWait()}.
+     */
+    private void growInBackground(int chunk){
+        try {
+            getGrowExecutor().execute(() -> grow(chunk));
+        } catch (RejectedExecutionException e) {
+            logger.error("Cannot grow the Work Request pool in the background.", e);
+            synchronized (freePostSendWrIds){
+                onGrowFailed(chunk);
+            }
+        }
+    }
+
+    /**
+     * Gives the last chunk back with the grow executor, if the pool may be idle, so that the thread that
+     * releases the WR ids, usually the completion thread, doesn't wait for the memory deregistration.
+     */
+    private void shrinkInBackground(){
+        try {
+            getGrowExecutor().execute(() -> {
+                synchronized (freePostSendWrIds){
+                    shrinkScheduled = false;
+                }
+                shrinkIfIdle();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.error("Cannot shrink the Work Request pool in the background.", e);
+            synchronized (freePostSendWrIds){
+                shrinkScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Get the grow executor, creating the default one if none was set.
+     * @return the executor.
+     */
+    private Executor getGrowExecutor(){
+        synchronized (freePostSendWrIds){
+            if(growExecutor == null){
+                growExecutor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "jRCM-pool-grower");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+            }
+            return growExecutor;
+        }
+    }
+
+    /**
+     * Records that a chunk couldn't be allocated and wakes up the blocked threads, which wait for a released
+     * WR id from now on. Must be called with the freePostSendWrIds monitor.
+     * @param chunk the chunk that wasn't allocated.
+     */
+    private void onGrowFailed(int chunk){
+        resizing = false;
+        growFailed = true;
+        failedGrows ++;
+        logger.warn("Cannot grow the Work Request pool by chunk " + chunk + ".");
+        freePostSendWrIds.notifyAll();
+    }
+
+    /**
+     * Gives the last chunk back, if no request has waited for a WR id for the idle period and all the WR ids
+     * of the chunk are free. It runs in the calling thread, and it is also run on the grow executor regularly
+     * when WR ids are released.
+     * @return true if a chunk was given back.
+     */
+    public boolean shrinkIfIdle(){
+        int chunk;
+        int firstWorkRequestId;
+        int chunkWorkRequests;
+        synchronized (freePostSendWrIds){
+            releasesSinceIdleCheck = 0;
+            if(resizing || (activeChunks == 0) || (System.nanoTime() - lastWaitNanos < idleNanos)){
+                return false;
+            }
+            chunk = activeChunks - 1;
+            firstWorkRequestId = elasticBufferManager.getChunkFirstWorkRequestId(chunk);
+            chunkWorkRequests = elasticBufferManager.getChunkWorkRequests(chunk);
+            if(freePostSendWrIds.nextClearBit(firstWorkRequestId) < firstWorkRequestId + chunkWorkRequests){
+                return false;
+            }
+            freePostSendWrIds.clear(firstWorkRequestId, firstWorkRequestId + chunkWorkRequests);
+            freeWorkRequests -= chunkWorkRequests;
+            activeChunks --;
+            resizing = true;
+        }
+        // the WR ids of the chunk can't be taken now, so it is freed without the monitor
+        if(svcManager != null){
+            svcManager.releaseSVCs(firstWorkRequestId, chunkWorkRequests);
+        }
+        elasticBufferManager.freeChunk(chunk, memoryRegistrar);
+        synchronized (freePostSendWrIds){
+            resizing = false;
+            shrinks ++;
+            // it isn't idle anymore if requests waited in the meantime
+            acquireWaits = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return null;
+        }
+        int workRequestId;
+        // if there are no available Work Request ids, grow or block until there are
+        while(true){
+            int chunk;
+            synchronized (freePostSendWrIds){
+                workRequestId = takeFreeWrId();
+                if(workRequestId >= 0){
+                    break;
+                }
+                chunk = recordWait();
+                if(chunk < 0){
+                    try {
+                        freePostSendWrIds.wait();
+                    } catch (InterruptedException e) {
+                        logger.error("Proxy provider interrupted on blocking call.", e);
+                    }
+                }
+            }
+            if(chunk >= 0){
+                grow(chunk);
+            }
+        }
+        return preparePostSendProxy(requestType, workRequestId);
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return null;
+        }
+        int workRequestId;
+        int chunk;
+
+        synchronized (freePostSendWrIds){
+            workRequestId = takeFreeWrId();
+            chunk = (workRequestId < 0) ? recordWait() : -1;
+        }
+        // if the pool grows, try again, in case the executor has already grown it
+        if(chunk >= 0){
+            growInBackground(chunk);
+            synchronized (freePostSendWrIds){
+                workRequestId = takeFreeWrId();
+            }
+        }
+        if(workRequestId > -1){
+            return preparePostSendProxy(requestType, workRequestId);
+        }
+        return null;
+    }
+
+    @Override
+    public int getPostSendRequestsNow(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
+        // prevent errors
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
+        }
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired;
+        int chunk;
+
+        synchronized (freePostSendWrIds){
+            acquired = takeFreeWrIds(workRequestIds, 0, count);
+            chunk = (acquired < count) ? recordWait() : -1;
+        }
+        // if the pool grows, take the rest from the new chunk, in case the executor has already grown it
+        if(chunk >= 0){
+            growInBackground(chunk);
+            synchronized (freePostSendWrIds){
+                acquired = takeFreeWrIds(workRequestIds, acquired, count);
+            }
+        }
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
+    }
+
+    @Override
+    public int getPostSendRequestsBlocking(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
+        // prevent errors
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
+        }
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired;
+        // if there are no available Work Request ids, grow or block until there is at least one
+        while(true){
+            int chunk;
+            synchronized (freePostSendWrIds){
+                acquired = takeFreeWrIds(workRequestIds, 0, count);
+                if(acquired > 0){
+                    break;
+                }
+                chunk = recordWait();
+                if(chunk < 0){
+                    try {
+                        freePostSendWrIds.wait();
+                    } catch (InterruptedException e) {
+                        logger.error("Proxy provider interrupted on blocking call.", e);
+                    }
+                }
+            }
+            if(chunk >= 0){
+                grow(chunk);
+            }
+        }
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
+    }
+
+    /**
+     * Takes free WR ids until there are enough or none is left. Must be called with the freePostSendWrIds
+     * monitor.
+     * @return the number of WR ids in the array.
+     */
+    private int takeFreeWrIds(int[] workRequestIds, int acquired, int count){
+        while(acquired < count){
+            int workRequestId = takeFreeWrId();
+            if(workRequestId < 0){
+                break;
+            }
+            workRequestIds[acquired] = workRequestId;
+            acquired ++;
+        }
+        return acquired;
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return CompletableFuture.completedFuture(null);
+        }
+        int workRequestId;
+        int chunk = -1;
+        PendingProxyRequest pendingRequest = null;
+
+        synchronized (freePostSendWrIds){
+            workRequestId = takeFreeWrId();
+            if(workRequestId < 0){
+                // wait for a released WR id or for the pool to grow
+                pendingRequest = new PendingProxyRequest(requestType);
+                pendingRequests.add(pendingRequest);
+                chunk = recordWait();
+            }
+        }
+        if(pendingRequest != null){
+            if(chunk >= 0){
+                growInBackground(chunk);
+            }
+            return pendingRequest.getFuture();
+        }
+        return CompletableFuture.completedFuture(preparePostSendProxy(requestType, workRequestId));
+    }
+
+    @Override
+    public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxy == null) || (getBufferManager() == null)){
+            return;
+        }
+        if(workRequestProxy.getPostType().equals(PostedRequestType.SEND)) {
+            clearProxyBuffer(workRequestProxy);
+            releasePostSendWrId(workRequestProxy.getId());
+            checkIdle(1);
+        }else if (workRequestProxy.getPostType().equals(PostedRequestType.RECEIVE)) {
+            repostReceive(workRequestProxy);
+        }
+    }
+
+    @Override
+    public void releaseWorkRequests(WorkRequestProxy[] workRequestProxies, int count) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxies == null) || (getBufferManager() == null)){
+            return;
+        }
+        int released = 0;
+        for(int i=0; i < count; i++){
+            WorkRequestProxy workRequestProxy = workRequestProxies[i];
+            if(workRequestProxy == null){
+                continue;
+            }
+            if(PostedRequestType.SEND.equals(workRequestProxy.getPostType())){
+                clearProxyBuffer(workRequestProxy);
+                releasePostSendWrId(workRequestProxy.getId());
+                released ++;
+            }else if(PostedRequestType.RECEIVE.equals(workRequestProxy.getPostType())){
+                repostReceive(workRequestProxy);
+            }
+        }
+        checkIdle(released);
+    }
+
+    /**
+     * Checks whether the pool can shrink about once per chunk of released WR ids, so that releasing
+     * doesn't read the clock every time. The shrinking itself runs on the grow executor.
+     * @param released the number of released postSend WR ids.
+     */
+    private void checkIdle(int released){
+        if(elasticBufferManager == null){
+            return;
+        }
+        synchronized (freePostSendWrIds){
+            releasesSinceIdleCheck += released;
+            if((activeChunks == 0) || shrinkScheduled
+                    || (releasesSinceIdleCheck < elasticBufferManager.getChunkWorkRequests(activeChunks - 1))){
+                return;
+            }
+            releasesSinceIdleCheck = 0;
+            if(resizing || (System.nanoTime() - lastWaitNanos < idleNanos)){
+                return;
+            }
+            shrinkScheduled = true;
+        }
+        shrinkInBackground();
+    }
+
+    /**
+     * Gives a released WR id to the oldest waiting asynchronous request, or makes it available
+     * again if there's no such request.
+     * @param workRequestId the released WR id.
+     */
+    private void releasePostSendWrId(int workRequestId){
+        PendingProxyRequest pendingRequest;
+        do {
+            synchronized (freePostSendWrIds) {
+                pendingRequest = pendingRequests.poll();
+                // the pool can try to grow again
+                growFailed = false;
+                if (pendingRequest == null) {
+                    freePostSendWrIds.set(workRequestId);
+                    freeWorkRequests ++;
+                    // if there were no free WR ids, notify any blocked threads
+                    if (freeWorkRequests == 1) {
+                        freePostSendWrIds.notifyAll();
+                    }
+                    return;
+                }
+            }
+            // complete the request outside the monitor, since completing it runs the application's actions
+        }while (!servePendingRequest(pendingRequest, workRequestId));
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getGrowThreshold() {
+        return growThreshold;
+    }
+
+    public long getIdleNanos() {
+        return idleNanos;
+    }
+
+    public MemoryRegistrar getMemoryRegistrar() {
+        return memoryRegistrar;
+    }
+
+    /**
+     * Get the number of postSend WR ids that can currently be provided, whether free or in use.
+     * @return the size of the pool.
+     */
+    public int getActiveWorkRequests() {
+        synchronized (freePostSendWrIds){
+            if(elasticBufferManager == null){
+                return getMaxWorkRequests();
+            }
+            return (activeChunks == 0) ? elasticBufferManager.getInitialWorkRequests()
+                    : elasticBufferManager.getChunkFirstWorkRequestId(activeChunks - 1)
+                        + elasticBufferManager.getChunkWorkRequests(activeChunks - 1);
+        }
+    }
+
+    public int getFreeWorkRequests() {
+        synchronized (freePostSendWrIds){
+            return freeWorkRequests;
+        }
+    }
+
+    public int getActiveChunks() {
+        synchronized (freePostSendWrIds){
+            return activeChunks;
+        }
+    }
+
+    public long getGrows() {
+        synchronized (freePostSendWrIds){
+            return grows;
+        }
+    }
+
+    public long getShrinks() {
+        synchronized (freePostSendWrIds){
+            return shrinks;
+        }
+    }
+
+    public long getFailedGrows() {
+        synchronized (freePostSendWrIds){
+            return failedGrows;
+        }
+    }
+}
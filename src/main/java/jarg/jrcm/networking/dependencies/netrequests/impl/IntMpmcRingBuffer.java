@@ -0,0 +1,175 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A bounded, lock-free, multi-producer/multi-consumer FIFO ring of primitive ints.
+ * It is used to keep available Work Request ids without taking a monitor on either the
+ * acquire or the release path.
+ * </p>
+ *
+ * <p>
+ * Every slot of the ring has a sequence number that tells producers and consumers whether
+ * the slot is ready to be written or read in the current lap of the ring. Producers and
+ * consumers claim a position with a CAS on the tail and head counters respectively and then
+ * publish their work by advancing the sequence number of the slot, so that contention is
+ * limited to the two counters and never involves blocking.
+ * The ring's size is the requested capacity rounded up to the next power of 2. This is never
+ * a problem for WR id pools, since there are never more ids to store than the requested capacity.
+ * </p>
+ */
+public class IntMpmcRingBuffer {
+
+    private final int capacity;                 // the capacity requested by the user
+    private final int mask;                     // ring size - 1, the ring size is a power of 2
+    private final int[] elements;               // the stored ints
+    private final AtomicLongArray sequences;    // one sequence number per slot
+    private final AtomicLong head;              // next position to read from
+    private final AtomicLong tail;              // next position to write to
+
+    public IntMpmcRingBuffer(int capacity) {
+        if(capacity < 0){
+            throw new IllegalArgumentException("Ring capacity cannot be negative.");
+        }
+        this.capacity = capacity;
+        int ringSize = 1;
+        while(ringSize < capacity){
+            ringSize <<= 1;
+        }
+        mask = ringSize - 1;
+        elements = new int[ringSize];
+        sequences = new AtomicLongArray(ringSize);
+        for(int i=0; i < ringSize; i++){
+            sequences.set(i, i);
+        }
+        head = new AtomicLong(0);
+        tail = new AtomicLong(0);
+    }
+
+    /**
+     * Adds an int to the end of the ring.
+     * @param value the int to add.
+     * @return true on success, false if the ring is full.
+     */
+    public boolean offer(int value){
+        long position = tail.get();
+        while(true){
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            long difference = sequence - position;
+            if(difference == 0){
+                // the slot is free in this lap, try to claim it
+                if(tail.compareAndSet(position, position + 1)){
+                    elements[index] = value;
+                    // publish the element to consumers
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }else if(difference < 0){
+                // The slot still holds an element of the previous lap. Either the ring is full, or
+                // a consumer has claimed that element but hasn't freed the slot yet. In the
+                // latter case we wait for the consumer, instead of failing to store the int.
+                if(position - head.get() >= mask + 1){
+                    return false;
+                }
+                position = tail.get();
+            }else{
+                // another producer claimed this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes an int from the start of the ring.
+     * @return the removed int or -1 if the ring is empty. Since the ring is used for
+     * Work Request ids, which are never negative, -1 can never be a valid stored value.
+     */
+    public int poll(){
+        long position = head.get();
+        while(true){
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            long difference = sequence - (position + 1);
+            if(difference == 0){
+                // the slot holds a published element of this lap, try to claim it
+                if(head.compareAndSet(position, position + 1)){
+                    int value = elements[index];
+                    // free the slot for the producers of the next lap
+                    sequences.lazySet(index, position + mask + 1);
+                    return value;
+                }
+                position = head.get();
+            }else if(difference < 0){
+                // nothing published at this position yet
+                return -1;
+            }else{
+                // another consumer claimed this position
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Removes up to <i>maxElements</i> ints from the start of the ring, claiming all of them
+     * with a single update of the head counter when possible.
+     * @param destination where to store the removed ints.
+     * @param offset the index of the destination where the first removed int will be stored.
+     * @param maxElements the maximum number of ints to remove.
+     * @return the number of removed ints.
+     */
+    public int drain(int[] destination, int offset, int maxElements){
+        while(true){
+            long position = head.get();
+            // find how many consecutive elements have been published
+            int available = 0;
+            while(available < maxElements){
+                long expected = position + available + 1;
+                if(sequences.get((int) (position + available) & mask) != expected){
+                    break;
+                }
+                available++;
+            }
+            if(available == 0){
+                return 0;
+            }
+            if(head.compareAndSet(position, position + available)){
+                for(int i=0; i < available; i++){
+                    int index = (int) (position + i) & mask;
+                    destination[offset + i] = elements[index];
+                    sequences.lazySet(index, position + i + mask + 1);
+                }
+                return available;
+            }
+        }
+    }
+
+    /**
+     * @return an estimation of the number of ints in the ring. It is exact only when no other
+     * thread modifies the ring concurrently.
+     */
+    public int size(){
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        long size = currentTail - currentHead;
+        if(size < 0){
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    /**
+     * @return true if the ring seems empty. Like {@link IntMpmcRingBuffer#size()}, this is
+     * only an estimation under concurrent modifications.
+     */
+    public boolean isEmpty(){
+        return head.get() >= tail.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
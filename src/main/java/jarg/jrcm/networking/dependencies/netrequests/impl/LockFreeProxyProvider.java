@@ -0,0 +1,359 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A {@link WorkRequestProxyProvider} that keeps the available postSend Work Request ids in a
+ * lock-free {@link IntMpmcRingBuffer}, instead of a queue guarded by a monitor like the
+ * {@link QueuedProxyProvider}. It can be used wherever a QueuedProxyProvider is used and
+ * it performs better when many threads send through the same communicator.
+ * </p>
+ *
+ * <p>
+ * Threads that call {@link LockFreeProxyProvider#getPostSendRequestBlocking(WorkRequestType)}
+ * while no WR id is available first spin, then yield and finally park until a WR id is released.
+ * Releasing a WR id only wakes up a parked thread if there is one, so the release path never
+ * takes a monitor.
+ * </p>
+ *
+ * <p>
+ * Asynchronous requests that find no available WR id wait in a lock-free FIFO queue and are
+ * served directly by the threads that release WR ids.
+ * </p>
+ */
+public class LockFreeProxyProvider extends AbstractWorkRequestProxyProvider {
+    private final Logger logger = LoggerFactory.getLogger(LockFreeProxyProvider.class);
+
+    private static final int DEFAULT_SPIN_TRIES = 100;
+    private static final int DEFAULT_YIELD_TRIES = 20;
+    // upper bound for a single park, in case a wake-up was consumed by a thread that no longer needed it
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final IntMpmcRingBuffer freePostSendWrIds;          // available Work Request ids for postSend requests
+    private final ConcurrentLinkedQueue<Thread> parkedThreads;  // threads waiting for a WR id
+    private final AtomicInteger parkedThreadsCount;             // cheaper to check than the queue
+    private final ConcurrentLinkedQueue<PendingProxyRequest> pendingRequests;   // asynchronous requests
+    private final AtomicInteger pendingRequestsCount;                           // waiting for a WR id
+    private final int spinTries;                                // times to retry before yielding
+    private final int yieldTries;                               // times to yield before parking
+
+    // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
+    public LockFreeProxyProvider(int maxWorkRequests){
+        this(maxWorkRequests, DEFAULT_SPIN_TRIES, DEFAULT_YIELD_TRIES);
+    }
+
+    public LockFreeProxyProvider(int maxWorkRequests, int spinTries, int yieldTries){
+        super(maxWorkRequests);
+        this.spinTries = spinTries;
+        this.yieldTries = yieldTries;
+        freePostSendWrIds = new IntMpmcRingBuffer(maxWorkRequests);
+        parkedThreads = new ConcurrentLinkedQueue<>();
+        parkedThreadsCount = new AtomicInteger(0);
+        pendingRequests = new ConcurrentLinkedQueue<>();
+        pendingRequestsCount = new AtomicInteger(0);
+        for(int i = 0; i < maxWorkRequests; i++){
+            freePostSendWrIds.offer(i);
+        }
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return null;
+        }
+        int workRequestId = pollWorkRequestId();
+        if(workRequestId < 0){
+            workRequestId = awaitWorkRequestId();
+        }
+        return preparePostSendProxy(requestType, workRequestId);
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return null;
+        }
+        int workRequestId = pollWorkRequestId();
+        if(workRequestId < 0){
+            return null;
+        }
+        return preparePostSendProxy(requestType, workRequestId);
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return CompletableFuture.completedFuture(null);
+        }
+        // don't overtake older asynchronous requests
+        if(pendingRequestsCount.get() == 0){
+            int workRequestId = pollWorkRequestId();
+            if(workRequestId > -1){
+                return CompletableFuture.completedFuture(preparePostSendProxy(requestType, workRequestId));
+            }
+        }
+        PendingProxyRequest pendingRequest = new PendingProxyRequest(requestType);
+        pendingRequests.offer(pendingRequest);
+        pendingRequestsCount.incrementAndGet();
+        // a WR id may have been released before this request was queued
+        servePendingRequests();
+        return pendingRequest.getFuture();
+    }
+
+    @Override
+    public int getPostSendRequestsNow(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
+        // prevent errors
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
+        }
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired = pollWorkRequestIds(workRequestIds, 0, count);
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
+    }
+
+    @Override
+    public int getPostSendRequestsBlocking(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
+        // prevent errors
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
+        }
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired = pollWorkRequestIds(workRequestIds, 0, count);
+        if(acquired == 0){
+            workRequestIds[0] = awaitWorkRequestId();
+            acquired = 1 + pollWorkRequestIds(workRequestIds, 1, count - 1);
+        }
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
+    }
+
+    @Override
+    public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxy == null) || (getBufferManager() == null)){
+            return;
+        }
+        if(workRequestProxy.getPostType().equals(PostedRequestType.SEND)) {
+            clearProxyBuffer(workRequestProxy);
+            if(releasePostSendWrId(workRequestProxy.getId())){
+                notifyWaiters();
+            }
+        }else if (workRequestProxy.getPostType().equals(PostedRequestType.RECEIVE)) {
+            repostReceive(workRequestProxy);
+        }
+    }
+
+    @Override
+    public void releaseWorkRequests(WorkRequestProxy[] workRequestProxies, int count) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxies == null) || (getBufferManager() == null)){
+            return;
+        }
+        boolean madeAvailable = false;
+        for(int i=0; i < count; i++){
+            WorkRequestProxy workRequestProxy = workRequestProxies[i];
+            if(workRequestProxy == null){
+                continue;
+            }
+            if(PostedRequestType.SEND.equals(workRequestProxy.getPostType())) {
+                clearProxyBuffer(workRequestProxy);
+                madeAvailable |= releasePostSendWrId(workRequestProxy.getId());
+            }else if (PostedRequestType.RECEIVE.equals(workRequestProxy.getPostType())) {
+                repostReceive(workRequestProxy);
+            }
+        }
+        // check for waiters once per batch
+        if(madeAvailable){
+            notifyWaiters();
+        }
+    }
+
+    /**
+     * Gives a released WR id to the oldest waiting asynchronous request, or makes it available
+     * again if there's no such request.
+     * @param workRequestId the released WR id.
+     * @return true if the WR id was made available again, false if an asynchronous request took it.
+     */
+    private boolean releasePostSendWrId(int workRequestId){
+        // serve waiting asynchronous requests first
+        while(pendingRequestsCount.get() > 0){
+            PendingProxyRequest pendingRequest = pendingRequests.poll();
+            if(pendingRequest == null){
+                // the request is about to be queued and will check for WR ids by itself
+                break;
+            }
+            pendingRequestsCount.decrementAndGet();
+            if(servePendingRequest(pendingRequest, workRequestId)){
+                return false;
+            }
+        }
+        offerWorkRequestId(workRequestId);
+        return true;
+    }
+
+    /**
+     * Lets threads and asynchronous requests that wait for a WR id know that WR ids have been
+     * made available.
+     */
+    private void notifyWaiters(){
+        // wake up a parked thread, if any
+        if(parkedThreadsCount.get() > 0){
+            unparkWaitingThread();
+        }
+        // an asynchronous request may have been queued in the meantime
+        if(pendingRequestsCount.get() > 0){
+            servePendingRequests();
+        }
+    }
+
+    /**
+     * Tries to take an available WR id without waiting.
+     * @return the WR id or -1 if none is available.
+     */
+    protected int pollWorkRequestId(){
+        return freePostSendWrIds.poll();
+    }
+
+    /**
+     * Batch version of {@link LockFreeProxyProvider#pollWorkRequestId()}.
+     * @param workRequestIds where to store the WR ids.
+     * @param offset the index where the first WR id will be stored.
+     * @param count the maximum number of WR ids to take.
+     * @return the number of WR ids taken.
+     */
+    protected int pollWorkRequestIds(int[] workRequestIds, int offset, int count){
+        return freePostSendWrIds.drain(workRequestIds, offset, count);
+    }
+
+    /**
+     * Like {@link LockFreeProxyProvider#pollWorkRequestId()}, but used when the calling thread
+     * has already waited for a while. Subclasses can use it to look for WR ids more aggressively.
+     * @return the WR id or -1 if none is available.
+     */
+    protected int pollWorkRequestIdStarving(){
+        return pollWorkRequestId();
+    }
+
+    /**
+     * Makes a released WR id available again.
+     * @param workRequestId the released WR id.
+     */
+    protected void offerWorkRequestId(int workRequestId){
+        freePostSendWrIds.offer(workRequestId);
+    }
+
+    /**
+     * Serves waiting asynchronous requests with available WR ids, until either runs out.
+     */
+    private void servePendingRequests(){
+        while(pendingRequestsCount.get() > 0){
+            int workRequestId = pollWorkRequestId();
+            if(workRequestId < 0){
+                return;
+            }
+            boolean served = false;
+            while(!served){
+                PendingProxyRequest pendingRequest = pendingRequests.poll();
+                if(pendingRequest == null){
+                    break;
+                }
+                pendingRequestsCount.decrementAndGet();
+                served = servePendingRequest(pendingRequest, workRequestId);
+            }
+            if(!served){
+                offerWorkRequestId(workRequestId);
+                if(parkedThreadsCount.get() > 0){
+                    unparkWaitingThread();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until a WR id becomes available, by spinning, then yielding and finally parking.
+     * @return the acquired WR id.
+     */
+    private int awaitWorkRequestId(){
+        int workRequestId;
+        // spin
+        for(int i=0; i < spinTries; i++){
+            workRequestId = pollWorkRequestId();
+            if(workRequestId > -1){
+                return workRequestId;
+            }
+        }
+        // yield
+        for(int i=0; i < yieldTries; i++){
+            Thread.yield();
+            workRequestId = pollWorkRequestIdStarving();
+            if(workRequestId > -1){
+                return workRequestId;
+            }
+        }
+        // park
+        Thread currentThread = Thread.currentThread();
+        parkedThreadsCount.incrementAndGet();
+        parkedThreads.offer(currentThread);
+        try{
+            while(true){
+                // check again after registering, so that a release that
+                // missed this thread in the queue isn't missed here
+                workRequestId = pollWorkRequestIdStarving();
+                if(workRequestId > -1){
+                    return workRequestId;
+                }
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                if(Thread.interrupted()){
+                    logger.error("Proxy provider interrupted on blocking call.");
+                }
+                // a releasing thread removes this thread from the queue before waking it up
+                if(!parkedThreads.contains(currentThread)){
+                    parkedThreads.offer(currentThread);
+                }
+            }
+        }finally {
+            parkedThreadsCount.decrementAndGet();
+            if(!parkedThreads.remove(currentThread)){
+                // A releasing thread may have woken this thread up for an id that this thread didn't
+                // take. Pass the wake-up to another thread.
+                if(parkedThreadsCount.get() > 0){
+                    unparkWaitingThread();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wakes up one of the threads that wait for a WR id.
+     */
+    protected void unparkWaitingThread(){
+        Thread waitingThread = parkedThreads.poll();
+        if(waitingThread != null){
+            LockSupport.unpark(waitingThread);
+        }
+    }
+
+    protected IntMpmcRingBuffer getFreePostSendWrIds() {
+        return freePostSendWrIds;
+    }
+}
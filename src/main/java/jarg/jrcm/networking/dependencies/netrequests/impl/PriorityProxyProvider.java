@@ -0,0 +1,364 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link WorkRequestProxyProvider} that supports several <i>traffic classes</i>. Each class can have
+ * a quota of postSend Work Request ids reserved for it. The rest of the WR ids form a shared pool that
+ * all classes can use. A request of a class first takes a WR id from the class's reserved ids and then
+ * from the shared pool. Released WR ids always return to the pool they came from. Thus, bulk traffic
+ * that exhausts the shared pool can never delay the messages of a class with reserved WR ids, e.g.
+ * heartbeats or vote requests.
+ * </p>
+ *
+ * <p>
+ * Class numbers also act as priorities. When requests of different classes wait for shared WR ids,
+ * the higher class is served first. The methods that do not take a class argument use the class of the
+ * requested Work Request type, which is class 0 unless set otherwise with
+ * {@link PriorityProxyProvider#setTrafficClass(WorkRequestType, int)}.
+ * </p>
+ *
+ * <p>
+ * Example: <i>new PriorityProxyProvider(64, 0, 8)</i> creates class 0 for bulk data, which only uses the
+ * 56 shared WR ids, and class 1 for control messages, which has 8 reserved WR ids and can also use the
+ * shared ones.
+ * </p>
+ */
+public class PriorityProxyProvider extends AbstractWorkRequestProxyProvider {
+    private final Logger logger = LoggerFactory.getLogger(PriorityProxyProvider.class);
+
+    private static final int SHARED_POOL = -1;
+
+    private final int trafficClasses;
+    private final int[] workRequestPools;                   // the pool of each WR id (class or shared)
+    private final int[] reservedWorkRequests;               // the number of reserved WR ids per class
+    private final IntArrayFIFOQueue[] reservedWrIds;        // available reserved WR ids per class
+    private final IntArrayFIFOQueue sharedWrIds;            // available shared WR ids
+    private final ArrayDeque<PendingProxyRequest>[] pendingRequests;    // asynchronous requests per class
+    private final int[] blockedThreads;                     // threads waiting in blocking calls per class
+    private final int[] typeClasses;                        // the class of each Work Request type
+    private final Object lock;                              // guards all the above
+
+    // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PriorityProxyProvider(int maxWorkRequests, int... reservedWorkRequests){
+        super(maxWorkRequests);
+        if(reservedWorkRequests.length == 0){
+            reservedWorkRequests = new int[]{0};
+        }
+        int totalReserved = 0;
+        for(int reserved : reservedWorkRequests){
+            if(reserved < 0){
+                throw new IllegalArgumentException("Reserved Work Requests cannot be negative.");
+            }
+            totalReserved += reserved;
+        }
+        if(totalReserved > maxWorkRequests){
+            throw new IllegalArgumentException("Reserved Work Requests exceed the maximum Work Requests.");
+        }
+        trafficClasses = reservedWorkRequests.length;
+        this.reservedWorkRequests = reservedWorkRequests.clone();
+        workRequestPools = new int[maxWorkRequests];
+        reservedWrIds = new IntArrayFIFOQueue[trafficClasses];
+        pendingRequests = new ArrayDeque[trafficClasses];
+        blockedThreads = new int[trafficClasses];
+        typeClasses = new int[WorkRequestType.values().length];
+        sharedWrIds = new IntArrayFIFOQueue(maxWorkRequests - totalReserved);
+        lock = new Object();
+        // the first WR ids are reserved, the rest are shared
+        int workRequestId = 0;
+        for(int i=0; i < trafficClasses; i++){
+            reservedWrIds[i] = new IntArrayFIFOQueue(Math.max(1, reservedWorkRequests[i]));
+            pendingRequests[i] = new ArrayDeque<>();
+            for(int j=0; j < reservedWorkRequests[i]; j++){
+                workRequestPools[workRequestId] = i;
+                reservedWrIds[i].enqueue(workRequestId);
+                workRequestId ++;
+            }
+        }
+        for(; workRequestId < maxWorkRequests; workRequestId++){
+            workRequestPools[workRequestId] = SHARED_POOL;
+            sharedWrIds.enqueue(workRequestId);
+        }
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
+        return getPostSendRequestBlocking(requestType, getTrafficClass(requestType));
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+        return getPostSendRequestNow(requestType, getTrafficClass(requestType));
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType) {
+        return getPostSendRequestAsync(requestType, getTrafficClass(requestType));
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType, int trafficClass) {
+        // prevent errors
+        if(!canProvide(requestType, trafficClass)){
+            return null;
+        }
+        int workRequestId;
+        boolean waited = false;
+        // if there are no available Work Request ids for this class, block until there are
+        synchronized (lock){
+            workRequestId = pollWorkRequestId(trafficClass);
+            if(workRequestId < 0){
+                waited = true;
+                blockedThreads[trafficClass] ++;
+                try {
+                    while((workRequestId = pollWorkRequestId(trafficClass)) < 0) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            logger.error("Proxy provider interrupted on blocking call.", e);
+                        }
+                    }
+                }finally {
+                    blockedThreads[trafficClass] --;
+                    // threads of lower classes may have been held back by this class
+                    if((blockedThreads[trafficClass] == 0) && !sharedWrIds.isEmpty()){
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+        if(waited){
+            // lower classes may have asynchronous requests that were held back by this thread
+            servePendingRequests();
+        }
+        return preparePostSendProxy(requestType, workRequestId);
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType, int trafficClass) {
+        // prevent errors
+        if(!canProvide(requestType, trafficClass)){
+            return null;
+        }
+        int workRequestId;
+        synchronized (lock){
+            workRequestId = pollWorkRequestId(trafficClass);
+        }
+        if(workRequestId < 0){
+            return null;
+        }
+        return preparePostSendProxy(requestType, workRequestId);
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType,
+                                                                       int trafficClass) {
+        // prevent errors
+        if(!canProvide(requestType, trafficClass)){
+            return CompletableFuture.completedFuture(null);
+        }
+        int workRequestId;
+        PendingProxyRequest pendingRequest = null;
+
+        synchronized (lock){
+            workRequestId = pollWorkRequestId(trafficClass);
+            if(workRequestId < 0){
+                // wait for a released WR id
+                pendingRequest = new PendingProxyRequest(requestType);
+                pendingRequests[trafficClass].add(pendingRequest);
+            }
+        }
+        if(pendingRequest != null){
+            return pendingRequest.getFuture();
+        }
+        return CompletableFuture.completedFuture(preparePostSendProxy(requestType, workRequestId));
+    }
+
+    @Override
+    public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxy == null) || (getBufferManager() == null)){
+            return;
+        }
+        if(workRequestProxy.getPostType().equals(PostedRequestType.SEND)) {
+            clearProxyBuffer(workRequestProxy);
+            releasePostSendWrId(workRequestProxy.getId());
+        }else if (workRequestProxy.getPostType().equals(PostedRequestType.RECEIVE)) {
+            repostReceive(workRequestProxy);
+        }
+    }
+
+    /**
+     * Gives a released WR id to a waiting asynchronous request that can use it, or returns it
+     * to its pool.
+     * @param workRequestId the released WR id.
+     */
+    private void releasePostSendWrId(int workRequestId){
+        int pool = workRequestPools[workRequestId];
+        PendingProxyRequest pendingRequest;
+        do {
+            synchronized (lock) {
+                pendingRequest = pollPendingRequest(pool);
+                if (pendingRequest == null) {
+                    if(pool == SHARED_POOL){
+                        sharedWrIds.enqueue(workRequestId);
+                    }else{
+                        reservedWrIds[pool].enqueue(workRequestId);
+                    }
+                    lock.notifyAll();
+                    return;
+                }
+            }
+            // complete the request outside the lock, since completing it runs the application's actions
+        }while (!servePendingRequest(pendingRequest, workRequestId));
+    }
+
+    /**
+     * Serves the waiting asynchronous requests for which there are available WR ids, starting from
+     * the highest class.
+     */
+    private void servePendingRequests(){
+        while(true){
+            PendingProxyRequest pendingRequest = null;
+            int workRequestId = -1;
+            synchronized (lock){
+                for(int i = trafficClasses - 1; i >= 0; i--){
+                    if(hasPendingRequests(i)){
+                        workRequestId = pollWorkRequestId(i);
+                        if(workRequestId >= 0){
+                            pendingRequest = pendingRequests[i].poll();
+                        }
+                        break;
+                    }
+                }
+            }
+            if(pendingRequest == null){
+                return;
+            }
+            if(!servePendingRequest(pendingRequest, workRequestId)){
+                releasePostSendWrId(workRequestId);
+            }
+        }
+    }
+
+    /**
+     * Takes an available WR id for a traffic class. Must be called while holding the lock.
+     * @param trafficClass the traffic class.
+     * @return the WR id or -1 if none is available.
+     */
+    private int pollWorkRequestId(int trafficClass){
+        if(!reservedWrIds[trafficClass].isEmpty()){
+            return reservedWrIds[trafficClass].dequeueInt();
+        }
+        if(!sharedWrIds.isEmpty() && !hasHigherClassWaiting(trafficClass)){
+            return sharedWrIds.dequeueInt();
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the asynchronous request that must get a released WR id. Reserved WR ids go to requests of
+     * their class. Shared WR ids go to the highest class that waits, unless that class has threads blocked
+     * in a call, which will take the WR id themselves. Must be called while holding the lock.
+     * @param pool the pool of the released WR id.
+     * @return the request or null if the WR id must be returned to its pool.
+     */
+    private PendingProxyRequest pollPendingRequest(int pool){
+        if(pool != SHARED_POOL){
+            return pendingRequests[pool].poll();
+        }
+        for(int i = trafficClasses - 1; i >= 0; i--){
+            if(blockedThreads[i] > 0){
+                return null;
+            }
+            if(hasPendingRequests(i)){
+                return pendingRequests[i].poll();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if requests of a higher class than the given one are waiting for WR ids. Must be called while
+     * holding the lock.
+     */
+    private boolean hasHigherClassWaiting(int trafficClass){
+        for(int i = trafficClass + 1; i < trafficClasses; i++){
+            if((blockedThreads[i] > 0) || hasPendingRequests(i)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a traffic class has asynchronous requests waiting, discarding the cancelled ones
+     * at the head of the queue. Must be called while holding the lock.
+     */
+    private boolean hasPendingRequests(int trafficClass){
+        ArrayDeque<PendingProxyRequest> requests = pendingRequests[trafficClass];
+        while(!requests.isEmpty() && requests.peek().getFuture().isDone()){
+            requests.poll();
+        }
+        return !requests.isEmpty();
+    }
+
+    /**
+     * Sets the traffic class of the requests for a Work Request type that don't specify a class.
+     * E.g. SENDs of control messages and one-sided operations of bulk data can get WR ids from different
+     * classes.
+     * @param requestType the Work Request type.
+     * @param trafficClass the traffic class.
+     * @return this provider.
+     */
+    public PriorityProxyProvider setTrafficClass(WorkRequestType requestType, int trafficClass){
+        if((trafficClass < 0) || (trafficClass >= trafficClasses)){
+            throw new IllegalArgumentException("There is no traffic class " + trafficClass);
+        }
+        typeClasses[requestType.ordinal()] = trafficClass;
+        return this;
+    }
+
+    private boolean canProvide(WorkRequestType requestType, int trafficClass){
+        return canProvide(requestType) && (trafficClass >= 0) && (trafficClass < trafficClasses);
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getTrafficClasses() {
+        return trafficClasses;
+    }
+
+    public int getReservedWorkRequests(int trafficClass){
+        return reservedWorkRequests[trafficClass];
+    }
+
+    public int getTrafficClass(WorkRequestType requestType){
+        return (requestType == null) ? 0 : typeClasses[requestType.ordinal()];
+    }
+
+    /**
+     * Get the number of WR ids that a traffic class could acquire right now.
+     * @param trafficClass the traffic class.
+     * @return the available reserved WR ids of the class plus the available shared WR ids.
+     */
+    public int getAvailableWorkRequests(int trafficClass){
+        synchronized (lock){
+            return reservedWrIds[trafficClass].size() + sharedWrIds.size();
+        }
+    }
+}
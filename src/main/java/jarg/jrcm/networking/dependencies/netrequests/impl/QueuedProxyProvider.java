@@ -1,9 +1,7 @@
 package jarg.jrcm.networking.dependencies.netrequests.impl;
 
-import com.ibm.disni.verbs.IbvWC;
 import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
-import jarg.jrcm.networking.communicators.RdmaCommunicator;
-import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkRequestProxyProvider;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
 import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
@@ -11,47 +9,34 @@ import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.ByteBuffer;
-
-import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.RECEIVE;
-import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.SEND;
-import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An {@link WorkRequestProxyProvider} that maintains an internal queue of available postSend requests.
  * PostRecv requests need not be managed in a queue, as they are all pre-posted before communications and reused.
  */
-public class QueuedProxyProvider implements WorkRequestProxyProvider{
+public class QueuedProxyProvider extends AbstractWorkRequestProxyProvider {
     private final Logger logger = LoggerFactory.getLogger(QueuedProxyProvider.class);
 
-    private NetworkBufferManager bufferManager;         // the manager of network data buffers
-    private RdmaCommunicator rdmaCommunicator;          // the communicator associated with this provider
     private final IntArrayFIFOQueue freePostSendWrIds;  // available Work Request ids for the postSend queue
-    private int maxWorkRequests;
-    private WorkRequestProxy[] postSendWRProxies;      // pre-created, cached and reused WR proxies
-    private WorkRequestProxy[] postRecvWRProxies;
+    private final ArrayDeque<PendingProxyRequest> pendingRequests;  // asynchronous requests waiting for a WR id
+                                                                        // guarded by the freePostSendWrIds monitor
 
     // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
     public QueuedProxyProvider(int maxWorkRequests){
-        super();
-        this.maxWorkRequests = maxWorkRequests;
+        super(maxWorkRequests);
         this.freePostSendWrIds = new IntArrayFIFOQueue(maxWorkRequests);
-        postSendWRProxies = new WorkRequestProxy[maxWorkRequests];
-        postRecvWRProxies = new WorkRequestProxy[maxWorkRequests];
+        this.pendingRequests = new ArrayDeque<>();
         for(int i = 0; i < maxWorkRequests; i++){
             freePostSendWrIds.enqueue(i);
-            postSendWRProxies[i] = new WorkRequestProxy();
-            postSendWRProxies[i].setId(i).setPostType(SEND);
-            postRecvWRProxies[i] = new WorkRequestProxy();
-            postRecvWRProxies[i].setId(i).setPostType(RECEIVE).setWorkRequestType(TWO_SIDED_RECV);
         }
     };
 
     @Override
     public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
         // prevent errors
-        if((maxWorkRequests == 0) || (requestType == null)
-                || (getBufferManager() == null) || (requestType == TWO_SIDED_RECV)){
+        if(!canProvide(requestType)){
             return null;
         }
         int workRequestId;
@@ -66,20 +51,15 @@ public class QueuedProxyProvider implements WorkRequestProxyProvider{
             }
             workRequestId = freePostSendWrIds.dequeueInt();
         }
-        ByteBuffer buffer = bufferManager.getWorkRequestBuffer(requestType, workRequestId);
-        WorkRequestProxy proxy = postSendWRProxies[workRequestId];
-        proxy.setWorkRequestType(requestType).setBuffer(buffer);
-        return proxy;
+        return preparePostSendProxy(requestType, workRequestId);
     }
 
     @Override
     public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
         // prevent errors
-        if((maxWorkRequests == 0) || (requestType == null)
-                || (getBufferManager() == null) || (requestType == TWO_SIDED_RECV)){
+        if(!canProvide(requestType)){
             return null;
         }
-        WorkRequestProxy proxy = null;
         int workRequestId = -1;
 
         synchronized (freePostSendWrIds){
@@ -89,99 +69,169 @@ public class QueuedProxyProvider implements WorkRequestProxyProvider{
             }
         }
         // if a WR id was available
-        ByteBuffer buffer;
         if (workRequestId > -1) {
-            buffer =  bufferManager.getWorkRequestBuffer(requestType, workRequestId);
-            proxy = postSendWRProxies[workRequestId];
-            proxy.setWorkRequestType(requestType).setBuffer(buffer);
+            return preparePostSendProxy(requestType, workRequestId);
         }
-        return proxy;
+        return null;
     }
 
     @Override
-    public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+    public int getPostSendRequestsNow(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
         // prevent errors
-        if((maxWorkRequests == 0) || (workRequestProxy == null) || (getBufferManager() == null)){
-            return;
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
         }
-        if(workRequestProxy.getPostType().equals(PostedRequestType.SEND)) {
-            synchronized (freePostSendWrIds){
-                ByteBuffer buffer = workRequestProxy.getBuffer();
-                // must make this check to avoid errors with inconsistent WC opcodes
-                // during endpoint shutdown
-                if(buffer != null){
-                    buffer.clear();
-                }
-                freePostSendWrIds.enqueue(workRequestProxy.getId());
-                // if the queue was empty, notify any blocked threads
-                if(freePostSendWrIds.size() == 1){
-                    freePostSendWrIds.notifyAll();
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired = 0;
+
+        synchronized (freePostSendWrIds){
+            while((acquired < count) && !freePostSendWrIds.isEmpty()){
+                workRequestIds[acquired] = freePostSendWrIds.dequeueInt();
+                acquired ++;
+            }
+        }
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
+    }
+
+    @Override
+    public int getPostSendRequestsBlocking(WorkRequestType requestType, WorkRequestProxy[] proxies, int count) {
+        // prevent errors
+        if(!canProvide(requestType) || (count <= 0)){
+            return 0;
+        }
+        int[] workRequestIds = getLocalWorkRequestIds();
+        count = Math.min(count, workRequestIds.length);
+        int acquired = 0;
+        // if there are no available Work Request ids, block until there is at least one
+        synchronized (freePostSendWrIds){
+            while(freePostSendWrIds.isEmpty()){
+                try {
+                    freePostSendWrIds.wait();
+                } catch (InterruptedException e) {
+                    logger.error("Proxy provider interrupted on blocking call.", e);
                 }
             }
-        }else if (workRequestProxy.getPostType().equals(PostedRequestType.RECEIVE)) {
-            ByteBuffer buffer = workRequestProxy.getBuffer();
-            // must make this check to avoid errors with inconsistent WC opcodes
-            // during endpoint shutdown
-            if(buffer != null){
-                buffer.clear();
+            while((acquired < count) && !freePostSendWrIds.isEmpty()){
+                workRequestIds[acquired] = freePostSendWrIds.dequeueInt();
+                acquired ++;
             }
-            // now that this WR id is free for reuse, we can repost
-            // that 'receive' request immediately to accept new data
-            rdmaCommunicator.postNetOperationToNIC(workRequestProxy);
         }
+        preparePostSendProxies(requestType, workRequestIds, proxies, acquired);
+        return acquired;
     }
 
     @Override
-    public WorkRequestProxy getWorkRequestProxyForWc(IbvWC workCompletionEvent){
-        if(workCompletionEvent == null){
-            return null;
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType) {
+        // prevent errors
+        if(!canProvide(requestType)){
+            return CompletableFuture.completedFuture(null);
         }
-        // extract info from event
-        WorkRequestProxy proxy;
-        int workRequestId = (int) workCompletionEvent.getWr_id();
-        int operationCode = workCompletionEvent.getOpcode();
-        // identify request type
-        WorkRequestType workRequestType;
-        workRequestType = getWorkRequestTypeForWcOperationCode(operationCode);
-        if(workRequestType == null){
-            return null;
+        int workRequestId = -1;
+        PendingProxyRequest pendingRequest = null;
+
+        synchronized (freePostSendWrIds){
+            if(freePostSendWrIds.isEmpty()){
+                // wait for a released WR id
+                pendingRequest = new PendingProxyRequest(requestType);
+                pendingRequests.add(pendingRequest);
+            }else{
+                workRequestId = freePostSendWrIds.dequeueInt();
+            }
         }
-        // identify posted request type
-        if(workRequestType.equals(TWO_SIDED_RECV)){
-            proxy = postRecvWRProxies[workRequestId];
-        }else{
-            proxy = postSendWRProxies[workRequestId];
+        if(pendingRequest != null){
+            return pendingRequest.getFuture();
         }
-        return proxy;
+        return CompletableFuture.completedFuture(preparePostSendProxy(requestType, workRequestId));
     }
 
-    /* ***************************************************************
-     *   Getters/Setters
-     * ***************************************************************/
     @Override
-    public NetworkBufferManager getBufferManager() {
-        return bufferManager;
+    public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxy == null) || (getBufferManager() == null)){
+            return;
+        }
+        if(workRequestProxy.getPostType().equals(PostedRequestType.SEND)) {
+            clearProxyBuffer(workRequestProxy);
+            releasePostSendWrId(workRequestProxy.getId());
+        }else if (workRequestProxy.getPostType().equals(PostedRequestType.RECEIVE)) {
+            repostReceive(workRequestProxy);
+        }
     }
 
     @Override
-    public void setBufferManager(NetworkBufferManager bufferManager) {
-        this.bufferManager = bufferManager;
-        for(int i=0; i<maxWorkRequests; i++){
-            postRecvWRProxies[i].setBuffer(bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, i));
+    public void releaseWorkRequests(WorkRequestProxy[] workRequestProxies, int count) {
+        // prevent errors
+        if((getMaxWorkRequests() == 0) || (workRequestProxies == null) || (getBufferManager() == null)){
+            return;
         }
-    }
+        // WR ids that will be given to waiting asynchronous requests
+        int[] handedOffIds = null;
+        PendingProxyRequest[] handedOffRequests = null;
+        int handedOff = 0;
 
-    @Override
-    public RdmaCommunicator getCommunicator() {
-        return rdmaCommunicator;
+        synchronized (freePostSendWrIds){
+            boolean wasEmpty = freePostSendWrIds.isEmpty();
+            for(int i=0; i < count; i++){
+                WorkRequestProxy workRequestProxy = workRequestProxies[i];
+                if((workRequestProxy == null) || !PostedRequestType.SEND.equals(workRequestProxy.getPostType())){
+                    continue;
+                }
+                clearProxyBuffer(workRequestProxy);
+                PendingProxyRequest pendingRequest = pendingRequests.poll();
+                if(pendingRequest == null){
+                    freePostSendWrIds.enqueue(workRequestProxy.getId());
+                }else{
+                    if(handedOffIds == null){
+                        handedOffIds = new int[count];
+                        handedOffRequests = new PendingProxyRequest[count];
+                    }
+                    handedOffIds[handedOff] = workRequestProxy.getId();
+                    handedOffRequests[handedOff] = pendingRequest;
+                    handedOff ++;
+                }
+            }
+            // if the queue was empty, notify any blocked threads
+            if(wasEmpty && !freePostSendWrIds.isEmpty()){
+                freePostSendWrIds.notifyAll();
+            }
+        }
+        // complete waiting requests outside the monitor
+        for(int i=0; i < handedOff; i++){
+            if(!servePendingRequest(handedOffRequests[i], handedOffIds[i])){
+                releasePostSendWrId(handedOffIds[i]);
+            }
+        }
+        // re-post receive requests
+        for(int i=0; i < count; i++){
+            WorkRequestProxy workRequestProxy = workRequestProxies[i];
+            if((workRequestProxy != null) && PostedRequestType.RECEIVE.equals(workRequestProxy.getPostType())){
+                repostReceive(workRequestProxy);
+            }
+        }
     }
 
-    @Override
-    public void setCommunicator(RdmaCommunicator communicator) {
-        this.rdmaCommunicator = communicator;
-        for(int i=0; i<maxWorkRequests; i++){
-            postSendWRProxies[i].setRdmaCommunicator(communicator);
-            postRecvWRProxies[i].setRdmaCommunicator(communicator);
-        }
+    /**
+     * Gives a released WR id to the oldest waiting asynchronous request, or makes it available
+     * again if there's no such request.
+     * @param workRequestId the released WR id.
+     */
+    private void releasePostSendWrId(int workRequestId){
+        PendingProxyRequest pendingRequest;
+        do {
+            synchronized (freePostSendWrIds) {
+                pendingRequest = pendingRequests.poll();
+                if (pendingRequest == null) {
+                    freePostSendWrIds.enqueue(workRequestId);
+                    // if the queue was empty, notify any blocked threads
+                    if (freePostSendWrIds.size() == 1) {
+                        freePostSendWrIds.notifyAll();
+                    }
+                    return;
+                }
+            }
+            // complete the request outside the monitor, since completing it runs the application's actions
+        }while (!servePendingRequest(pendingRequest, workRequestId));
     }
 }
@@ -0,0 +1,175 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link WorkRequestProxyProvider} for the size classes of a {@link SizeClassedBufferManager}. Every size
+ * class is a traffic class of a {@link PriorityProxyProvider} with the WR ids of the class reserved for it
+ * and no shared WR ids. A request for a number of bytes gets a WR id of the smallest class that fits them.
+ * If that class has no available WR ids, a larger class is used. Only blocking and asynchronous requests
+ * wait, and they wait for the smallest class that fits.
+ * </p>
+ *
+ * <p>
+ * The methods that don't take a size use the smallest class with available WR ids. The class of a WR id
+ * doesn't change, so a released WR id always returns to its class.
+ * </p>
+ *
+ * <p>
+ * Two-sided SENDs are received in the RECV buffers of the remote side, which all have the receive size of
+ * the buffer manager. Therefore, SENDs only get WR ids of the classes whose buffers are not larger than
+ * the receive size. Larger data must be transferred with one-sided operations.
+ * </p>
+ */
+public class SizeClassProxyProvider extends PriorityProxyProvider {
+    private final Logger logger = LoggerFactory.getLogger(SizeClassProxyProvider.class);
+
+    private SizeClassedBufferManager sizeClassedBufferManager;
+    private int maxTwoSidedClass;                       // the largest class that fits the RECV buffers
+
+
+    // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
+    public SizeClassProxyProvider(int... classWorkRequests) {
+        super(sum(classWorkRequests), classWorkRequests);
+    }
+
+    private static int sum(int[] values){
+        int sum = 0;
+        for(int value : values){
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
+        return getSizedPostSendRequestBlocking(requestType, 0);
+    }
+
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+        return getSizedPostSendRequestNow(requestType, 0);
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getPostSendRequestAsync(WorkRequestType requestType) {
+        return getSizedPostSendRequestAsync(requestType, 0);
+    }
+
+    @Override
+    public WorkRequestProxy getSizedPostSendRequestBlocking(WorkRequestType requestType, int size) {
+        int sizeClass = getSizeClass(requestType, size);
+        // prevent errors
+        if(sizeClass < 0){
+            return null;
+        }
+        WorkRequestProxy workRequestProxy = pollSizeClasses(requestType, sizeClass);
+        if(workRequestProxy != null){
+            return workRequestProxy;
+        }
+        return getPostSendRequestBlocking(requestType, sizeClass);
+    }
+
+    @Override
+    public WorkRequestProxy getSizedPostSendRequestNow(WorkRequestType requestType, int size) {
+        int sizeClass = getSizeClass(requestType, size);
+        // prevent errors
+        if(sizeClass < 0){
+            return null;
+        }
+        return pollSizeClasses(requestType, sizeClass);
+    }
+
+    @Override
+    public CompletableFuture<WorkRequestProxy> getSizedPostSendRequestAsync(WorkRequestType requestType, int size) {
+        int sizeClass = getSizeClass(requestType, size);
+        // prevent errors
+        if(sizeClass < 0){
+            return CompletableFuture.completedFuture(null);
+        }
+        WorkRequestProxy workRequestProxy = pollSizeClasses(requestType, sizeClass);
+        if(workRequestProxy != null){
+            return CompletableFuture.completedFuture(workRequestProxy);
+        }
+        return getPostSendRequestAsync(requestType, sizeClass);
+    }
+
+    /**
+     * Gets a proxy from the given size class or the first larger class that has an available WR id,
+     * without blocking.
+     * @param requestType the type of the Work Request.
+     * @param sizeClass the smallest class to use.
+     * @return the proxy or null if no class has an available WR id.
+     */
+    private WorkRequestProxy pollSizeClasses(WorkRequestType requestType, int sizeClass){
+        int lastClass = requestType.isTwoSidedSend() ? maxTwoSidedClass : getTrafficClasses() - 1;
+        for(int i = sizeClass; i <= lastClass; i++){
+            WorkRequestProxy workRequestProxy = getPostSendRequestNow(requestType, i);
+            if(workRequestProxy != null){
+                return workRequestProxy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the smallest size class that fits a number of bytes. For two-sided SENDs, the class must
+     * also fit the remote RECV buffers.
+     * @param requestType the type of the Work Request.
+     * @param size the number of bytes.
+     * @return the class or -1 if no class fits them or the buffer manager isn't set.
+     */
+    private int getSizeClass(WorkRequestType requestType, int size){
+        if(sizeClassedBufferManager == null){
+            logger.error("The buffer manager must be a SizeClassedBufferManager.");
+            return -1;
+        }
+        int sizeClass = sizeClassedBufferManager.getSizeClass(size);
+        if(sizeClass < 0){
+            logger.error("No size class fits " + size + " bytes.");
+        }else if(requestType.isTwoSidedSend() && (sizeClass > maxTwoSidedClass)){
+            logger.error("SENDs of " + size + " bytes don't fit the RECV buffers of "
+                    + sizeClassedBufferManager.getReceiveBufferSize() + " bytes.");
+            return -1;
+        }
+        return sizeClass;
+    }
+
+    /**
+     * Sets the buffer manager. The size classes of a {@link SizeClassedBufferManager} must have the
+     * number of WR ids of the traffic classes of this provider.
+     * @param bufferManager the buffer manager.
+     */
+    @Override
+    public void setBufferManager(NetworkBufferManager bufferManager) {
+        if(bufferManager instanceof SizeClassedBufferManager){
+            SizeClassedBufferManager sizeClassedManager = (SizeClassedBufferManager) bufferManager;
+            if(sizeClassedManager.getSizeClasses() != getTrafficClasses()){
+                throw new IllegalArgumentException("The buffer manager must have a size class for every " +
+                        "traffic class.");
+            }
+            for(int i=0; i < getTrafficClasses(); i++){
+                if(sizeClassedManager.getClassWorkRequests(i) != getReservedWorkRequests(i)){
+                    throw new IllegalArgumentException("Size class " + i + " has a different number of " +
+                            "Work Requests.");
+                }
+            }
+            this.sizeClassedBufferManager = sizeClassedManager;
+            maxTwoSidedClass = -1;
+            while((maxTwoSidedClass + 1 < getTrafficClasses()) && (sizeClassedManager.getClassBufferSize(
+                    maxTwoSidedClass + 1) <= sizeClassedManager.getReceiveBufferSize())){
+                maxTwoSidedClass ++;
+            }
+        }
+        super.setBufferManager(bufferManager);
+    }
+}
@@ -0,0 +1,219 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A {@link WorkRequestProxyProvider} that stripes the available postSend Work Request ids across
+ * the threads that use it. Every thread gets a small local <i>magazine</i> of free WR ids. Acquiring
+ * and releasing a WR id only touches the calling thread's magazine, until the magazine is either
+ * empty or full. Then a batch of WR ids is moved from or to a global <i>depot</i>, which is the
+ * lock-free ring of the {@link LockFreeProxyProvider}. This way the common acquire/release pair
+ * touches no cache lines that are shared with other threads.
+ * </p>
+ *
+ * <p>
+ * Since WR ids can be kept in the magazines of threads that no longer send or release anything,
+ * the following rebalancing rule applies. When a thread finds both its magazine and the depot empty,
+ * it reclaims the WR ids of magazines that have not been used for longer than an idle threshold.
+ * If the thread keeps waiting for a WR id in a blocking call, it reclaims WR ids from any magazine
+ * that is not being used at that moment. Thus, an idle thread can never hold WR ids that a busy
+ * thread needs.
+ * </p>
+ */
+public class StripedProxyProvider extends LockFreeProxyProvider {
+
+    private static final int DEFAULT_MAGAZINE_CAPACITY = 16;
+    private static final long DEFAULT_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private final int magazineCapacity;                         // max WR ids per thread
+    private final int batchSize;                                // WR ids moved between a magazine and the depot
+    private final long idleNanos;                               // idle time after which a magazine can be reclaimed
+    private final ThreadLocal<Magazine> localMagazine;
+    private final CopyOnWriteArrayList<Magazine> magazines;     // all magazines, for rebalancing
+
+    // Use to inject this as a dependency. Requires setting this object's dependencies with setters later.
+    public StripedProxyProvider(int maxWorkRequests){
+        this(maxWorkRequests, DEFAULT_MAGAZINE_CAPACITY, DEFAULT_IDLE_NANOS);
+    }
+
+    public StripedProxyProvider(int maxWorkRequests, int magazineCapacity, long idleNanos){
+        super(maxWorkRequests);
+        if(magazineCapacity < 2){
+            throw new IllegalArgumentException("Magazine capacity must be at least 2.");
+        }
+        this.magazineCapacity = magazineCapacity;
+        this.batchSize = magazineCapacity / 2;
+        this.idleNanos = idleNanos;
+        magazines = new CopyOnWriteArrayList<>();
+        localMagazine = ThreadLocal.withInitial(() -> {
+            Magazine magazine = new Magazine(this.magazineCapacity);
+            magazines.add(magazine);
+            return magazine;
+        });
+    }
+
+    @Override
+    protected int pollWorkRequestId() {
+        Magazine magazine = localMagazine.get();
+        magazine.lock();
+        try {
+            magazine.lastUsedNanos = System.nanoTime();
+            if(magazine.count == 0){
+                // refill from the depot with one batch
+                magazine.count = getFreePostSendWrIds().drain(magazine.workRequestIds, 0, batchSize);
+                if(magazine.count == 0){
+                    return -1;
+                }
+            }
+            magazine.count --;
+            return magazine.workRequestIds[magazine.count];
+        }finally {
+            magazine.unlock();
+        }
+    }
+
+    @Override
+    protected int pollWorkRequestIds(int[] workRequestIds, int offset, int count) {
+        Magazine magazine = localMagazine.get();
+        int taken = 0;
+        magazine.lock();
+        try {
+            magazine.lastUsedNanos = System.nanoTime();
+            while(taken < count){
+                if(magazine.count == 0){
+                    magazine.count = getFreePostSendWrIds().drain(magazine.workRequestIds, 0, batchSize);
+                    if(magazine.count == 0){
+                        break;
+                    }
+                }
+                magazine.count --;
+                workRequestIds[offset + taken] = magazine.workRequestIds[magazine.count];
+                taken ++;
+            }
+        }finally {
+            magazine.unlock();
+        }
+        return taken;
+    }
+
+    @Override
+    protected int pollWorkRequestIdStarving() {
+        int workRequestId = pollWorkRequestId();
+        if(workRequestId < 0){
+            // this thread has already waited, so reclaim from any magazine that isn't in use
+            reclaimMagazines(0);
+            workRequestId = pollWorkRequestId();
+        }
+        return workRequestId;
+    }
+
+    @Override
+    protected void offerWorkRequestId(int workRequestId) {
+        Magazine magazine = localMagazine.get();
+        magazine.lock();
+        try {
+            magazine.lastUsedNanos = System.nanoTime();
+            if(magazine.count == magazineCapacity){
+                // spill one batch to the depot
+                spill(magazine, batchSize);
+            }
+            magazine.workRequestIds[magazine.count] = workRequestId;
+            magazine.count ++;
+        }finally {
+            magazine.unlock();
+        }
+    }
+
+    /**
+     * Like the parent's method, but when neither the local magazine nor the depot has available WR ids,
+     * reclaim the WR ids of idle magazines first.
+     */
+    @Override
+    public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+        WorkRequestProxy proxy = super.getPostSendRequestNow(requestType);
+        if((proxy == null) && canProvide(requestType) && (reclaimMagazines(idleNanos) > 0)){
+            proxy = super.getPostSendRequestNow(requestType);
+        }
+        return proxy;
+    }
+
+    /**
+     * Moves the WR ids of other threads' magazines to the depot. Magazines that are in use at the
+     * moment are skipped.
+     * @param minIdleNanos only magazines that have been idle for at least that long will be reclaimed.
+     * @return the number of WR ids moved to the depot.
+     */
+    private int reclaimMagazines(long minIdleNanos){
+        Magazine ownMagazine = localMagazine.get();
+        long now = System.nanoTime();
+        int reclaimed = 0;
+        for(Magazine magazine : magazines){
+            if((magazine == ownMagazine) || (magazine.count == 0)
+                    || (now - magazine.lastUsedNanos < minIdleNanos)){
+                continue;
+            }
+            if(magazine.tryLock()){
+                try {
+                    reclaimed += magazine.count;
+                    spill(magazine, magazine.count);
+                }finally {
+                    magazine.unlock();
+                }
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Moves WR ids from the top of a magazine to the depot. The magazine must be locked.
+     * @param magazine the magazine.
+     * @param amount how many WR ids to move.
+     */
+    private void spill(Magazine magazine, int amount){
+        IntMpmcRingBuffer depot = getFreePostSendWrIds();
+        for(int i=0; i < amount; i++){
+            magazine.count --;
+            depot.offer(magazine.workRequestIds[magazine.count]);
+        }
+    }
+
+    /**
+     * A thread's local cache of available WR ids. It is only used by its owner thread, unless
+     * another thread reclaims its WR ids. The lock is therefore uncontended in the common case.
+     */
+    private static class Magazine {
+        private final int[] workRequestIds;
+        private final AtomicBoolean locked;
+        // guarded by the lock, other threads read them without the lock only as hints
+        private int count;
+        private long lastUsedNanos;
+
+        Magazine(int capacity){
+            workRequestIds = new int[capacity];
+            locked = new AtomicBoolean(false);
+            count = 0;
+            lastUsedNanos = System.nanoTime();
+        }
+
+        void lock(){
+            while(!locked.compareAndSet(false, true)){
+                Thread.yield();
+            }
+        }
+
+        boolean tryLock(){
+            return locked.compareAndSet(false, true);
+        }
+
+        void unlock(){
+            locked.set(false);
+        }
+    }
+}
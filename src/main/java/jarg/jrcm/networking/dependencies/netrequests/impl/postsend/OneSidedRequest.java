@@ -3,13 +3,22 @@ package jarg.jrcm.networking.dependencies.netrequests.impl.postsend;
 
 import com.ibm.disni.verbs.IbvMr;
 import com.ibm.disni.verbs.IbvSendWR;
+import com.ibm.disni.verbs.SVCPostSend;
+import com.ibm.disni.verbs.impl.NatIbvSendWR;
+import com.ibm.disni.verbs.impl.NatPostSendCall;
+
+import java.io.IOException;
 
 /**
  * A wrapper for RDMA One-Sided Requests. The user has to specify
- * whether this is a One-sided READ or a One-sided WRITE request.
+ * whether this is a One-sided READ, WRITE or atomic request.
  * The request will be prepared according to the above user input.
  */
 public class OneSidedRequest extends PostSendRequest{
+    // offsets of the atomic fields in the union of ibv_send_wr, which starts with the remote address
+    private static final int ATOMIC_COMPARE_ADD_OFFSET = 8;
+    private static final int ATOMIC_SWAP_OFFSET = 16;
+    private static final int ATOMIC_RKEY_OFFSET = 24;
 
     private OneSidedRequestType requestType;
     private RemoteLocation remoteLocation;
@@ -30,21 +39,87 @@ public class OneSidedRequest extends PostSendRequest{
      */
     public enum OneSidedRequestType{
         READ,
-        WRITE
+        WRITE,
+        ATOMIC_CMP_AND_SWP,
+        ATOMIC_FETCH_AND_ADD
     }
 
     @Override
     public void prepareRequest() {
         // define the type of Work Request
-        if(requestType.equals(OneSidedRequestType.READ)){
-            sendWR.setOpcode(IbvSendWR.IBV_WR_RDMA_READ);
-        }else{
-            sendWR.setOpcode(IbvSendWR.IBV_WR_RDMA_WRITE);
+        switch (requestType){
+            case READ:
+                sendWR.setOpcode(IbvSendWR.IBV_WR_RDMA_READ);
+                break;
+            case WRITE:
+                sendWR.setOpcode(IbvSendWR.IBV_WR_RDMA_WRITE);
+                break;
+            case ATOMIC_CMP_AND_SWP:
+                sendWR.setOpcode(IbvSendWR.IBV_WR_ATOMIC_CMP_AND_SWP);
+                break;
+            case ATOMIC_FETCH_AND_ADD:
+                sendWR.setOpcode(IbvSendWR.IBV_WR_ATOMIC_FETCH_AND_ADD);
+                break;
         }
         sendWR.setSend_flags(IbvSendWR.IBV_SEND_SIGNALED);
         getRequestSge().setLkey(getRequestBufferMR().getLkey());
-        // operate on the remote memory address with these details
-        sendWR.getRdma().setRemote_addr(remoteLocation.remoteMemoryAddress);
-        sendWR.getRdma().setRkey(remoteLocation.remoteLKey);
+        if(isAtomic()){
+            // atomics keep the remote location in a different part of the Work Request
+            if(remoteLocation != null){
+                sendWR.getAtomic().setRemote_addr(remoteLocation.remoteMemoryAddress);
+                sendWR.getAtomic().setRkey(remoteLocation.remoteLKey);
+            }
+            return;
+        }
+        // operate on the remote memory address with these details, if they are known already,
+        // otherwise they are set before posting the request
+        if(remoteLocation != null){
+            sendWR.getRdma().setRemote_addr(remoteLocation.remoteMemoryAddress);
+            sendWR.getRdma().setRkey(remoteLocation.remoteLKey);
+        }
+    }
+
+    /**
+     * Sets the operands of an atomic request. For a compare-and-swap, the remote value is replaced
+     * by <i>swap</i> if it equals <i>compareAdd</i>. For a fetch-and-add, <i>compareAdd</i> is added
+     * to the remote value and <i>swap</i> is ignored.
+     * @param compareAdd the value to compare with or to add.
+     * @param swap the value to swap in.
+     */
+    public void setAtomicOperands(long compareAdd, long swap){
+        sendWR.getAtomic().setCompare_add(compareAdd);
+        sendWR.getAtomic().setSwap(swap);
+    }
+
+    /**
+     * DiSNI only serializes the RDMA part of the union of a Work Request, so the remote location and the
+     * operands of an atomic request are never written to the native Work Request. They are written here
+     * through the RDMA part of the SVC, which DiSNI can write at any offset of the union.
+     */
+    @Override
+    public void writeNativeFields(SVCPostSend postSendSVC) throws IOException {
+        if(!isAtomic()){
+            return;
+        }
+        if(!(postSendSVC instanceof NatPostSendCall)){
+            throw new IOException("Cannot write the atomic fields of an SVC of type "
+                    + postSendSVC.getClass().getName() + ".");
+        }
+        NatPostSendCall postSendCall = (NatPostSendCall) postSendSVC;
+        NatIbvSendWR.NatRdma rdma = (NatIbvSendWR.NatRdma) postSendCall.getWrMod(0).getRdmaMod();
+        IbvSendWR.Atomic atomic = sendWR.getAtomic();
+        // every setter of the RDMA part also writes to its own offset, so the remote address comes last
+        rdma.setRkey(atomic.getRkey());
+        postSendCall.setRkey(rdma, ATOMIC_RKEY_OFFSET);
+        rdma.setRemote_addr(atomic.getSwap());
+        postSendCall.setRemote_addr(rdma, ATOMIC_SWAP_OFFSET);
+        rdma.setRemote_addr(atomic.getCompare_add());
+        postSendCall.setRemote_addr(rdma, ATOMIC_COMPARE_ADD_OFFSET);
+        rdma.setRemote_addr(atomic.getRemote_addr());
+    }
+
+    private boolean isAtomic(){
+        return (requestType == OneSidedRequestType.ATOMIC_CMP_AND_SWP)
+                || (requestType == OneSidedRequestType.ATOMIC_FETCH_AND_ADD);
     }
 }
@@ -2,8 +2,12 @@ package jarg.jrcm.networking.dependencies.netrequests.impl.postsend;
 
 import com.ibm.disni.verbs.IbvMr;
 import com.ibm.disni.verbs.IbvSendWR;
+import com.ibm.disni.verbs.IbvSge;
+import com.ibm.disni.verbs.SVCPostSend;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequest;
 
+import java.io.IOException;
+
 /**
  * An abstract wrapper for RDMA requests send via <code>postSend()</code>.
  */
@@ -28,6 +32,46 @@ public abstract class PostSendRequest extends WorkRequest {
         sendWR.setWr_id(workRequestId);
     }
 
+    /**
+     * Adds another scatter/gather element after the existing ones, so that the Work Request
+     * gathers its data from several buffers.
+     * @param address the memory address of the element.
+     * @param length the length of the element.
+     * @param localKey the local key of the memory region that contains the element.
+     */
+    public void addSge(long address, int length, int localKey){
+        IbvSge sge = new IbvSge();
+        sge.setAddr(address);
+        sge.setLength(length);
+        sge.setLkey(localKey);
+        getSgeList().add(sge);
+        // the Work Request keeps its own copy of the list
+        sendWR.setSg_list(getSgeList());
+    }
+
+    /**
+     * Turns a prepared SEND or RDMA WRITE into its variant with immediate data.
+     * Must be called after {@link PostSendRequest#prepareRequest()}.
+     * @param immediateData the 32 bits of immediate data.
+     */
+    public void setImmediateData(int immediateData){
+        if(sendWR.getOpcode() == IbvSendWR.IBV_WR_SEND){
+            sendWR.setOpcode(IbvSendWR.IBV_WR_SEND_WITH_IMM);
+        }else if(sendWR.getOpcode() == IbvSendWR.IBV_WR_RDMA_WRITE){
+            sendWR.setOpcode(IbvSendWR.IBV_WR_RDMA_WRITE_WITH_IMM);
+        }
+        sendWR.setImm_data(immediateData);
+    }
+
+    /**
+     * Writes the parts of this Work Request that DiSNI doesn't serialize when it creates an SVC for it
+     * to the native memory of the SVC. Nothing is written by default.
+     * @param postSendSVC an SVC that was created for this Work Request only.
+     * @throws IOException if the SVC's native memory cannot be written.
+     */
+    public void writeNativeFields(SVCPostSend postSendSVC) throws IOException {
+    }
+
     /* *************************************************************
      * Getters
      * *************************************************************/
@@ -2,10 +2,62 @@ package jarg.jrcm.networking.dependencies.netrequests.types;
 
 /**
  * Contains constants representing two-sided and one-sided RDMA requests.
+ * Unsignaled requests don't produce a Work Completion Event of their own. Only every N-th
+ * of them is signaled and its completion also releases the unsignaled ones posted before it.
+ * Requests <i>with immediate</i> carry 32 bits of immediate data, which the remote side receives in the
+ * Work Completion Event of one of its RECVs.
+ * Atomic requests operate on 8 bytes of remote memory and return the previous value of these bytes.
  */
 public enum WorkRequestType {
     TWO_SIDED_SEND_SIGNALED,
+    TWO_SIDED_SEND_UNSIGNALED,
+    TWO_SIDED_SEND_WITH_IMM,
     TWO_SIDED_RECV,
     ONE_SIDED_WRITE_SIGNALED,
-    ONE_SIDED_READ_SIGNALED
+    ONE_SIDED_WRITE_UNSIGNALED,
+    ONE_SIDED_WRITE_WITH_IMM,
+    ONE_SIDED_READ_SIGNALED,
+    ONE_SIDED_ATOMIC_CMP_AND_SWP,
+    ONE_SIDED_ATOMIC_FETCH_AND_ADD;
+
+    /**
+     * Checks if this is a type of request that is not signaled every time.
+     * @return true for unsignaled types.
+     */
+    public boolean isUnsignaled(){
+        return (this == TWO_SIDED_SEND_UNSIGNALED) || (this == ONE_SIDED_WRITE_UNSIGNALED);
+    }
+
+    /**
+     * Checks if this is a type of two-sided SEND.
+     * @return true for two-sided SEND types.
+     */
+    public boolean isTwoSidedSend(){
+        return (this == TWO_SIDED_SEND_SIGNALED) || (this == TWO_SIDED_SEND_UNSIGNALED)
+                || (this == TWO_SIDED_SEND_WITH_IMM);
+    }
+
+    /**
+     * Checks if this is a type of request that carries immediate data.
+     * @return true for types with immediate.
+     */
+    public boolean hasImmediateData(){
+        return (this == TWO_SIDED_SEND_WITH_IMM) || (this == ONE_SIDED_WRITE_WITH_IMM);
+    }
+
+    /**
+     * Checks if this is a type of atomic request.
+     * @return true for compare-and-swap and fetch-and-add.
+     */
+    public boolean isAtomic(){
+        return (this == ONE_SIDED_ATOMIC_CMP_AND_SWP) || (this == ONE_SIDED_ATOMIC_FETCH_AND_ADD);
+    }
+
+    /**
+     * Checks if this is a type of request that consumes a RECV of the remote side.
+     * @return true for two-sided SEND types and WRITE with immediate.
+     */
+    public boolean consumesRemoteReceive(){
+        return isTwoSidedSend() || (this == ONE_SIDED_WRITE_WITH_IMM);
+    }
 }
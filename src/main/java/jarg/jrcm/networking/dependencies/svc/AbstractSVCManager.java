@@ -2,16 +2,71 @@ package jarg.jrcm.networking.dependencies.svc;
 
 import com.ibm.disni.RdmaEndpoint;
 import com.ibm.disni.verbs.IbvMr;
+import com.ibm.disni.verbs.IbvSendWR;
+import com.ibm.disni.verbs.SVCPostSend;
+import com.ibm.disni.verbs.StatefulVerbCall;
 import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.PostSendRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 /**
  * Contains some fields and methods that can be useful for classes implementing {@link SVCManager}.
+ * <p>
+ * Creating an SVC is a JNI call, so creating one or more SVCs per WR id can make communicator setup
+ * slow for thousands of Work Requests. Managers that keep SVCs per WR id can create them with
+ * {@link #createSVCs(Object[], int, int, SVCFactory)} and get them with
+ * {@link #getSVC(Object[], int, SVCFactory)}, so that the {@link SVCCreation} mode decides whether
+ * they are created at initialization, on first use or in the background.
+ * </p>
  */
 public abstract class AbstractSVCManager implements SVCManager {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractSVCManager.class);
+
+    /**
+     * When the SVCs of WR ids are created.
+     */
+    public enum SVCCreation {
+        /** All SVCs are created by {@link SVCManager#initializeSVCs()}. */
+        EAGER,
+        /** An SVC is created the first time its WR id is posted. */
+        LAZY,
+        /** SVCs are created by a background thread, while communications start. An SVC that is
+         * needed before the background thread creates it is created on first use. */
+        BACKGROUND
+    }
+
+    /**
+     * Creates an SVC for a WR id.
+     * @param <T> the type of the SVC.
+     */
+    @FunctionalInterface
+    protected interface SVCFactory<T> {
+        T create(int workRequestId) throws IOException;
+    }
 
     private int maxBufferSize;                          // the maximum size of communication buffers
     private int maxWorkRequests;                        // the maximum number of work requests for
                                                             // either postSend or postRecv (same number)
+    private int firstWorkRequestId;                     // the postSend WR ids that this manager
+    private int workRequestCount;                           // creates SVCs for
+    private SelectiveSignaler selectiveSignaler;        // decides which postSend WRs are signaled
+    private IntConsumer receivesPostedListener;         // informed about re-posted RECVs, optional
+    private SVCCreation svcCreation;
+    private SVCSetupMetrics setupMetrics;
+    private final AtomicInteger backgroundCreations;    // SVC arrays still filled in the background
+    private ExecutorService backgroundCreator;
+    private long backgroundStartNanos;
+    private volatile boolean closed;
     // dependencies ----------------------------------
     private RdmaEndpoint rdmaEndpoint;
     private NetworkBufferManager bufferManager;
@@ -21,6 +76,241 @@ public abstract class AbstractSVCManager implements SVCManager {
     public AbstractSVCManager(int maxBufferSize, int maxWorkRequests) {
         this.maxBufferSize = maxBufferSize;
         this.maxWorkRequests = maxWorkRequests;
+        this.firstWorkRequestId = 0;
+        this.workRequestCount = maxWorkRequests;
+        this.selectiveSignaler = new SelectiveSignaler(maxWorkRequests);
+        this.svcCreation = SVCCreation.EAGER;
+        this.setupMetrics = new SVCSetupMetrics();
+        this.backgroundCreations = new AtomicInteger(0);
+    }
+
+    /**
+     * Creates the SVCs of a range of WR ids according to the {@link SVCCreation} mode. Eager SVCs
+     * are created now and background SVCs are queued to the background thread. Lazy SVCs are left to
+     * {@link #getSVC(Object[], int, SVCFactory)}.
+     * @param svcs where to store the SVCs, indexed by WR id.
+     * @param firstWorkRequestId the first WR id of the range.
+     * @param workRequestCount the number of WR ids of the range.
+     * @param svcFactory creates the SVC of a WR id.
+     * @param <T> the type of the SVCs.
+     */
+    protected <T> void createSVCs(T[] svcs, int firstWorkRequestId, int workRequestCount,
+                                  SVCFactory<T> svcFactory){
+        int lastWorkRequestId = firstWorkRequestId + workRequestCount;
+        switch (svcCreation){
+            case EAGER:
+                for(int i=firstWorkRequestId; i < lastWorkRequestId; i++){
+                    try {
+                        svcs[i] = createSVC(svcFactory, i, SVCCreation.EAGER);
+                    } catch (IOException e) {
+                        logger.error("Failed to initialize SVCs.", e);
+                    }
+                }
+                break;
+            case BACKGROUND:
+                if(workRequestCount > 0){
+                    submitBackgroundCreation(svcs, firstWorkRequestId, lastWorkRequestId, svcFactory);
+                }
+                break;
+            case LAZY:
+                break;
+        }
+    }
+
+    /**
+     * Get the SVC of a WR id, creating it if it doesn't exist yet.
+     * @param svcs the SVCs, indexed by WR id.
+     * @param workRequestId the WR id.
+     * @param svcFactory creates the SVC of a WR id.
+     * @param <T> the type of the SVCs.
+     * @return the SVC.
+     * @throws IOException if creating the SVC fails.
+     */
+    protected <T> T getSVC(T[] svcs, int workRequestId, SVCFactory<T> svcFactory) throws IOException {
+        // when no background thread writes SVCs, a WR id's SVC is only written by the thread that owns the WR id
+        if(backgroundCreations.get() == 0){
+            T svc = svcs[workRequestId];
+            if(svc != null){
+                return svc;
+            }
+        }
+        synchronized (svcs){
+            T svc = svcs[workRequestId];
+            if(svc == null){
+                svc = createSVC(svcFactory, workRequestId, SVCCreation.LAZY);
+                svcs[workRequestId] = svc;
+            }
+            return svc;
+        }
+    }
+
+    /**
+     * Frees the SVCs of a range of WR ids, so that they are created again on their next use
+     * (see {@link #getSVC(Object[], int, SVCFactory)}).
+     * @param svcs the SVCs, indexed by WR id. Can be null.
+     * @param firstWorkRequestId the first WR id of the range.
+     * @param workRequestCount the number of WR ids of the range.
+     * @param <T> the type of the SVCs.
+     */
+    protected <T extends StatefulVerbCall<?>> void freeSVCs(T[] svcs, int firstWorkRequestId, int workRequestCount){
+        if(svcs == null){
+            return;
+        }
+        int lastWorkRequestId = Math.min(firstWorkRequestId + workRequestCount, svcs.length);
+        synchronized (svcs){
+            for(int i=Math.max(0, firstWorkRequestId); i < lastWorkRequestId; i++){
+                if(svcs[i] != null){
+                    svcs[i].free();
+                    svcs[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an SVC and records its creation to the {@link SVCSetupMetrics}.
+     */
+    private <T> T createSVC(SVCFactory<T> svcFactory, int workRequestId, SVCCreation creation)
+            throws IOException {
+        long start = System.nanoTime();
+        T svc = svcFactory.create(workRequestId);
+        setupMetrics.onSVCCreated(creation, System.nanoTime() - start);
+        return svc;
+    }
+
+    /**
+     * Queues the creation of a range of SVCs to the background thread.
+     */
+    private synchronized <T> void submitBackgroundCreation(T[] svcs, int firstWorkRequestId, int lastWorkRequestId,
+                                                           SVCFactory<T> svcFactory){
+        if(backgroundCreator == null){
+            backgroundStartNanos = System.nanoTime();
+            backgroundCreator = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "jRCM-SVC-creator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        backgroundCreations.incrementAndGet();
+        backgroundCreator.execute(() -> {
+            try {
+                for(int i=firstWorkRequestId; (i < lastWorkRequestId) && !closed; i++){
+                    synchronized (svcs){
+                        if(svcs[i] == null){
+                            svcs[i] = createSVC(svcFactory, i, SVCCreation.BACKGROUND);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to create SVCs in the background.", e);
+            } finally {
+                // record the completion before it can be observed, submissions use the same monitor
+                synchronized (AbstractSVCManager.this){
+                    if((backgroundCreations.get() == 1) && !closed){
+                        setupMetrics.onBackgroundCreationCompleted(System.nanoTime() - backgroundStartNanos);
+                    }
+                    backgroundCreations.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes a postSend SVC of a single Work Request, signaling it or not according to
+     * the {@link SelectiveSignaler}.
+     * @param postSendSVC the SVC.
+     * @param workRequestId the id of the SVC's Work Request.
+     * @param unsignaledType whether the Work Request is of an unsignaled type.
+     * @throws IOException if executing the SVC fails.
+     */
+    protected void executePostSendSVC(SVCPostSend postSendSVC, int workRequestId, boolean unsignaledType)
+            throws IOException {
+        SVCPostSend.SendWRMod sendWRMod = postSendSVC.getWrMod(0);
+        if(!selectiveSignaler.needsTracking(unsignaledType)){
+            SelectiveSignaler.setSignaled(sendWRMod, true);
+            postSendSVC.execute();
+            return;
+        }
+        synchronized (selectiveSignaler){
+            SelectiveSignaler.setSignaled(sendWRMod, selectiveSignaler.onPost(workRequestId, unsignaledType));
+            postSendSVC.execute();
+        }
+    }
+
+    /**
+     * Sets the remote location of a proxy to the Work Request of a one-sided postSend SVC, so that
+     * the SVC can access any remote memory on every post.
+     * @param sendWRMod the modifier of the Work Request.
+     * @param workRequestProxy the proxy with the remote location.
+     */
+    protected static void setRemoteLocation(SVCPostSend.SendWRMod sendWRMod, WorkRequestProxy workRequestProxy){
+        SVCPostSend.RdmaMod rdmaMod = sendWRMod.getRdmaMod();
+        rdmaMod.setRemote_addr(workRequestProxy.getRemoteAddress());
+        rdmaMod.setRkey(workRequestProxy.getRemoteKey());
+    }
+
+    /**
+     * Get the number of bytes that a one-sided operation accesses, which is the remote length of
+     * its proxy, if set, or else the limit of its buffer.
+     * @param workRequestProxy the proxy of the one-sided operation.
+     * @return the number of bytes, at most the capacity of the proxy's buffer.
+     */
+    protected int getOneSidedLength(WorkRequestProxy workRequestProxy){
+        int remoteLength = workRequestProxy.getRemoteLength();
+        if(remoteLength > 0){
+            return Math.min(remoteLength, workRequestProxy.getBuffer().capacity());
+        }
+        return workRequestProxy.getBuffer().limit();
+    }
+
+    /**
+     * Posts a prepared Work Request with an SVC that is created for this post only and freed right after it.
+     * This is needed for the parts of Work Requests that DiSNI's SVCs cannot modify, like immediate data
+     * (see {@link PostSendRequest#setImmediateData(int)}) or the operands of atomics.
+     * @param postSendRequest the prepared Work Request.
+     * @param workRequestId the id of the Work Request.
+     * @throws IOException if creating or executing the SVC fails.
+     */
+    protected void executeOneTimeSVC(PostSendRequest postSendRequest, int workRequestId) throws IOException {
+        postSendRequest.setRequestId(workRequestId);
+        List<IbvSendWR> sendRequests = new ArrayList<>(1);
+        sendRequests.add(postSendRequest.getSendWR());
+        SVCPostSend postSendSVC = rdmaEndpoint.postSend(sendRequests);
+        try {
+            postSendRequest.writeNativeFields(postSendSVC);
+            executePostSendSVC(postSendSVC, workRequestId, false);
+        }finally {
+            postSendSVC.free();
+        }
+    }
+
+    /**
+     * Informs the listener, if any, that RECV Work Requests were re-posted to the NIC.
+     * @param count how many RECV Work Requests were re-posted.
+     */
+    protected void notifyReceivesPosted(int count){
+        IntConsumer listener = receivesPostedListener;
+        if((listener != null) && (count > 0)){
+            listener.accept(count);
+        }
+    }
+
+    /**
+     * Stops creating SVCs in the background. Managers that override this must call it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this){
+            if(backgroundCreator != null){
+                backgroundCreator.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public int takeCompletedUnsignaled(int signaledWorkRequestId, int[] workRequestIds) {
+        return selectiveSignaler.takeCoveredWorkRequests(signaledWorkRequestId, workRequestIds);
     }
 
 
@@ -52,6 +342,94 @@ public abstract class AbstractSVCManager implements SVCManager {
         this.registeredMemoryRegion = registeredMemoryRegion;
     }
 
+    public SelectiveSignaler getSelectiveSignaler() {
+        return selectiveSignaler;
+    }
+
+    /**
+     * Sets the signaler of this manager. SVC managers that post to the same queue pair can share
+     * a signaler, since a signaled completion covers the unsignaled Work Requests of all of them.
+     * @param selectiveSignaler the signaler.
+     */
+    public void setSelectiveSignaler(SelectiveSignaler selectiveSignaler) {
+        this.selectiveSignaler = selectiveSignaler;
+    }
+
+    public SVCCreation getSVCCreation() {
+        return svcCreation;
+    }
+
+    /**
+     * Sets when the SVCs of WR ids are created. Must be called before {@link SVCManager#initializeSVCs()}.
+     * SVCs that post chains of Work Requests are always created at initialization.
+     * @param svcCreation the creation mode.
+     */
+    public void setSVCCreation(SVCCreation svcCreation) {
+        this.svcCreation = svcCreation;
+    }
+
+    public SVCSetupMetrics getSetupMetrics() {
+        return setupMetrics;
+    }
+
+    /**
+     * Sets where to record setup metrics. Managers that post to the same queue pair can share metrics.
+     * @param setupMetrics the metrics.
+     */
+    public void setSetupMetrics(SVCSetupMetrics setupMetrics) {
+        this.setupMetrics = setupMetrics;
+    }
+
+    /**
+     * Whether SVCs are still being created in the background.
+     * @return true if the background thread hasn't finished yet.
+     */
+    public boolean isCreatingInBackground() {
+        return backgroundCreations.get() > 0;
+    }
+
+    public int getFirstWorkRequestId() {
+        return firstWorkRequestId;
+    }
+
+    public int getWorkRequestCount() {
+        return workRequestCount;
+    }
+
+    /**
+     * Restricts this manager to a range of the WR ids, when other managers use the rest of the WR ids
+     * of the same queue pair. SVCs are only created for the postSend WR ids of the range. RECV WR ids have
+     * their own space, so a manager that posts RECVs uses the WR ids from 0 to <i>workRequestCount</i>.
+     * Must be called before {@link SVCManager#initializeSVCs()}.
+     * @param firstWorkRequestId the first postSend WR id of the range.
+     * @param workRequestCount the number of WR ids.
+     */
+    public void setWorkRequestRange(int firstWorkRequestId, int workRequestCount) {
+        if((firstWorkRequestId < 0) || (workRequestCount < 0)
+                || (firstWorkRequestId + workRequestCount > maxWorkRequests)){
+            throw new IllegalArgumentException("The WR id range exceeds the maximum Work Requests.");
+        }
+        this.firstWorkRequestId = firstWorkRequestId;
+        this.workRequestCount = workRequestCount;
+    }
+
+    /**
+     * Sets every how many unsignaled-type Work Requests to signal one.
+     * @param signalInterval the interval.
+     */
+    public void setSignalInterval(int signalInterval) {
+        selectiveSignaler.setSignalInterval(signalInterval);
+    }
+
+    /**
+     * Sets a listener that is informed every time RECV Work Requests are re-posted to the NIC,
+     * with the number of re-posted RECVs.
+     * @param receivesPostedListener the listener.
+     */
+    public void setReceivesPostedListener(IntConsumer receivesPostedListener) {
+        this.receivesPostedListener = receivesPostedListener;
+    }
+
     public int getMaxBufferSize() {
         return maxBufferSize;
     }
@@ -1,5 +1,6 @@
 package jarg.jrcm.networking.dependencies.svc;
 
+import com.ibm.disni.verbs.IbvWC;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 
 /**
@@ -31,4 +32,54 @@ public interface SVCManager {
      * @return true on success, false on error.
      */
     boolean executeSVC(WorkRequestProxy workRequestProxy);
+
+    /**
+     * Execute the SVCs corresponding to several Work Requests, in order. Implementations
+     * can use SVCs that post chains of Work Requests, so that the whole batch is
+     * passed to the NIC with one JNI call and one doorbell.
+     * @param workRequestProxies the objects representing the Work Requests.
+     * @param count how many proxies of the array to use, starting from index 0.
+     *
+     * @return true if all SVCs were executed successfully, false otherwise.
+     */
+    default boolean executeSVCs(WorkRequestProxy[] workRequestProxies, int count){
+        boolean success = true;
+        for(int i=0; i < count; i++){
+            success &= executeSVC(workRequestProxies[i]);
+        }
+        return success;
+    }
+
+    /**
+     * Called when the completion of a signaled postSend Work Request arrives. Gets the ids
+     * of the unsignaled Work Requests that completed with it (see {@link SelectiveSignaler}).
+     * @param signaledWorkRequestId the id of the completed signaled Work Request.
+     * @param workRequestIds where to store the ids. Must fit the maximum Work Requests.
+     * @return the number of completed unsignaled Work Requests.
+     */
+    default int takeCompletedUnsignaled(int signaledWorkRequestId, int[] workRequestIds){
+        return 0;
+    }
+
+    /**
+     * Called when the successful completion of a RECV Work Request arrives, which means that there is
+     * one posted RECV less. It's called before anyone else sees the event. RECVs must be posted with their
+     * own WR ids, since error completions are not passed here.
+     * @param workCompletionEvent the completion event of the RECV.
+     */
+    default void onReceiveCompleted(IbvWC workCompletionEvent){}
+
+    /**
+     * Frees the postSend SVCs of a range of WR ids, because the buffers of these WR ids have changed
+     * or were freed (see {@link jarg.jrcm.networking.dependencies.netbuffers.impl.ElasticBufferManager}).
+     * The SVCs are created again the next time the WR ids are posted. The WR ids must not be in use.
+     * @param firstWorkRequestId the first WR id of the range.
+     * @param workRequestCount the number of WR ids.
+     */
+    default void releaseSVCs(int firstWorkRequestId, int workRequestCount){}
+
+    /**
+     * Releases any resources that outlive the Work Requests, when the communicator closes.
+     */
+    default void close(){}
 }
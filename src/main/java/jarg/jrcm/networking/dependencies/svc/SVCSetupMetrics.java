@@ -0,0 +1,135 @@
+package jarg.jrcm.networking.dependencies.svc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how long it takes to prepare a communicator for RDMA communications and how many
+ * SVCs were created at initialization, on first use or in the background
+ * (see {@link AbstractSVCManager.SVCCreation}). SVC managers that post to the same queue pair can
+ * share the same metrics. Times are in nanoseconds.
+ */
+public class SVCSetupMetrics {
+
+    private volatile long bufferAllocationNanos;        // allocating the communication buffers
+    private volatile long memoryRegistrationNanos;      // registering their memory to the NIC
+    private volatile long svcInitializationNanos;       // initializing SVCs before communications start
+    private final AtomicLong backgroundCompletionNanos; // from the start of SVC initialization until
+                                                            // all background SVCs are created
+    private final LongAdder eagerSVCs;
+    private final LongAdder lazySVCs;
+    private final LongAdder backgroundSVCs;
+    private final LongAdder svcCreationNanos;           // spent in the JNI calls that create SVCs
+
+
+    public SVCSetupMetrics() {
+        backgroundCompletionNanos = new AtomicLong(0);
+        eagerSVCs = new LongAdder();
+        lazySVCs = new LongAdder();
+        backgroundSVCs = new LongAdder();
+        svcCreationNanos = new LongAdder();
+    }
+
+    /**
+     * Records the creation of an SVC.
+     * @param svcCreation when the SVC was created.
+     * @param nanos how long creating it took.
+     */
+    public void onSVCCreated(AbstractSVCManager.SVCCreation svcCreation, long nanos){
+        switch (svcCreation){
+            case EAGER:
+                eagerSVCs.increment();
+                break;
+            case LAZY:
+                lazySVCs.increment();
+                break;
+            case BACKGROUND:
+                backgroundSVCs.increment();
+                break;
+        }
+        svcCreationNanos.add(nanos);
+    }
+
+    /**
+     * Records that creating SVCs in the background finished. If several managers create SVCs in the
+     * background, the latest one is kept.
+     * @param nanos the time since the start of SVC initialization.
+     */
+    public void onBackgroundCreationCompleted(long nanos){
+        backgroundCompletionNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /* ***************************************************************
+     *   Getters/Setters
+     * ***************************************************************/
+
+    public long getBufferAllocationNanos() {
+        return bufferAllocationNanos;
+    }
+
+    public void setBufferAllocationNanos(long bufferAllocationNanos) {
+        this.bufferAllocationNanos = bufferAllocationNanos;
+    }
+
+    public long getMemoryRegistrationNanos() {
+        return memoryRegistrationNanos;
+    }
+
+    public void setMemoryRegistrationNanos(long memoryRegistrationNanos) {
+        this.memoryRegistrationNanos = memoryRegistrationNanos;
+    }
+
+    public long getSvcInitializationNanos() {
+        return svcInitializationNanos;
+    }
+
+    public void setSvcInitializationNanos(long svcInitializationNanos) {
+        this.svcInitializationNanos = svcInitializationNanos;
+    }
+
+    /**
+     * Get the time from the start of SVC initialization until all SVCs of the background were created.
+     * @return the time or 0 if no SVCs are created in the background or they are not created yet.
+     */
+    public long getBackgroundCompletionNanos() {
+        return backgroundCompletionNanos.get();
+    }
+
+    public long getEagerSVCs() {
+        return eagerSVCs.sum();
+    }
+
+    public long getLazySVCs() {
+        return lazySVCs.sum();
+    }
+
+    public long getBackgroundSVCs() {
+        return backgroundSVCs.sum();
+    }
+
+    public long getSvcCreationNanos() {
+        return svcCreationNanos.sum();
+    }
+
+    /**
+     * Get the time before a communicator can start communicating.
+     * @return the sum of buffer allocation, memory registration and SVC initialization times.
+     */
+    public long getSetupNanos() {
+        return bufferAllocationNanos + memoryRegistrationNanos + svcInitializationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SVCSetupMetrics{" +
+                "bufferAllocationNanos=" + bufferAllocationNanos +
+                ", memoryRegistrationNanos=" + memoryRegistrationNanos +
+                ", svcInitializationNanos=" + svcInitializationNanos +
+                ", backgroundCompletionNanos=" + getBackgroundCompletionNanos() +
+                ", eagerSVCs=" + getEagerSVCs() +
+                ", lazySVCs=" + getLazySVCs() +
+                ", backgroundSVCs=" + getBackgroundSVCs() +
+                ", svcCreationNanos=" + getSvcCreationNanos() +
+                '}';
+    }
+}
@@ -0,0 +1,206 @@
+package jarg.jrcm.networking.dependencies.svc;
+
+import com.ibm.disni.verbs.IbvSendWR;
+import com.ibm.disni.verbs.SVCPostSend;
+
+/**
+ * <p>
+ * Implements <i>selective signaling</i> for the postSend Work Requests of an {@link SVCManager}.
+ * Unsignaled Work Requests don't produce Work Completion Events, which saves the work of processing
+ * them. However, the NIC processes the Work Requests of a send queue in order, so when a signaled
+ * Work Request completes, all Work Requests posted before it have completed too. Thus, the SelectiveSignaler
+ * signals every N-th unsignaled-type Work Request and remembers which unsignaled Work Requests each
+ * signaled one <i>covers</i>. When the completion of a signaled Work Request arrives, the WR ids it covers
+ * can be reclaimed.
+ * </p>
+ *
+ * <p>
+ * Signaled-type Work Requests posted while there are uncovered unsignaled ones cover them too. When no
+ * Work Request follows the last unsignaled ones, they stay uncovered until a signaled one is posted to
+ * flush them (see {@link SelectiveSignaler#hasUncovered()}).
+ * </p>
+ *
+ * <p>
+ * Some unsignaled Work Requests can be <i>detached</i>: their WR ids are released right after posting,
+ * which is possible when the NIC doesn't need the buffer after the post (inline sends). Detached Work
+ * Requests still occupy send queue slots until a later signaled one completes, so their number is
+ * limited by a budget. The send queue must have room for the maximum Work Requests plus this budget.
+ * The budget is 0 by default, which disables detaching.
+ * </p>
+ *
+ * <p>
+ * The decision to signal a Work Request and its posting must happen atomically, so that the order of
+ * the decisions is the order of the Work Requests in the send queue. Therefore,
+ * {@link SelectiveSignaler#onPost(int, boolean)} must be called while holding this object's monitor,
+ * which must be held until the Work Request is posted.
+ * </p>
+ */
+public class SelectiveSignaler {
+
+    public static final int DEFAULT_SIGNAL_INTERVAL = 16;
+
+    private final int maxWorkRequests;
+    private int signalInterval;                     // every how many unsignaled-type WRs to signal one
+    private final int[] uncoveredIds;               // unsignaled WR ids posted after the last signaled one
+    private int uncoveredCount;
+    private volatile int uncoveredHint;             // uncovered and detached WRs, read without the monitor
+    private final int[][] coveredIds;               // per signaled WR id, the WR ids it covers, lazily
+                                                    // sized to the signal interval
+    private final int[] coveredCounts;
+    private volatile int coveringWorkRequests;      // signaled WRs that cover others, read as a hint
+    private int maxDetached;                        // budget of detached WRs in the send queue
+    private int detachedCount;                      // detached WRs posted after the last signaled one
+    private int outstandingDetached;                // detached WRs whose completion is not known yet
+    private final int[] coveredDetached;            // per signaled WR id, the detached WRs it covers
+
+    public SelectiveSignaler(int maxWorkRequests){
+        this.maxWorkRequests = maxWorkRequests;
+        uncoveredIds = new int[maxWorkRequests];
+        coveredIds = new int[maxWorkRequests][];
+        coveredCounts = new int[maxWorkRequests];
+        coveredDetached = new int[maxWorkRequests];
+        setSignalInterval(DEFAULT_SIGNAL_INTERVAL);
+    }
+
+    /**
+     * Sets every how many unsignaled-type Work Requests to signal one. It's limited to half the
+     * maximum Work Requests, so that the WR ids waiting for a signal never exhaust the WR-id pool.
+     * @param signalInterval the interval.
+     */
+    public synchronized void setSignalInterval(int signalInterval){
+        this.signalInterval = Math.max(1, Math.min(signalInterval, maxWorkRequests / 2));
+    }
+
+    public synchronized int getSignalInterval() {
+        return signalInterval;
+    }
+
+    /**
+     * Sets how many detached Work Requests can be in the send queue. The send queue must
+     * have room for that many Work Requests, besides the maximum Work Requests.
+     * @param maxDetached the budget of detached Work Requests.
+     */
+    public synchronized void setMaxDetached(int maxDetached) {
+        this.maxDetached = Math.max(0, maxDetached);
+    }
+
+    public synchronized int getMaxDetached() {
+        return maxDetached;
+    }
+
+    /**
+     * Checks if the posting of a Work Request needs to go through
+     * {@link SelectiveSignaler#onPost(int, boolean)}. If not, the Work Request is simply posted
+     * as signaled.
+     * @param unsignaledType whether the Work Request is of an unsignaled type.
+     * @return true if the posting must be tracked.
+     */
+    public boolean needsTracking(boolean unsignaledType){
+        return unsignaledType || (uncoveredHint > 0);
+    }
+
+    /**
+     * Decides if a Work Request must be signaled and records the decision. Must be called while
+     * holding this object's monitor, right before the Work Request is posted.
+     * @param workRequestId the id of the Work Request.
+     * @param unsignaledType whether the Work Request is of an unsignaled type.
+     * @return true if the Work Request must be signaled.
+     */
+    public boolean onPost(int workRequestId, boolean unsignaledType){
+        if(unsignaledType && (uncoveredCount + detachedCount + 1 < signalInterval)){
+            uncoveredIds[uncoveredCount] = workRequestId;
+            uncoveredCount ++;
+            uncoveredHint = uncoveredCount + detachedCount;
+            return false;
+        }
+        // signal this WR and let it cover the previous unsignaled ones
+        if((uncoveredCount > 0) || (detachedCount > 0)){
+            if(uncoveredCount > 0){
+                // a WR covers less than the signal interval, unless the interval was lowered meanwhile
+                if((coveredIds[workRequestId] == null) || (coveredIds[workRequestId].length < uncoveredCount)){
+                    coveredIds[workRequestId] = new int[Math.max(uncoveredCount, signalInterval)];
+                }
+                System.arraycopy(uncoveredIds, 0, coveredIds[workRequestId], 0, uncoveredCount);
+            }
+            coveredCounts[workRequestId] = uncoveredCount;
+            coveredDetached[workRequestId] = detachedCount;
+            coveringWorkRequests ++;
+            uncoveredCount = 0;
+            detachedCount = 0;
+            uncoveredHint = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there are unsignaled or detached Work Requests that no signaled one covers yet. They are
+     * reclaimed only after a later signaled Work Request completes, so a sender that stops posting
+     * should post a signaled one to flush them.
+     * @return true if there are uncovered Work Requests.
+     */
+    public boolean hasUncovered(){
+        return uncoveredHint > 0;
+    }
+
+    /**
+     * Checks if the next unsignaled Work Request can be detached. It can't, if the budget of
+     * detached Work Requests is exhausted, or if it must be signaled. Must be called while holding
+     * this object's monitor.
+     * @return true if the Work Request can be detached.
+     */
+    public boolean canDetach(){
+        return (outstandingDetached < maxDetached) && (uncoveredCount + detachedCount + 1 < signalInterval);
+    }
+
+    /**
+     * Records the posting of a detached Work Request, which must be unsignaled. Must be called while
+     * holding this object's monitor, right after the Work Request is posted and only if
+     * {@link SelectiveSignaler#canDetach()} returned true.
+     */
+    public void onPostDetached(){
+        detachedCount ++;
+        outstandingDetached ++;
+        uncoveredHint = uncoveredCount + detachedCount;
+    }
+
+    /**
+     * Called when the completion of a signaled Work Request arrives. Returns the WR ids of the
+     * unsignaled Work Requests that it covers, which have also completed.
+     * @param signaledWorkRequestId the id of the completed signaled Work Request.
+     * @param workRequestIds where to store the covered WR ids. Must fit the maximum Work Requests.
+     * @return the number of covered WR ids.
+     */
+    public int takeCoveredWorkRequests(int signaledWorkRequestId, int[] workRequestIds){
+        if((coveringWorkRequests == 0) || (signaledWorkRequestId < 0)
+                || (signaledWorkRequestId >= maxWorkRequests)){
+            return 0;
+        }
+        synchronized (this){
+            int count = coveredCounts[signaledWorkRequestId];
+            int detached = coveredDetached[signaledWorkRequestId];
+            if((count > 0) || (detached > 0)){
+                if(count > 0){
+                    System.arraycopy(coveredIds[signaledWorkRequestId], 0, workRequestIds, 0, count);
+                }
+                coveredCounts[signaledWorkRequestId] = 0;
+                coveredDetached[signaledWorkRequestId] = 0;
+                outstandingDetached -= detached;
+                coveringWorkRequests --;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Sets or clears the signaled flag of a postSend SVC's Work Request, keeping its other flags.
+     * @param sendWRMod the modifier of the Work Request.
+     * @param signaled whether the Work Request must be signaled.
+     */
+    public static void setSignaled(SVCPostSend.SendWRMod sendWRMod, boolean signaled){
+        int flags = sendWRMod.getSend_flags();
+        int newFlags = signaled ? (flags | IbvSendWR.IBV_SEND_SIGNALED) : (flags & ~IbvSendWR.IBV_SEND_SIGNALED);
+        if(newFlags != flags){
+            sendWRMod.setSend_flags(newFlags);
+        }
+    }
+}
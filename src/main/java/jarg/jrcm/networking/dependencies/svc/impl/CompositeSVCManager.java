@@ -0,0 +1,187 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.CompositeBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.SVCSetupMetrics;
+import jarg.jrcm.networking.dependencies.svc.SelectiveSignaler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+
+/**
+ * <p>
+ * An SVC manager that combines other SVC managers, so that one queue pair can use several kinds
+ * of RDMA operations. E.g. control messages can use SEND/RECV with a {@link TwoSidedSVCManager} and
+ * bulk data can use one-sided WRITEs and READs, without a second connection. Every Work Request is
+ * passed to the manager of its type.
+ * </p>
+ *
+ * <p>
+ * Each manager creates SVCs for its own range of postSend WR ids (see
+ * {@link AbstractSVCManager#setWorkRequestRange(int, int)}), but it gets the WR ids of the whole queue pair,
+ * so all managers must be created with the maximum Work Requests of this manager. The buffers of the
+ * ranges are usually managed by a {@link CompositeBufferManager}. All managers share this manager's
+ * {@link SelectiveSignaler}, since they post to the same send queue, and this manager's
+ * {@link SVCSetupMetrics} and {@link SVCCreation} mode.
+ * </p>
+ */
+public class CompositeSVCManager extends AbstractSVCManager {
+    private static final Logger logger = LoggerFactory.getLogger(CompositeSVCManager.class);
+
+    private final List<AbstractSVCManager> svcManagers;
+    private final AbstractSVCManager[] typeSVCManagers;     // the manager of each Work Request type
+
+
+    public CompositeSVCManager(int maxBufferSize, int maxWorkRequests) {
+        super(maxBufferSize, maxWorkRequests);
+        svcManagers = new ArrayList<>();
+        typeSVCManagers = new AbstractSVCManager[WorkRequestType.values().length];
+    }
+
+    /**
+     * Adds a manager for some Work Request types. Must be called before {@link #initializeSVCs()}.
+     * @param svcManager the manager.
+     * @param firstWorkRequestId the first postSend WR id of the manager's range.
+     * @param workRequestCount the number of WR ids of the manager's range.
+     * @param requestTypes the Work Request types that the manager serves.
+     * @return this manager.
+     */
+    public CompositeSVCManager addSVCManager(AbstractSVCManager svcManager, int firstWorkRequestId,
+                                             int workRequestCount, WorkRequestType... requestTypes){
+        if(svcManager.getMaxWorkRequests() != getMaxWorkRequests()){
+            throw new IllegalArgumentException("The SVC manager must have the maximum Work Requests of the " +
+                    "composite SVC manager.");
+        }
+        for(WorkRequestType requestType : requestTypes){
+            if(typeSVCManagers[requestType.ordinal()] != null){
+                throw new IllegalArgumentException("Work Request type " + requestType + " has an SVC manager.");
+            }
+            typeSVCManagers[requestType.ordinal()] = svcManager;
+        }
+        svcManager.setWorkRequestRange(firstWorkRequestId, workRequestCount);
+        svcManager.setSelectiveSignaler(getSelectiveSignaler());
+        svcManager.setSetupMetrics(getSetupMetrics());
+        svcManager.setSVCCreation(getSVCCreation());
+        svcManagers.add(svcManager);
+        return this;
+    }
+
+    @Override
+    public void initializeSVCs() {
+        for(AbstractSVCManager svcManager : svcManagers){
+            svcManager.setRdmaEndpoint(getRdmaEndpoint());
+            svcManager.setBufferManager(getBufferManager());
+            svcManager.setRegisteredMemoryRegion(getRegisteredMemoryRegion());
+            svcManager.initializeSVCs();
+        }
+    }
+
+    @Override
+    public boolean executeSVC(WorkRequestProxy workRequestProxy) {
+        AbstractSVCManager svcManager = getSVCManager(workRequestProxy.getWorkRequestType());
+        // prevent errors
+        if(svcManager == null){
+            logger.error("No SVC manager for Work Request Type " + workRequestProxy.getWorkRequestType());
+            return false;
+        }
+        return svcManager.executeSVC(workRequestProxy);
+    }
+
+    @Override
+    public boolean executeSVCs(WorkRequestProxy[] workRequestProxies, int count) {
+        boolean success = true;
+        int start = 0;
+        // pass every run of Work Requests of the same manager to that manager
+        while(start < count){
+            AbstractSVCManager svcManager = getSVCManager(workRequestProxies[start].getWorkRequestType());
+            int end = start + 1;
+            while((end < count) && (getSVCManager(workRequestProxies[end].getWorkRequestType()) == svcManager)){
+                end ++;
+            }
+            if(svcManager == null){
+                logger.error("No SVC manager for Work Request Type "
+                        + workRequestProxies[start].getWorkRequestType());
+                success = false;
+            }else if((start == 0) && (end == count)){
+                return svcManager.executeSVCs(workRequestProxies, count);
+            }else{
+                success &= svcManager.executeSVCs(Arrays.copyOfRange(workRequestProxies, start, end),
+                        end - start);
+            }
+            start = end;
+        }
+        return success;
+    }
+
+    @Override
+    public void onReceiveCompleted(IbvWC workCompletionEvent) {
+        AbstractSVCManager svcManager = getSVCManager(TWO_SIDED_RECV);
+        if(svcManager != null){
+            svcManager.onReceiveCompleted(workCompletionEvent);
+        }
+    }
+
+    @Override
+    public void setReceivesPostedListener(IntConsumer receivesPostedListener) {
+        super.setReceivesPostedListener(receivesPostedListener);
+        for(AbstractSVCManager svcManager : svcManagers){
+            svcManager.setReceivesPostedListener(receivesPostedListener);
+        }
+    }
+
+    @Override
+    public void setSVCCreation(SVCCreation svcCreation) {
+        super.setSVCCreation(svcCreation);
+        for(AbstractSVCManager svcManager : svcManagers){
+            svcManager.setSVCCreation(svcCreation);
+        }
+    }
+
+    @Override
+    public void setSetupMetrics(SVCSetupMetrics setupMetrics) {
+        super.setSetupMetrics(setupMetrics);
+        for(AbstractSVCManager svcManager : svcManagers){
+            svcManager.setSetupMetrics(setupMetrics);
+        }
+    }
+
+    @Override
+    public boolean isCreatingInBackground() {
+        for(AbstractSVCManager svcManager : svcManagers){
+            if(svcManager.isCreatingInBackground()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for(AbstractSVCManager svcManager : svcManagers){
+            svcManager.close();
+        }
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    /**
+     * Get the manager of a Work Request type.
+     * @param requestType the Work Request type.
+     * @return the manager or null if no manager serves this type.
+     */
+    public AbstractSVCManager getSVCManager(WorkRequestType requestType){
+        return (requestType == null) ? null : typeSVCManagers[requestType.ordinal()];
+    }
+}
@@ -0,0 +1,77 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.OneSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.RemoteLocation;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import static jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest.OneSidedRequestType.ATOMIC_CMP_AND_SWP;
+import static jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest.OneSidedRequestType.ATOMIC_FETCH_AND_ADD;
+
+/**
+ * <p>
+ * Manages SVCs <i>(see IBM's jVerbs => SVC)</i> for <i>one-sided atomic</i> operations, i.e.
+ * compare-and-swap and fetch-and-add. Atomics operate on the 8 bytes at the remote location of the
+ * {@link WorkRequestProxy}, which must be aligned to 8 bytes. The old value of these bytes is written to
+ * the 8-byte aligned atomic buffer of the WR id (see {@link OneSidedBufferManager}).
+ * </p>
+ *
+ * <p>
+ * DiSNI's SVCs cannot modify the operands of atomic Work Requests, so an SVC is created for every post
+ * and the atomic fields are written to its native Work Request before posting
+ * (see {@link OneSidedRequest#writeNativeFields(com.ibm.disni.verbs.SVCPostSend)}).
+ * </p>
+ */
+public class OneSidedAtomicSVCManager extends AbstractSVCManager {
+    private static final Logger logger = LoggerFactory.getLogger(OneSidedAtomicSVCManager.class);
+
+
+    public OneSidedAtomicSVCManager(int maxBufferSize, int maxWorkRequests) {
+        super(maxBufferSize, maxWorkRequests);
+    }
+
+    @Override
+    public void initializeSVCs() {
+        // SVCs are created on every post
+    }
+
+    @Override
+    public boolean executeSVC(WorkRequestProxy workRequestProxy) {
+        int workRequestId = workRequestProxy.getId();
+        WorkRequestType workRequestType = workRequestProxy.getWorkRequestType();
+        // prevent errors
+        if(!workRequestType.isAtomic()){
+            logger.error("Work Request Type " + workRequestType + " is not atomic.");
+            return false;
+        }
+        if((workRequestProxy.getRemoteAddress() % OneSidedBufferManager.ATOMIC_BUFFER_SIZE) != 0){
+            logger.error("The remote address of atomic Work Request with id " + workRequestId
+                    + " is not aligned to 8 bytes.");
+            return false;
+        }
+        RemoteLocation remoteLocation = new RemoteLocation(workRequestProxy.getRemoteAddress(),
+                workRequestProxy.getRemoteKey());
+        OneSidedRequest atomicRequest = new OneSidedRequest(getRegisteredMemoryRegion(),
+                (workRequestType == WorkRequestType.ONE_SIDED_ATOMIC_CMP_AND_SWP) ?
+                        ATOMIC_CMP_AND_SWP : ATOMIC_FETCH_AND_ADD, remoteLocation);
+        atomicRequest.prepareRequest();
+        atomicRequest.setSgeLength(OneSidedBufferManager.ATOMIC_BUFFER_SIZE);
+        atomicRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(workRequestType, workRequestId));
+        atomicRequest.setAtomicOperands(workRequestProxy.getAtomicCompareAdd(), workRequestProxy.getAtomicSwap());
+        try {
+            executeOneTimeSVC(atomicRequest, workRequestId);
+        } catch (IOException e) {
+            logger.error("Failed to execute SVC for Work Request Type "
+                    + workRequestType + " and id " + workRequestId, e);
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,11 +1,8 @@
 package jarg.jrcm.networking.dependencies.svc.impl;
 
-import com.ibm.disni.RdmaEndpoint;
-import com.ibm.disni.verbs.IbvMr;
 import com.ibm.disni.verbs.IbvSendWR;
 import com.ibm.disni.verbs.SVCPostSend;
 import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
-import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
@@ -21,12 +18,15 @@ import static jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSid
 /**
  * Manages SVCs <i>(see IBM's jVerbs => SVC)</i> for
  * <i>one-sided RDMA READ</i> operations.
+ * The remote location is set from the {@link WorkRequestProxy} before every post, so the
+ * SVCs can read from any remote memory.
  */
 public class OneSidedReadSVCManager extends AbstractSVCManager {
 
     private static final Logger logger = LoggerFactory.getLogger(OneSidedReadSVCManager.class);
 
-    private SVCPostSend[] oneSidedReadSVCs;            // A one-sided WRITE SVC for each WR id
+    private SVCPostSend[] oneSidedReadSVCs;            // A one-sided READ SVC for each WR id
+    private final SVCFactory<SVCPostSend> readSVCFactory = this::createReadSVC;
 
 
     public OneSidedReadSVCManager(int maxBufferSize, int maxWorkRequests) {
@@ -36,47 +36,43 @@ public class OneSidedReadSVCManager extends AbstractSVCManager {
 
     @Override
     public void initializeSVCs() {
-        // get dependencies
-        int maxWorkRequests = getMaxWorkRequests();
-        int maxBufferSize = getMaxBufferSize();
-        IbvMr registeredMemoryRegion = getRegisteredMemoryRegion();
-        NetworkBufferManager bufferManager = getBufferManager();
-        RdmaEndpoint rdmaEndpoint = getRdmaEndpoint();
-
-        OneSidedRequest oneSidedWriteRequest;
-        oneSidedReadSVCs = new SVCPostSend[maxWorkRequests];
-        // pre-create SVCs
-        for(int i=0; i < maxWorkRequests; i++){
-            // We need to store an SVC for one request at a time, so
-            // we need a new list each time
-            List<IbvSendWR> sendRequests = new ArrayList<>(maxWorkRequests);
+        oneSidedReadSVCs = new SVCPostSend[getMaxWorkRequests()];
+        createSVCs(oneSidedReadSVCs, getFirstWorkRequestId(), getWorkRequestCount(), readSVCFactory);
+    }
 
-            oneSidedWriteRequest = new OneSidedRequest(registeredMemoryRegion, READ);
-            oneSidedWriteRequest.prepareRequest();
-            oneSidedWriteRequest.setRequestId(i);
-            oneSidedWriteRequest.setSgeLength(maxBufferSize);
-            oneSidedWriteRequest.setBufferMemoryAddress(
-                    bufferManager.getWorkRequestBufferAddress(WorkRequestType.ONE_SIDED_READ_SIGNALED, i));
-            sendRequests.add(oneSidedWriteRequest.getSendWR());
-            // create and store SVCs
-            try {
-                oneSidedReadSVCs[i] = rdmaEndpoint.postSend(sendRequests);
-            } catch (IOException e) {
-                logger.error("Failed to initialize SVCs.", e);
-            }
-        }
+    /**
+     * Creates the READ SVC of a WR id.
+     * @param workRequestId the WR id.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostSend createReadSVC(int workRequestId) throws IOException {
+        // We need to store an SVC for one request at a time, so
+        // we need a new list each time
+        List<IbvSendWR> sendRequests = new ArrayList<>(1);
+        OneSidedRequest oneSidedReadRequest = new OneSidedRequest(getRegisteredMemoryRegion(), READ);
+        oneSidedReadRequest.prepareRequest();
+        oneSidedReadRequest.setRequestId(workRequestId);
+        oneSidedReadRequest.setSgeLength(getMaxBufferSize());
+        oneSidedReadRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(WorkRequestType.ONE_SIDED_READ_SIGNALED,
+                        workRequestId));
+        sendRequests.add(oneSidedReadRequest.getSendWR());
+        return getRdmaEndpoint().postSend(sendRequests);
     }
 
     @Override
     public boolean executeSVC(WorkRequestProxy workRequestProxy) {
         boolean success = true;
         int workRequestId = workRequestProxy.getId();
-        int dataLength = workRequestProxy.getBuffer().limit();
+        int dataLength = getOneSidedLength(workRequestProxy);
         WorkRequestType workRequestType = workRequestProxy.getWorkRequestType();
         try {
-            oneSidedReadSVCs[workRequestId].getWrMod(0).
-                    getSgeMod(0).setLength(dataLength);
-            oneSidedReadSVCs[workRequestId].execute();
+            SVCPostSend svc = getSVC(oneSidedReadSVCs, workRequestId, readSVCFactory);
+            SVCPostSend.SendWRMod sendWRMod = svc.getWrMod(0);
+            sendWRMod.getSgeMod(0).setLength(dataLength);
+            setRemoteLocation(sendWRMod, workRequestProxy);
+            svc.execute();
         }catch (IOException e){
             logger.error("Failed to execute SVC for Work Request Type "
                     + workRequestType + " and id " + workRequestId, e);
@@ -1,13 +1,11 @@
 package jarg.jrcm.networking.dependencies.svc.impl;
 
-import com.ibm.disni.RdmaEndpoint;
-import com.ibm.disni.verbs.IbvMr;
 import com.ibm.disni.verbs.IbvSendWR;
 import com.ibm.disni.verbs.SVCPostSend;
 import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
-import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.RemoteLocation;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,11 +19,14 @@ import static jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSid
 /**
  * Manages SVCs <i>(see IBM's jVerbs => SVC)</i> for
  * <i>one-sided RDMA WRITE</i> operations.
+ * The remote location is set from the {@link WorkRequestProxy} before every post, so the
+ * SVCs can write to any remote memory.
  */
 public class OneSidedWriteSVCManager extends AbstractSVCManager {
     private static final Logger logger = LoggerFactory.getLogger(OneSidedWriteSVCManager.class);
 
     private SVCPostSend[] oneSidedWriteSVCs;            // A one-sided WRITE SVC for each WR id
+    private final SVCFactory<SVCPostSend> writeSVCFactory = this::createWriteSVC;
 
 
     public OneSidedWriteSVCManager(int maxBufferSize, int maxWorkRequests) {
@@ -34,47 +35,48 @@ public class OneSidedWriteSVCManager extends AbstractSVCManager {
 
     @Override
     public void initializeSVCs() {
-        // get dependencies
-        int maxWorkRequests = getMaxWorkRequests();
-        int maxBufferSize = getMaxBufferSize();
-        IbvMr registeredMemoryRegion = getRegisteredMemoryRegion();
-        NetworkBufferManager bufferManager = getBufferManager();
-        RdmaEndpoint rdmaEndpoint = getRdmaEndpoint();
-
-        OneSidedRequest oneSidedWriteRequest;
-        oneSidedWriteSVCs = new SVCPostSend[maxWorkRequests];
-        // pre-create SVCs
-        for(int i=0; i < maxWorkRequests; i++){
-            // We need to store an SVC for one request at a time, so
-            // we need a new list each time
-            List<IbvSendWR> sendRequests = new ArrayList<>(maxWorkRequests);
+        oneSidedWriteSVCs = new SVCPostSend[getMaxWorkRequests()];
+        createSVCs(oneSidedWriteSVCs, getFirstWorkRequestId(), getWorkRequestCount(), writeSVCFactory);
+    }
 
-            oneSidedWriteRequest = new OneSidedRequest(registeredMemoryRegion, WRITE);
-            oneSidedWriteRequest.prepareRequest();
-            oneSidedWriteRequest.setRequestId(i);
-            oneSidedWriteRequest.setSgeLength(maxBufferSize);
-            oneSidedWriteRequest.setBufferMemoryAddress(
-                    bufferManager.getWorkRequestBufferAddress(WorkRequestType.ONE_SIDED_WRITE_SIGNALED, i));
-            sendRequests.add(oneSidedWriteRequest.getSendWR());
-            // create and store SVCs
-            try {
-                oneSidedWriteSVCs[i] = rdmaEndpoint.postSend(sendRequests);
-            } catch (IOException e) {
-                logger.error("Failed to initialize SVCs.", e);
-            }
-        }
+    /**
+     * Creates the WRITE SVC of a WR id.
+     * @param workRequestId the WR id.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostSend createWriteSVC(int workRequestId) throws IOException {
+        // We need to store an SVC for one request at a time, so
+        // we need a new list each time
+        List<IbvSendWR> sendRequests = new ArrayList<>(1);
+        OneSidedRequest oneSidedWriteRequest = new OneSidedRequest(getRegisteredMemoryRegion(), WRITE);
+        oneSidedWriteRequest.prepareRequest();
+        oneSidedWriteRequest.setRequestId(workRequestId);
+        oneSidedWriteRequest.setSgeLength(getMaxBufferSize());
+        oneSidedWriteRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(WorkRequestType.ONE_SIDED_WRITE_SIGNALED,
+                        workRequestId));
+        sendRequests.add(oneSidedWriteRequest.getSendWR());
+        return getRdmaEndpoint().postSend(sendRequests);
     }
 
     @Override
     public boolean executeSVC(WorkRequestProxy workRequestProxy) {
         boolean success = true;
         int workRequestId = workRequestProxy.getId();
-        int dataLength = workRequestProxy.getBuffer().limit();
+        int dataLength = getOneSidedLength(workRequestProxy);
         WorkRequestType workRequestType = workRequestProxy.getWorkRequestType();
         try {
-            oneSidedWriteSVCs[workRequestId].getWrMod(0).
-                    getSgeMod(0).setLength(dataLength);
-            oneSidedWriteSVCs[workRequestId].execute();
+            if(workRequestType == WorkRequestType.ONE_SIDED_WRITE_WITH_IMM){
+                executeWriteWithImmediate(workRequestProxy, dataLength);
+                return true;
+            }
+            SVCPostSend svc = getSVC(oneSidedWriteSVCs, workRequestId, writeSVCFactory);
+            SVCPostSend.SendWRMod sendWRMod = svc.getWrMod(0);
+            sendWRMod.getSgeMod(0).setLength(dataLength);
+            setRemoteLocation(sendWRMod, workRequestProxy);
+            executePostSendSVC(svc, workRequestId,
+                    workRequestType.isUnsignaled());
         }catch (IOException e){
             logger.error("Failed to execute SVC for Work Request Type "
                     + workRequestType + " and id " + workRequestId, e);
@@ -82,4 +84,23 @@ public class OneSidedWriteSVCManager extends AbstractSVCManager {
         }
         return success;
     }
+
+    /**
+     * Posts a WRITE with the immediate data and the remote location of its proxy.
+     * @param workRequestProxy represents the WRITE.
+     * @param dataLength the length of the data to write.
+     * @throws IOException if posting fails.
+     */
+    private void executeWriteWithImmediate(WorkRequestProxy workRequestProxy, int dataLength) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        RemoteLocation remoteLocation = new RemoteLocation(workRequestProxy.getRemoteAddress(),
+                workRequestProxy.getRemoteKey());
+        OneSidedRequest writeRequest = new OneSidedRequest(getRegisteredMemoryRegion(), WRITE, remoteLocation);
+        writeRequest.prepareRequest();
+        writeRequest.setSgeLength(dataLength);
+        writeRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(WorkRequestType.ONE_SIDED_WRITE_WITH_IMM, workRequestId));
+        writeRequest.setImmediateData(workRequestProxy.getImmediateData());
+        executeOneTimeSVC(writeRequest, workRequestId);
+    }
 }
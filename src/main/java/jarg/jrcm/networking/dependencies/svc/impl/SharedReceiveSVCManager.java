@@ -0,0 +1,257 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import com.ibm.disni.verbs.IbvRecvWR;
+import com.ibm.disni.verbs.IbvWC;
+import com.ibm.disni.verbs.SVCPostRecv;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceiveBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceivePool;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postrecv.TwoSidedRecvRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A {@link TwoSidedSVCManager} whose RECVs use the buffers of a {@link SharedReceivePool}, through a
+ * {@link SharedReceiveBufferManager}. Every time a RECV WR id is posted, it is bound to an available slot
+ * of the pool. The SVC of a RECV cannot be modified, so every RECV WR id has an SVC for the slot it was last
+ * posted with, which is created again when the WR id is bound to another slot. Thus, a queue pair has at most
+ * <i>receivesPerConnection</i> RECV SVCs, no matter how many slots the pool has. When no other communicator
+ * waits for a slot, a re-posted RECV keeps its slot, so that its SVC is reused.
+ * </p>
+ *
+ * <p>
+ * Only <i>receivesPerConnection</i> RECVs are posted per connection, which should be much lower than
+ * the maximum Work Requests when there are many connections. If the pool has no available slots, the RECV
+ * waits until a slot is returned to the pool.
+ * </p>
+ *
+ * <p>
+ * With a {@link jarg.jrcm.networking.dependencies.flowcontrol.impl.CreditFlowController}, the remote side starts
+ * with <i>receivesPerConnection</i> credits, which stand for the initial RECVs, even if some of them have to
+ * wait for a slot. Every other RECV returns its credit only when it is actually posted, so a connection never
+ * has more messages in flight than its posted RECVs plus the initial RECVs that wait for slots.
+ * </p>
+ */
+public class SharedReceiveSVCManager extends TwoSidedSVCManager {
+    private static final Logger logger = LoggerFactory.getLogger(SharedReceiveSVCManager.class);
+
+    private final SharedReceivePool receivePool;
+    private final int receivesPerConnection;
+    private SVCPostRecv[] receiveSVCs;                  // the SVC of each RECV WR id
+    private int[] receiveSVCSlots;                      // the slot that the SVC of each RECV WR id posts
+    private final IntArrayFIFOQueue waitingReceives;    // RECV WR ids waiting for a slot
+    private boolean waitingForSlot;                     // if a waiter is registered to the pool
+    private int initialWaitingReceives;                 // initial RECVs among the waiting ones, no new credits
+    private int maxDataLength;
+    private IbvMr poolMemoryRegion;
+    private final Object receiveLock;
+
+    public SharedReceiveSVCManager(int maxBufferSize, int maxWorkRequests, SharedReceivePool receivePool,
+                                   int receivesPerConnection){
+        super(maxBufferSize, maxWorkRequests);
+        this.receivePool = receivePool;
+        this.receivesPerConnection = Math.max(1, Math.min(receivesPerConnection, maxWorkRequests));
+        waitingReceives = new IntArrayFIFOQueue(this.receivesPerConnection);
+        receiveLock = new Object();
+    }
+
+    @Override
+    protected void initializeReceives(int maxDataLength) {
+        this.maxDataLength = maxDataLength;
+        receiveSVCs = new SVCPostRecv[receivesPerConnection];
+        receiveSVCSlots = new int[receivesPerConnection];
+        try {
+            poolMemoryRegion = receivePool.register(getRdmaEndpoint());
+        } catch (IOException e) {
+            logger.error("Failed to register the shared receive pool.", e);
+            return;
+        }
+        // the initial RECVs are the remote side's initial credits, so posting them doesn't return credits
+        synchronized (receiveLock){
+            for(int i=0; i < receivesPerConnection; i++){
+                if(!postReceive(i)){
+                    initialWaitingReceives ++;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void executeRecv(WorkRequestProxy workRequestProxy) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        boolean posted = false;
+        synchronized (receiveLock){
+            if(waitingReceives.isEmpty() && !receivePool.hasSlotWaiters()){
+                posted = repostOnSlot(workRequestId);
+            }
+        }
+        if(!posted){
+            // the message was consumed, its slot can serve any connection now
+            getSharedReceiveBufferManager().unbindReceiveSlot(workRequestId);
+            synchronized (receiveLock){
+                posted = postReceive(workRequestId);
+            }
+        }
+        notifyReceivesPosted(posted ? 1 : 0);
+    }
+
+    /**
+     * RECVs are posted with their own WR ids and are not batched, so there is nothing to do.
+     */
+    @Override
+    public void onReceiveCompleted(IbvWC workCompletionEvent) {
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        getSharedReceiveBufferManager().unbindReceiveSlots();
+    }
+
+    /**
+     * Binds a RECV WR id to a slot and posts it, or keeps it waiting for a slot. Must be called
+     * while holding the receive lock.
+     * @param workRequestId the RECV WR id.
+     * @return true if the RECV was posted.
+     */
+    private boolean postReceive(int workRequestId){
+        // keep the order of waiting RECVs
+        if(!waitingReceives.isEmpty() || !bindAndPost(workRequestId)){
+            waitingReceives.enqueue(workRequestId);
+            if(!waitingForSlot){
+                waitingForSlot = true;
+                receivePool.waitForSlot(this::postWaitingReceives);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Posts the RECVs that wait for slots, while there are available slots. Runs when a slot
+     * is returned to the pool.
+     */
+    private void postWaitingReceives(){
+        int posted = 0;
+        synchronized (receiveLock){
+            waitingForSlot = false;
+            while(!waitingReceives.isEmpty() && bindAndPost(waitingReceives.firstInt())){
+                waitingReceives.dequeueInt();
+                // the initial RECVs wait first
+                if(initialWaitingReceives > 0){
+                    initialWaitingReceives --;
+                }else{
+                    posted ++;
+                }
+            }
+            if(!waitingReceives.isEmpty()){
+                waitingForSlot = true;
+                receivePool.waitForSlot(this::postWaitingReceives);
+            }
+        }
+        notifyReceivesPosted(posted);
+    }
+
+    /**
+     * Binds a RECV WR id to a slot and posts the RECV. Must be called while holding
+     * the receive lock.
+     * @param workRequestId the RECV WR id.
+     * @return true on success, false if there are no available slots.
+     */
+    private boolean bindAndPost(int workRequestId){
+        SharedReceiveBufferManager bufferManager = getSharedReceiveBufferManager();
+        int slot = bufferManager.bindReceiveSlot(workRequestId);
+        if(slot < 0){
+            return false;
+        }
+        try {
+            getReceiveSVC(workRequestId, slot).execute();
+        } catch (IOException e) {
+            logger.error("Failed to post RECV with id " + workRequestId + " on slot " + slot, e);
+            // don't wake waiters while holding the lock, the RECV will be retried with the next returned slot
+            bufferManager.unbindReceiveSlot(workRequestId, false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-posts a released RECV with the slot it is already bound to. Must be called while holding
+     * the receive lock.
+     * @param workRequestId the RECV WR id.
+     * @return true on success, false if the WR id has no slot or posting failed.
+     */
+    private boolean repostOnSlot(int workRequestId){
+        int slot = getSharedReceiveBufferManager().getReceiveSlot(workRequestId);
+        if(slot < 0){
+            return false;
+        }
+        receivePool.getBuffer(slot).clear();
+        try {
+            getReceiveSVC(workRequestId, slot).execute();
+        } catch (IOException e) {
+            logger.error("Failed to re-post RECV with id " + workRequestId + " on slot " + slot, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the SVC of a RECV WR id for a slot, replacing the WR id's SVC if it was created for another slot.
+     * Must be called while holding the receive lock.
+     * @param workRequestId the RECV WR id.
+     * @param slot the slot bound to the WR id.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostRecv getReceiveSVC(int workRequestId, int slot) throws IOException {
+        SVCPostRecv receiveSVC = receiveSVCs[workRequestId];
+        if((receiveSVC != null) && (receiveSVCSlots[workRequestId] == slot)){
+            return receiveSVC;
+        }
+        if(receiveSVC != null){
+            receiveSVCs[workRequestId] = null;
+            receiveSVC.free();
+        }
+        receiveSVC = createRecvSVC(workRequestId, slot);
+        receiveSVCs[workRequestId] = receiveSVC;
+        receiveSVCSlots[workRequestId] = slot;
+        return receiveSVC;
+    }
+
+    private SVCPostRecv createRecvSVC(int workRequestId, int slot) throws IOException {
+        List<IbvRecvWR> recvRequests = new ArrayList<>(1);
+        TwoSidedRecvRequest twoSidedRecvRequest = new TwoSidedRecvRequest(poolMemoryRegion);
+        twoSidedRecvRequest.prepareRequest();
+        twoSidedRecvRequest.setRequestId(workRequestId);
+        twoSidedRecvRequest.setSgeLength(maxDataLength);
+        twoSidedRecvRequest.setBufferMemoryAddress(receivePool.getAddress(slot));
+        recvRequests.add(twoSidedRecvRequest.getRecvWR());
+        return getRdmaEndpoint().postRecv(recvRequests);
+    }
+
+    private SharedReceiveBufferManager getSharedReceiveBufferManager(){
+        return (SharedReceiveBufferManager) getBufferManager();
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getReceivesPerConnection() {
+        return receivesPerConnection;
+    }
+
+    public int getWaitingReceives(){
+        synchronized (receiveLock){
+            return waitingReceives.size();
+        }
+    }
+}
@@ -1,19 +1,23 @@
 package jarg.jrcm.networking.dependencies.svc.impl;
 
-import com.ibm.disni.RdmaEndpoint;
 import com.ibm.disni.verbs.*;
 import jarg.jrcm.networking.dependencies.svc.AbstractSVCManager;
+import jarg.jrcm.networking.dependencies.svc.SelectiveSignaler;
 import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 import jarg.jrcm.networking.dependencies.netrequests.impl.postrecv.TwoSidedRecvRequest;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.OneSidedRequest;
+import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.RemoteLocation;
 import jarg.jrcm.networking.dependencies.netrequests.impl.postsend.TwoSidedSendRequest;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
 import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
@@ -21,83 +25,367 @@ import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestTyp
 /**
  * Manages SVCs <i>(see IBM's jVerbs => SVC)</i> for
  * <i>two-sided SEND/RECV</i> RDMA operations.
+ * Besides one SVC per WR id, it keeps SVCs that post chains of SEND Work Requests, with lengths that
+ * are powers of 2. Batches of SENDs are posted with these chains, paying for one JNI call and one NIC
+ * doorbell per chain instead of per message. A chain's WR ids, buffer addresses and lengths are
+ * modified before every execution, so any WR ids can be posted with any chain.
+ * <p>
+ * SENDs that are not larger than an inline threshold are posted with a separate inline SVC
+ * <i>(IBV_SEND_INLINE)</i>, so that the NIC gets the data with the Work Request instead of reading
+ * it with DMA. The buffer of an inline SEND can be reused as soon as it's posted. An unsignaled inline
+ * SEND is also <i>detached</i> if the {@link SelectiveSignaler}'s budget allows it, which means that its
+ * WR id is released right after posting. The queue pair must support inline data of the threshold's size.
+ * </p>
+ * <p>
+ * Released RECVs can be re-posted in batches too (see {@link TwoSidedSVCManager#setReceiveBatching(int, int)}).
+ * The Work Requests of a RECV SVC cannot be modified, except for reading their WR ids, so RECV chains are
+ * created for fixed groups of consecutive WR ids. A released RECV waits until all the RECVs of its group are
+ * released and the group is re-posted with one chain. When the posted RECVs fall below a low watermark,
+ * all waiting RECVs are re-posted immediately, so that the remote side doesn't run out of RECVs.
+ * </p>
+ * <p>
+ * SENDs whose proxies have segments (see {@link WorkRequestProxy#addSegment(long, int, int)}) gather the
+ * message from several buffers. They are posted with shared gather SVCs, one for every number of scatter/gather
+ * elements, whose WR ids and elements are set before every execution. The queue pair must support
+ * {@link TwoSidedSVCManager#MAX_GATHER_SGES} scatter/gather elements per SEND (see DiSNI's endpoint groups).
+ * The gathered message must fit in a RECV buffer, since the remote side receives it in one buffer.
+ * </p>
+ * <p>
+ * SENDs with immediate and one-sided WRITEs with immediate are also supported, using the send buffers.
+ * A WRITE with immediate writes the data of its buffer, without the headroom, to the remote location of
+ * its proxy. These Work Requests are never inlined or chained, since the immediate data of an SVC cannot
+ * be modified.
+ * </p>
+ * <p>
+ * The remote side is expected to have the same RECV buffers as this side, so SENDs that are larger than
+ * the smallest local RECV buffer are rejected. Otherwise, they would fail at the receiver with a local length
+ * error and put the queue pair in the error state.
+ * </p>
  */
 public class TwoSidedSVCManager extends AbstractSVCManager {
     private static final Logger logger = LoggerFactory.getLogger(TwoSidedSVCManager.class);
 
+    public static final int MAX_CHAIN_LENGTH = 32;
+    public static final int MAX_GATHER_SGES = WorkRequestProxy.MAX_SEGMENTS + 1;
+
     SVCPostSend[] twoSidedSendSVCs;                     // A two-sided send SVC for each WR id
     SVCPostRecv[] twoSidedRecvSVCs;                     // A two-sided recv SVC for each WR id
+    SVCPostSend[] inlineSendSVCs;                       // An inline two-sided send SVC for each WR id
+    SVCPostSend[] sendChainSVCs;                        // SEND chains of length 2^i, for i > 0
+    SVCPostSend[] gatherSendSVCs;                       // SENDs with i scatter/gather elements, for i > 1
+    private int maxChainLength;
+    private int inlineThreshold;                        // max bytes of inline SENDs, 0 to disable
+    SVCPostRecv[] recvChainSVCs;                        // A RECV chain for each group of WR ids
+    private int receiveChainLength;                     // RECVs per group, less than 2 to disable
+    private int receiveLowWatermark;                    // posted RECVs below which waiting RECVs are flushed
+    private boolean[] waitingReceives;                  // released RECVs that wait for their group
+    private int[] groupWaitingReceives;                 // waiting RECVs per group
+    private volatile int waitingReceivesCount;          // read as a hint without the lock
+    private final AtomicInteger postedReceives;         // RECVs currently posted to the NIC
+    private final Object receiveLock;                   // guards the waiting RECVs
+    private int workRequestDataLength;                  // buffer size plus headroom
+    private int maxSendLength;                          // the largest SEND that fits the remote RECVs
+    private final SVCFactory<SVCPostSend> sendSVCFactory = this::createSendSVC;
+    private final SVCFactory<SVCPostSend> inlineSendSVCFactory = this::createInlineSendSVC;
+    private final SVCFactory<SVCPostRecv> recvSVCFactory = this::createRecvSVC;
 
 
     public TwoSidedSVCManager(int maxBufferSize, int maxWorkRequests){
+        this(maxBufferSize, maxWorkRequests, 0);
+    }
+
+    public TwoSidedSVCManager(int maxBufferSize, int maxWorkRequests, int inlineThreshold){
         super(maxBufferSize, maxWorkRequests);
+        this.inlineThreshold = inlineThreshold;
+        postedReceives = new AtomicInteger(0);
+        receiveLock = new Object();
+    }
+
+    /**
+     * Enables re-posting released RECVs in chains. Must be called before
+     * {@link TwoSidedSVCManager#initializeSVCs()}.
+     * @param chainLength how many RECVs to re-post with one chain. Lower than 2 disables batching.
+     * @param lowWatermark when fewer RECVs than this are posted, waiting RECVs are re-posted immediately.
+     *                     It is at least 1.
+     */
+    public void setReceiveBatching(int chainLength, int lowWatermark){
+        int receives = getWorkRequestCount();
+        this.receiveChainLength = Math.max(0, Math.min(Math.min(chainLength, MAX_CHAIN_LENGTH), receives));
+        this.receiveLowWatermark = Math.max(1, Math.min(lowWatermark, receives));
     }
 
     @Override
     public void initializeSVCs() {
-        // get dependencies
-        int maxWorkRequests = getMaxWorkRequests();
-        int maxBufferSize = getMaxBufferSize();
-        IbvMr registeredMemoryRegion = getRegisteredMemoryRegion();
-        NetworkBufferManager bufferManager = getBufferManager();
-        RdmaEndpoint rdmaEndpoint = getRdmaEndpoint();
-
-        TwoSidedSendRequest twoSidedSendRequest;
-        TwoSidedRecvRequest twoSidedRecvRequest;
-        twoSidedSendSVCs = new SVCPostSend[maxWorkRequests];
-        twoSidedRecvSVCs = new SVCPostRecv[maxWorkRequests];
-        List<IbvSendWR> sendRequests;
-        List<IbvRecvWR> recvRequests;
-
-        for(int i=0; i < maxWorkRequests; i++){
-            // We need to store an SVC for one request at a time, so
-            // we need new lists each time
-            sendRequests = new ArrayList<>(1);
-            recvRequests = new ArrayList<>(1);
-
-            twoSidedSendRequest = new TwoSidedSendRequest(registeredMemoryRegion);
+        // the WR's memory includes any bytes reserved by jRCM for its own headers
+        int maxDataLength = getMaxBufferSize() + getBufferManager().getHeadroom();
+        this.workRequestDataLength = maxDataLength;
+        // the remote side has the same RECV buffers, so larger SENDs would fail at the receiver
+        maxSendLength = maxDataLength;
+        for(int i=0; i < getWorkRequestCount(); i++){
+            maxSendLength = Math.min(maxSendLength, getReceiveDataLength(i));
+        }
+        twoSidedSendSVCs = new SVCPostSend[getMaxWorkRequests()];
+        createSVCs(twoSidedSendSVCs, getFirstWorkRequestId(), getWorkRequestCount(), sendSVCFactory);
+        if(inlineThreshold > 0){
+            inlineSendSVCs = new SVCPostSend[getMaxWorkRequests()];
+            createSVCs(inlineSendSVCs, getFirstWorkRequestId(), getWorkRequestCount(), inlineSendSVCFactory);
+        }
+        initializeChainSVCs(maxDataLength);
+        initializeGatherSVCs(maxDataLength);
+        initializeReceives(maxDataLength);
+    }
+
+    /**
+     * Creates the RECV SVCs and posts the RECVs, before starting communications. All RECVs are
+     * posted with one SVC, so the RECV SVCs of the WR ids are only needed for re-posting them.
+     * @param maxDataLength the maximum length of a Work Request's data.
+     */
+    protected void initializeReceives(int maxDataLength){
+        int receives = getWorkRequestCount();
+        twoSidedRecvSVCs = new SVCPostRecv[receives];
+        List<IbvRecvWR> recvRequests = new ArrayList<>(receives);
+        for(int i=0; i < receives; i++){
+            recvRequests.add(createRecvRequest(i).getRecvWR());
+        }
+        if(receives > 0){
+            try {
+                getRdmaEndpoint().postRecv(recvRequests).execute().free();
+                postedReceives.addAndGet(receives);
+            } catch (IOException e) {
+                logger.error("Failed to post RECVs.", e);
+            }
+        }
+        createSVCs(twoSidedRecvSVCs, 0, receives, recvSVCFactory);
+        initializeRecvChainSVCs();
+    }
+
+    /**
+     * Creates the SVC of a SEND.
+     * @param workRequestId the WR id of the SEND.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostSend createSendSVC(int workRequestId) throws IOException {
+        // We need to store an SVC for one request at a time, so
+        // we need new lists each time
+        List<IbvSendWR> sendRequests = new ArrayList<>(1);
+        TwoSidedSendRequest twoSidedSendRequest = new TwoSidedSendRequest(getRegisteredMemoryRegion());
+        twoSidedSendRequest.prepareRequest();
+        twoSidedSendRequest.setRequestId(workRequestId);
+        twoSidedSendRequest.setSgeLength(workRequestDataLength);
+        twoSidedSendRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, workRequestId));
+        twoSidedSendRequest.getRequestSge().setLkey(getSendLocalKey(workRequestId));
+        sendRequests.add(twoSidedSendRequest.getSendWR());
+        return getRdmaEndpoint().postSend(sendRequests);
+    }
+
+    /**
+     * Prepares the RECV of a WR id.
+     * @param workRequestId the WR id.
+     * @return the prepared RECV.
+     */
+    private TwoSidedRecvRequest createRecvRequest(int workRequestId){
+        TwoSidedRecvRequest twoSidedRecvRequest = new TwoSidedRecvRequest(getRegisteredMemoryRegion());
+        twoSidedRecvRequest.prepareRequest();
+        twoSidedRecvRequest.setRequestId(workRequestId);
+        twoSidedRecvRequest.setSgeLength(getReceiveDataLength(workRequestId));
+        twoSidedRecvRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_RECV, workRequestId));
+        return twoSidedRecvRequest;
+    }
+
+    /**
+     * Get how many bytes the RECV of a WR id can receive, which is the size of its buffer plus the headroom.
+     * The RECV buffers can be smaller than the maximum buffer size (see
+     * {@link jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager}).
+     * @param workRequestId the WR id of the RECV.
+     * @return the number of bytes.
+     */
+    private int getReceiveDataLength(int workRequestId){
+        ByteBuffer buffer = getBufferManager().getWorkRequestBuffer(TWO_SIDED_RECV, workRequestId);
+        return (buffer == null) ? workRequestDataLength : buffer.capacity() + getBufferManager().getHeadroom();
+    }
+
+    /**
+     * Creates the SVC that re-posts the RECV of a WR id.
+     * @param workRequestId the WR id.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostRecv createRecvSVC(int workRequestId) throws IOException {
+        List<IbvRecvWR> recvRequests = new ArrayList<>(1);
+        recvRequests.add(createRecvRequest(workRequestId).getRecvWR());
+        return getRdmaEndpoint().postRecv(recvRequests);
+    }
+
+    /**
+     * Creates an SVC for inline SENDs.
+     * @param workRequestId the WR id of the SEND.
+     * @return the SVC.
+     * @throws IOException if the SVC cannot be created.
+     */
+    private SVCPostSend createInlineSendSVC(int workRequestId) throws IOException {
+        List<IbvSendWR> sendRequests = new ArrayList<>(1);
+        TwoSidedSendRequest twoSidedSendRequest = new TwoSidedSendRequest(getRegisteredMemoryRegion());
+        twoSidedSendRequest.prepareRequest();
+        twoSidedSendRequest.setRequestId(workRequestId);
+        twoSidedSendRequest.setSgeLength(workRequestDataLength);
+        twoSidedSendRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, workRequestId));
+        twoSidedSendRequest.getRequestSge().setLkey(getSendLocalKey(workRequestId));
+        IbvSendWR sendWR = twoSidedSendRequest.getSendWR();
+        sendWR.setSend_flags(sendWR.getSend_flags() | IbvSendWR.IBV_SEND_INLINE);
+        sendRequests.add(sendWR);
+        return getRdmaEndpoint().postSend(sendRequests);
+    }
+
+    /**
+     * Creates the SVCs of SEND chains. Their WR ids and buffers are set before each execution.
+     * @param maxDataLength the maximum length of a Work Request's data.
+     */
+    private void initializeChainSVCs(int maxDataLength){
+        int firstWorkRequestId = getFirstWorkRequestId();
+        maxChainLength = Integer.highestOneBit(Math.max(1, Math.min(MAX_CHAIN_LENGTH, getWorkRequestCount())));
+        sendChainSVCs = new SVCPostSend[Integer.numberOfTrailingZeros(maxChainLength) + 1];
+
+        for(int length = 2; length <= maxChainLength; length <<= 1){
+            List<IbvSendWR> sendRequests = new ArrayList<>(length);
+            for(int i=0; i < length; i++){
+                TwoSidedSendRequest twoSidedSendRequest = new TwoSidedSendRequest(getRegisteredMemoryRegion());
+                twoSidedSendRequest.prepareRequest();
+                twoSidedSendRequest.setRequestId(firstWorkRequestId + i);
+                twoSidedSendRequest.setSgeLength(maxDataLength);
+                twoSidedSendRequest.setBufferMemoryAddress(getBufferManager()
+                        .getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, firstWorkRequestId + i));
+                sendRequests.add(twoSidedSendRequest.getSendWR());
+            }
+            try {
+                sendChainSVCs[Integer.numberOfTrailingZeros(length)] = getRdmaEndpoint().postSend(sendRequests);
+            } catch (IOException e) {
+                logger.error("Failed to initialize chain SVCs.", e);
+            }
+        }
+    }
+
+    /**
+     * Creates the SVCs of gather SENDs. Their WR ids and scatter/gather elements are set before each execution.
+     * @param maxDataLength the maximum length of a Work Request's data.
+     */
+    private void initializeGatherSVCs(int maxDataLength){
+        int firstWorkRequestId = getFirstWorkRequestId();
+        long firstAddress = getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, firstWorkRequestId);
+        int localKey = getRegisteredMemoryRegion().getLkey();
+        gatherSendSVCs = new SVCPostSend[MAX_GATHER_SGES + 1];
+
+        for(int sges = 2; sges <= MAX_GATHER_SGES; sges++){
+            List<IbvSendWR> sendRequests = new ArrayList<>(1);
+            TwoSidedSendRequest twoSidedSendRequest = new TwoSidedSendRequest(getRegisteredMemoryRegion());
             twoSidedSendRequest.prepareRequest();
-            twoSidedSendRequest.setRequestId(i);
-            twoSidedSendRequest.setSgeLength(maxBufferSize);
-            twoSidedSendRequest.setBufferMemoryAddress(
-                    bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, i));
+            twoSidedSendRequest.setRequestId(firstWorkRequestId);
+            twoSidedSendRequest.setSgeLength(maxDataLength);
+            twoSidedSendRequest.setBufferMemoryAddress(firstAddress);
+            for(int i=1; i < sges; i++){
+                twoSidedSendRequest.addSge(firstAddress, 0, localKey);
+            }
             sendRequests.add(twoSidedSendRequest.getSendWR());
+            try {
+                gatherSendSVCs[sges] = getRdmaEndpoint().postSend(sendRequests);
+            } catch (IOException e) {
+                logger.error("Failed to initialize gather SVCs.", e);
+            }
+        }
+    }
+
+    /**
+     * Creates the SVCs of RECV chains, one for each group of consecutive WR ids, if
+     * RECV batching is enabled. WR ids that don't fit in a whole group are always re-posted alone.
+     */
+    private void initializeRecvChainSVCs(){
+        if(receiveChainLength < 2){
+            return;
+        }
+        int groups = getWorkRequestCount() / receiveChainLength;
+        recvChainSVCs = new SVCPostRecv[groups];
+        waitingReceives = new boolean[getWorkRequestCount()];
+        groupWaitingReceives = new int[groups];
 
-            twoSidedRecvRequest = new TwoSidedRecvRequest(registeredMemoryRegion);
-            twoSidedRecvRequest.prepareRequest();
-            twoSidedRecvRequest.setRequestId(i);
-            twoSidedRecvRequest.setSgeLength(maxBufferSize);
-            twoSidedRecvRequest.setBufferMemoryAddress(
-                    bufferManager.getWorkRequestBufferAddress(TWO_SIDED_RECV, i));
-            recvRequests.add(twoSidedRecvRequest.getRecvWR());
-            // create and store SVCs
+        for(int group = 0; group < groups; group++){
+            List<IbvRecvWR> recvRequests = new ArrayList<>(receiveChainLength);
+            for(int i = group * receiveChainLength; i < (group + 1) * receiveChainLength; i++){
+                TwoSidedRecvRequest twoSidedRecvRequest = new TwoSidedRecvRequest(getRegisteredMemoryRegion());
+                twoSidedRecvRequest.prepareRequest();
+                twoSidedRecvRequest.setRequestId(i);
+                twoSidedRecvRequest.setSgeLength(getReceiveDataLength(i));
+                twoSidedRecvRequest.setBufferMemoryAddress(
+                        getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_RECV, i));
+                recvRequests.add(twoSidedRecvRequest.getRecvWR());
+            }
             try {
-                twoSidedSendSVCs[i] = rdmaEndpoint.postSend(sendRequests);
-                twoSidedRecvSVCs[i] = rdmaEndpoint.postRecv(recvRequests);
-                // post receive operations now, before starting communications
-                twoSidedRecvSVCs[i].execute();
+                recvChainSVCs[group] = getRdmaEndpoint().postRecv(recvRequests);
             } catch (IOException e) {
-                logger.error("Failed to initialize SVCs.", e);
+                logger.error("Failed to initialize RECV chain SVCs.", e);
             }
         }
     }
 
+    /**
+     * Get the local key of the send buffer of a WR id, which is the key of the registered memory region,
+     * unless the buffer manager placed the buffer in another region.
+     * @param workRequestId the WR id.
+     * @return the local key.
+     */
+    private int getSendLocalKey(int workRequestId){
+        int localKey = getBufferManager().getWorkRequestLocalKey(TWO_SIDED_SEND_SIGNALED, workRequestId);
+        return (localKey < 0) ? getRegisteredMemoryRegion().getLkey() : localKey;
+    }
+
+    /**
+     * Frees the SEND and inline SEND SVCs of a range of WR ids. The chain and gather SVCs set the
+     * buffers of their Work Requests on every post, so they are kept.
+     */
+    @Override
+    public void releaseSVCs(int firstWorkRequestId, int workRequestCount) {
+        freeSVCs(twoSidedSendSVCs, firstWorkRequestId, workRequestCount);
+        freeSVCs(inlineSendSVCs, firstWorkRequestId, workRequestCount);
+    }
+
     @Override
     public boolean executeSVC(WorkRequestProxy workRequestProxy) {
         boolean success = true;
         int workRequestId = workRequestProxy.getId();
-        int dataLength = workRequestProxy.getBuffer().limit();
+        int dataLength = workRequestProxy.getBuffer().limit() + getBufferManager().getHeadroom();
         WorkRequestType workRequestType = workRequestProxy.getWorkRequestType();
+        // prevent errors
+        if(workRequestType.isTwoSidedSend() && (dataLength > maxSendLength)){
+            logger.error("SEND with id " + workRequestId + " is larger than the remote RECV buffers.");
+            return false;
+        }
 
         try {
             switch (workRequestType) {
                 case TWO_SIDED_SEND_SIGNALED:
-                    twoSidedSendSVCs[workRequestId].getWrMod(0).
-                            getSgeMod(0).setLength(dataLength);
-                    twoSidedSendSVCs[workRequestId].execute();
+                case TWO_SIDED_SEND_UNSIGNALED:
+                    if(workRequestProxy.getSegmentCount() > 0){
+                        success = executeGatherSend(workRequestProxy, dataLength);
+                        break;
+                    }
+                    if((inlineThreshold > 0) && (dataLength <= inlineThreshold)){
+                        executeInlineSend(workRequestProxy, dataLength);
+                        break;
+                    }
+                    SVCPostSend sendSVC = getSVC(twoSidedSendSVCs, workRequestId, sendSVCFactory);
+                    sendSVC.getWrMod(0).getSgeMod(0).setLength(dataLength);
+                    executePostSendSVC(sendSVC, workRequestId, workRequestType.isUnsignaled());
+                    break;
+                case TWO_SIDED_SEND_WITH_IMM:
+                    executeSendWithImmediate(workRequestProxy, dataLength);
+                    break;
+                case ONE_SIDED_WRITE_WITH_IMM:
+                    executeWriteWithImmediate(workRequestProxy);
                     break;
                 case TWO_SIDED_RECV:
-                    twoSidedRecvSVCs[workRequestId].execute();
+                    executeRecv(workRequestProxy);
                     break;
             }
         }catch(IOException e){
@@ -107,4 +395,326 @@ public class TwoSidedSVCManager extends AbstractSVCManager {
         }
         return success;
     }
+
+    /**
+     * Posts a SEND with the immediate data of its proxy, gathering the segments of the proxy, if any.
+     * @param workRequestProxy represents the SEND.
+     * @param dataLength the length of the data to send, including any headroom.
+     * @throws IOException if posting fails.
+     */
+    private void executeSendWithImmediate(WorkRequestProxy workRequestProxy, int dataLength) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        TwoSidedSendRequest twoSidedSendRequest = new TwoSidedSendRequest(getRegisteredMemoryRegion());
+        twoSidedSendRequest.prepareRequest();
+        twoSidedSendRequest.setSgeLength(dataLength);
+        twoSidedSendRequest.setBufferMemoryAddress(
+                getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, workRequestId));
+        twoSidedSendRequest.getRequestSge().setLkey(getSendLocalKey(workRequestId));
+        for(int i=0; i < workRequestProxy.getSegmentCount(); i++){
+            twoSidedSendRequest.addSge(workRequestProxy.getSegmentAddress(i), workRequestProxy.getSegmentLength(i),
+                    workRequestProxy.getSegmentKey(i));
+        }
+        twoSidedSendRequest.setImmediateData(workRequestProxy.getImmediateData());
+        executeOneTimeSVC(twoSidedSendRequest, workRequestId);
+    }
+
+    /**
+     * Posts a one-sided WRITE with the immediate data and the remote location of its proxy.
+     * @param workRequestProxy represents the WRITE.
+     * @throws IOException if posting fails.
+     */
+    private void executeWriteWithImmediate(WorkRequestProxy workRequestProxy) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        NetworkBufferManager bufferManager = getBufferManager();
+        RemoteLocation remoteLocation = new RemoteLocation(workRequestProxy.getRemoteAddress(),
+                workRequestProxy.getRemoteKey());
+        OneSidedRequest writeRequest = new OneSidedRequest(getRegisteredMemoryRegion(),
+                OneSidedRequest.OneSidedRequestType.WRITE, remoteLocation);
+        writeRequest.prepareRequest();
+        writeRequest.setSgeLength(workRequestProxy.getBuffer().limit());
+        // only the application's data is written, without the headroom
+        writeRequest.setBufferMemoryAddress(bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED,
+                workRequestId) + bufferManager.getHeadroom());
+        writeRequest.getRequestSge().setLkey(getSendLocalKey(workRequestId));
+        writeRequest.setImmediateData(workRequestProxy.getImmediateData());
+        executeOneTimeSVC(writeRequest, workRequestId);
+    }
+
+    /**
+     * Re-posts a released RECV, or keeps it waiting for the rest of its group if RECV batching
+     * is enabled.
+     * @param workRequestProxy represents the RECV.
+     * @throws IOException if posting fails.
+     */
+    protected void executeRecv(WorkRequestProxy workRequestProxy) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        if((recvChainSVCs == null) || (workRequestId >= recvChainSVCs.length * receiveChainLength)){
+            getSVC(twoSidedRecvSVCs, workRequestId, recvSVCFactory).execute();
+            postedReceives.incrementAndGet();
+            notifyReceivesPosted(1);
+            return;
+        }
+        int posted = 0;
+        synchronized (receiveLock){
+            int group = workRequestId / receiveChainLength;
+            waitingReceives[workRequestId] = true;
+            groupWaitingReceives[group] ++;
+            waitingReceivesCount ++;
+            if(groupWaitingReceives[group] == receiveChainLength){
+                recvChainSVCs[group].execute();
+                posted = clearWaitingGroup(group);
+            }else if(postedReceives.get() < receiveLowWatermark){
+                posted = flushWaitingReceives();
+            }
+        }
+        // outside the lock, the listener may post SENDs
+        notifyReceivesPosted(posted);
+    }
+
+    @Override
+    public void onReceiveCompleted(IbvWC workCompletionEvent) {
+        if((postedReceives.decrementAndGet() >= receiveLowWatermark) || (waitingReceivesCount == 0)){
+            return;
+        }
+        int posted;
+        synchronized (receiveLock){
+            try {
+                posted = flushWaitingReceives();
+            } catch (IOException e) {
+                logger.error("Failed to re-post waiting RECVs.", e);
+                return;
+            }
+        }
+        notifyReceivesPosted(posted);
+    }
+
+    /**
+     * Re-posts all the waiting RECVs, with a chain for complete groups and one by one for the rest.
+     * Must be called while holding the receive lock.
+     * @return the number of re-posted RECVs.
+     * @throws IOException if posting fails.
+     */
+    private int flushWaitingReceives() throws IOException {
+        int posted = 0;
+        for(int group = 0; (group < groupWaitingReceives.length) && (waitingReceivesCount > 0); group++){
+            if(groupWaitingReceives[group] == 0){
+                continue;
+            }
+            if(groupWaitingReceives[group] == receiveChainLength){
+                recvChainSVCs[group].execute();
+                posted += clearWaitingGroup(group);
+                continue;
+            }
+            for(int i = group * receiveChainLength; i < (group + 1) * receiveChainLength; i++){
+                if(waitingReceives[i]){
+                    getSVC(twoSidedRecvSVCs, i, recvSVCFactory).execute();
+                    waitingReceives[i] = false;
+                    groupWaitingReceives[group] --;
+                    waitingReceivesCount --;
+                    postedReceives.incrementAndGet();
+                    posted ++;
+                }
+            }
+        }
+        return posted;
+    }
+
+    /**
+     * Marks the RECVs of a group as posted, after the group's chain is posted. Must be called
+     * while holding the receive lock.
+     * @return the number of posted RECVs.
+     */
+    private int clearWaitingGroup(int group){
+        for(int i = group * receiveChainLength; i < (group + 1) * receiveChainLength; i++){
+            waitingReceives[i] = false;
+        }
+        groupWaitingReceives[group] = 0;
+        waitingReceivesCount -= receiveChainLength;
+        postedReceives.addAndGet(receiveChainLength);
+        return receiveChainLength;
+    }
+
+    /**
+     * Posts a SEND that gathers its message from the buffer and the segments of its proxy.
+     * @param workRequestProxy represents the SEND.
+     * @param dataLength the length of the data in the proxy's buffer, including any headroom.
+     * @return true on success, false if the gathered message doesn't fit in a buffer.
+     * @throws IOException if posting fails.
+     */
+    private boolean executeGatherSend(WorkRequestProxy workRequestProxy, int dataLength) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        int segments = workRequestProxy.getSegmentCount();
+        long messageLength = dataLength;
+        for(int i=0; i < segments; i++){
+            messageLength += workRequestProxy.getSegmentLength(i);
+        }
+        // prevent errors
+        if(messageLength > maxSendLength){
+            logger.error("The gathered message of SEND with id " + workRequestId
+                    + " is larger than the remote RECV buffers.");
+            return false;
+        }
+        SVCPostSend gatherSVC = gatherSendSVCs[segments + 1];
+        // the SVC can be used by any thread
+        synchronized (gatherSVC){
+            SVCPostSend.SendWRMod sendWRMod = gatherSVC.getWrMod(0);
+            sendWRMod.setWr_id(workRequestId);
+            SVCPostSend.SgeMod sgeMod = sendWRMod.getSgeMod(0);
+            sgeMod.setAddr(getBufferManager().getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, workRequestId));
+            sgeMod.setLength(dataLength);
+            sgeMod.setLkey(getSendLocalKey(workRequestId));
+            for(int i=0; i < segments; i++){
+                sgeMod = sendWRMod.getSgeMod(i + 1);
+                sgeMod.setAddr(workRequestProxy.getSegmentAddress(i));
+                sgeMod.setLength(workRequestProxy.getSegmentLength(i));
+                sgeMod.setLkey(workRequestProxy.getSegmentKey(i));
+            }
+            executePostSendSVC(gatherSVC, workRequestId, workRequestProxy.getWorkRequestType().isUnsignaled());
+        }
+        return true;
+    }
+
+    /**
+     * Posts an inline SEND. If it's unsignaled and can be detached, its WR id is released
+     * right after posting.
+     * @param workRequestProxy represents the SEND.
+     * @param dataLength the length of the data to send, including any headroom.
+     * @throws IOException if posting fails.
+     */
+    private void executeInlineSend(WorkRequestProxy workRequestProxy, int dataLength) throws IOException {
+        int workRequestId = workRequestProxy.getId();
+        boolean unsignaledType = workRequestProxy.getWorkRequestType().isUnsignaled();
+        SVCPostSend inlineSVC = getSVC(inlineSendSVCs, workRequestId, inlineSendSVCFactory);
+        SVCPostSend.SendWRMod sendWRMod = inlineSVC.getWrMod(0);
+        sendWRMod.getSgeMod(0).setLength(dataLength);
+        if(!unsignaledType){
+            executePostSendSVC(inlineSVC, workRequestId, false);
+            return;
+        }
+        SelectiveSignaler selectiveSignaler = getSelectiveSignaler();
+        boolean detached;
+        synchronized (selectiveSignaler){
+            detached = selectiveSignaler.canDetach();
+            if(detached){
+                SelectiveSignaler.setSignaled(sendWRMod, false);
+                inlineSVC.execute();
+                selectiveSignaler.onPostDetached();
+            }else{
+                SelectiveSignaler.setSignaled(sendWRMod, selectiveSignaler.onPost(workRequestId, true));
+                inlineSVC.execute();
+            }
+        }
+        if(detached){
+            // the data was copied to the NIC and there will be no completion for this WR id
+            workRequestProxy.releaseWorkRequest();
+        }
+    }
+
+    @Override
+    public boolean executeSVCs(WorkRequestProxy[] workRequestProxies, int count) {
+        boolean success = true;
+        int i = 0;
+        while(i < count){
+            if(!isChainable(workRequestProxies[i])){
+                success &= executeSVC(workRequestProxies[i]);
+                i++;
+                continue;
+            }
+            // find consecutive SENDs and post them in chains
+            int sendsEnd = i;
+            while((sendsEnd < count) && isChainable(workRequestProxies[sendsEnd])){
+                sendsEnd ++;
+            }
+            while(i < sendsEnd){
+                int remaining = sendsEnd - i;
+                if((remaining == 1) || (maxChainLength < 2)){
+                    success &= executeSVC(workRequestProxies[i]);
+                    i++;
+                    continue;
+                }
+                int chainLength = Integer.highestOneBit(Math.min(remaining, maxChainLength));
+                success &= executeSendChain(workRequestProxies, i, chainLength);
+                i += chainLength;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Checks if a SEND can be posted with a chain. SENDs that are too large for the remote RECVs are
+     * not, so that they are rejected by {@link TwoSidedSVCManager#executeSVC(WorkRequestProxy)}.
+     */
+    private boolean isChainable(WorkRequestProxy workRequestProxy){
+        WorkRequestType workRequestType = workRequestProxy.getWorkRequestType();
+        return workRequestType.isTwoSidedSend() && !workRequestType.hasImmediateData()
+                && (workRequestProxy.getSegmentCount() == 0)
+                && (workRequestProxy.getBuffer().limit() + getBufferManager().getHeadroom() <= maxSendLength);
+    }
+
+    /**
+     * Posts consecutive SENDs with one chain SVC.
+     * @param workRequestProxies the objects representing the SEND Work Requests.
+     * @param offset the index of the first SEND to post.
+     * @param chainLength how many SENDs to post. Must be a power of 2.
+     * @return true on success, false otherwise.
+     */
+    private boolean executeSendChain(WorkRequestProxy[] workRequestProxies, int offset, int chainLength){
+        SVCPostSend chainSVC = sendChainSVCs[Integer.numberOfTrailingZeros(chainLength)];
+        NetworkBufferManager bufferManager = getBufferManager();
+        int headroom = bufferManager.getHeadroom();
+        SelectiveSignaler selectiveSignaler = getSelectiveSignaler();
+        boolean hasUnsignaled = false;
+        // the chain can be used by any thread
+        synchronized (chainSVC){
+            try {
+                for(int i=0; i < chainLength; i++){
+                    WorkRequestProxy workRequestProxy = workRequestProxies[offset + i];
+                    int workRequestId = workRequestProxy.getId();
+                    SVCPostSend.SendWRMod sendWRMod = chainSVC.getWrMod(i);
+                    sendWRMod.setWr_id(workRequestId);
+                    SVCPostSend.SgeMod sgeMod = sendWRMod.getSgeMod(0);
+                    sgeMod.setAddr(bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED,
+                            workRequestId));
+                    sgeMod.setLength(workRequestProxy.getBuffer().limit() + headroom);
+                    sgeMod.setLkey(getSendLocalKey(workRequestId));
+                    hasUnsignaled |= workRequestProxy.getWorkRequestType().isUnsignaled();
+                }
+                if(!selectiveSignaler.needsTracking(hasUnsignaled)){
+                    for(int i=0; i < chainLength; i++){
+                        SelectiveSignaler.setSignaled(chainSVC.getWrMod(i), true);
+                    }
+                    chainSVC.execute();
+                }else{
+                    synchronized (selectiveSignaler){
+                        for(int i=0; i < chainLength; i++){
+                            WorkRequestProxy workRequestProxy = workRequestProxies[offset + i];
+                            SelectiveSignaler.setSignaled(chainSVC.getWrMod(i), selectiveSignaler.onPost(
+                                    workRequestProxy.getId(), workRequestProxy.getWorkRequestType().isUnsignaled()));
+                        }
+                        chainSVC.execute();
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to execute chain SVC of length " + chainLength, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getReceiveChainLength() {
+        return receiveChainLength;
+    }
+
+    public int getReceiveLowWatermark() {
+        return receiveLowWatermark;
+    }
+
+    public int getPostedReceives() {
+        return postedReceives.get();
+    }
 }
@@ -0,0 +1,48 @@
+package jarg.jrcm.networking.fragmentation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The header at the start of every fragment of a message. It tells the receiver to which message the
+ * fragment belongs, how long the whole message is and where the fragment's data goes in the message.
+ * <ul>
+ *     <li>message id (8 bytes)</li>
+ *     <li>message length (4 bytes)</li>
+ *     <li>fragment offset (4 bytes)</li>
+ * </ul>
+ */
+public final class FragmentHeader {
+
+    public static final int SIZE = 16;
+
+    private static final int MESSAGE_ID = 0;
+    private static final int MESSAGE_LENGTH = 8;
+    private static final int FRAGMENT_OFFSET = 12;
+
+    private FragmentHeader(){}
+
+    /**
+     * Writes a header at the start of a fragment's buffer, without changing the buffer's position.
+     * @param buffer the buffer of the fragment.
+     * @param messageId the id of the message.
+     * @param messageLength the length of the whole message.
+     * @param fragmentOffset the offset of the fragment's data in the message.
+     */
+    public static void write(ByteBuffer buffer, long messageId, int messageLength, int fragmentOffset){
+        buffer.putLong(MESSAGE_ID, messageId);
+        buffer.putInt(MESSAGE_LENGTH, messageLength);
+        buffer.putInt(FRAGMENT_OFFSET, fragmentOffset);
+    }
+
+    public static long getMessageId(ByteBuffer buffer){
+        return buffer.getLong(MESSAGE_ID);
+    }
+
+    public static int getMessageLength(ByteBuffer buffer){
+        return buffer.getInt(MESSAGE_LENGTH);
+    }
+
+    public static int getFragmentOffset(ByteBuffer buffer){
+        return buffer.getInt(FRAGMENT_OFFSET);
+    }
+}
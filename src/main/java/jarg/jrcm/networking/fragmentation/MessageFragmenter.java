@@ -0,0 +1,274 @@
+package jarg.jrcm.networking.fragmentation;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache.Registration;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * Sends messages of any length as a series of two-sided SENDs, which the remote side puts back together
+ * with a {@link MessageReassembler}. Every fragment starts with a {@link FragmentHeader} and carries as much
+ * of the message as fits in a Work Request buffer and in the remote RECV buffers (see the maximum
+ * fragment size).
+ * </p>
+ *
+ * <p>
+ * Fragments are posted as soon as a {@link WorkRequestProxy} is available, without waiting for previous
+ * fragments to complete. So a message is pipelined over all the available postSend WR ids (and credits,
+ * if flow control is used) and the sender only waits when they run out. The proxies of the fragments are
+ * released by the application's completion handler, as with any other SEND. Providers for buffers of
+ * several sizes give each fragment the smallest buffer that fits it.
+ * </p>
+ *
+ * <p>
+ * A message is either copied to the buffers of the proxies or, if it is in registered memory, gathered
+ * from its memory by the NIC without copying (see {@link WorkRequestProxy#addSegment(ByteBuffer, IbvMr)}).
+ * Messages in application buffers can also be sent without copying, if they are registered on demand with a
+ * {@link RegistrationCache}. Then the proxy of every fragment holds a reference to the registration until
+ * the fragment completes.
+ * </p>
+ */
+public class MessageFragmenter {
+    private final Logger logger = LoggerFactory.getLogger(MessageFragmenter.class);
+
+    private final WorkRequestProxyProvider proxyProvider;
+    private final int maxFragmentSize;                  // the largest fragment, including the header
+    private WorkRequestType requestType = WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+
+    /**
+     * @param proxyProvider provides the proxies of the fragments.
+     * @param maxFragmentSize the largest fragment, including its header. It must fit in the remote RECV
+     *                        buffers and in the largest local Work Request buffer.
+     */
+    public MessageFragmenter(WorkRequestProxyProvider proxyProvider, int maxFragmentSize) {
+        if(maxFragmentSize <= FragmentHeader.SIZE){
+            throw new IllegalArgumentException("Fragments must be larger than their header.");
+        }
+        this.proxyProvider = proxyProvider;
+        this.maxFragmentSize = maxFragmentSize;
+    }
+
+    /**
+     * Sets the type of the SENDs, e.g. to use unsignaled SENDs for fragments.
+     * @param requestType a two-sided SEND type.
+     * @return this fragmenter.
+     */
+    public MessageFragmenter setRequestType(WorkRequestType requestType) {
+        this.requestType = requestType;
+        return this;
+    }
+
+    /**
+     * Sends the remaining bytes of a buffer as one message, copying them to the proxies' buffers. It blocks
+     * only while no proxies are available. The buffer can be reused when this method returns.
+     * @param messageId the id of the message, unique among the incomplete messages of this connection.
+     * @param message the message, between the buffer's position and limit. The position isn't changed.
+     * @return true if all fragments were posted.
+     */
+    public boolean send(long messageId, ByteBuffer message){
+        return send(messageId, message, (IbvMr) null);
+    }
+
+    /**
+     * Sends the remaining bytes of a buffer as one message. It blocks only while no proxies are available.
+     * @param messageId the id of the message, unique among the incomplete messages of this connection.
+     * @param message the message, between the buffer's position and limit. The position isn't changed.
+     * @param memoryRegion the registered memory region that contains the message or null to copy the
+     *                     message. If it isn't null, the message is sent without copying, so it must stay
+     *                     unchanged until all the fragments have completed.
+     * @return true if all fragments were posted.
+     */
+    public boolean send(long messageId, ByteBuffer message, IbvMr memoryRegion){
+        return send(messageId, message, memoryRegion, null);
+    }
+
+    /**
+     * Sends the remaining bytes of a direct buffer as one message, without copying them, if the cache can
+     * register the buffer. Otherwise, the message is copied. It blocks only while no proxies are available.
+     * @param messageId the id of the message, unique among the incomplete messages of this connection.
+     * @param message the message, between the buffer's position and limit. The position isn't changed and the
+     *                message must stay unchanged until all the fragments have completed.
+     * @param registrationCache registers the buffer of the message.
+     * @return true if all fragments were posted.
+     */
+    public boolean send(long messageId, ByteBuffer message, RegistrationCache registrationCache){
+        Registration registration = registrationCache.acquire(message);
+        if(registration == null){
+            return send(messageId, message, null, null);
+        }
+        try {
+            return send(messageId, message, registration.getMemoryRegion(), registration);
+        } finally {
+            // the fragments hold their own references
+            registration.release();
+        }
+    }
+
+    private boolean send(long messageId, ByteBuffer message, IbvMr memoryRegion, Registration registration){
+        int messageLength = message.remaining();
+        int offset = 0;
+        do{
+            WorkRequestProxy proxy = proxyProvider.getSizedPostSendRequestBlocking(requestType,
+                    getFragmentRequestSize(messageLength - offset, memoryRegion));
+            // prevent errors
+            if(proxy == null){
+                logger.error("Cannot get a Work Request proxy for fragment " + offset + " of message "
+                        + messageId + ".");
+                return false;
+            }
+            int fragmentLength = postFragment(proxy, messageId, message, offset, memoryRegion, registration);
+            if(fragmentLength < 0){
+                return false;
+            }
+            offset += fragmentLength;
+        }while(offset < messageLength);
+        return true;
+    }
+
+    /**
+     * Like {@link #send(long, ByteBuffer, IbvMr)}, but it never blocks. Fragments that find no available
+     * proxy are posted when one is released, on the thread that released it.
+     * @param messageId the id of the message, unique among the incomplete messages of this connection.
+     * @param message the message, between the buffer's position and limit. The position isn't changed and the
+     *                message must stay unchanged until the returned future is completed.
+     * @param memoryRegion the registered memory region that contains the message or null to copy the message.
+     * @return a future that is completed with true when all the fragments are posted or with false if
+     * posting a fragment fails.
+     */
+    public CompletableFuture<Boolean> sendAsync(long messageId, ByteBuffer message, IbvMr memoryRegion){
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        sendFragmentsAsync(messageId, message, 0, memoryRegion, null, result);
+        return result;
+    }
+
+    /**
+     * Like {@link #send(long, ByteBuffer, RegistrationCache)}, but it never blocks (see
+     * {@link #sendAsync(long, ByteBuffer, IbvMr)}).
+     * @param messageId the id of the message, unique among the incomplete messages of this connection.
+     * @param message the message, between the buffer's position and limit. The position isn't changed and the
+     *                message must stay unchanged until all the fragments have completed.
+     * @param registrationCache registers the buffer of the message.
+     * @return a future that is completed with true when all the fragments are posted or with false if
+     * posting a fragment fails.
+     */
+    public CompletableFuture<Boolean> sendAsync(long messageId, ByteBuffer message,
+                                                RegistrationCache registrationCache){
+        Registration registration = registrationCache.acquire(message);
+        if(registration == null){
+            return sendAsync(messageId, message, (IbvMr) null);
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        sendFragmentsAsync(messageId, message, 0, registration.getMemoryRegion(), registration, result);
+        // the fragments hold their own references
+        return result.whenComplete((sent, error) -> registration.release());
+    }
+
+    /**
+     * Posts fragments for as long as proxies are available and then waits asynchronously for the next proxy.
+     */
+    private void sendFragmentsAsync(long messageId, ByteBuffer message, int offset, IbvMr memoryRegion,
+                                    Registration registration, CompletableFuture<Boolean> result){
+        int messageLength = message.remaining();
+        do{
+            int requestSize = getFragmentRequestSize(messageLength - offset, memoryRegion);
+            WorkRequestProxy proxy = proxyProvider.getSizedPostSendRequestNow(requestType, requestSize);
+            if(proxy == null){
+                int nextOffset = offset;
+                proxyProvider.getSizedPostSendRequestAsync(requestType, requestSize).thenAccept(asyncProxy -> {
+                    // prevent errors
+                    if(asyncProxy == null){
+                        logger.error("Cannot get a Work Request proxy for fragment " + nextOffset
+                                + " of message " + messageId + ".");
+                        result.complete(false);
+                        return;
+                    }
+                    int fragmentLength = postFragment(asyncProxy, messageId, message, nextOffset, memoryRegion,
+                            registration);
+                    if(fragmentLength < 0){
+                        result.complete(false);
+                    }else if(nextOffset + fragmentLength == messageLength){
+                        result.complete(true);
+                    }else{
+                        sendFragmentsAsync(messageId, message, nextOffset + fragmentLength, memoryRegion,
+                                registration, result);
+                    }
+                });
+                return;
+            }
+            int fragmentLength = postFragment(proxy, messageId, message, offset, memoryRegion, registration);
+            if(fragmentLength < 0){
+                result.complete(false);
+                return;
+            }
+            offset += fragmentLength;
+        }while(offset < messageLength);
+        result.complete(true);
+    }
+
+    /**
+     * Get how many bytes the buffer of a fragment's proxy must fit.
+     */
+    private int getFragmentRequestSize(int remaining, IbvMr memoryRegion){
+        if(memoryRegion != null){
+            return FragmentHeader.SIZE;
+        }
+        return (int) Math.min((long) remaining + FragmentHeader.SIZE, maxFragmentSize);
+    }
+
+    /**
+     * Fills a proxy with the next fragment of a message and posts it. If the message has a registration,
+     * the proxy holds a reference to it.
+     * @return the number of message bytes in the fragment or -1 if posting failed.
+     */
+    private int postFragment(WorkRequestProxy proxy, long messageId, ByteBuffer message, int offset,
+                             IbvMr memoryRegion, Registration registration){
+        ByteBuffer buffer = proxy.getBuffer();
+        int messageLength = message.remaining();
+        int fragmentLength = messageLength - offset;
+        fragmentLength = Math.min(fragmentLength, maxFragmentSize - FragmentHeader.SIZE);
+        FragmentHeader.write(buffer, messageId, messageLength, offset);
+        ByteBuffer fragment = message.duplicate();
+        if(memoryRegion == null){
+            fragmentLength = Math.min(fragmentLength, buffer.capacity() - FragmentHeader.SIZE);
+            fragment.position(message.position() + offset).limit(message.position() + offset + fragmentLength);
+            buffer.clear();
+            buffer.position(FragmentHeader.SIZE);
+            buffer.put(fragment);
+            buffer.flip();
+        }else{
+            buffer.clear().limit(FragmentHeader.SIZE);
+            fragment.position(message.position() + offset).limit(message.position() + offset + fragmentLength);
+            if(registration == null){
+                proxy.addSegment(fragment, memoryRegion);
+            }else{
+                proxy.addSegment(fragment, registration);
+            }
+        }
+        if(!proxy.getRdmaCommunicator().postNetOperationToNIC(proxy)){
+            logger.error("Failed to post fragment " + offset + " of message " + messageId + ".");
+            proxy.releaseWorkRequest();
+            return -1;
+        }
+        return fragmentLength;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public int getMaxFragmentSize() {
+        return maxFragmentSize;
+    }
+
+    public WorkRequestType getRequestType() {
+        return requestType;
+    }
+}
@@ -0,0 +1,183 @@
+package jarg.jrcm.networking.fragmentation;
+
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * <p>
+ * Puts back together the messages that a {@link MessageFragmenter} sent. The application's completion
+ * handler passes the received fragments to {@link #onFragment(WorkRequestProxy)}, which copies the data of
+ * each fragment from the RECV buffer straight to its offset in the message's destination buffer. There
+ * are no intermediate buffers, and fragments can arrive in any order.
+ * </p>
+ *
+ * <p>
+ * The destination of a message is either given by the application in advance with
+ * {@link #expect(long, ByteBuffer)} or allocated, when the first fragment arrives, by the destination
+ * allocator, which is given the length of the message. When all the bytes of a message have arrived,
+ * the listener is called with the destination, which has the message between position 0 and the message's
+ * length.
+ * </p>
+ *
+ * <p>
+ * If the connection also carries other messages, the completion handler must tell fragments apart from
+ * them (e.g. with a dedicated communicator or with immediate data).
+ * </p>
+ */
+public class MessageReassembler {
+    private final Logger logger = LoggerFactory.getLogger(MessageReassembler.class);
+
+    /**
+     * Is notified about messages that have been fully received.
+     */
+    @FunctionalInterface
+    public interface MessageListener {
+        /**
+         * @param messageId the id of the message.
+         * @param message the destination buffer, with the message between position 0 and the limit.
+         */
+        void onMessage(long messageId, ByteBuffer message);
+    }
+
+    private final IntFunction<ByteBuffer> destinationAllocator;    // can be null
+    private final MessageListener messageListener;
+    private final Map<Long, ByteBuffer> expectedMessages;          // destinations given in advance
+    private final Map<Long, Reassembly> incompleteMessages;
+
+
+    /**
+     * @param messageListener is called with every complete message.
+     */
+    public MessageReassembler(MessageListener messageListener) {
+        this(null, messageListener);
+    }
+
+    /**
+     * @param destinationAllocator allocates the destination of a message that isn't expected, given the
+     *                             message's length. It can be null, if all messages are expected.
+     * @param messageListener is called with every complete message.
+     */
+    public MessageReassembler(IntFunction<ByteBuffer> destinationAllocator, MessageListener messageListener) {
+        this.destinationAllocator = destinationAllocator;
+        this.messageListener = messageListener;
+        expectedMessages = new HashMap<>();
+        incompleteMessages = new HashMap<>();
+    }
+
+    /**
+     * Sets the buffer in which a message will be reassembled, before its first fragment arrives.
+     * @param messageId the id of the message.
+     * @param destination the buffer, which must fit the whole message.
+     */
+    public synchronized void expect(long messageId, ByteBuffer destination){
+        expectedMessages.put(messageId, destination);
+    }
+
+    /**
+     * Copies the data of a received fragment to its message and releases the fragment's proxy.
+     * @param fragmentProxy the proxy of the RECV that received the fragment.
+     * @return true if the fragment was added to its message, false if it was invalid or its message
+     * has no destination.
+     */
+    public boolean onFragment(WorkRequestProxy fragmentProxy){
+        ByteBuffer buffer = fragmentProxy.getBuffer();
+        int fragmentLength = fragmentProxy.getByteLength() - FragmentHeader.SIZE;
+        // prevent errors
+        if(fragmentLength < 0){
+            logger.error("Received a fragment without a header.");
+            fragmentProxy.releaseWorkRequest();
+            return false;
+        }
+        long messageId = FragmentHeader.getMessageId(buffer);
+        int messageLength = FragmentHeader.getMessageLength(buffer);
+        int fragmentOffset = FragmentHeader.getFragmentOffset(buffer);
+        ByteBuffer message = null;
+        boolean accepted = false;
+        synchronized (this){
+            Reassembly reassembly = incompleteMessages.get(messageId);
+            if(reassembly == null){
+                reassembly = startReassembly(messageId, messageLength);
+            }
+            if((reassembly != null) && (fragmentOffset >= 0) &&
+                    ((long) fragmentOffset + fragmentLength <= reassembly.messageLength)){
+                ByteBuffer destination = reassembly.destination.duplicate();
+                destination.clear().position(fragmentOffset);
+                ByteBuffer fragment = buffer.duplicate();
+                fragment.clear().position(FragmentHeader.SIZE).limit(FragmentHeader.SIZE + fragmentLength);
+                destination.put(fragment);
+                reassembly.receivedBytes += fragmentLength;
+                if(reassembly.receivedBytes == reassembly.messageLength){
+                    incompleteMessages.remove(messageId);
+                    message = reassembly.destination;
+                    message.clear().limit(reassembly.messageLength);
+                }
+                accepted = true;
+            }
+        }
+        fragmentProxy.releaseWorkRequest();
+        if(!accepted){
+            logger.error("Dropped fragment " + fragmentOffset + " of message " + messageId + ".");
+            return false;
+        }
+        if(message != null){
+            messageListener.onMessage(messageId, message);
+        }
+        return true;
+    }
+
+    /**
+     * Finds or allocates the destination of a message when its first fragment arrives.
+     * @return the reassembly state or null if the message has no valid destination.
+     */
+    private Reassembly startReassembly(long messageId, int messageLength){
+        ByteBuffer destination = expectedMessages.remove(messageId);
+        if((destination == null) && (destinationAllocator != null) && (messageLength >= 0)){
+            destination = destinationAllocator.apply(messageLength);
+        }
+        if((destination == null) || (destination.capacity() < messageLength)){
+            logger.error("No destination fits message " + messageId + " of " + messageLength + " bytes.");
+            return null;
+        }
+        Reassembly reassembly = new Reassembly(destination, messageLength);
+        incompleteMessages.put(messageId, reassembly);
+        return reassembly;
+    }
+
+    /**
+     * Drops the fragments of an incomplete message, e.g. after the sender failed to send the rest.
+     * @param messageId the id of the message.
+     * @return true if the message was incomplete or expected.
+     */
+    public synchronized boolean discard(long messageId){
+        boolean expected = expectedMessages.remove(messageId) != null;
+        return (incompleteMessages.remove(messageId) != null) || expected;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public synchronized int getIncompleteMessages() {
+        return incompleteMessages.size();
+    }
+
+    /**
+     * The destination of a message and how much of it has arrived.
+     */
+    private static class Reassembly {
+        private final ByteBuffer destination;
+        private final int messageLength;
+        private int receivedBytes;
+
+        private Reassembly(ByteBuffer destination, int messageLength) {
+            this.destination = destination;
+            this.messageLength = messageLength;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package jarg.jrcm.networking.ringbuffer;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RingBufferManager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Describes remote memory that a side of a ring buffer channel WRITEs to, i.e. the receiver's ring
+ * or the sender's head slot. The two sides exchange their descriptors before they start, e.g. with
+ * SENDs or the private data of the connection.
+ * <ul>
+ *     <li>address (8 bytes)</li>
+ *     <li>remote key (4 bytes)</li>
+ *     <li>length (4 bytes)</li>
+ * </ul>
+ */
+public final class RingBufferDescriptor {
+
+    public static final int SIZE = 16;
+
+    private final long address;
+    private final int remoteKey;
+    private final int length;
+
+    public RingBufferDescriptor(long address, int remoteKey, int length) {
+        this.address = address;
+        this.remoteKey = remoteKey;
+        this.length = length;
+    }
+
+    /**
+     * Describes the ring of a buffer manager, which the remote sender will WRITE to.
+     * @param bufferManager the buffer manager of the receiver's communicator.
+     * @param memoryRegion the registered memory region of the receiver's communicator.
+     * @return the descriptor.
+     */
+    public static RingBufferDescriptor forRing(RingBufferManager bufferManager, IbvMr memoryRegion){
+        return new RingBufferDescriptor(bufferManager.getRingAddress(), memoryRegion.getRkey(),
+                bufferManager.getRingCapacity());
+    }
+
+    /**
+     * Describes the head slot of a buffer manager, which the remote receiver will WRITE to.
+     * @param bufferManager the buffer manager of the sender's communicator.
+     * @param memoryRegion the registered memory region of the sender's communicator.
+     * @return the descriptor.
+     */
+    public static RingBufferDescriptor forHeadSlot(RingBufferManager bufferManager, IbvMr memoryRegion){
+        return new RingBufferDescriptor(bufferManager.getHeadAddress(), memoryRegion.getRkey(),
+                RingBufferManager.HEAD_SLOT_SIZE);
+    }
+
+    /**
+     * Writes this descriptor at the position of a buffer and advances the position.
+     * @param buffer the buffer.
+     */
+    public void write(ByteBuffer buffer){
+        buffer.putLong(address);
+        buffer.putInt(remoteKey);
+        buffer.putInt(length);
+    }
+
+    /**
+     * Reads a descriptor from the position of a buffer and advances the position.
+     * @param buffer the buffer.
+     * @return the descriptor.
+     */
+    public static RingBufferDescriptor read(ByteBuffer buffer){
+        long address = buffer.getLong();
+        int remoteKey = buffer.getInt();
+        int length = buffer.getInt();
+        return new RingBufferDescriptor(address, remoteKey, length);
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public long getAddress() {
+        return address;
+    }
+
+    public int getRemoteKey() {
+        return remoteKey;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
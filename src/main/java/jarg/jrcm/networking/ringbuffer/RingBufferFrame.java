@@ -0,0 +1,93 @@
+package jarg.jrcm.networking.ringbuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a message in a ring buffer. Frames start at 8-byte aligned offsets of the ring and
+ * never wrap around its end.
+ * <ul>
+ *     <li>message length plus one (4 bytes), so that an empty message has a non-zero header, or {@link #WRAP}
+ *     if the rest of the ring is unused and the next frame is at the start of the ring</li>
+ *     <li>message</li>
+ *     <li>valid byte (1 byte), which is {@link #VALID} once the whole frame is in the ring</li>
+ *     <li>zeros, up to the next 8-byte boundary</li>
+ * </ul>
+ * The receiver zeroes the frames it consumes, so a non-zero header or valid byte is always a new one.
+ */
+public final class RingBufferFrame {
+
+    public static final int HEADER_SIZE = Integer.BYTES;
+    public static final int ALIGNMENT = Long.BYTES;
+    public static final int WRAP = -1;
+    public static final int NONE = -2;                  // the message length where no frame has arrived
+    public static final byte VALID = 1;
+
+    private static final int MESSAGE_LENGTH = 0;
+
+    private RingBufferFrame(){}
+
+    /**
+     * Get the length of the frame of a message, including its framing and padding.
+     * @param messageLength the length of the message.
+     * @return the frame length.
+     */
+    public static int getFrameLength(int messageLength){
+        int length = HEADER_SIZE + messageLength + 1;
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Get the offset of the valid byte in a frame.
+     * @param messageLength the length of the message.
+     * @return the offset from the start of the frame.
+     */
+    public static int getValidOffset(int messageLength){
+        return HEADER_SIZE + messageLength;
+    }
+
+    /**
+     * Writes the frame of a message at the start of a buffer. The buffer is flipped, so it has the
+     * frame between position 0 and the limit.
+     * @param buffer the buffer, which must fit the frame.
+     * @param message the message, between the buffer's position and limit. The position isn't changed.
+     */
+    public static void write(ByteBuffer buffer, ByteBuffer message){
+        int messageLength = message.remaining();
+        int frameLength = getFrameLength(messageLength);
+        buffer.clear();
+        buffer.putInt(MESSAGE_LENGTH, messageLength + 1);
+        buffer.position(HEADER_SIZE);
+        buffer.put(message.duplicate());
+        buffer.put(VALID);
+        while(buffer.position() < frameLength){
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes the header that marks the rest of the ring as unused at the start of a buffer. The buffer
+     * is flipped, so it has the header between position 0 and the limit.
+     * @param buffer the buffer.
+     */
+    public static void writeWrap(ByteBuffer buffer){
+        buffer.clear();
+        buffer.putInt(MESSAGE_LENGTH, WRAP);
+        buffer.limit(HEADER_SIZE);
+    }
+
+    /**
+     * Reads the header of a frame.
+     * @param ring the ring.
+     * @param frameOffset the offset of the frame in the ring.
+     * @return the length of the message, {@link #WRAP} if the next frame is at the start of the ring or
+     * {@link #NONE} if no frame has arrived at this offset yet.
+     */
+    public static int getMessageLength(ByteBuffer ring, int frameOffset){
+        int header = ring.getInt(frameOffset + MESSAGE_LENGTH);
+        if(header == 0){
+            return NONE;
+        }
+        return (header == WRAP) ? WRAP : header - 1;
+    }
+}
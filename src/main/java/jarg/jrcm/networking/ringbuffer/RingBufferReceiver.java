@@ -0,0 +1,210 @@
+package jarg.jrcm.networking.ringbuffer;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RingBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Receives the messages that a remote {@link RingBufferSender} WRITEs into a ring in this side's
+ * registered memory (see {@link RingBufferManager#getRingBuffer()}). The application calls
+ * {@link #poll(MessageListener, int)} from its own thread, which reads the next frames of the ring without
+ * any verbs calls. A frame is consumed only when its valid byte is set, which the NIC writes last, since
+ * it writes the data of a WRITE in increasing address order.
+ * </p>
+ *
+ * <p>
+ * Consumed frames are zeroed and the head is written back to the sender's head slot when the receiver
+ * has consumed more than the head update threshold since the last update, or when it has consumed every
+ * frame of the ring. This is the only WRITE of the receiver, so a larger threshold means fewer WRITEs
+ * but less free space on the sender's side. A drained ring always publishes its head, or a sender
+ * that waits for more space than the threshold leaves would never see it. The proxies of these WRITEs
+ * are released by the application's completion handler.
+ * </p>
+ */
+public class RingBufferReceiver {
+    private final Logger logger = LoggerFactory.getLogger(RingBufferReceiver.class);
+
+    /**
+     * Is notified about the received messages.
+     */
+    @FunctionalInterface
+    public interface MessageListener {
+        /**
+         * @param message a view of the ring with the message between its position and limit. It is only
+         *                valid during the call, since the ring space is reused afterwards.
+         */
+        void onMessage(ByteBuffer message);
+    }
+
+    private final WorkRequestProxyProvider proxyProvider;
+    private final ByteBuffer ring;                      // written by the remote sender
+    private final ByteBuffer messageView;               // passed to the listener
+    private final int ringCapacity;
+    private final RingBufferDescriptor remoteHeadSlot;
+    private WorkRequestType requestType = WorkRequestType.ONE_SIDED_WRITE_SIGNALED;
+    private int headUpdateThreshold;
+    private long head;                                  // bytes consumed from the ring since the start
+    private long publishedHead;                         // the last head written to the sender
+    private long receivedMessages;
+
+
+    /**
+     * @param proxyProvider provides the proxies of the head updates.
+     * @param ring the ring of this side, to which the remote sender WRITEs.
+     * @param remoteHeadSlot the head slot of the remote sender.
+     */
+    public RingBufferReceiver(WorkRequestProxyProvider proxyProvider, ByteBuffer ring,
+                              RingBufferDescriptor remoteHeadSlot) {
+        if((ring.capacity() == 0) || (ring.capacity() % RingBufferFrame.ALIGNMENT != 0)){
+            throw new IllegalArgumentException("The ring capacity must be a positive multiple of "
+                    + RingBufferFrame.ALIGNMENT + ".");
+        }
+        this.proxyProvider = proxyProvider;
+        this.ring = ring;
+        this.ringCapacity = ring.capacity();
+        this.remoteHeadSlot = remoteHeadSlot;
+        messageView = ring.duplicate();
+        headUpdateThreshold = ringCapacity / 4;
+        // the ring may be memory that was used before
+        clear(0, ringCapacity);
+    }
+
+    /**
+     * Sets the type of the WRITEs of the head updates.
+     * @param requestType a one-sided WRITE type.
+     * @return this receiver.
+     */
+    public RingBufferReceiver setRequestType(WorkRequestType requestType) {
+        this.requestType = requestType;
+        return this;
+    }
+
+    /**
+     * Sets after how many consumed bytes the head is written back to the sender, if the ring isn't
+     * drained before.
+     * @param headUpdateThreshold the number of bytes, a quarter of the ring by default. Larger values
+     *                            are limited to the ring capacity, or a full ring would never be freed.
+     * @return this receiver.
+     */
+    public RingBufferReceiver setHeadUpdateThreshold(int headUpdateThreshold) {
+        this.headUpdateThreshold = Math.min(headUpdateThreshold, ringCapacity);
+        return this;
+    }
+
+    /**
+     * Passes the messages that have arrived to a listener, in the order they were sent. It doesn't wait
+     * for messages that haven't arrived yet.
+     * @param listener is called with every message.
+     * @param maxMessages the most messages to receive.
+     * @return the number of received messages.
+     */
+    public synchronized int poll(MessageListener listener, int maxMessages){
+        int messages = 0;
+        boolean drained = false;
+        while(messages < maxMessages){
+            int offset = (int) (head % ringCapacity);
+            int messageLength = RingBufferFrame.getMessageLength(ring, offset);
+            if(messageLength == RingBufferFrame.NONE){
+                drained = true;
+                break;
+            }
+            if(messageLength == RingBufferFrame.WRAP){
+                ring.putInt(offset, 0);
+                head += ringCapacity - offset;
+                continue;
+            }
+            int frameLength = RingBufferFrame.getFrameLength(messageLength);
+            if((messageLength < 0) || (frameLength > ringCapacity - offset)){
+                logger.error("Invalid frame of length " + messageLength + " at offset " + offset
+                        + " of the ring.");
+                break;
+            }
+            // the rest of the frame may not have arrived yet
+            if(ring.get(offset + RingBufferFrame.getValidOffset(messageLength)) != RingBufferFrame.VALID){
+                break;
+            }
+            int messageStart = offset + RingBufferFrame.HEADER_SIZE;
+            messageView.limit(messageStart + messageLength).position(messageStart);
+            listener.onMessage(messageView);
+            clear(offset, frameLength);
+            head += frameLength;
+            messages ++;
+        }
+        receivedMessages += messages;
+        // the sender may be waiting for space that only the unpublished part of the head can give
+        if((head - publishedHead >= headUpdateThreshold) || (drained && (head != publishedHead))){
+            updateRemoteHead();
+        }
+        return messages;
+    }
+
+    /**
+     * WRITEs the head to the sender's head slot, so that the sender can reuse the consumed space.
+     * @return true if the head was posted, false if no proxy was available or posting failed.
+     */
+    public synchronized boolean updateRemoteHead(){
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(requestType);
+        if(proxy == null){
+            return false;
+        }
+        ByteBuffer buffer = proxy.getBuffer();
+        buffer.clear();
+        buffer.putLong(0, head);
+        buffer.limit(RingBufferManager.HEAD_SLOT_SIZE);
+        proxy.setRemoteLocation(remoteHeadSlot.getAddress(), remoteHeadSlot.getRemoteKey());
+        if(!proxy.getRdmaCommunicator().postNetOperationToNIC(proxy)){
+            logger.error("Failed to WRITE the head to the sender.");
+            proxy.releaseWorkRequest();
+            return false;
+        }
+        publishedHead = head;
+        return true;
+    }
+
+    /**
+     * Zeroes a part of the ring. Frames are aligned, so it is zeroed 8 bytes at a time.
+     */
+    private void clear(int offset, int length){
+        for(int i = offset; i < offset + length; i += Long.BYTES){
+            ring.putLong(i, 0);
+        }
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public RingBufferDescriptor getRemoteHeadSlot() {
+        return remoteHeadSlot;
+    }
+
+    public WorkRequestType getRequestType() {
+        return requestType;
+    }
+
+    public int getHeadUpdateThreshold() {
+        return headUpdateThreshold;
+    }
+
+    /**
+     * Get how many bytes have been consumed from the ring, including framing and skipped bytes.
+     * @return the head.
+     */
+    public synchronized long getHead() {
+        return head;
+    }
+
+    public synchronized long getPublishedHead() {
+        return publishedHead;
+    }
+
+    public synchronized long getReceivedMessages() {
+        return receivedMessages;
+    }
+}
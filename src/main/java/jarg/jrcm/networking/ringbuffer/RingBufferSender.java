@@ -0,0 +1,295 @@
+package jarg.jrcm.networking.ringbuffer;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RingBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Sends messages with <i>one-sided</i> RDMA WRITEs into a ring buffer in the remote side's memory, where
+ * a {@link RingBufferReceiver} polls for them. The remote CPU doesn't post RECVs and gets no Work Completion
+ * per message, so each message costs one WRITE on this side and a few memory reads on the remote side.
+ * </p>
+ *
+ * <p>
+ * Every message is written as one {@link RingBufferFrame} at the tail of the ring. The sender only knows
+ * how far the receiver has consumed from the head that the receiver WRITEs back into this side's head slot
+ * (see {@link RingBufferManager#getHeadBuffer()}) from time to time. So the sender may see less free space
+ * than there is, but never overwrites unconsumed messages. When the ring seems full, the non-blocking
+ * {@link #sendNow(ByteBuffer)} fails and {@link #send(ByteBuffer)} waits for the head to move.
+ * </p>
+ *
+ * <p>
+ * A frame that doesn't fit at the end of the ring is written at its start, after a WRITE that marks the
+ * end as skipped. The skipped end is written on its own when the frame only fits once the skipped bytes
+ * are consumed, so even a frame as long as the ring is sent as soon as the receiver drains the ring.
+ * </p>
+ *
+ * <p>
+ * The proxies of the WRITEs are released by the application's completion handler, as with any other WRITE.
+ * The WRITEs of a connection are executed in order, so a message is never seen before the ones that
+ * were sent before it.
+ * </p>
+ */
+public class RingBufferSender {
+    private final Logger logger = LoggerFactory.getLogger(RingBufferSender.class);
+
+    private final WorkRequestProxyProvider proxyProvider;
+    private final RingBufferDescriptor remoteRing;
+    private final int ringCapacity;
+    private final ByteBuffer headBuffer;                // the remote receiver WRITEs its head here
+    private WorkRequestType requestType = WorkRequestType.ONE_SIDED_WRITE_SIGNALED;
+    private long tail;                                  // bytes written to the ring since the start
+    private long head;                                  // the last known head of the receiver
+    private long sentMessages;
+
+
+    /**
+     * @param proxyProvider provides the proxies of the WRITEs.
+     * @param remoteRing the ring of the remote receiver.
+     * @param headBuffer the head slot of this side, to which the remote receiver WRITEs its head.
+     */
+    public RingBufferSender(WorkRequestProxyProvider proxyProvider, RingBufferDescriptor remoteRing,
+                            ByteBuffer headBuffer) {
+        if((remoteRing.getLength() <= 0) || (remoteRing.getLength() % RingBufferFrame.ALIGNMENT != 0)){
+            throw new IllegalArgumentException("The ring capacity must be a positive multiple of "
+                    + RingBufferFrame.ALIGNMENT + ".");
+        }
+        this.proxyProvider = proxyProvider;
+        this.remoteRing = remoteRing;
+        this.ringCapacity = remoteRing.getLength();
+        this.headBuffer = headBuffer;
+        // the slot may be memory that was used before
+        headBuffer.putLong(0, 0);
+    }
+
+    /**
+     * Sets the type of the WRITEs, e.g. to use unsignaled WRITEs.
+     * @param requestType a one-sided WRITE type.
+     * @return this sender.
+     */
+    public RingBufferSender setRequestType(WorkRequestType requestType) {
+        this.requestType = requestType;
+        return this;
+    }
+
+    /**
+     * Sends the remaining bytes of a buffer as one message, if the ring has room for it and proxies are
+     * available. It never blocks. The buffer can be reused when this method returns. If the message only
+     * fits after the end of the ring is skipped and consumed, it skips the end and fails, so that a later
+     * call can succeed.
+     * @param message the message, between the buffer's position and limit. The position isn't changed.
+     * @return true if the message was posted, false if it wasn't, e.g. because the ring is full.
+     */
+    public synchronized boolean sendNow(ByteBuffer message){
+        int frameLength = RingBufferFrame.getFrameLength(message.remaining());
+        if(!checkFrameLength(frameLength)){
+            return false;
+        }
+        int padding = getWrapPadding(frameLength);
+        if(!hasSpace(padding + frameLength)){
+            // the frame only fits after the skipped end of the ring is consumed, so skip it now
+            if((padding + frameLength > ringCapacity) && hasSpace(padding)){
+                WorkRequestProxy wrapProxy = proxyProvider.getPostSendRequestNow(requestType);
+                if(wrapProxy != null){
+                    postWrap(wrapProxy, padding);
+                }
+            }
+            return false;
+        }
+        WorkRequestProxy frameProxy = proxyProvider.getPostSendRequestNow(requestType);
+        if((frameProxy == null) || !checkProxyBuffer(frameProxy, frameLength)){
+            return false;
+        }
+        if(padding > 0){
+            WorkRequestProxy wrapProxy = proxyProvider.getPostSendRequestNow(requestType);
+            if((wrapProxy == null) || !postWrap(wrapProxy, padding)){
+                frameProxy.releaseWorkRequest();
+                return false;
+            }
+        }
+        return postFrame(frameProxy, message, frameLength);
+    }
+
+    /**
+     * Sends the remaining bytes of a buffer as one message. It blocks while no proxies are available and
+     * while the ring has no room for the message. The buffer can be reused when this method returns.
+     * @param message the message, between the buffer's position and limit. The position isn't changed.
+     * @return true if the message was posted.
+     */
+    public synchronized boolean send(ByteBuffer message){
+        int frameLength = RingBufferFrame.getFrameLength(message.remaining());
+        if(!checkFrameLength(frameLength)){
+            return false;
+        }
+        int padding = getWrapPadding(frameLength);
+        WorkRequestProxy frameProxy = proxyProvider.getPostSendRequestBlocking(requestType);
+        // prevent errors
+        if(frameProxy == null){
+            logger.error("Cannot get a Work Request proxy for a message.");
+            return false;
+        }
+        if(!checkProxyBuffer(frameProxy, frameLength)){
+            return false;
+        }
+        if(padding > 0){
+            WorkRequestProxy wrapProxy = proxyProvider.getPostSendRequestBlocking(requestType);
+            if(wrapProxy == null){
+                logger.error("Cannot get a Work Request proxy for wrapping around the ring.");
+                frameProxy.releaseWorkRequest();
+                return false;
+            }
+            // the end of the ring is skipped first, since the frame may only fit after the skipped
+            // bytes are consumed
+            if(!waitForSpace(padding, wrapProxy) || !postWrap(wrapProxy, padding)){
+                frameProxy.releaseWorkRequest();
+                return false;
+            }
+        }
+        if(!waitForSpace(frameLength, frameProxy)){
+            return false;
+        }
+        return postFrame(frameProxy, message, frameLength);
+    }
+
+    /**
+     * Checks whether a frame fits in the ring at all.
+     */
+    private boolean checkFrameLength(int frameLength){
+        if(frameLength > ringCapacity){
+            logger.error("A frame of " + frameLength + " bytes doesn't fit in a ring of " + ringCapacity
+                    + " bytes.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get how many bytes at the end of the ring must be skipped, because the frame doesn't fit in them.
+     */
+    private int getWrapPadding(int frameLength){
+        int offset = (int) (tail % ringCapacity);
+        if(offset + frameLength > ringCapacity){
+            return ringCapacity - offset;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether the ring has room for the given bytes, reading the receiver's latest head only if the
+     * last known one isn't enough.
+     */
+    private boolean hasSpace(int length){
+        if(tail + length - head <= ringCapacity){
+            return true;
+        }
+        head = headBuffer.getLong(0);
+        return tail + length - head <= ringCapacity;
+    }
+
+    /**
+     * Waits until the ring has room for the given bytes, or releases the proxy if the communicator is
+     * shut down while waiting.
+     * @return true if the ring has room.
+     */
+    private boolean waitForSpace(int length, WorkRequestProxy proxy){
+        while(!hasSpace(length)){
+            if(proxy.getRdmaCommunicator().isShutDown()){
+                proxy.releaseWorkRequest();
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the buffer of a proxy can hold a frame, releasing the proxy if it can't.
+     */
+    private boolean checkProxyBuffer(WorkRequestProxy proxy, int frameLength){
+        if(proxy.getBuffer().capacity() < frameLength){
+            logger.error("A frame of " + frameLength + " bytes doesn't fit in the Work Request buffers.");
+            proxy.releaseWorkRequest();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Posts the WRITE that marks the end of the ring as unused.
+     * @return true if it was posted.
+     */
+    private boolean postWrap(WorkRequestProxy wrapProxy, int padding){
+        RingBufferFrame.writeWrap(wrapProxy.getBuffer());
+        if(!postWrite(wrapProxy)){
+            return false;
+        }
+        tail += padding;
+        return true;
+    }
+
+    /**
+     * Posts the WRITE of a message's frame.
+     * @return true if the frame was posted.
+     */
+    private boolean postFrame(WorkRequestProxy frameProxy, ByteBuffer message, int frameLength){
+        RingBufferFrame.write(frameProxy.getBuffer(), message);
+        if(!postWrite(frameProxy)){
+            return false;
+        }
+        tail += frameLength;
+        sentMessages ++;
+        return true;
+    }
+
+    /**
+     * WRITEs the buffer of a proxy at the tail of the remote ring.
+     */
+    private boolean postWrite(WorkRequestProxy proxy){
+        long offset = tail % ringCapacity;
+        proxy.setRemoteLocation(remoteRing.getAddress() + offset, remoteRing.getRemoteKey());
+        if(!proxy.getRdmaCommunicator().postNetOperationToNIC(proxy)){
+            logger.error("Failed to WRITE to offset " + offset + " of the remote ring.");
+            proxy.releaseWorkRequest();
+            return false;
+        }
+        return true;
+    }
+
+    /* ***************************************************************
+     *   Getters
+     * ***************************************************************/
+
+    public RingBufferDescriptor getRemoteRing() {
+        return remoteRing;
+    }
+
+    public WorkRequestType getRequestType() {
+        return requestType;
+    }
+
+    /**
+     * Get how many bytes have been written to the ring, including framing and skipped bytes.
+     * @return the tail.
+     */
+    public synchronized long getTail() {
+        return tail;
+    }
+
+    /**
+     * Get the last head of the receiver that this sender has read.
+     * @return the head.
+     */
+    public synchronized long getHead() {
+        return head;
+    }
+
+    public synchronized long getSentMessages() {
+        return sentMessages;
+    }
+}
@@ -0,0 +1,380 @@
+package jarg.jrcm.networking.dependencies.flowcontrol.impl;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.impl.QueuedProxyProvider;
+import jarg.jrcm.networking.dependencies.svc.SVCManager;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for CreditFlowController")
+public class CreditFlowControllerTest {
+
+    private static final int maxBufferSize = 16;
+    private static final int maxWorkRequests = 8;
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test one-way traffic with explicit credit updates")
+    public void oneWayTrafficTest(){
+        Peer sender = new Peer();
+        Peer receiver = new Peer();
+        sender.connect(receiver);
+        receiver.connect(sender);
+
+        int messages = 10 * maxWorkRequests;
+        for(int i=0; i < messages; i++){
+            WorkRequestProxy proxy;
+            while((proxy = sender.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED)) == null){
+                assertTrue(deliverEvents(sender, receiver), "No progress possible.");
+            }
+            proxy.getBuffer().putInt(i).flip();
+            proxy.post();
+        }
+        while(deliverEvents(sender, receiver));
+        // all messages must have arrived in order, without overflowing the receiver
+        assertEquals(messages, receiver.receivedMessages.size());
+        for(int i=0; i < messages; i++){
+            assertEquals(i, receiver.receivedMessages.get(i));
+        }
+        assertFalse(receiver.overflowed);
+        assertEquals(0, sender.flowController.getQueuedSends());
+        // the receiver only sent credit updates, which the application must not see
+        assertEquals(0, sender.receivedMessages.size());
+        assertTrue(receiver.flowController.getSendCredits() > 0);
+    }
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test that SENDs are queued when the receiver is not ready")
+    public void queuedSendsTest(){
+        Peer sender = new Peer();
+        Peer receiver = new Peer();
+        sender.connect(receiver);
+        receiver.connect(sender);
+        // the application of the receiver keeps the received messages
+        receiver.releaseReceived = false;
+
+        for(int i=0; i < maxWorkRequests; i++){
+            WorkRequestProxy proxy = sender.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+            proxy.getBuffer().putInt(i).flip();
+            proxy.post();
+        }
+        while(deliverEvents(sender, receiver));
+        // the last credit is kept for returning credits
+        assertEquals(maxWorkRequests - 1, receiver.receivedMessages.size());
+        assertEquals(1, sender.flowController.getQueuedSends());
+        assertEquals(1, sender.flowController.getSendCredits());
+        assertFalse(receiver.overflowed);
+        // release received messages, the queued SEND must now arrive
+        receiver.releaseReceived = true;
+        for(WorkRequestProxy proxy : new ArrayList<>(receiver.keptProxies)){
+            proxy.releaseWorkRequest();
+        }
+        receiver.keptProxies.clear();
+        while(deliverEvents(sender, receiver));
+        assertEquals(maxWorkRequests, receiver.receivedMessages.size());
+        assertEquals(maxWorkRequests - 1, receiver.receivedMessages.get(maxWorkRequests - 1));
+        assertEquals(0, sender.flowController.getQueuedSends());
+        assertFalse(receiver.overflowed);
+    }
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test that fewer pre-posted RECVs than Work Requests limit the messages in flight")
+    public void initialCreditsTest(){
+        int prePostedReceives = 3;
+        Peer sender = new Peer(prePostedReceives);
+        Peer receiver = new Peer(prePostedReceives);
+        sender.connect(receiver);
+        receiver.connect(sender);
+        receiver.releaseReceived = false;
+
+        for(int i=0; i < maxWorkRequests; i++){
+            WorkRequestProxy proxy = sender.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+            proxy.getBuffer().putInt(i).flip();
+            proxy.post();
+        }
+        while(deliverEvents(sender, receiver));
+        // only the pre-posted RECVs were promised and the last credit is kept for returning credits
+        assertEquals(prePostedReceives - 1, receiver.receivedMessages.size());
+        assertEquals(maxWorkRequests - prePostedReceives + 1, sender.flowController.getQueuedSends());
+        assertFalse(receiver.overflowed);
+        // releasing the messages returns credits one by one
+        receiver.releaseReceived = true;
+        for(WorkRequestProxy proxy : new ArrayList<>(receiver.keptProxies)){
+            proxy.releaseWorkRequest();
+        }
+        receiver.keptProxies.clear();
+        while(deliverEvents(sender, receiver));
+        assertEquals(maxWorkRequests, receiver.receivedMessages.size());
+        assertEquals(0, sender.flowController.getQueuedSends());
+        assertFalse(receiver.overflowed);
+    }
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test that a batch of SENDs takes its credits at once and is posted with one call")
+    public void batchTest(){
+        Peer sender = new Peer();
+        Peer receiver = new Peer();
+        sender.connect(receiver);
+        receiver.connect(sender);
+        receiver.releaseReceived = false;
+
+        WorkRequestProxy[] proxies = new WorkRequestProxy[maxWorkRequests];
+        assertEquals(maxWorkRequests,
+                sender.provider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, maxWorkRequests));
+        for(int i=0; i < maxWorkRequests; i++){
+            proxies[i].getBuffer().putInt(i).flip();
+        }
+        assertTrue(sender.postNetOperationsToNIC(proxies, maxWorkRequests));
+        // the last credit is kept for returning credits, so the last SEND is queued
+        assertEquals(1, sender.batchExecutions);
+        assertEquals(1, sender.flowController.getQueuedSends());
+        assertEquals(1, sender.flowController.getSendCredits());
+        while(deliverEvents(sender, receiver));
+        assertEquals(maxWorkRequests - 1, receiver.receivedMessages.size());
+        receiver.releaseReceived = true;
+        for(WorkRequestProxy proxy : new ArrayList<>(receiver.keptProxies)){
+            proxy.releaseWorkRequest();
+        }
+        receiver.keptProxies.clear();
+        while(deliverEvents(sender, receiver));
+        assertEquals(maxWorkRequests, receiver.receivedMessages.size());
+        for(int i=0; i < maxWorkRequests; i++){
+            assertEquals(i, receiver.receivedMessages.get(i));
+        }
+        assertFalse(receiver.overflowed);
+    }
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test that a queued SEND that fails to be posted gives its WR id back")
+    public void failedQueuedSendTest(){
+        Peer sender = new Peer();
+        Peer receiver = new Peer();
+        sender.connect(receiver);
+        receiver.connect(sender);
+        receiver.releaseReceived = false;
+
+        for(int i=0; i < maxWorkRequests; i++){
+            WorkRequestProxy proxy = sender.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+            proxy.getBuffer().putInt(i).flip();
+            proxy.post();
+        }
+        while(deliverEvents(sender, receiver));
+        assertEquals(1, sender.flowController.getQueuedSends());
+        // the queued SEND fails when credits arrive
+        sender.failSends = true;
+        receiver.releaseReceived = true;
+        for(WorkRequestProxy proxy : new ArrayList<>(receiver.keptProxies)){
+            proxy.releaseWorkRequest();
+        }
+        receiver.keptProxies.clear();
+        while(deliverEvents(sender, receiver));
+        assertEquals(0, sender.flowController.getQueuedSends());
+        assertEquals(maxWorkRequests - 1, receiver.receivedMessages.size());
+        // no WR id is lost
+        for(int i=0; i < maxWorkRequests; i++){
+            assertNotNull(sender.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        }
+    }
+
+    @Test
+    @Tag("FlowControl")
+    @DisplayName("Test two-way traffic with piggybacked credits")
+    public void twoWayTrafficTest(){
+        Peer first = new Peer();
+        Peer second = new Peer();
+        first.connect(second);
+        second.connect(first);
+
+        int messages = 10 * maxWorkRequests;
+        for(int i=0; i < messages; i++){
+            for(Peer peer : new Peer[]{first, second}){
+                WorkRequestProxy proxy;
+                while((proxy = peer.provider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED)) == null){
+                    assertTrue(deliverEvents(first, second), "No progress possible.");
+                }
+                proxy.getBuffer().putInt(i).flip();
+                proxy.post();
+            }
+        }
+        while(deliverEvents(first, second));
+        assertEquals(messages, first.receivedMessages.size());
+        assertEquals(messages, second.receivedMessages.size());
+        assertFalse(first.overflowed);
+        assertFalse(second.overflowed);
+    }
+
+    /**
+     * Delivers the pending Work Completion Events of both peers.
+     * @return true if there were events to deliver.
+     */
+    private boolean deliverEvents(Peer first, Peer second){
+        boolean delivered = false;
+        while(!first.events.isEmpty() || !second.events.isEmpty()){
+            delivered = true;
+            first.dispatchEvents();
+            second.dispatchEvents();
+        }
+        return delivered;
+    }
+
+    /**
+     * One side of a simulated connection. Posting a SEND copies the data into a posted RECV
+     * buffer of the remote peer and creates the Work Completion Events of both sides.
+     */
+    private static class Peer implements RdmaCommunicator, SVCManager {
+        private final TwoSidedBufferManager bufferManager;
+        private final QueuedProxyProvider provider;
+        private final CreditFlowController flowController;
+        private final ArrayDeque<Integer> postedReceives;
+        private final ArrayDeque<IbvWC> events;
+        private final List<Integer> receivedMessages;
+        private final List<WorkRequestProxy> keptProxies;
+        private Peer remote;
+        private boolean releaseReceived;
+        private boolean failSends;
+        private boolean overflowed;
+        private int batchExecutions;
+
+        Peer(){
+            this(maxWorkRequests);
+        }
+
+        Peer(int prePostedReceives){
+            flowController = (prePostedReceives == maxWorkRequests) ? new CreditFlowController(maxWorkRequests)
+                    : new CreditFlowController(maxWorkRequests, prePostedReceives, 2);
+            bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests,
+                    flowController.getHeaderSize());
+            bufferManager.allocateCommunicationBuffers();
+            provider = new QueuedProxyProvider(maxWorkRequests);
+            provider.setBufferManager(bufferManager);
+            provider.setCommunicator(this);
+            flowController.initialize(this, bufferManager, this);
+            postedReceives = new ArrayDeque<>();
+            events = new ArrayDeque<>();
+            receivedMessages = new ArrayList<>();
+            keptProxies = new ArrayList<>();
+            releaseReceived = true;
+            // RECVs are pre-posted before communications
+            for(int i=0; i < prePostedReceives; i++){
+                postedReceives.add(i);
+            }
+        }
+
+        void connect(Peer remote){
+            this.remote = remote;
+        }
+
+        void dispatchEvents(){
+            IbvWC event;
+            while((event = events.poll()) != null){
+                if(flowController.onWorkCompletion(event)){
+                    continue;
+                }
+                WorkRequestProxy proxy = provider.getWorkRequestProxyForWc(event);
+                if(proxy.getWorkRequestType() == TWO_SIDED_RECV){
+                    receivedMessages.add(proxy.getBuffer().getInt(0));
+                    if(!releaseReceived){
+                        keptProxies.add(proxy);
+                        continue;
+                    }
+                }
+                proxy.releaseWorkRequest();
+            }
+        }
+
+        @Override
+        public boolean postNetOperationToNIC(WorkRequestProxy proxy) {
+            // same as the communicator
+            if(proxy.getWorkRequestType() == TWO_SIDED_SEND_SIGNALED){
+                return flowController.postSend(proxy);
+            }
+            boolean success = executeSVC(proxy);
+            flowController.onReceivesPosted(1);
+            return success;
+        }
+
+        @Override
+        public boolean postNetOperationsToNIC(WorkRequestProxy[] proxies, int count) {
+            // same as the communicator
+            return flowController.postSends(proxies, count);
+        }
+
+        @Override
+        public void initializeSVCs() {}
+
+        @Override
+        public boolean executeSVCs(WorkRequestProxy[] workRequestProxies, int count) {
+            batchExecutions ++;
+            boolean success = true;
+            for(int i=0; i < count; i++){
+                success &= executeSVC(workRequestProxies[i]);
+            }
+            return success;
+        }
+
+        @Override
+        public boolean executeSVC(WorkRequestProxy workRequestProxy) {
+            int id = workRequestProxy.getId();
+            if(workRequestProxy.getWorkRequestType() == TWO_SIDED_RECV){
+                postedReceives.add(id);
+                return true;
+            }
+            if(failSends){
+                return false;
+            }
+            Integer remoteId = remote.postedReceives.poll();
+            if(remoteId == null){
+                // the remote side would reply with Receiver Not Ready
+                remote.overflowed = true;
+                return false;
+            }
+            // copy header and data
+            ByteBuffer data = workRequestProxy.getBuffer();
+            remote.bufferManager.getWorkRequestHeadroom(TWO_SIDED_RECV, remoteId).putInt(0,
+                    bufferManager.getWorkRequestHeadroom(TWO_SIDED_SEND_SIGNALED, id).getInt(0));
+            ByteBuffer remoteData = remote.bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, remoteId);
+            remoteData.clear();
+            remoteData.put(data.duplicate()).flip();
+            // create completion events
+            events.add(createEvent(id, IbvWC.IbvWcOpcode.IBV_WC_SEND));
+            remote.events.add(createEvent(remoteId, IbvWC.IbvWcOpcode.IBV_WC_RECV));
+            return true;
+        }
+
+        private IbvWC createEvent(int workRequestId, IbvWC.IbvWcOpcode opcode){
+            IbvWC event = new IbvWC();
+            event.setWr_id(workRequestId);
+            event.setOpcode(opcode.getOpcode());
+            event.setStatus(0);
+            return event;
+        }
+
+        @Override
+        public WorkRequestProxyProvider getWorkRequestProxyProvider() {
+            return provider;
+        }
+
+        @Override
+        public boolean isShutDown() {
+            return false;
+        }
+    }
+}
@@ -4,17 +4,19 @@ import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 
 import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 @DisplayName("Testing Two-sided Communication Buffer Management")
 public class BufferManagerTest {
@@ -73,4 +75,26 @@ public class BufferManagerTest {
         }
     }
 
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Testing that atomic buffers are 8-byte aligned and registered.")
+    public void alignedAtomicBuffersTest(){
+        OneSidedBufferManager bufferManager = new OneSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        ByteBuffer registeredBuffer = bufferManager.getBufferToRegister();
+        long registeredStart = ((sun.nio.ch.DirectBuffer) registeredBuffer).address();
+        long registeredEnd = registeredStart + registeredBuffer.capacity();
+        for(int wrId=0; wrId < maxWorkRequests; wrId++){
+            ByteBuffer atomicBuffer = bufferManager.getWorkRequestBuffer(ONE_SIDED_ATOMIC_FETCH_AND_ADD, wrId);
+            long address = bufferManager.getWorkRequestBufferAddress(ONE_SIDED_ATOMIC_CMP_AND_SWP, wrId);
+            assertEquals(OneSidedBufferManager.ATOMIC_BUFFER_SIZE, atomicBuffer.capacity());
+            assertEquals(ByteOrder.nativeOrder(), atomicBuffer.order());
+            assertEquals(((sun.nio.ch.DirectBuffer) atomicBuffer).address(), address);
+            assertEquals(0, address % OneSidedBufferManager.ATOMIC_BUFFER_SIZE);
+            // must not overlap with the data buffers
+            assertTrue(address >= bufferManager.getWorkRequestBufferAddress(ONE_SIDED_WRITE_SIGNALED,
+                    maxWorkRequests - 1) + maxBufferSize);
+            assertTrue(address + OneSidedBufferManager.ATOMIC_BUFFER_SIZE <= registeredEnd);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for CompositeBufferManager")
+public class CompositeBufferManagerTest {
+
+    private static final int twoSidedBufferSize = 8;
+    private static final int oneSidedBufferSize = 32;
+    private static final int twoSidedWorkRequests = 4;
+    private static final int writeWorkRequests = 3;
+    private static final int readWorkRequests = 2;
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that each operation type has its own WR ids and buffers in one registered buffer")
+    public void operationRangesTest(){
+        TwoSidedBufferManager twoSidedManager = new TwoSidedBufferManager(twoSidedBufferSize,
+                twoSidedWorkRequests, 4);
+        OneSidedBufferManager writeManager = new OneSidedBufferManager(oneSidedBufferSize, writeWorkRequests);
+        OneSidedBufferManager readManager = new OneSidedBufferManager(oneSidedBufferSize, readWorkRequests);
+        CompositeBufferManager bufferManager = new CompositeBufferManager()
+                .addBufferManager(twoSidedManager, 0, TWO_SIDED_SEND_SIGNALED, TWO_SIDED_RECV)
+                .addBufferManager(writeManager, twoSidedWorkRequests, ONE_SIDED_WRITE_SIGNALED)
+                .addBufferManager(readManager, twoSidedWorkRequests + writeWorkRequests, ONE_SIDED_READ_SIGNALED);
+        assertThrows(IllegalArgumentException.class, () -> bufferManager.addBufferManager(
+                new OneSidedBufferManager(oneSidedBufferSize, 1), 0, ONE_SIDED_READ_SIGNALED));
+        bufferManager.allocateCommunicationBuffers();
+
+        ByteBuffer registeredBuffer = bufferManager.getBufferToRegister();
+        long registeredStart = ((sun.nio.ch.DirectBuffer) registeredBuffer).address();
+        long registeredEnd = registeredStart + registeredBuffer.capacity();
+        assertEquals(twoSidedManager.getRequiredMemory() + writeManager.getRequiredMemory()
+                + readManager.getRequiredMemory(), registeredBuffer.capacity());
+        // the WR ids of each range are translated to the ids of the range's manager
+        for(int i=0; i < twoSidedWorkRequests; i++){
+            assertSame(twoSidedManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, i),
+                    bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, i));
+            assertSame(twoSidedManager.getWorkRequestBuffer(TWO_SIDED_RECV, i),
+                    bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, i));
+            assertNotNull(bufferManager.getWorkRequestHeadroom(TWO_SIDED_SEND_SIGNALED, i));
+        }
+        for(int i=0; i < writeWorkRequests; i++){
+            int workRequestId = twoSidedWorkRequests + i;
+            assertEquals(writeManager.getWorkRequestBufferAddress(ONE_SIDED_WRITE_SIGNALED, i),
+                    bufferManager.getWorkRequestBufferAddress(ONE_SIDED_WRITE_SIGNALED, workRequestId));
+            assertEquals(oneSidedBufferSize,
+                    bufferManager.getWorkRequestBuffer(ONE_SIDED_WRITE_SIGNALED, workRequestId).capacity());
+        }
+        // all buffers are in the registered buffer and READs don't share the WRITE buffers
+        long readAddress = bufferManager.getWorkRequestBufferAddress(ONE_SIDED_READ_SIGNALED,
+                twoSidedWorkRequests + writeWorkRequests);
+        assertTrue(readAddress >= writeManager.getWorkRequestBufferAddress(ONE_SIDED_WRITE_SIGNALED,
+                writeWorkRequests - 1) + oneSidedBufferSize);
+        assertTrue(bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, 0) >= registeredStart);
+        assertTrue(readAddress + (long) readWorkRequests * oneSidedBufferSize <= registeredEnd);
+        // WR ids of other ranges and types without managers have no buffers
+        assertNull(bufferManager.getWorkRequestBuffer(ONE_SIDED_WRITE_SIGNALED, 0));
+        assertNull(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, twoSidedWorkRequests));
+        assertNull(bufferManager.getWorkRequestBuffer(ONE_SIDED_ATOMIC_FETCH_AND_ADD, 0));
+        assertEquals(-1, bufferManager.getWorkRequestBufferAddress(ONE_SIDED_READ_SIGNALED, 0));
+        assertEquals(4, bufferManager.getHeadroom());
+    }
+}
@@ -0,0 +1,43 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for MappedMemoryAllocator")
+public class MappedMemoryAllocatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that mapped memory is aligned, backs the buffers of a communicator and leaves no files")
+    public void mappedMemoryTest() throws IOException {
+        MappedMemoryAllocator allocator = new MappedMemoryAllocator(directory);
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(30, 4);
+        ByteBuffer memory = allocator.allocate(bufferManager.getRequiredMemory(), 64);
+        assertEquals(bufferManager.getRequiredMemory(), memory.capacity());
+        assertEquals(0, ((sun.nio.ch.DirectBuffer) memory).address() % MappedMemoryAllocator.HUGEPAGE_SIZE);
+        bufferManager.allocateCommunicationBuffers(memory);
+        assertEquals(((sun.nio.ch.DirectBuffer) memory).address(),
+                bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, 0));
+        // the file is deleted, but the mapping stays usable
+        assertFalse(Files.list(directory).findAny().isPresent());
+        memory.putLong(0, 42L);
+        assertEquals(42L, memory.getLong(0));
+        // arenas can be backed by mapped memory too
+        RegisteredMemoryArena arena = new RegisteredMemoryArena(4096, 4096, allocator);
+        ByteBuffer range = arena.reserve(new Object(), 100);
+        assertEquals(0, ((sun.nio.ch.DirectBuffer) range).address() % MappedMemoryAllocator.HUGEPAGE_SIZE);
+    }
+}
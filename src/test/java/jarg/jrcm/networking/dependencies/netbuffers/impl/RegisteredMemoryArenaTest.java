@@ -0,0 +1,53 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for RegisteredMemoryArena")
+public class RegisteredMemoryArenaTest {
+
+    private static final int capacity = 1024;
+    private static final int maxCommunicatorMemory = 512;
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that communicators share the arena up to its cap and get their memory back on release")
+    public void admissionControlTest(){
+        RegisteredMemoryArena arena = new RegisteredMemoryArena(capacity, maxCommunicatorMemory);
+        Object communicator1 = new Object();
+        Object communicator2 = new Object();
+        Object communicator3 = new Object();
+        // the buffers of a communicator are views of the arena
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(30, 4);
+        ByteBuffer memory = arena.reserve(communicator1, bufferManager.getRequiredMemory());
+        bufferManager.allocateCommunicationBuffers(memory);
+        assertEquals(((sun.nio.ch.DirectBuffer) memory).address(),
+                bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, 0));
+        assertEquals(0, ((sun.nio.ch.DirectBuffer) memory).address() % RegisteredMemoryArena.ALIGNMENT);
+        // usage is accounted per communicator, with ranges rounded up to the alignment
+        assertEquals(256, arena.getMemoryUsage(communicator1));
+        assertNotNull(arena.reserve(communicator2, 500));
+        assertEquals(512, arena.getMemoryUsage(communicator2));
+        // a communicator cannot exceed its limit
+        assertNull(arena.reserve(communicator2, 1));
+        // nor the arena its capacity
+        assertNull(arena.reserve(communicator3, 300));
+        assertNotNull(arena.reserve(communicator3, 256));
+        assertEquals(0, arena.getAvailableMemory());
+        assertEquals(2, arena.getRejectedReservations());
+        assertEquals(3, arena.getOwners());
+        // released ranges are merged, so a larger communicator can be admitted
+        assertEquals(256, arena.release(communicator1));
+        assertEquals(512, arena.release(communicator2));
+        assertEquals(0, arena.getMemoryUsage(communicator2));
+        assertEquals(768, arena.getLargestFreeRange());
+        assertNotNull(arena.reserve(communicator1, 512));
+        assertEquals(capacity - 256 - 512, arena.getAvailableMemory());
+    }
+}
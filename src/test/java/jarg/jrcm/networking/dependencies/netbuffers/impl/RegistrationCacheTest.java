@@ -0,0 +1,120 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache.Registration;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for RegistrationCache")
+public class RegistrationCacheTest {
+
+    private static final int bufferSize = 1000;
+    private static final long pinnedMemoryBudget = 3 * bufferSize;
+
+    /**
+     * Creates memory regions without a NIC and keeps track of the deregistered ones.
+     */
+    private static class TestRegistrar implements RegistrationCache.MemoryRegistrar {
+        private final List<IbvMr> deregistered = new ArrayList<>();
+        private int registrations;
+
+        @Override
+        public IbvMr register(ByteBuffer buffer) {
+            try {
+                Field unsafeField = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                IbvMr memoryRegion = (IbvMr) ((sun.misc.Unsafe) unsafeField.get(null)).allocateInstance(IbvMr.class);
+                memoryRegion.setAddr(((sun.nio.ch.DirectBuffer) buffer).address());
+                memoryRegion.setLength(buffer.capacity());
+                memoryRegion.setLkey(++ registrations);
+                return memoryRegion;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void deregister(IbvMr memoryRegion) {
+            deregistered.add(memoryRegion);
+        }
+    }
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that registrations are reused, evicted in LRU order and never evicted while in use")
+    public void registrationCacheTest(){
+        TestRegistrar registrar = new TestRegistrar();
+        RegistrationCache cache = new RegistrationCache(registrar, pinnedMemoryBudget);
+        ByteBuffer bufferA = ByteBuffer.allocateDirect(bufferSize);
+        ByteBuffer bufferB = ByteBuffer.allocateDirect(bufferSize);
+        ByteBuffer bufferC = ByteBuffer.allocateDirect(bufferSize);
+        // any range of a registered buffer uses its registration
+        Registration registrationA = cache.acquire(bufferA);
+        bufferA.position(100).limit(500);
+        assertSame(registrationA, cache.acquire(bufferA.slice()));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        // a proxy holds a reference until its segments are cleared
+        WorkRequestProxy proxy = new WorkRequestProxy();
+        proxy.addSegment(bufferA, registrationA);
+        assertEquals(registrationA.getAddress() + 100, proxy.getSegmentAddress(0));
+        assertEquals(registrationA.getLocalKey(), proxy.getSegmentKey(0));
+        registrationA.release();
+        registrationA.release();
+        assertEquals(1, registrationA.getReferences());
+        proxy.clearSegments();
+        assertEquals(0, registrationA.getReferences());
+        // idle registrations are evicted in least recently used order
+        cache.acquire(bufferB).release();
+        Registration registrationC = cache.acquire(bufferC);
+        Registration registrationD = cache.acquire(ByteBuffer.allocateDirect(bufferSize));
+        assertEquals(1, registrar.deregistered.size());
+        assertSame(registrationA.getMemoryRegion(), registrar.deregistered.get(0));
+        assertEquals(pinnedMemoryBudget, cache.getPinnedMemory());
+        // buffers over the budget are rejected
+        assertNull(cache.acquire(ByteBuffer.allocateDirect((int) pinnedMemoryBudget + 1)));
+        // registrations in use are not evicted
+        Registration registrationE = cache.acquire(ByteBuffer.allocateDirect(bufferSize));
+        assertNotNull(registrationE);
+        assertNull(cache.acquire(ByteBuffer.allocateDirect(bufferSize)));
+        assertEquals(2, cache.getRejectedRegistrations());
+        assertEquals(2, cache.getEvictions());
+        registrationC.release();
+        assertNotNull(cache.acquire(ByteBuffer.allocateDirect(bufferSize)));
+        assertSame(registrationC.getMemoryRegion(), registrar.deregistered.get(2));
+        assertEquals(1, registrationD.getReferences());
+        assertEquals(3, cache.getCachedRegistrations());
+    }
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that heap buffers are rejected and that registered memory is kept from the garbage collector")
+    public void registrationOwnershipTest(){
+        TestRegistrar registrar = new TestRegistrar();
+        RegistrationCache cache = new RegistrationCache(registrar, pinnedMemoryBudget);
+        assertNull(cache.acquire(ByteBuffer.allocate(bufferSize)));
+        assertEquals(1, cache.getRejectedRegistrations());
+        assertEquals(0, registrar.registrations);
+        // a slice is registered, but the registration references the buffer that owns the memory
+        ByteBuffer owner = ByteBuffer.allocateDirect(bufferSize);
+        WeakReference<ByteBuffer> ownerReference = new WeakReference<>(owner);
+        owner.position(100);
+        Registration registration = cache.acquire(owner.slice());
+        assertNotNull(registration);
+        owner = null;
+        System.gc();
+        assertNotNull(ownerReference.get());
+        registration.release();
+        assertEquals(1, cache.getCachedRegistrations());
+    }
+}
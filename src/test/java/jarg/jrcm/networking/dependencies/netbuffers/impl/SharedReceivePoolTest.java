@@ -0,0 +1,60 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for SharedReceivePool")
+public class SharedReceivePoolTest {
+
+    private static final int maxBufferSize = 16;
+    private static final int maxWorkRequests = 4;
+    private static final int slots = 6;
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that communicators share the receive buffers of the pool")
+    public void sharedSlotsTest(){
+        SharedReceivePool pool = new SharedReceivePool(slots, maxBufferSize, 4);
+        SharedReceiveBufferManager first = new SharedReceiveBufferManager(maxBufferSize, maxWorkRequests, pool);
+        SharedReceiveBufferManager second = new SharedReceiveBufferManager(maxBufferSize, maxWorkRequests, pool);
+        first.allocateCommunicationBuffers();
+        second.allocateCommunicationBuffers();
+        // only send buffers are allocated per communicator
+        assertEquals((4 + maxBufferSize) * maxWorkRequests, first.getBufferToRegister().capacity());
+        assertNotNull(first.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, 0));
+        // unbound RECVs have no buffer
+        assertNull(first.getWorkRequestBuffer(TWO_SIDED_RECV, 0));
+        assertEquals(-1, first.getWorkRequestBufferAddress(TWO_SIDED_RECV, 0));
+
+        for(int i=0; i < maxWorkRequests; i++){
+            assertTrue(first.bindReceiveSlot(i) >= 0);
+        }
+        assertTrue(second.bindReceiveSlot(0) >= 0);
+        assertTrue(second.bindReceiveSlot(1) >= 0);
+        assertEquals(-1, second.bindReceiveSlot(2));
+        assertEquals(0, pool.getAvailableSlots());
+        // bound RECVs use the pool's memory, headroom included
+        int slot = first.getReceiveSlot(1);
+        assertEquals(pool.getAddress(slot), first.getWorkRequestBufferAddress(TWO_SIDED_RECV, 1));
+        assertSame(pool.getBuffer(slot), first.getWorkRequestBuffer(TWO_SIDED_RECV, 1));
+        assertEquals(4, first.getWorkRequestHeadroom(TWO_SIDED_RECV, 1).capacity());
+
+        // a waiting communicator gets the next returned slot
+        AtomicInteger boundSlot = new AtomicInteger(-1);
+        pool.waitForSlot(() -> boundSlot.set(second.bindReceiveSlot(2)));
+        assertEquals(-1, boundSlot.get());
+        first.unbindReceiveSlot(1);
+        assertEquals(slot, boundSlot.get());
+        assertEquals(0, pool.getAvailableSlots());
+        // closing a communicator returns all its slots
+        first.unbindReceiveSlots();
+        assertEquals(maxWorkRequests - 1, pool.getAvailableSlots());
+    }
+}
@@ -0,0 +1,66 @@
+package jarg.jrcm.networking.dependencies.netbuffers.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for SizeClassedBufferManager")
+public class SizeClassedBufferManagerTest {
+
+    private static final int[] classBufferSizes = {256, 4096, 65536};
+    private static final int[] classWorkRequests = {8, 4, 2};
+    private static final int receiveBufferSize = 512;
+    private static final int headroom = 4;
+
+    @Test
+    @Tag("MemoryAllocations")
+    @DisplayName("Test that every size class has its own WR ids and slab in one registered buffer")
+    public void sizeClassSlabsTest(){
+        assertThrows(IllegalArgumentException.class, () -> new SizeClassedBufferManager(
+                new int[]{4096, 256}, new int[]{1, 1}, receiveBufferSize));
+        SizeClassedBufferManager bufferManager = new SizeClassedBufferManager(classBufferSizes,
+                classWorkRequests, receiveBufferSize, headroom);
+        bufferManager.allocateCommunicationBuffers();
+        int maxWorkRequests = 14;
+        assertEquals(maxWorkRequests, bufferManager.getMaxWorkRequests());
+        // much less memory than giving every WR id a buffer of the largest class
+        int requiredMemory = (256 + headroom) * 8 + (4096 + headroom) * 4 + (65536 + headroom) * 2
+                + (receiveBufferSize + headroom) * maxWorkRequests;
+        ByteBuffer registeredBuffer = bufferManager.getBufferToRegister();
+        assertEquals(requiredMemory, registeredBuffer.capacity());
+        long registeredStart = ((sun.nio.ch.DirectBuffer) registeredBuffer).address();
+        // the smallest class that fits
+        assertEquals(0, bufferManager.getSizeClass(1));
+        assertEquals(0, bufferManager.getSizeClass(256));
+        assertEquals(1, bufferManager.getSizeClass(257));
+        assertEquals(2, bufferManager.getSizeClass(65536));
+        assertEquals(-1, bufferManager.getSizeClass(65537));
+        // the slabs follow each other and every buffer is preceded by its headroom
+        long expectedAddress = registeredStart;
+        for(int i=0; i < maxWorkRequests; i++){
+            int sizeClass = bufferManager.getSizeClassOf(i);
+            assertTrue(i >= bufferManager.getClassFirstWorkRequestId(sizeClass));
+            ByteBuffer buffer = bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, i);
+            assertEquals(classBufferSizes[sizeClass], buffer.capacity());
+            assertSame(buffer, bufferManager.getWorkRequestBuffer(ONE_SIDED_WRITE_SIGNALED, i));
+            assertEquals(expectedAddress, bufferManager.getWorkRequestBufferAddress(ONE_SIDED_READ_SIGNALED, i));
+            assertEquals(headroom, bufferManager.getWorkRequestHeadroom(TWO_SIDED_SEND_SIGNALED, i).capacity());
+            expectedAddress += headroom + buffer.capacity();
+        }
+        // RECV buffers have one size and come after the slabs
+        for(int i=0; i < maxWorkRequests; i++){
+            assertEquals(receiveBufferSize, bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, i).capacity());
+            assertEquals(expectedAddress, bufferManager.getWorkRequestBufferAddress(TWO_SIDED_RECV, i));
+            expectedAddress += headroom + receiveBufferSize;
+        }
+        assertEquals(registeredStart + requiredMemory, expectedAddress);
+        assertNull(bufferManager.getWorkRequestBuffer(ONE_SIDED_ATOMIC_FETCH_AND_ADD, 0));
+        assertNull(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, maxWorkRequests));
+        assertEquals(65536, bufferManager.getMaxBufferSize());
+    }
+}
@@ -0,0 +1,97 @@
+package jarg.jrcm.networking.dependencies.netrequests;
+
+import com.ibm.disni.verbs.IbvWC;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.impl.QueuedProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_UNSIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for the default methods of WorkRequestProxyProvider")
+public class WorkRequestProxyProviderTest {
+
+    private static final int maxBufferSize = 8;
+    private static final int maxWorkRequests = 2;
+
+    /**
+     * Implements only the abstract methods, so that the default ones are tested.
+     */
+    private static class MinimalProxyProvider implements WorkRequestProxyProvider {
+        private final QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+
+        @Override
+        public NetworkBufferManager getBufferManager() {
+            return proxyProvider.getBufferManager();
+        }
+
+        @Override
+        public void setBufferManager(NetworkBufferManager bufferManager) {
+            proxyProvider.setBufferManager(bufferManager);
+        }
+
+        @Override
+        public RdmaCommunicator getCommunicator() {
+            return proxyProvider.getCommunicator();
+        }
+
+        @Override
+        public void setCommunicator(RdmaCommunicator communicator) {
+            proxyProvider.setCommunicator(communicator);
+        }
+
+        @Override
+        public WorkRequestProxy getPostSendRequestBlocking(WorkRequestType requestType) {
+            return proxyProvider.getPostSendRequestBlocking(requestType);
+        }
+
+        @Override
+        public WorkRequestProxy getPostSendRequestNow(WorkRequestType requestType) {
+            return proxyProvider.getPostSendRequestNow(requestType);
+        }
+
+        @Override
+        public void releaseWorkRequest(WorkRequestProxy workRequestProxy) {
+            proxyProvider.releaseWorkRequest(workRequestProxy);
+        }
+
+        @Override
+        public WorkRequestProxy getWorkRequestProxyForWc(IbvWC workCompletionEvent) {
+            return proxyProvider.getWorkRequestProxyForWc(workCompletionEvent);
+        }
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    @DisplayName("Test that the default asynchronous requests and reclaims work with the abstract methods only")
+    public void defaultMethodsTest() throws Exception {
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        MinimalProxyProvider proxyProvider = new MinimalProxyProvider();
+        proxyProvider.setBufferManager(bufferManager);
+        // an available WR id completes the future immediately
+        CompletableFuture<WorkRequestProxy> request = proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_UNSIGNALED);
+        assertTrue(request.isDone());
+        int[] workRequestIds = new int[]{request.get().getId(),
+                proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED).getId()};
+        // otherwise the future is completed when a WR id is reclaimed
+        request = proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_UNSIGNALED);
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+        proxyProvider.reclaimWorkRequests(workRequestIds, 2);
+        WorkRequestProxy proxy = request.get();
+        assertNotNull(proxy);
+        assertNotNull(proxy.getBuffer());
+        assertNotNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+    }
+}
@@ -0,0 +1,204 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.ElasticBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RegistrationCache;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for ElasticProxyProvider")
+public class ElasticProxyProviderTest {
+
+    private static final int maxBufferSize = 16;
+    private static final int maxWorkRequests = 5;
+    private static final int initialWorkRequests = 2;
+    private static final int chunkWorkRequests = 2;
+
+    /**
+     * Creates memory regions without a NIC and keeps track of the deregistered ones.
+     */
+    private static class TestRegistrar implements RegistrationCache.MemoryRegistrar {
+        private final List<IbvMr> deregistered = new ArrayList<>();
+        private int registrations;
+        private volatile boolean failRegistrations;
+
+        @Override
+        public IbvMr register(ByteBuffer buffer) throws IOException {
+            if(failRegistrations){
+                throw new IOException("Registration failed.");
+            }
+            try {
+                Field unsafeField = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                IbvMr memoryRegion = (IbvMr) ((sun.misc.Unsafe) unsafeField.get(null)).allocateInstance(IbvMr.class);
+                memoryRegion.setAddr(((sun.nio.ch.DirectBuffer) buffer).address());
+                memoryRegion.setLength(buffer.capacity());
+                memoryRegion.setLkey(++ registrations);
+                return memoryRegion;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void deregister(IbvMr memoryRegion) {
+            deregistered.add(memoryRegion);
+        }
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that the pool grows by chunks after waits and gives the last chunk back when idle")
+    public void elasticProxyProviderTest(){
+        ElasticBufferManager bufferManager = new ElasticBufferManager(maxBufferSize, maxWorkRequests,
+                initialWorkRequests, chunkWorkRequests, 0);
+        bufferManager.allocateCommunicationBuffers();
+        long initialMemory = bufferManager.getAllocatedMemory();
+        assertEquals(2, bufferManager.getChunkCount());
+        TestRegistrar registrar = new TestRegistrar();
+        ElasticProxyProvider proxyProvider = new ElasticProxyProvider(maxWorkRequests)
+                .setGrowThreshold(2)
+                .setIdleNanos(Long.MAX_VALUE)
+                .setMemoryRegistrar(registrar)
+                .setGrowExecutor(Runnable::run);
+        proxyProvider.setBufferManager(bufferManager);
+        // the initial WR ids are in the registered memory
+        List<WorkRequestProxy> proxies = new ArrayList<>();
+        for(int i=0; i < initialWorkRequests; i++){
+            WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+            assertEquals(i, proxy.getId());
+            assertEquals(-1, bufferManager.getWorkRequestLocalKey(TWO_SIDED_SEND_SIGNALED, i));
+            proxies.add(proxy);
+        }
+        assertNull(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, initialWorkRequests));
+        // the pool grows on the second wait
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        WorkRequestProxy grownProxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertEquals(initialWorkRequests, grownProxy.getId());
+        assertEquals(maxBufferSize, grownProxy.getBuffer().capacity());
+        assertEquals(1, bufferManager.getWorkRequestLocalKey(TWO_SIDED_SEND_SIGNALED, grownProxy.getId()));
+        assertEquals(-1, bufferManager.getWorkRequestLocalKey(TWO_SIDED_RECV, grownProxy.getId()));
+        proxies.add(grownProxy);
+        proxies.add(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertEquals(1, proxyProvider.getGrows());
+        assertEquals(4, proxyProvider.getActiveWorkRequests());
+        // the last chunk has a single WR id and the pool doesn't grow past the maximum
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        proxies.add(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertEquals(maxWorkRequests, proxyProvider.getActiveWorkRequests());
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertEquals(2, proxyProvider.getGrows());
+        assertEquals(initialMemory + (long) maxBufferSize * (maxWorkRequests - initialWorkRequests),
+                bufferManager.getAllocatedMemory());
+        // chunks with WR ids in use, or without an idle period, are kept
+        proxyProvider.setIdleNanos(0);
+        assertFalse(proxyProvider.shrinkIfIdle());
+        proxyProvider.releaseWorkRequest(proxies.remove(4));
+        proxyProvider.releaseWorkRequest(proxies.remove(3));
+        proxyProvider.releaseWorkRequest(proxies.remove(2));
+        // the lowest free WR id is provided first, so releasing shrinks the pool
+        assertEquals(2, proxyProvider.getShrinks());
+        assertEquals(2, registrar.deregistered.size());
+        assertEquals(initialWorkRequests, proxyProvider.getActiveWorkRequests());
+        assertEquals(initialMemory, bufferManager.getAllocatedMemory());
+        assertNull(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, initialWorkRequests));
+        // the pool can grow again
+        proxyProvider.setIdleNanos(Long.MAX_VALUE);
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        WorkRequestProxy regrownProxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertEquals(initialWorkRequests, regrownProxy.getId());
+        assertEquals(3, bufferManager.getWorkRequestLocalKey(TWO_SIDED_SEND_SIGNALED, regrownProxy.getId()));
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    @DisplayName("Test that non-blocking requests grow the pool in the background and failed grows aren't retried")
+    public void backgroundGrowthTest() throws Exception {
+        ElasticBufferManager bufferManager = new ElasticBufferManager(maxBufferSize, maxWorkRequests,
+                initialWorkRequests, chunkWorkRequests, 0);
+        bufferManager.allocateCommunicationBuffers();
+        TestRegistrar registrar = new TestRegistrar();
+        registrar.failRegistrations = true;
+        ElasticProxyProvider proxyProvider = new ElasticProxyProvider(maxWorkRequests)
+                .setGrowThreshold(1)
+                .setIdleNanos(Long.MAX_VALUE)
+                .setMemoryRegistrar(registrar);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy[] proxies = new WorkRequestProxy[maxWorkRequests];
+        assertEquals(initialWorkRequests,
+                proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, maxWorkRequests));
+        // a blocked thread that fails to grow the pool waits for a released WR id
+        CompletableFuture<WorkRequestProxy> blockedRequest = CompletableFuture.supplyAsync(
+                () -> proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED));
+        while(proxyProvider.getFailedGrows() == 0){
+            Thread.sleep(1);
+        }
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertFalse(blockedRequest.isDone());
+        assertEquals(1, proxyProvider.getFailedGrows());
+        proxyProvider.releaseWorkRequest(proxies[1]);
+        assertEquals(1, blockedRequest.get().getId());
+        // after a release, a non-blocking request grows the pool without waiting for the registration
+        registrar.failRegistrations = false;
+        CompletableFuture<WorkRequestProxy> asyncRequest =
+                proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED);
+        assertEquals(initialWorkRequests, asyncRequest.get().getId());
+        assertEquals(1, proxyProvider.getGrows());
+        assertEquals(1, bufferManager.getWorkRequestLocalKey(TWO_SIDED_SEND_SIGNALED, initialWorkRequests));
+        assertEquals(initialWorkRequests + 1,
+                proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED).getId());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that releasing WR ids shrinks the pool on the grow executor, not in the releasing thread")
+    public void backgroundShrinkTest(){
+        ElasticBufferManager bufferManager = new ElasticBufferManager(maxBufferSize, maxWorkRequests,
+                initialWorkRequests, chunkWorkRequests, 0);
+        bufferManager.allocateCommunicationBuffers();
+        TestRegistrar registrar = new TestRegistrar();
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        ElasticProxyProvider proxyProvider = new ElasticProxyProvider(maxWorkRequests)
+                .setGrowThreshold(1)
+                .setIdleNanos(Long.MAX_VALUE)
+                .setMemoryRegistrar(registrar)
+                .setGrowExecutor(tasks::add);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy[] proxies = new WorkRequestProxy[maxWorkRequests];
+        assertEquals(initialWorkRequests,
+                proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, maxWorkRequests));
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        proxies[initialWorkRequests] = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertEquals(1, proxyProvider.getActiveChunks());
+        // the releases only schedule the shrinking once
+        proxyProvider.setIdleNanos(0);
+        proxyProvider.releaseWorkRequests(proxies, initialWorkRequests + 1);
+        assertEquals(0, proxyProvider.getShrinks());
+        assertTrue(registrar.deregistered.isEmpty());
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(1, proxyProvider.getShrinks());
+        assertEquals(1, registrar.deregistered.size());
+        assertEquals(0, proxyProvider.getActiveChunks());
+        assertTrue(tasks.isEmpty());
+    }
+}
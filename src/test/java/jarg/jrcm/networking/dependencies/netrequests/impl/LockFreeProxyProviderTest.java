@@ -0,0 +1,303 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.OneSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for LockFreeProxyProvider")
+public class LockFreeProxyProviderTest {
+
+    private static final int maxBufferSize = 5;
+    private static final int maxWorkRequests = 3;
+    private static final int contentionThreads = 16;
+    private static final int contentionIterations = 20000;
+
+    private static Stream<Arguments> requestTypeGenerator(){
+        return Stream.of(
+                Arguments.of(TWO_SIDED_SEND_SIGNALED),
+                Arguments.of(ONE_SIDED_WRITE_SIGNALED),
+                Arguments.of(ONE_SIDED_READ_SIGNALED)
+        );
+    }
+
+    private static Stream<Arguments> providerGenerator(){
+        IntFunction<WorkRequestProxyProvider> lockFree = LockFreeProxyProvider::new;
+        IntFunction<WorkRequestProxyProvider> striped = StripedProxyProvider::new;
+        IntFunction<WorkRequestProxyProvider> queued = QueuedProxyProvider::new;
+        IntFunction<WorkRequestProxyProvider> priority = PriorityProxyProvider::new;
+        return Stream.of(
+                Arguments.of("LockFreeProxyProvider", lockFree),
+                Arguments.of("StripedProxyProvider", striped),
+                Arguments.of("QueuedProxyProvider", queued),
+                Arguments.of("PriorityProxyProvider", priority)
+        );
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test the lock-free ring of WR ids")
+    public void ringBufferTest(){
+        IntMpmcRingBuffer ring = new IntMpmcRingBuffer(maxWorkRequests);
+        assertTrue(ring.isEmpty());
+        assertEquals(-1, ring.poll());
+        for(int i=0; i < 4; i++){
+            assertTrue(ring.offer(i));
+        }
+        // the ring size is rounded up to the next power of 2
+        assertFalse(ring.offer(4));
+        assertEquals(0, ring.poll());
+        assertEquals(1, ring.poll());
+        assertTrue(ring.offer(5));
+        int[] drained = new int[4];
+        assertEquals(3, ring.drain(drained, 1, 3));
+        assertArrayEquals(new int[]{0, 2, 3, 5}, drained);
+        assertTrue(ring.isEmpty());
+    }
+
+    @ParameterizedTest
+    @Tag("ProxyProvision")
+    @DisplayName("Test getting Work Request proxies with null parameters")
+    @MethodSource("requestTypeGenerator")
+    public void nullParametersTest(WorkRequestType requestType){
+        LockFreeProxyProvider emptyProvider = new LockFreeProxyProvider(0);
+        assertNull(emptyProvider.getPostSendRequestBlocking(requestType));
+        assertNull(emptyProvider.getPostSendRequestNow(requestType));
+        assertDoesNotThrow(()->{emptyProvider.releaseWorkRequest(new WorkRequestProxy(0, null,
+                null, null, null));});
+
+        LockFreeProxyProvider proxyProvider = new LockFreeProxyProvider(maxWorkRequests);
+        // test with null buffer manager
+        assertNull(proxyProvider.getPostSendRequestBlocking(requestType));
+        assertNull(proxyProvider.getPostSendRequestNow(requestType));
+        // test with null request type and RECV request type
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        assertNull(proxyProvider.getPostSendRequestBlocking(null));
+        assertNull(proxyProvider.getPostSendRequestNow(null));
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_RECV));
+    }
+
+    @ParameterizedTest
+    @Timeout(value = 2, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test getting Work Request proxies in FIFO order")
+    @MethodSource("requestTypeGenerator")
+    public void getPostSendRequestTest(WorkRequestType requestType){
+        LockFreeProxyProvider proxyProvider = new LockFreeProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(new OneSidedBufferManager(maxBufferSize, maxWorkRequests));
+        WorkRequestProxy proxy = null;
+        for(int wrId=0; wrId < maxWorkRequests; wrId++){
+            proxy = (wrId % 2 == 0) ? proxyProvider.getPostSendRequestNow(requestType) :
+                    proxyProvider.getPostSendRequestBlocking(requestType);
+            assertNotNull(proxy);
+            assertEquals(wrId, proxy.getId());
+            assertEquals(requestType, proxy.getWorkRequestType());
+            assertEquals(PostedRequestType.SEND, proxy.getPostType());
+        }
+        assertNull(proxyProvider.getPostSendRequestNow(requestType));
+        proxyProvider.releaseWorkRequest(proxy);
+        proxy = proxyProvider.getPostSendRequestBlocking(requestType);
+        assertEquals(maxWorkRequests - 1, proxy.getId());
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test that a parked thread is woken up when a WR id is released")
+    public void blockingWakeUpTest() throws InterruptedException {
+        LockFreeProxyProvider proxyProvider = new LockFreeProxyProvider(1, 0, 0);
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, 1));
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertNotNull(proxy);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED);
+            acquired.countDown();
+        });
+        waiter.start();
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+        proxyProvider.releaseWorkRequest(proxy);
+        assertTrue(acquired.await(2, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test that no WR id is given to two threads at the same time under contention")
+    @MethodSource("providerGenerator")
+    public void contentionTest(String name, IntFunction<WorkRequestProxyProvider> providerFactory)
+            throws InterruptedException {
+        WorkRequestProxyProvider proxyProvider = providerFactory.apply(maxWorkRequests);
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        AtomicIntegerArray idsInUse = new AtomicIntegerArray(maxWorkRequests);
+        AtomicInteger errors = new AtomicInteger(0);
+        runContended(proxyProvider, contentionThreads, contentionIterations, () -> errors.incrementAndGet(),
+                idsInUse);
+        assertEquals(0, errors.get());
+        // all ids must have been returned, blocking calls also reclaim ids cached by finished threads
+        for(int i=0; i < maxWorkRequests; i++){
+            assertNotNull(proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED));
+        }
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test that asynchronous requests are served in FIFO order by released WR ids")
+    @MethodSource("providerGenerator")
+    public void asyncRequestTest(String name, IntFunction<WorkRequestProxyProvider> providerFactory)
+            throws Exception {
+        WorkRequestProxyProvider proxyProvider = providerFactory.apply(maxWorkRequests);
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        assertNull(proxyProvider.getPostSendRequestAsync(TWO_SIDED_RECV).get());
+        List<WorkRequestProxy> proxies = new ArrayList<>(maxWorkRequests);
+        for(int i=0; i < maxWorkRequests; i++){
+            CompletableFuture<WorkRequestProxy> future = proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED);
+            assertTrue(future.isDone());
+            proxies.add(future.get());
+        }
+        CompletableFuture<WorkRequestProxy> first = proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED);
+        CompletableFuture<WorkRequestProxy> cancelled = proxyProvider.getPostSendRequestAsync(ONE_SIDED_WRITE_SIGNALED);
+        AtomicReference<WorkRequestProxy> fromCallback = new AtomicReference<>();
+        proxyProvider.getPostSendRequestAsync(ONE_SIDED_READ_SIGNALED, fromCallback::set);
+        assertFalse(first.isDone());
+        assertFalse(cancelled.isDone());
+        cancelled.cancel(false);
+        // released WR ids go to the waiting requests in FIFO order, skipping cancelled ones
+        proxyProvider.releaseWorkRequest(proxies.get(0));
+        assertTrue(first.isDone());
+        assertEquals(proxies.get(0).getId(), first.get().getId());
+        assertEquals(TWO_SIDED_SEND_SIGNALED, first.get().getWorkRequestType());
+        assertNull(fromCallback.get());
+        proxyProvider.releaseWorkRequest(proxies.get(1));
+        assertNotNull(fromCallback.get());
+        assertEquals(proxies.get(1).getId(), fromCallback.get().getId());
+        assertEquals(ONE_SIDED_READ_SIGNALED, fromCallback.get().getWorkRequestType());
+        // no more waiting requests, so the WR id becomes available again
+        proxyProvider.releaseWorkRequest(proxies.get(2));
+        assertNotNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test acquiring and releasing Work Request proxies in batches")
+    @MethodSource("providerGenerator")
+    public void batchTest(String name, IntFunction<WorkRequestProxyProvider> providerFactory){
+        int workRequests = 8;
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, workRequests);
+        bufferManager.allocateCommunicationBuffers();
+        WorkRequestProxyProvider proxyProvider = providerFactory.apply(workRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy[] proxies = new WorkRequestProxy[workRequests];
+        assertEquals(0, proxyProvider.getPostSendRequestsNow(TWO_SIDED_RECV, proxies, workRequests));
+        // acquire in two batches
+        assertEquals(5, proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, 5));
+        WorkRequestProxy[] rest = new WorkRequestProxy[workRequests];
+        assertEquals(3, proxyProvider.getPostSendRequestsBlocking(TWO_SIDED_SEND_SIGNALED, rest, workRequests));
+        System.arraycopy(rest, 0, proxies, 5, 3);
+        assertEquals(0, proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, rest, workRequests));
+        boolean[] seen = new boolean[workRequests];
+        for(WorkRequestProxy proxy : proxies){
+            assertFalse(seen[proxy.getId()]);
+            seen[proxy.getId()] = true;
+            assertEquals(TWO_SIDED_SEND_SIGNALED, proxy.getWorkRequestType());
+            assertEquals(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, proxy.getId()),
+                    proxy.getBuffer());
+        }
+        // release all of them at once
+        proxyProvider.releaseWorkRequests(proxies, workRequests);
+        assertEquals(workRequests, proxyProvider.getPostSendRequestsBlocking(TWO_SIDED_SEND_SIGNALED,
+                rest, workRequests));
+    }
+
+    /**
+     * Prints the throughput of the providers. It is not part of the default test run, since it only measures
+     * (see the <i>test.excludedGroups</i> property of the pom).
+     */
+    @ParameterizedTest(name = "{0}")
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    @Tag("Benchmark")
+    @DisplayName("Compare acquire/release throughput of proxy providers under contention")
+    @MethodSource("providerGenerator")
+    public void contentionBenchmark(String name, IntFunction<WorkRequestProxyProvider> providerFactory)
+            throws InterruptedException {
+        int workRequests = 512;
+        WorkRequestProxyProvider proxyProvider = providerFactory.apply(workRequests);
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, workRequests));
+        // warm up
+        runContended(proxyProvider, contentionThreads, contentionIterations, () -> {},
+                new AtomicIntegerArray(workRequests));
+        long start = System.nanoTime();
+        runContended(proxyProvider, contentionThreads, contentionIterations, () -> {},
+                new AtomicIntegerArray(workRequests));
+        long elapsed = System.nanoTime() - start;
+        long operations = (long) contentionThreads * contentionIterations;
+        System.out.printf("%s: %d acquire/release pairs by %d threads in %.2f ms (%.0f pairs/ms)%n",
+                name, operations, contentionThreads, elapsed / 1e6, operations / (elapsed / 1e6));
+    }
+
+    /**
+     * Makes a number of threads acquire and release WR ids at the same time and checks that
+     * no WR id is used by two threads at the same time.
+     */
+    private void runContended(WorkRequestProxyProvider proxyProvider, int threads, int iterations,
+                              Runnable onError, AtomicIntegerArray idsInUse) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for(int t=0; t < threads; t++){
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    onError.run();
+                    return;
+                }
+                for(int i=0; i < iterations; i++){
+                    WorkRequestProxy proxy = (i % 2 == 0) ?
+                            proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED) :
+                            proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+                    if(proxy == null){
+                        continue;
+                    }
+                    if(!idsInUse.compareAndSet(proxy.getId(), 0, 1)){
+                        onError.run();
+                    }
+                    idsInUse.set(proxy.getId(), 0);
+                    proxyProvider.releaseWorkRequest(proxy);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for(Thread worker : workers){
+            worker.join();
+        }
+    }
+}
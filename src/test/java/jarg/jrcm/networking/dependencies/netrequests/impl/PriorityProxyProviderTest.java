@@ -0,0 +1,103 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for PriorityProxyProvider")
+public class PriorityProxyProviderTest {
+
+    private static final int maxBufferSize = 5;
+    private static final int maxWorkRequests = 8;
+    private static final int reservedControl = 2;
+    private static final int BULK = 0;
+    private static final int CONTROL = 1;
+
+    private PriorityProxyProvider createProvider(){
+        PriorityProxyProvider proxyProvider = new PriorityProxyProvider(maxWorkRequests, 0, reservedControl);
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        return proxyProvider;
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that bulk traffic cannot use reserved WR ids")
+    public void reservedQuotaTest(){
+        PriorityProxyProvider proxyProvider = createProvider();
+        assertEquals(2, proxyProvider.getTrafficClasses());
+        assertThrows(IllegalArgumentException.class, () -> new PriorityProxyProvider(2, 1, 2));
+        // invalid class
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 2));
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, -1));
+        // exhaust the shared pool with bulk traffic
+        List<WorkRequestProxy> bulkProxies = new ArrayList<>();
+        WorkRequestProxy proxy;
+        while((proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED)) != null){
+            bulkProxies.add(proxy);
+        }
+        assertEquals(maxWorkRequests - reservedControl, bulkProxies.size());
+        assertEquals(0, proxyProvider.getAvailableWorkRequests(BULK));
+        // control traffic can still get its reserved WR ids
+        WorkRequestProxy control1 = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL);
+        WorkRequestProxy control2 = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL);
+        assertNotNull(control1);
+        assertNotNull(control2);
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL));
+        // reserved WR ids return to the control class only
+        proxyProvider.releaseWorkRequest(control1);
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, BULK));
+        assertEquals(control1.getId(),
+                proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL).getId());
+        // shared WR ids can be used by control traffic
+        proxyProvider.releaseWorkRequest(bulkProxies.get(0));
+        assertEquals(bulkProxies.get(0).getId(),
+                proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL).getId());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    @DisplayName("Test that a blocked control request is not starved by bulk traffic")
+    public void priorityTest() throws InterruptedException {
+        PriorityProxyProvider proxyProvider = createProvider();
+        List<WorkRequestProxy> proxies = new ArrayList<>();
+        for(int i=0; i < maxWorkRequests - reservedControl; i++){
+            proxies.add(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, BULK));
+        }
+        for(int i=0; i < reservedControl; i++){
+            proxies.add(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, CONTROL));
+        }
+        // a control thread waits for a WR id
+        AtomicReference<WorkRequestProxy> controlProxy = new AtomicReference<>();
+        Thread controlThread = new Thread(() ->
+                controlProxy.set(proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED, CONTROL)));
+        controlThread.start();
+        while(controlThread.getState() != Thread.State.WAITING){
+            Thread.yield();
+        }
+        // a bulk request waits too
+        CompletableFuture<WorkRequestProxy> bulkFuture =
+                proxyProvider.getPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED, BULK);
+        assertFalse(bulkFuture.isDone());
+        // a released shared WR id must go to the control class first
+        proxyProvider.releaseWorkRequest(proxies.get(0));
+        controlThread.join();
+        assertEquals(proxies.get(0).getId(), controlProxy.get().getId());
+        assertFalse(bulkFuture.isDone());
+        proxyProvider.releaseWorkRequest(proxies.get(1));
+        assertTrue(bulkFuture.isDone());
+        assertEquals(proxies.get(1).getId(), bulkFuture.join().getId());
+    }
+}
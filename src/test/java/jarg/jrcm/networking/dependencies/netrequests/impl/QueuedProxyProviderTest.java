@@ -1,13 +1,16 @@
 package jarg.jrcm.networking.dependencies.netrequests.impl;
 
+import com.ibm.disni.verbs.IbvWC;
 import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
 import jarg.jrcm.networking.dependencies.netbuffers.impl.OneSidedBufferManager;
 import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.AbstractWorkRequestProxyProvider;
 import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
 import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
 import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -143,4 +146,163 @@ public class QueuedProxyProviderTest {
         proxyProvider.releaseWorkRequest(proxy);
     }
 
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test getting the immediate data and length of received messages")
+    public void receivedImmediateDataTest(){
+        int headroom = 4;
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests, headroom);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        // SEND with immediate
+        IbvWC event = new IbvWC();
+        event.setWr_id(1);
+        event.setOpcode(IbvWC.IbvWcOpcode.IBV_WC_RECV.getOpcode());
+        event.setWc_flags(1 << 1);
+        event.setImm_data(42);
+        event.setByte_len(headroom + 3);
+        WorkRequestProxy proxy = proxyProvider.getWorkRequestProxyForWc(event);
+        assertEquals(TWO_SIDED_RECV, proxy.getWorkRequestType());
+        assertEquals(1, proxy.getId());
+        assertTrue(proxy.hasImmediateData());
+        assertEquals(42, proxy.getImmediateData());
+        assertEquals(3, proxy.getByteLength());
+        // SEND without immediate
+        event.setWc_flags(0);
+        proxy = proxyProvider.getWorkRequestProxyForWc(event);
+        assertFalse(proxy.hasImmediateData());
+        // WRITE with immediate, which consumes a RECV
+        event.setOpcode(IbvWC.IbvWcOpcode.IBV_WC_RECV_RDMA_WITH_IMM.getOpcode());
+        event.setImm_data(7);
+        event.setByte_len(100);
+        proxy = proxyProvider.getWorkRequestProxyForWc(event);
+        assertEquals(TWO_SIDED_RECV, proxy.getWorkRequestType());
+        assertTrue(proxy.hasImmediateData());
+        assertEquals(7, proxy.getImmediateData());
+        assertEquals(100, proxy.getByteLength());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that gathered segments are kept until the proxy is released")
+    public void gatherSegmentsTest(){
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        for(int i=0; i < WorkRequestProxy.MAX_SEGMENTS; i++){
+            proxy.addSegment(1000L * (i + 1), 10 + i, i);
+        }
+        assertThrows(IllegalStateException.class, () -> proxy.addSegment(0, 1, 0));
+        assertEquals(WorkRequestProxy.MAX_SEGMENTS, proxy.getSegmentCount());
+        assertEquals(2000L, proxy.getSegmentAddress(1));
+        assertEquals(11, proxy.getSegmentLength(1));
+        assertEquals(1, proxy.getSegmentKey(1));
+        proxyProvider.releaseWorkRequest(proxy);
+        assertEquals(0, proxy.getSegmentCount());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that a reused WR id doesn't keep the settings of its previous post")
+    public void reusedProxyTest(){
+        OneSidedBufferManager bufferManager = new OneSidedBufferManager(maxBufferSize, 1);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(1);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(ONE_SIDED_WRITE_SIGNALED);
+        proxy.setRemoteLocation(4096, 7, 3);
+        proxy.setImmediateData(42);
+        proxy.setCompareAndSwap(1, 2);
+        proxyProvider.releaseWorkRequest(proxy);
+        proxy = proxyProvider.getPostSendRequestNow(ONE_SIDED_WRITE_SIGNALED);
+        assertEquals(0, proxy.getRemoteAddress());
+        assertEquals(0, proxy.getRemoteKey());
+        assertEquals(0, proxy.getRemoteLength());
+        assertEquals(0, proxy.getImmediateData());
+        assertFalse(proxy.hasImmediateData());
+        assertEquals(0, proxy.getAtomicCompareAdd());
+        assertEquals(0, proxy.getAtomicSwap());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that reclaimed unsignaled Work Requests can be provided again")
+    public void reclaimWorkRequestsTest(){
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        int[] workRequestIds = new int[maxWorkRequests];
+        // reclaim several times, since the proxies are gathered in the same array every time
+        for(int round=0; round < 3; round++){
+            for(int i=0; i < maxWorkRequests; i++){
+                WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED);
+                proxy.getBuffer().put((byte) 1);
+                workRequestIds[i] = proxy.getId();
+            }
+            assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+            proxyProvider.reclaimWorkRequests(workRequestIds, 1);
+            proxyProvider.reclaimWorkRequests(new int[]{workRequestIds[1], workRequestIds[2]}, 2);
+            for(int i=0; i < maxWorkRequests; i++){
+                WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED);
+                assertNotNull(proxy);
+                assertEquals(0, proxy.getBuffer().position());
+                proxyProvider.releaseWorkRequest(proxy);
+            }
+        }
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test getting batches of Work Request proxies")
+    public void batchTest(){
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy[] proxies = new WorkRequestProxy[maxWorkRequests + 2];
+        // the arrays of a batch are reused, so the second batch must not see the first one's buffers
+        for(int round=0; round < 2; round++){
+            assertEquals(maxWorkRequests,
+                    proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, proxies.length));
+            for(int i=0; i < maxWorkRequests; i++){
+                assertSame(bufferManager.getWorkRequestBuffer(TWO_SIDED_SEND_SIGNALED, proxies[i].getId()),
+                        proxies[i].getBuffer());
+                assertEquals(TWO_SIDED_SEND_SIGNALED, proxies[i].getWorkRequestType());
+            }
+            assertEquals(0, proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_SIGNALED, proxies, 1));
+            proxyProvider.releaseWorkRequests(proxies, maxWorkRequests);
+        }
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that batches larger than the batch size are acquired and reclaimed in steps")
+    public void largeBatchTest(){
+        int workRequests = AbstractWorkRequestProxyProvider.MAX_BATCH_SIZE + 10;
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, workRequests);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(workRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        WorkRequestProxy[] proxies = new WorkRequestProxy[workRequests];
+        // a batch acquires at most the batch size
+        assertEquals(AbstractWorkRequestProxyProvider.MAX_BATCH_SIZE,
+                proxyProvider.getPostSendRequestsNow(TWO_SIDED_SEND_UNSIGNALED, proxies, workRequests));
+        int[] workRequestIds = new int[workRequests];
+        for(int i=0; i < AbstractWorkRequestProxyProvider.MAX_BATCH_SIZE; i++){
+            workRequestIds[i] = proxies[i].getId();
+        }
+        for(int i=AbstractWorkRequestProxyProvider.MAX_BATCH_SIZE; i < workRequests; i++){
+            workRequestIds[i] = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED).getId();
+        }
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+        // all of them are reclaimed at once
+        proxyProvider.reclaimWorkRequests(workRequestIds, workRequests);
+        for(int i=0; i < workRequests; i++){
+            assertNotNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_UNSIGNALED));
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for SizeClassProxyProvider")
+public class SizeClassProxyProviderTest {
+
+    private static final int[] classBufferSizes = {64, 1024};
+    private static final int[] classWorkRequests = {2, 1};
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that proxies get the smallest available buffer that fits the requested size")
+    public void smallestFittingClassTest(){
+        SizeClassedBufferManager bufferManager = new SizeClassedBufferManager(classBufferSizes,
+                classWorkRequests, 1024);
+        bufferManager.allocateCommunicationBuffers();
+        SizeClassProxyProvider proxyProvider = new SizeClassProxyProvider(classWorkRequests);
+        assertThrows(IllegalArgumentException.class,
+                () -> proxyProvider.setBufferManager(new SizeClassedBufferManager(new int[]{64, 1024},
+                        new int[]{1, 2}, 1024)));
+        proxyProvider.setBufferManager(bufferManager);
+        // no class fits
+        assertNull(proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 1025));
+        // large messages get large buffers
+        WorkRequestProxy large = proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 65);
+        assertEquals(1024, large.getBuffer().capacity());
+        assertNull(proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 65));
+        // small messages get small buffers
+        WorkRequestProxy small1 = proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 10);
+        WorkRequestProxy small2 = proxyProvider.getSizedPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED, 64);
+        assertEquals(64, small1.getBuffer().capacity());
+        assertEquals(64, small2.getBuffer().capacity());
+        // a small message waits for the smallest class when all classes are in use
+        CompletableFuture<WorkRequestProxy> future =
+                proxyProvider.getSizedPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED, 10);
+        assertFalse(future.isDone());
+        proxyProvider.releaseWorkRequest(small1);
+        assertEquals(64, future.join().getBuffer().capacity());
+        // a small message uses a larger class when the smallest class is in use
+        proxyProvider.releaseWorkRequest(large);
+        assertEquals(1024, proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED).getBuffer().capacity());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that SENDs only get classes that fit the RECV buffers")
+    public void twoSidedClassesTest(){
+        SizeClassedBufferManager bufferManager = new SizeClassedBufferManager(classBufferSizes,
+                classWorkRequests, 64);
+        bufferManager.allocateCommunicationBuffers();
+        SizeClassProxyProvider proxyProvider = new SizeClassProxyProvider(classWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        // SENDs larger than the RECV buffers are refused, one-sided operations can use any class
+        assertNull(proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 65));
+        assertNull(proxyProvider.getSizedPostSendRequestBlocking(TWO_SIDED_SEND_WITH_IMM, 65));
+        assertNull(proxyProvider.getSizedPostSendRequestAsync(TWO_SIDED_SEND_SIGNALED, 65).join());
+        WorkRequestProxy write = proxyProvider.getSizedPostSendRequestNow(ONE_SIDED_WRITE_SIGNALED, 65);
+        assertEquals(1024, write.getBuffer().capacity());
+        proxyProvider.releaseWorkRequest(write);
+        // small SENDs don't fall back to the large class
+        assertEquals(64, proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED).getBuffer().capacity());
+        assertEquals(64, proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 10)
+                .getBuffer().capacity());
+        assertNull(proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 10));
+        assertEquals(1024, proxyProvider.getSizedPostSendRequestNow(ONE_SIDED_WRITE_SIGNALED, 10)
+                .getBuffer().capacity());
+    }
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that providers without size classes ignore the size")
+    public void unsizedProviderTest(){
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(2);
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(16, 2);
+        bufferManager.allocateCommunicationBuffers();
+        proxyProvider.setBufferManager(bufferManager);
+        assertEquals(16, proxyProvider.getSizedPostSendRequestNow(TWO_SIDED_SEND_SIGNALED, 8)
+                .getBuffer().capacity());
+    }
+}
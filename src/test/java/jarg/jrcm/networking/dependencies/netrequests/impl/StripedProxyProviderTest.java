@@ -0,0 +1,82 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl;
+
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_SEND_SIGNALED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for StripedProxyProvider")
+public class StripedProxyProviderTest {
+
+    private static final int maxBufferSize = 5;
+    private static final int maxWorkRequests = 8;
+    private static final int magazineCapacity = 4;
+
+    @Test
+    @Tag("ProxyProvision")
+    @DisplayName("Test that WR ids released to a thread's magazine are reused by the same thread")
+    public void localMagazineTest(){
+        StripedProxyProvider proxyProvider = new StripedProxyProvider(maxWorkRequests, magazineCapacity,
+                TimeUnit.SECONDS.toNanos(10));
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        WorkRequestProxy proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertNotNull(proxy);
+        int workRequestId = proxy.getId();
+        proxyProvider.releaseWorkRequest(proxy);
+        proxy = proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED);
+        assertEquals(workRequestId, proxy.getId());
+        // all WR ids can still be acquired by one thread
+        int acquired = 1;
+        while(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED) != null){
+            acquired ++;
+        }
+        assertEquals(maxWorkRequests, acquired);
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    @Tag("ProxyProvision")
+    @DisplayName("Test that WR ids kept by an idle thread are reclaimed by a thread that needs them")
+    public void rebalancingTest() throws InterruptedException {
+        StripedProxyProvider proxyProvider = new StripedProxyProvider(maxWorkRequests, magazineCapacity,
+                TimeUnit.MILLISECONDS.toNanos(1));
+        proxyProvider.setBufferManager(new TwoSidedBufferManager(maxBufferSize, maxWorkRequests));
+        // another thread takes all WR ids, releases them to its magazine and goes idle
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread idleThread = new Thread(() -> {
+            try {
+                List<WorkRequestProxy> proxies = new ArrayList<>(maxWorkRequests);
+                for (int i = 0; i < maxWorkRequests; i++) {
+                    proxies.add(proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED));
+                }
+                for (WorkRequestProxy proxy : proxies) {
+                    proxyProvider.releaseWorkRequest(proxy);
+                }
+            }catch (Throwable t){
+                failure.set(t);
+            }
+        });
+        idleThread.start();
+        idleThread.join();
+        assertNull(failure.get());
+        Thread.sleep(5);
+        // this thread must be able to get all WR ids, both with non-blocking and blocking calls
+        for(int i=0; i < maxWorkRequests / 2; i++){
+            assertNotNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+        }
+        for(int i=maxWorkRequests / 2; i < maxWorkRequests; i++){
+            assertNotNull(proxyProvider.getPostSendRequestBlocking(TWO_SIDED_SEND_SIGNALED));
+        }
+        assertNull(proxyProvider.getPostSendRequestNow(TWO_SIDED_SEND_SIGNALED));
+    }
+}
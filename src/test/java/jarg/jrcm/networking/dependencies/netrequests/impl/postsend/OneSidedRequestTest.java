@@ -0,0 +1,86 @@
+package jarg.jrcm.networking.dependencies.netrequests.impl.postsend;
+
+import com.ibm.disni.util.MemBuf;
+import com.ibm.disni.util.MemoryAllocation;
+import com.ibm.disni.verbs.IbvMr;
+import com.ibm.disni.verbs.IbvSendWR;
+import com.ibm.disni.verbs.impl.NatPostSendCall;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for OneSidedRequest")
+public class OneSidedRequestTest {
+
+    // offsets in DiSNI's native Work Request, which has the layout of ibv_send_wr
+    private static final int OPCODE_OFFSET = 28;
+    private static final int UNION_OFFSET = 40;
+
+    /**
+     * Creates an SVC without a NIC, which serializes the Work Request but cannot be executed.
+     */
+    private static NatPostSendCall createSVC(OneSidedRequest request){
+        return new NatPostSendCall(null, null, MemoryAllocation.getInstance(), null,
+                Collections.singletonList(request.getSendWR()));
+    }
+
+    /**
+     * Get the native memory of an SVC.
+     */
+    private static ByteBuffer getNativeMemory(NatPostSendCall svc) throws ReflectiveOperationException {
+        Field cmdField = NatPostSendCall.class.getDeclaredField("cmd");
+        cmdField.setAccessible(true);
+        return ((MemBuf) cmdField.get(svc)).getBuffer();
+    }
+
+    private static IbvMr createMemoryRegion() throws ReflectiveOperationException {
+        Field unsafeField = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        IbvMr memoryRegion = (IbvMr) ((sun.misc.Unsafe) unsafeField.get(null)).allocateInstance(IbvMr.class);
+        memoryRegion.setLkey(3);
+        return memoryRegion;
+    }
+
+    @Test
+    @Tag("Atomics")
+    @DisplayName("Test that the remote location and operands of atomics are written to the native Work Request")
+    public void atomicNativeFieldsTest() throws IOException, ReflectiveOperationException {
+        OneSidedRequest request = new OneSidedRequest(createMemoryRegion(),
+                OneSidedRequest.OneSidedRequestType.ATOMIC_CMP_AND_SWP, new RemoteLocation(0x1000, 77));
+        request.prepareRequest();
+        request.setAtomicOperands(0x1122334455667788L, -2L);
+        NatPostSendCall svc = createSVC(request);
+        ByteBuffer nativeMemory = getNativeMemory(svc);
+        // DiSNI alone doesn't serialize the atomic fields
+        assertEquals(0, nativeMemory.getLong(UNION_OFFSET + 8));
+        request.writeNativeFields(svc);
+        assertEquals(IbvSendWR.IBV_WR_ATOMIC_CMP_AND_SWP, nativeMemory.getInt(OPCODE_OFFSET));
+        assertEquals(0x1000, nativeMemory.getLong(UNION_OFFSET));
+        assertEquals(0x1122334455667788L, nativeMemory.getLong(UNION_OFFSET + 8));
+        assertEquals(-2L, nativeMemory.getLong(UNION_OFFSET + 16));
+        assertEquals(77, nativeMemory.getInt(UNION_OFFSET + 24));
+        svc.free();
+    }
+
+    @Test
+    @Tag("Atomics")
+    @DisplayName("Test that the native fields of WRITEs are left to DiSNI")
+    public void writeNativeFieldsTest() throws IOException, ReflectiveOperationException {
+        OneSidedRequest request = new OneSidedRequest(createMemoryRegion(),
+                OneSidedRequest.OneSidedRequestType.WRITE, new RemoteLocation(0x2000, 5));
+        request.prepareRequest();
+        NatPostSendCall svc = createSVC(request);
+        request.writeNativeFields(svc);
+        ByteBuffer nativeMemory = getNativeMemory(svc);
+        assertEquals(0x2000, nativeMemory.getLong(UNION_OFFSET));
+        assertEquals(5, nativeMemory.getInt(UNION_OFFSET + 8));
+        svc.free();
+    }
+}
@@ -0,0 +1,93 @@
+package jarg.jrcm.networking.dependencies.svc;
+
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for AbstractSVCManager")
+public class AbstractSVCManagerTest {
+
+    private static final int maxWorkRequests = 64;
+    private static final int firstWorkRequestId = 16;
+    private static final int workRequestCount = 32;
+
+    @ParameterizedTest
+    @EnumSource(AbstractSVCManager.SVCCreation.class)
+    @Tag("SVCCreation")
+    @DisplayName("Test that the SVCs of a WR id range are created once, according to the creation mode")
+    public void svcCreationTest(AbstractSVCManager.SVCCreation svcCreation) throws IOException, InterruptedException {
+        TestSVCManager svcManager = new TestSVCManager();
+        svcManager.setWorkRequestRange(firstWorkRequestId, workRequestCount);
+        svcManager.setSVCCreation(svcCreation);
+        svcManager.initializeSVCs();
+        SVCSetupMetrics setupMetrics = svcManager.getSetupMetrics();
+        switch (svcCreation){
+            case EAGER:
+                assertEquals(workRequestCount, setupMetrics.getEagerSVCs());
+                break;
+            case LAZY:
+                assertEquals(0, setupMetrics.getEagerSVCs());
+                assertNull(svcManager.svcs[firstWorkRequestId]);
+                break;
+        }
+        // every WR id of the range gets its own SVC, whether it's created or not yet
+        for(int i=firstWorkRequestId; i < firstWorkRequestId + workRequestCount; i++){
+            assertEquals("SVC " + i, svcManager.get(i));
+        }
+        if(svcCreation == AbstractSVCManager.SVCCreation.BACKGROUND){
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(svcManager.isCreatingInBackground() && (System.nanoTime() < deadline)){
+                Thread.sleep(1);
+            }
+            assertFalse(svcManager.isCreatingInBackground());
+            assertTrue(setupMetrics.getBackgroundCompletionNanos() > 0);
+        }
+        // no SVC is created twice and none is created outside the range
+        assertEquals(workRequestCount, svcManager.created);
+        assertEquals(workRequestCount, setupMetrics.getEagerSVCs() + setupMetrics.getLazySVCs()
+                + setupMetrics.getBackgroundSVCs());
+        assertNull(svcManager.svcs[firstWorkRequestId - 1]);
+        assertNull(svcManager.svcs[firstWorkRequestId + workRequestCount]);
+        svcManager.close();
+    }
+
+    /**
+     * Creates Strings instead of SVCs, so that no RDMA device is needed.
+     */
+    private static class TestSVCManager extends AbstractSVCManager {
+        private String[] svcs;
+        private int created;
+        private final SVCFactory<String> svcFactory = workRequestId -> {
+            synchronized (this){
+                created ++;
+            }
+            return "SVC " + workRequestId;
+        };
+
+        TestSVCManager() {
+            super(8, maxWorkRequests);
+        }
+
+        @Override
+        public void initializeSVCs() {
+            svcs = new String[getMaxWorkRequests()];
+            createSVCs(svcs, getFirstWorkRequestId(), getWorkRequestCount(), svcFactory);
+        }
+
+        String get(int workRequestId) throws IOException {
+            return getSVC(svcs, workRequestId, svcFactory);
+        }
+
+        @Override
+        public boolean executeSVC(WorkRequestProxy workRequestProxy) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package jarg.jrcm.networking.dependencies.svc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for SelectiveSignaler")
+public class SelectiveSignalerTest {
+
+    private static final int maxWorkRequests = 16;
+
+    @Test
+    @Tag("SelectiveSignaling")
+    @DisplayName("Test that every N-th unsignaled Work Request is signaled and covers the previous ones")
+    public void signalIntervalTest(){
+        SelectiveSignaler signaler = new SelectiveSignaler(maxWorkRequests);
+        // limited to half the Work Requests
+        assertEquals(maxWorkRequests / 2, signaler.getSignalInterval());
+        signaler.setSignalInterval(4);
+        assertEquals(4, signaler.getSignalInterval());
+        assertFalse(signaler.needsTracking(false));
+
+        int[] completedIds = new int[maxWorkRequests];
+        // nothing is covered yet
+        assertEquals(0, signaler.takeCoveredWorkRequests(0, completedIds));
+        for(int i=0; i < 3; i++){
+            assertFalse(signaler.onPost(i, true));
+        }
+        assertTrue(signaler.needsTracking(false));
+        assertTrue(signaler.onPost(3, true));
+        assertFalse(signaler.needsTracking(false));
+        assertEquals(3, signaler.takeCoveredWorkRequests(3, completedIds));
+        assertArrayEquals(new int[]{0, 1, 2}, Arrays.copyOf(completedIds, 3));
+        // the covered ids can only be taken once
+        assertEquals(0, signaler.takeCoveredWorkRequests(3, completedIds));
+    }
+
+    @Test
+    @Tag("SelectiveSignaling")
+    @DisplayName("Test that a signaled-type Work Request covers pending unsignaled ones")
+    public void signaledTypeTest(){
+        SelectiveSignaler signaler = new SelectiveSignaler(maxWorkRequests);
+        signaler.setSignalInterval(4);
+        int[] completedIds = new int[maxWorkRequests];
+
+        assertFalse(signaler.onPost(5, true));
+        assertTrue(signaler.onPost(6, false));
+        assertEquals(1, signaler.takeCoveredWorkRequests(6, completedIds));
+        assertEquals(5, completedIds[0]);
+        // a signaled-type WR with nothing to cover
+        assertTrue(signaler.onPost(7, false));
+        assertEquals(0, signaler.takeCoveredWorkRequests(7, completedIds));
+        // invalid ids
+        assertEquals(0, signaler.takeCoveredWorkRequests(-1, completedIds));
+        assertEquals(0, signaler.takeCoveredWorkRequests(maxWorkRequests, completedIds));
+    }
+
+    @Test
+    @Tag("SelectiveSignaling")
+    @DisplayName("Test the budget of detached Work Requests")
+    public void detachedTest(){
+        SelectiveSignaler signaler = new SelectiveSignaler(maxWorkRequests);
+        signaler.setSignalInterval(4);
+        int[] completedIds = new int[maxWorkRequests];
+        // disabled by default
+        assertFalse(signaler.canDetach());
+        signaler.setMaxDetached(4);
+        for(int i=0; i < 3; i++){
+            assertTrue(signaler.canDetach());
+            signaler.onPostDetached();
+        }
+        // the next one must be signaled
+        assertFalse(signaler.canDetach());
+        assertTrue(signaler.needsTracking(false));
+        assertTrue(signaler.onPost(9, true));
+        // only one more detached WR fits in the budget until the signaled one completes
+        assertTrue(signaler.canDetach());
+        signaler.onPostDetached();
+        assertFalse(signaler.canDetach());
+        // detached WR ids are not reclaimed, they have already been released
+        assertEquals(0, signaler.takeCoveredWorkRequests(9, completedIds));
+        assertTrue(signaler.canDetach());
+    }
+
+    @Test
+    @Tag("SelectiveSignaling")
+    @DisplayName("Test that the covered WR ids are kept when the signal interval grows and that uncovered ones are reported")
+    public void signalIntervalChangeTest(){
+        SelectiveSignaler signaler = new SelectiveSignaler(maxWorkRequests);
+        signaler.setSignalInterval(2);
+        int[] completedIds = new int[maxWorkRequests];
+        assertFalse(signaler.hasUncovered());
+        assertFalse(signaler.onPost(0, true));
+        assertTrue(signaler.hasUncovered());
+        assertTrue(signaler.onPost(1, true));
+        assertFalse(signaler.hasUncovered());
+        assertEquals(1, signaler.takeCoveredWorkRequests(1, completedIds));
+        // the same signaled WR id covers more WRs with a larger interval
+        signaler.setSignalInterval(6);
+        for(int i=2; i < 7; i++){
+            assertFalse(signaler.onPost(i, true));
+        }
+        // trailing unsignaled WRs are covered by a signaled-type WR that flushes them
+        assertTrue(signaler.hasUncovered());
+        assertTrue(signaler.onPost(1, false));
+        assertEquals(5, signaler.takeCoveredWorkRequests(1, completedIds));
+        assertArrayEquals(new int[]{2, 3, 4, 5, 6}, Arrays.copyOf(completedIds, 5));
+    }
+}
@@ -0,0 +1,92 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceiveBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SharedReceivePool;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.RECEIVE;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for SharedReceiveSVCManager")
+public class SharedReceiveSVCManagerTest {
+
+    private static final int maxBufferSize = 16;
+    private static final int maxWorkRequests = 8;
+    private static final int receivesPerConnection = 2;
+
+    @Test
+    @Tag("SharedReceives")
+    @DisplayName("Test that RECVs are posted with their own WR ids and keep their SVCs while they keep their slots")
+    public void receiveSVCsTest() throws Exception {
+        SharedReceivePool receivePool = new SharedReceivePool(3, maxBufferSize);
+        TestEndpoint endpoint1 = TestEndpoint.create();
+        SharedReceiveBufferManager bufferManager1 = new SharedReceiveBufferManager(maxBufferSize, maxWorkRequests,
+                receivePool);
+        SharedReceiveSVCManager svcManager1 = createSVCManager(endpoint1, bufferManager1, receivePool);
+        // the initial RECVs are posted with their WR ids
+        assertEquals(2, endpoint1.posts.size());
+        assertPost(endpoint1.posts.get(0), 0, receivePool.getAddress(0));
+        assertPost(endpoint1.posts.get(1), 1, receivePool.getAddress(1));
+        assertEquals(receivesPerConnection, endpoint1.createdReceiveSVCs);
+        // without waiting communicators, a RECV is re-posted with its slot and its SVC
+        assertTrue(svcManager1.executeSVC(createProxy(bufferManager1, 0)));
+        assertEquals(3, endpoint1.posts.size());
+        assertPost(endpoint1.posts.get(2), 0, receivePool.getAddress(0));
+        assertEquals(receivesPerConnection, endpoint1.createdReceiveSVCs);
+        assertEquals(0, bufferManager1.getReceiveSlot(0));
+        // the second communicator gets the last slot and waits for another
+        TestEndpoint endpoint2 = TestEndpoint.create();
+        SharedReceiveBufferManager bufferManager2 = new SharedReceiveBufferManager(maxBufferSize, maxWorkRequests,
+                receivePool);
+        SharedReceiveSVCManager svcManager2 = createSVCManager(endpoint2, bufferManager2, receivePool);
+        assertEquals(1, endpoint2.posts.size());
+        assertPost(endpoint2.posts.get(0), 0, receivePool.getAddress(2));
+        assertEquals(1, svcManager2.getWaitingReceives());
+        // a released slot goes to the waiting communicator
+        assertTrue(svcManager1.executeSVC(createProxy(bufferManager1, 1)));
+        assertEquals(2, endpoint2.posts.size());
+        assertPost(endpoint2.posts.get(1), 1, receivePool.getAddress(1));
+        assertEquals(0, svcManager2.getWaitingReceives());
+        assertEquals(1, svcManager1.getWaitingReceives());
+        // a RECV that is bound to another slot gets a new SVC, so every RECV WR id has one SVC at most
+        assertTrue(svcManager2.executeSVC(createProxy(bufferManager2, 0)));
+        assertEquals(4, endpoint1.posts.size());
+        assertPost(endpoint1.posts.get(3), 1, receivePool.getAddress(2));
+        assertEquals(receivesPerConnection + 1, endpoint1.createdReceiveSVCs);
+        assertEquals(1, endpoint1.freedReceiveSVCs);
+        assertEquals(1, svcManager2.getWaitingReceives());
+        svcManager1.close();
+        svcManager2.close();
+        assertEquals(3, receivePool.getAvailableSlots());
+    }
+
+    private static SharedReceiveSVCManager createSVCManager(TestEndpoint endpoint,
+                                                            SharedReceiveBufferManager bufferManager,
+                                                            SharedReceivePool receivePool)
+            throws ReflectiveOperationException {
+        bufferManager.allocateCommunicationBuffers();
+        IbvMr memoryRegion = (IbvMr) TestEndpoint.getUnsafe().allocateInstance(IbvMr.class);
+        SharedReceiveSVCManager svcManager = new SharedReceiveSVCManager(maxBufferSize, maxWorkRequests,
+                receivePool, receivesPerConnection);
+        svcManager.setRdmaEndpoint(endpoint);
+        svcManager.setBufferManager(bufferManager);
+        svcManager.setRegisteredMemoryRegion(memoryRegion);
+        svcManager.initializeSVCs();
+        return svcManager;
+    }
+
+    private static WorkRequestProxy createProxy(SharedReceiveBufferManager bufferManager, int workRequestId){
+        return new WorkRequestProxy(workRequestId, RECEIVE, TWO_SIDED_RECV,
+                bufferManager.getWorkRequestBuffer(TWO_SIDED_RECV, workRequestId), null);
+    }
+
+    private static void assertPost(TestEndpoint.Post post, long workRequestId, long address){
+        assertArrayEquals(new long[]{workRequestId}, post.workRequestIds);
+        assertEquals(address, post.addresses[0]);
+    }
+}
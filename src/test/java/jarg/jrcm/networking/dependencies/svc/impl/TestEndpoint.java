@@ -0,0 +1,276 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import com.ibm.disni.RdmaEndpoint;
+import com.ibm.disni.verbs.*;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An endpoint without a queue pair, whose SVCs record their executions, so that no RDMA device is needed.
+ */
+class TestEndpoint extends RdmaEndpoint {
+    static final int LOCAL_KEY = 7;
+
+    List<Post> posts;
+    int createdReceiveSVCs;
+    int freedReceiveSVCs;
+
+    private TestEndpoint() throws java.io.IOException {
+        super(null, null, false);
+    }
+
+    static TestEndpoint create() throws ReflectiveOperationException {
+        // the constructor needs an endpoint group
+        TestEndpoint endpoint = (TestEndpoint) getUnsafe().allocateInstance(TestEndpoint.class);
+        endpoint.posts = new ArrayList<>();
+        return endpoint;
+    }
+
+    @Override
+    public SVCPostSend postSend(List<IbvSendWR> sendRequests) {
+        return new SendSVC(posts, sendRequests);
+    }
+
+    @Override
+    public SVCPostRecv postRecv(List<IbvRecvWR> recvRequests) {
+        createdReceiveSVCs ++;
+        return new RecvSVC(this, recvRequests);
+    }
+
+    @Override
+    public SVCRegMr registerMemory(ByteBuffer buffer) {
+        return new SVCRegMr() {
+            @Override
+            public IbvMr getMr() {
+                try {
+                    IbvMr memoryRegion = (IbvMr) getUnsafe().allocateInstance(IbvMr.class);
+                    memoryRegion.setAddr(((sun.nio.ch.DirectBuffer) buffer).address());
+                    memoryRegion.setLength(buffer.capacity());
+                    memoryRegion.setLkey(LOCAL_KEY);
+                    return memoryRegion;
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public SVCRegMr execute() {
+                return this;
+            }
+
+            @Override
+            public boolean isValid() {
+                return true;
+            }
+
+            @Override
+            public SVCRegMr free() {
+                return this;
+            }
+        };
+    }
+
+    static sun.misc.Unsafe getUnsafe() throws ReflectiveOperationException {
+        Field unsafeField = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        return (sun.misc.Unsafe) unsafeField.get(null);
+    }
+
+    /**
+     * The Work Requests of an SVC execution, as the NIC would get them.
+     */
+    static class Post {
+        final long[] workRequestIds;
+        final int[] lengths;
+        final long[] addresses;
+        final int[] localKeys;
+        final boolean[] signaled;
+
+        Post(int workRequests) {
+            workRequestIds = new long[workRequests];
+            lengths = new int[workRequests];
+            addresses = new long[workRequests];
+            localKeys = new int[workRequests];
+            signaled = new boolean[workRequests];
+        }
+    }
+
+    private static class SendSVC extends SVCPostSend {
+        private final List<Post> posts;
+        private final SendWRModImpl[] wrMods;
+
+        SendSVC(List<Post> posts, List<IbvSendWR> sendRequests) {
+            this.posts = posts;
+            wrMods = new SendWRModImpl[sendRequests.size()];
+            for(int i=0; i < wrMods.length; i++){
+                wrMods[i] = new SendWRModImpl(sendRequests.get(i));
+            }
+        }
+
+        @Override
+        public SendWRMod getWrMod(int index) {
+            return wrMods[index];
+        }
+
+        @Override
+        public SVCPostSend execute() {
+            Post post = new Post(wrMods.length);
+            for(int i=0; i < wrMods.length; i++){
+                post.workRequestIds[i] = wrMods[i].workRequestId;
+                post.lengths[i] = wrMods[i].sgeMod.length;
+                post.addresses[i] = wrMods[i].sgeMod.address;
+                post.localKeys[i] = wrMods[i].sgeMod.localKey;
+                post.signaled[i] = (wrMods[i].sendFlags & IbvSendWR.IBV_SEND_SIGNALED) != 0;
+            }
+            posts.add(post);
+            return this;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public SVCPostSend free() {
+            return this;
+        }
+    }
+
+    private static class SendWRModImpl implements SVCPostSend.SendWRMod {
+        private final int opcode;
+        private final SgeModImpl sgeMod = new SgeModImpl();
+        private long workRequestId;
+        private int sendFlags;
+
+        SendWRModImpl(IbvSendWR sendWR) {
+            opcode = sendWR.getOpcode();
+            workRequestId = sendWR.getWr_id();
+            sendFlags = sendWR.getSend_flags();
+            IbvSge sge = sendWR.getSge(0);
+            sgeMod.address = sge.getAddr();
+            sgeMod.length = sge.getLength();
+            sgeMod.localKey = sge.getLkey();
+        }
+
+        @Override
+        public void setWr_id(long wr_id) {
+            workRequestId = wr_id;
+        }
+
+        @Override
+        public void setSend_flags(int send_flags) {
+            sendFlags = send_flags;
+        }
+
+        @Override
+        public long getWr_id() {
+            return workRequestId;
+        }
+
+        @Override
+        public int getNum_sge() {
+            return 1;
+        }
+
+        @Override
+        public int getOpcode() {
+            return opcode;
+        }
+
+        @Override
+        public int getSend_flags() {
+            return sendFlags;
+        }
+
+        @Override
+        public SVCPostSend.RdmaMod getRdmaMod() {
+            return null;
+        }
+
+        @Override
+        public SVCPostSend.SgeMod getSgeMod(int index) {
+            return sgeMod;
+        }
+    }
+
+    private static class SgeModImpl implements SVCPostSend.SgeMod {
+        private long address;
+        private int length;
+        private int localKey;
+
+        @Override
+        public void setAddr(long addr) {
+            address = addr;
+        }
+
+        @Override
+        public long getAddr() {
+            return address;
+        }
+
+        @Override
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public void setLkey(int lkey) {
+            localKey = lkey;
+        }
+
+        @Override
+        public int getLkey() {
+            return localKey;
+        }
+    }
+
+    private static class RecvSVC extends SVCPostRecv {
+        private final TestEndpoint endpoint;
+        private final long[] workRequestIds;
+        private final long[] addresses;
+
+        RecvSVC(TestEndpoint endpoint, List<IbvRecvWR> recvRequests) {
+            this.endpoint = endpoint;
+            workRequestIds = new long[recvRequests.size()];
+            addresses = new long[recvRequests.size()];
+            for(int i=0; i < workRequestIds.length; i++){
+                workRequestIds[i] = recvRequests.get(i).getWr_id();
+                addresses[i] = recvRequests.get(i).getSg_list().get(0).getAddr();
+            }
+        }
+
+        @Override
+        public RecvWRMod getWrMod(int index) {
+            return () -> workRequestIds[index];
+        }
+
+        @Override
+        public SVCPostRecv execute() {
+            Post post = new Post(workRequestIds.length);
+            System.arraycopy(workRequestIds, 0, post.workRequestIds, 0, workRequestIds.length);
+            System.arraycopy(addresses, 0, post.addresses, 0, addresses.length);
+            endpoint.posts.add(post);
+            return this;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public SVCPostRecv free() {
+            endpoint.freedReceiveSVCs ++;
+            return this;
+        }
+    }
+}
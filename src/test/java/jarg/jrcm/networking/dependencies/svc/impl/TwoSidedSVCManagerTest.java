@@ -0,0 +1,209 @@
+package jarg.jrcm.networking.dependencies.svc.impl;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.dependencies.netbuffers.NetworkBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.SizeClassedBufferManager;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType.SEND;
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for TwoSidedSVCManager")
+public class TwoSidedSVCManagerTest {
+
+    private static final int maxBufferSize = 16;
+    private static final int maxWorkRequests = 8;
+    private static final int headroom = 4;
+    private static final int localKey = 7;
+
+    @Test
+    @Tag("SendChains")
+    @DisplayName("Test that consecutive SENDs are posted with the longest chains that fit")
+    public void sendChainsTest() throws Exception {
+        TestEndpoint endpoint = TestEndpoint.create();
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests, headroom);
+        TwoSidedSVCManager svcManager = createSVCManager(endpoint, bufferManager);
+        svcManager.initializeSVCs();
+        assertEquals(4, svcManager.sendChainSVCs.length);
+        // 7 SENDs are posted with a chain of 4, a chain of 2 and a single SEND
+        WorkRequestProxy[] proxies = new WorkRequestProxy[maxWorkRequests];
+        for(int i=0; i < 7; i++){
+            proxies[i] = createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 6 - i, i + 1);
+        }
+        endpoint.posts.clear();
+        assertTrue(svcManager.executeSVCs(proxies, 7));
+        assertEquals(3, endpoint.posts.size());
+        assertPost(endpoint.posts.get(0), bufferManager, 6, 5, 4, 3);
+        assertPost(endpoint.posts.get(1), bufferManager, 2, 1);
+        assertPost(endpoint.posts.get(2), bufferManager, 0);
+        assertArrayEquals(new int[]{1 + headroom, 2 + headroom, 3 + headroom, 4 + headroom},
+                endpoint.posts.get(0).lengths);
+        assertArrayEquals(new int[]{7 + headroom}, endpoint.posts.get(2).lengths);
+        // a SEND with immediate data cannot be chained, so it splits the chains
+        proxies[2] = createProxy(bufferManager, TWO_SIDED_SEND_WITH_IMM, 4, maxBufferSize);
+        endpoint.posts.clear();
+        assertTrue(svcManager.executeSVCs(proxies, 7));
+        assertEquals(3, endpoint.posts.size());
+        assertPost(endpoint.posts.get(0), bufferManager, 6, 5);
+        assertPost(endpoint.posts.get(1), bufferManager, 4);
+        assertArrayEquals(new int[]{maxBufferSize + headroom}, endpoint.posts.get(1).lengths);
+        assertPost(endpoint.posts.get(2), bufferManager, 3, 2, 1, 0);
+        // the chain is reused with other WR ids
+        endpoint.posts.clear();
+        assertTrue(svcManager.executeSVCs(new WorkRequestProxy[]{proxies[6], proxies[5]}, 2));
+        assertEquals(1, endpoint.posts.size());
+        assertPost(endpoint.posts.get(0), bufferManager, 0, 1);
+        assertArrayEquals(new int[]{7 + headroom, 6 + headroom}, endpoint.posts.get(0).lengths);
+        svcManager.close();
+    }
+
+    @Test
+    @Tag("ReceiveBatching")
+    @DisplayName("Test that released RECVs are re-posted by group, unless the posted RECVs are below the low watermark")
+    public void receiveBatchingTest() throws Exception {
+        TestEndpoint endpoint = TestEndpoint.create();
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests, headroom);
+        TwoSidedSVCManager svcManager = createSVCManager(endpoint, bufferManager);
+        svcManager.setReceiveBatching(4, 2);
+        List<Integer> notifications = new ArrayList<>();
+        svcManager.setReceivesPostedListener(notifications::add);
+        svcManager.initializeSVCs();
+        assertEquals(2, svcManager.recvChainSVCs.length);
+        // all RECVs are posted at once
+        assertEquals(1, endpoint.posts.size());
+        assertArrayEquals(new long[]{0, 1, 2, 3, 4, 5, 6, 7}, endpoint.posts.get(0).workRequestIds);
+        assertEquals(maxWorkRequests, svcManager.getPostedReceives());
+        endpoint.posts.clear();
+        // a group is re-posted with one chain when all of its RECVs are released
+        for(int i=0; i < 4; i++){
+            svcManager.onReceiveCompleted(null);
+        }
+        for(int i=0; i < 3; i++){
+            assertTrue(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_RECV, i, 0)));
+        }
+        assertTrue(endpoint.posts.isEmpty());
+        assertTrue(notifications.isEmpty());
+        assertTrue(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_RECV, 3, 0)));
+        assertEquals(1, endpoint.posts.size());
+        assertArrayEquals(new long[]{0, 1, 2, 3}, endpoint.posts.get(0).workRequestIds);
+        assertEquals(maxWorkRequests, svcManager.getPostedReceives());
+        assertEquals(Collections.singletonList(4), notifications);
+        endpoint.posts.clear();
+        // below the low watermark, a released RECV is re-posted immediately
+        for(int i=0; i < 7; i++){
+            svcManager.onReceiveCompleted(null);
+        }
+        assertEquals(1, svcManager.getPostedReceives());
+        assertTrue(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_RECV, 4, 0)));
+        assertEquals(1, endpoint.posts.size());
+        assertArrayEquals(new long[]{4}, endpoint.posts.get(0).workRequestIds);
+        assertEquals(2, svcManager.getPostedReceives());
+        // waiting RECVs are re-posted when a completion brings the posted RECVs below the low watermark
+        for(int i=5; i < 8; i++){
+            assertTrue(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_RECV, i, 0)));
+        }
+        assertEquals(1, endpoint.posts.size());
+        svcManager.onReceiveCompleted(null);
+        assertEquals(4, endpoint.posts.size());
+        assertArrayEquals(new long[]{5}, endpoint.posts.get(1).workRequestIds);
+        assertArrayEquals(new long[]{6}, endpoint.posts.get(2).workRequestIds);
+        assertArrayEquals(new long[]{7}, endpoint.posts.get(3).workRequestIds);
+        assertEquals(4, svcManager.getPostedReceives());
+        assertEquals(Arrays.asList(4, 1, 3), notifications);
+        svcManager.close();
+    }
+
+    @Test
+    @Tag("SendChains")
+    @DisplayName("Test that SENDs larger than the RECV buffers are rejected")
+    public void largeSendTest() throws Exception {
+        TestEndpoint endpoint = TestEndpoint.create();
+        SizeClassedBufferManager bufferManager = new SizeClassedBufferManager(new int[]{maxBufferSize, 64},
+                new int[]{maxWorkRequests / 2, maxWorkRequests / 2}, maxBufferSize);
+        TwoSidedSVCManager svcManager = createSVCManager(endpoint, bufferManager, 64);
+        svcManager.initializeSVCs();
+        endpoint.posts.clear();
+        WorkRequestProxy[] proxies = new WorkRequestProxy[]{
+                createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 0, maxBufferSize),
+                createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 1, maxBufferSize),
+                createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 4, maxBufferSize + 1),
+                createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 5, maxBufferSize)};
+        // the large SEND isn't posted, but the others are
+        assertFalse(svcManager.executeSVCs(proxies, proxies.length));
+        assertEquals(2, endpoint.posts.size());
+        assertArrayEquals(new long[]{0, 1}, endpoint.posts.get(0).workRequestIds);
+        assertArrayEquals(new long[]{5}, endpoint.posts.get(1).workRequestIds);
+        assertFalse(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_SEND_WITH_IMM, 4, 64)));
+        assertEquals(2, endpoint.posts.size());
+        // one-sided WRITEs with immediate data don't use the RECV buffers
+        assertTrue(svcManager.executeSVC(createProxy(bufferManager, ONE_SIDED_WRITE_WITH_IMM, 4, 64)));
+        assertEquals(3, endpoint.posts.size());
+        svcManager.close();
+    }
+
+    @Test
+    @Tag("SendChains")
+    @DisplayName("Test that empty SENDs are not inlined when inline SENDs are disabled")
+    public void emptySendTest() throws Exception {
+        TestEndpoint endpoint = TestEndpoint.create();
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        TwoSidedSVCManager svcManager = createSVCManager(endpoint, bufferManager);
+        svcManager.initializeSVCs();
+        assertNull(svcManager.inlineSendSVCs);
+        endpoint.posts.clear();
+        assertTrue(svcManager.executeSVC(createProxy(bufferManager, TWO_SIDED_SEND_SIGNALED, 0, 0)));
+        assertEquals(1, endpoint.posts.size());
+        assertPost(endpoint.posts.get(0), bufferManager, 0);
+        assertArrayEquals(new int[]{0}, endpoint.posts.get(0).lengths);
+        svcManager.close();
+    }
+
+    private static TwoSidedSVCManager createSVCManager(TestEndpoint endpoint, NetworkBufferManager bufferManager)
+            throws ReflectiveOperationException {
+        return createSVCManager(endpoint, bufferManager, maxBufferSize);
+    }
+
+    private static TwoSidedSVCManager createSVCManager(TestEndpoint endpoint, NetworkBufferManager bufferManager,
+                                                       int bufferSize) throws ReflectiveOperationException {
+        bufferManager.allocateCommunicationBuffers();
+        IbvMr memoryRegion = (IbvMr) TestEndpoint.getUnsafe().allocateInstance(IbvMr.class);
+        memoryRegion.setLkey(localKey);
+        TwoSidedSVCManager svcManager = new TwoSidedSVCManager(bufferSize, maxWorkRequests);
+        svcManager.setRdmaEndpoint(endpoint);
+        svcManager.setBufferManager(bufferManager);
+        svcManager.setRegisteredMemoryRegion(memoryRegion);
+        return svcManager;
+    }
+
+    private static WorkRequestProxy createProxy(NetworkBufferManager bufferManager, WorkRequestType workRequestType,
+                                                int workRequestId, int length){
+        WorkRequestProxy proxy = new WorkRequestProxy(workRequestId, SEND, workRequestType,
+                bufferManager.getWorkRequestBuffer(workRequestType, workRequestId), null);
+        proxy.getBuffer().limit(length);
+        return proxy;
+    }
+
+    /**
+     * Checks that an SVC execution posted signaled SENDs with the given WR ids and their buffers.
+     */
+    private static void assertPost(TestEndpoint.Post post, TwoSidedBufferManager bufferManager, long... workRequestIds){
+        assertArrayEquals(workRequestIds, post.workRequestIds);
+        for(int i=0; i < workRequestIds.length; i++){
+            assertEquals(bufferManager.getWorkRequestBufferAddress(TWO_SIDED_SEND_SIGNALED, (int) workRequestIds[i]),
+                    post.addresses[i]);
+            assertEquals(localKey, post.localKeys[i]);
+            assertTrue(post.signaled[i]);
+        }
+    }
+}
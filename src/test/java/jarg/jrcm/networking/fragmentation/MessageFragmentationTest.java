@@ -0,0 +1,131 @@
+package jarg.jrcm.networking.fragmentation;
+
+import com.ibm.disni.verbs.IbvMr;
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.TwoSidedBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.impl.QueuedProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.types.PostedRequestType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static jarg.jrcm.networking.dependencies.netrequests.types.WorkRequestType.TWO_SIDED_RECV;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for MessageFragmenter and MessageReassembler")
+public class MessageFragmentationTest {
+
+    private static final int maxBufferSize = 40;
+    private static final int maxWorkRequests = 2;
+
+    /**
+     * Delivers the SENDs of a proxy provider to a reassembler, when the test completes them.
+     */
+    private static class LoopbackCommunicator implements RdmaCommunicator {
+        private final WorkRequestProxyProvider proxyProvider;
+        private final Deque<WorkRequestProxy> postedSends = new ArrayDeque<>();
+        private MessageReassembler reassembler;
+
+        private LoopbackCommunicator(WorkRequestProxyProvider proxyProvider) {
+            this.proxyProvider = proxyProvider;
+        }
+
+        @Override
+        public boolean postNetOperationToNIC(WorkRequestProxy proxy) {
+            if(proxy.getPostType() == PostedRequestType.SEND){
+                postedSends.add(proxy);
+            }
+            return true;
+        }
+
+        /**
+         * Receives a posted SEND on the other side and completes it.
+         */
+        private void complete(WorkRequestProxy sendProxy){
+            ByteBuffer receiveBuffer = ByteBuffer.allocate(maxBufferSize);
+            receiveBuffer.put(sendProxy.getBuffer().duplicate());
+            WorkRequestProxy receiveProxy = new WorkRequestProxy(0, PostedRequestType.RECEIVE, TWO_SIDED_RECV,
+                    receiveBuffer, this).setByteLength(sendProxy.getBuffer().limit());
+            sendProxy.releaseWorkRequest();
+            assertTrue(reassembler.onFragment(receiveProxy));
+        }
+
+        @Override
+        public WorkRequestProxyProvider getWorkRequestProxyProvider() {
+            return proxyProvider;
+        }
+
+        @Override
+        public boolean isShutDown() {
+            return false;
+        }
+    }
+
+    private static LoopbackCommunicator createCommunicator(){
+        TwoSidedBufferManager bufferManager = new TwoSidedBufferManager(maxBufferSize, maxWorkRequests);
+        bufferManager.allocateCommunicationBuffers();
+        QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+        proxyProvider.setBufferManager(bufferManager);
+        LoopbackCommunicator communicator = new LoopbackCommunicator(proxyProvider);
+        proxyProvider.setCommunicator(communicator);
+        return communicator;
+    }
+
+    private static ByteBuffer createMessage(int length){
+        ByteBuffer message = ByteBuffer.allocateDirect(length);
+        for(int i=0; i < length; i++){
+            message.put((byte) i);
+        }
+        message.flip();
+        return message;
+    }
+
+    @Test
+    @Tag("Fragmentation")
+    @DisplayName("Test that messages larger than the buffers are pipelined and reassembled in place")
+    public void fragmentationTest(){
+        LoopbackCommunicator communicator = createCommunicator();
+        Map<Long, ByteBuffer> messages = new HashMap<>();
+        communicator.reassembler = new MessageReassembler(ByteBuffer::allocateDirect, messages::put);
+        MessageFragmenter fragmenter = new MessageFragmenter(communicator.getWorkRequestProxyProvider(),
+                maxBufferSize);
+        // an expected message goes straight to the application's buffer, even if fragments arrive out of order
+        ByteBuffer message = createMessage(2 * (maxBufferSize - FragmentHeader.SIZE));
+        ByteBuffer destination = ByteBuffer.allocateDirect(message.capacity());
+        communicator.reassembler.expect(1, destination);
+        assertTrue(fragmenter.sendAsync(1, message, (IbvMr) null).join());
+        assertEquals(maxWorkRequests, communicator.postedSends.size());
+        communicator.complete(communicator.postedSends.pollLast());
+        assertEquals(1, communicator.reassembler.getIncompleteMessages());
+        communicator.complete(communicator.postedSends.pollLast());
+        assertSame(destination, messages.get(1L));
+        assertEquals(message, destination);
+        // a larger message is posted as WR ids become available
+        ByteBuffer largeMessage = createMessage(5 * (maxBufferSize - FragmentHeader.SIZE) + 3);
+        CompletableFuture<Boolean> sent = fragmenter.sendAsync(2, largeMessage, (IbvMr) null);
+        assertFalse(sent.isDone());
+        int fragments = 0;
+        while(!communicator.postedSends.isEmpty()){
+            communicator.complete(communicator.postedSends.poll());
+            fragments ++;
+        }
+        assertTrue(sent.join());
+        assertEquals(6, fragments);
+        assertEquals(largeMessage, messages.get(2L));
+        assertEquals(0, largeMessage.position());
+        // empty messages have one fragment
+        assertTrue(fragmenter.send(3, ByteBuffer.allocate(0)));
+        communicator.complete(communicator.postedSends.poll());
+        assertEquals(0, messages.get(3L).limit());
+        assertEquals(0, communicator.reassembler.getIncompleteMessages());
+    }
+}
@@ -0,0 +1,231 @@
+package jarg.jrcm.networking.ringbuffer;
+
+import jarg.jrcm.networking.communicators.RdmaCommunicator;
+import jarg.jrcm.networking.dependencies.netbuffers.impl.RingBufferManager;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxy;
+import jarg.jrcm.networking.dependencies.netrequests.WorkRequestProxyProvider;
+import jarg.jrcm.networking.dependencies.netrequests.impl.QueuedProxyProvider;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Tests for RingBufferSender and RingBufferReceiver")
+public class RingBufferTest {
+
+    private static final int maxBufferSize = 32;
+    private static final int maxWorkRequests = 4;
+    private static final int ringCapacity = 64;
+
+    /**
+     * Applies the posted WRITEs to the memory of the other side, when the test completes them.
+     */
+    private static class LoopbackCommunicator implements RdmaCommunicator {
+        private final WorkRequestProxyProvider proxyProvider;
+        private final Deque<WorkRequestProxy> postedWrites = new ArrayDeque<>();
+        private final List<ByteBuffer> remoteMemory = new ArrayList<>();
+
+        private LoopbackCommunicator(RingBufferManager bufferManager) {
+            bufferManager.allocateCommunicationBuffers();
+            QueuedProxyProvider proxyProvider = new QueuedProxyProvider(maxWorkRequests);
+            proxyProvider.setBufferManager(bufferManager);
+            proxyProvider.setCommunicator(this);
+            this.proxyProvider = proxyProvider;
+        }
+
+        @Override
+        public boolean postNetOperationToNIC(WorkRequestProxy proxy) {
+            postedWrites.add(proxy);
+            return true;
+        }
+
+        /**
+         * Writes the first bytes of the next posted WRITE to the remote memory, without completing it.
+         */
+        private void writePartially(int length){
+            WorkRequestProxy proxy = postedWrites.peek();
+            ByteBuffer data = proxy.getBuffer().duplicate();
+            data.limit(length);
+            for(ByteBuffer memory : remoteMemory){
+                long offset = proxy.getRemoteAddress() - ((sun.nio.ch.DirectBuffer) memory).address();
+                if((offset >= 0) && (offset < memory.capacity())){
+                    ByteBuffer target = memory.duplicate();
+                    target.position((int) offset);
+                    target.put(data);
+                    return;
+                }
+            }
+            fail("WRITE to unknown memory.");
+        }
+
+        /**
+         * Writes the posted WRITEs to the remote memory and completes them.
+         */
+        private void completeAll(){
+            while(!postedWrites.isEmpty()){
+                writePartially(postedWrites.peek().getBuffer().limit());
+                postedWrites.poll().releaseWorkRequest();
+            }
+        }
+
+        @Override
+        public WorkRequestProxyProvider getWorkRequestProxyProvider() {
+            return proxyProvider;
+        }
+
+        @Override
+        public boolean isShutDown() {
+            return false;
+        }
+    }
+
+    private static ByteBuffer createMessage(int length, int first){
+        ByteBuffer message = ByteBuffer.allocate(length);
+        for(int i=0; i < length; i++){
+            message.put((byte) (first + i));
+        }
+        message.flip();
+        return message;
+    }
+
+    @Test
+    @Tag("RingBuffer")
+    @DisplayName("Test that written messages are received in order, wrap around the ring and respect the head")
+    public void ringBufferTest(){
+        RingBufferManager senderMemory = new RingBufferManager(maxBufferSize, maxWorkRequests, 0);
+        RingBufferManager receiverMemory = new RingBufferManager(maxBufferSize, maxWorkRequests, ringCapacity);
+        LoopbackCommunicator senderSide = new LoopbackCommunicator(senderMemory);
+        LoopbackCommunicator receiverSide = new LoopbackCommunicator(receiverMemory);
+        senderSide.remoteMemory.add(receiverMemory.getRingBuffer());
+        receiverSide.remoteMemory.add(senderMemory.getHeadBuffer());
+        assertEquals(0, receiverMemory.getRingAddress() % Long.BYTES);
+        RingBufferSender sender = new RingBufferSender(senderSide.getWorkRequestProxyProvider(),
+                new RingBufferDescriptor(receiverMemory.getRingAddress(), 0, ringCapacity),
+                senderMemory.getHeadBuffer());
+        RingBufferReceiver receiver = new RingBufferReceiver(receiverSide.getWorkRequestProxyProvider(),
+                receiverMemory.getRingBuffer(), new RingBufferDescriptor(senderMemory.getHeadAddress(), 0,
+                RingBufferManager.HEAD_SLOT_SIZE));
+        List<ByteBuffer> messages = new ArrayList<>();
+        RingBufferReceiver.MessageListener listener = message -> {
+            ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+            copy.put(message).flip();
+            messages.add(copy);
+        };
+        // four frames of 16 bytes fill the ring
+        for(int i=0; i < 4; i++){
+            assertTrue(sender.sendNow(createMessage(10, 10 * i)));
+        }
+        assertFalse(sender.sendNow(createMessage(1, 0)));
+        assertFalse(sender.sendNow(createMessage(ringCapacity, 0)));
+        // a frame is received only after its valid byte is written
+        senderSide.writePartially(RingBufferFrame.getValidOffset(10));
+        assertEquals(0, receiver.poll(listener, 10));
+        senderSide.completeAll();
+        assertEquals(4, receiver.poll(listener, 10));
+        for(int i=0; i < 4; i++){
+            assertEquals(createMessage(10, 10 * i), messages.get(i));
+        }
+        // the sender sees the free space once the head is written back
+        assertFalse(sender.sendNow(createMessage(20, 0)));
+        receiverSide.completeAll();
+        assertTrue(sender.sendNow(createMessage(20, 40)));
+        assertTrue(sender.sendNow(createMessage(10, 60)));
+        senderSide.completeAll();
+        assertEquals(2, receiver.poll(listener, 10));
+        receiverSide.completeAll();
+        // a frame that doesn't fit at the end of the ring skips it
+        assertTrue(sender.sendNow(createMessage(20, 70)));
+        assertEquals(2, senderSide.postedWrites.size());
+        senderSide.completeAll();
+        assertEquals(1, receiver.poll(listener, 10));
+        assertEquals(createMessage(20, 70), messages.get(6));
+        assertEquals(sender.getTail(), receiver.getHead());
+        assertEquals(7, receiver.getReceivedMessages());
+        assertEquals(0, receiver.poll(listener, 10));
+    }
+
+    @Test
+    @Tag("RingBuffer")
+    @DisplayName("Test that empty messages are received and don't stop the receiver")
+    public void emptyMessageTest(){
+        RingBufferManager senderMemory = new RingBufferManager(maxBufferSize, maxWorkRequests, 0);
+        RingBufferManager receiverMemory = new RingBufferManager(maxBufferSize, maxWorkRequests, ringCapacity);
+        LoopbackCommunicator senderSide = new LoopbackCommunicator(senderMemory);
+        LoopbackCommunicator receiverSide = new LoopbackCommunicator(receiverMemory);
+        senderSide.remoteMemory.add(receiverMemory.getRingBuffer());
+        RingBufferSender sender = new RingBufferSender(senderSide.getWorkRequestProxyProvider(),
+                new RingBufferDescriptor(receiverMemory.getRingAddress(), 0, ringCapacity),
+                senderMemory.getHeadBuffer());
+        RingBufferReceiver receiver = new RingBufferReceiver(receiverSide.getWorkRequestProxyProvider(),
+                receiverMemory.getRingBuffer(), new RingBufferDescriptor(senderMemory.getHeadAddress(), 0,
+                RingBufferManager.HEAD_SLOT_SIZE));
+        List<Integer> messageLengths = new ArrayList<>();
+        assertTrue(sender.sendNow(createMessage(0, 0)));
+        assertTrue(sender.sendNow(createMessage(3, 0)));
+        senderSide.completeAll();
+        assertEquals(2, receiver.poll(message -> messageLengths.add(message.remaining()), 10));
+        assertEquals(0, messageLengths.get(0));
+        assertEquals(3, messageLengths.get(1));
+        assertEquals(sender.getTail(), receiver.getHead());
+    }
+
+    @Test
+    @Tag("RingBuffer")
+    @DisplayName("Test that frames longer than the free space above the head update threshold are sent")
+    public void largeFrameTest(){
+        RingBufferManager senderMemory = new RingBufferManager(ringCapacity, maxWorkRequests, 0);
+        RingBufferManager receiverMemory = new RingBufferManager(ringCapacity, maxWorkRequests, ringCapacity);
+        LoopbackCommunicator senderSide = new LoopbackCommunicator(senderMemory);
+        LoopbackCommunicator receiverSide = new LoopbackCommunicator(receiverMemory);
+        senderSide.remoteMemory.add(receiverMemory.getRingBuffer());
+        receiverSide.remoteMemory.add(senderMemory.getHeadBuffer());
+        RingBufferSender sender = new RingBufferSender(senderSide.getWorkRequestProxyProvider(),
+                new RingBufferDescriptor(receiverMemory.getRingAddress(), 0, ringCapacity),
+                senderMemory.getHeadBuffer());
+        RingBufferReceiver receiver = new RingBufferReceiver(receiverSide.getWorkRequestProxyProvider(),
+                receiverMemory.getRingBuffer(), new RingBufferDescriptor(senderMemory.getHeadAddress(), 0,
+                RingBufferManager.HEAD_SLOT_SIZE)).setHeadUpdateThreshold(ringCapacity / 2);
+        List<ByteBuffer> messages = new ArrayList<>();
+        RingBufferReceiver.MessageListener listener = message -> {
+            ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+            copy.put(message).flip();
+            messages.add(copy);
+        };
+        // the head is published when the ring is drained, even below the threshold
+        assertTrue(sender.sendNow(createMessage(10, 0)));
+        senderSide.completeAll();
+        assertEquals(1, receiver.poll(listener, 10));
+        assertEquals(16, receiver.getPublishedHead());
+        receiverSide.completeAll();
+        // a frame of 56 bytes only fits at the start of the ring after the skipped end is consumed,
+        // so the end is skipped on its own
+        assertFalse(sender.sendNow(createMessage(50, 10)));
+        assertEquals(1, senderSide.postedWrites.size());
+        assertEquals(ringCapacity, sender.getTail());
+        senderSide.completeAll();
+        assertEquals(0, receiver.poll(listener, 10));
+        assertEquals(ringCapacity, receiver.getPublishedHead());
+        receiverSide.completeAll();
+        assertTrue(sender.sendNow(createMessage(50, 10)));
+        senderSide.completeAll();
+        assertEquals(1, receiver.poll(listener, 10));
+        receiverSide.completeAll();
+        // the blocking send skips the end of the ring and posts the frame when it fits
+        assertTrue(sender.send(createMessage(50, 60)));
+        assertEquals(2, senderSide.postedWrites.size());
+        senderSide.completeAll();
+        assertEquals(1, receiver.poll(listener, 10));
+        assertEquals(3, messages.size());
+        assertEquals(createMessage(50, 10), messages.get(1));
+        assertEquals(createMessage(50, 60), messages.get(2));
+        assertEquals(sender.getTail(), receiver.getHead());
+        assertEquals(receiver.getHead(), receiver.getPublishedHead());
+    }
+}